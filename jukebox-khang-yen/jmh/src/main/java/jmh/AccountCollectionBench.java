@@ -0,0 +1,76 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Account;
+import model.AccountCollection;
+import model.PasswordHash;
+
+/**
+ * Times logging in to and creating an account in AccountCollections of 1k to
+ * 1M accounts. Passwords are hashed with a cost of 1, so the times show the
+ * cost of finding and adding the account rather than the cost of hashing.
+ *
+ * @author Khang Tran
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class AccountCollectionBench {
+	// a power of two, so the next name is found with a mask
+	private static final int NAMES = 1024;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int accounts;
+
+	private AccountCollection collection;
+	private final String[] names = new String[NAMES];
+	private final String[] passwords = new String[NAMES];
+	private int next;
+	private long created;
+
+	@Setup(Level.Trial)
+	public void enroll() {
+		PasswordHash.setDefaultIterations(1);
+		collection = new AccountCollection();
+		for (int i = 0; i < accounts; i++)
+			collection.createAccount("student" + i, "pw" + i);
+		// random students, named before timing so only the lookup is timed
+		Random random = new Random(42);
+		for (int i = 0; i < NAMES; i++) {
+			int student = random.nextInt(accounts);
+			names[i] = "student" + student;
+			passwords[i] = "pw" + student;
+		}
+	}
+
+	@Benchmark
+	public Account authorize() {
+		int i = next++ & (NAMES - 1);
+		return collection.authorize(names[i], passwords[i]);
+	}
+
+	@Benchmark
+	public Account createAccount() {
+		// every call adds a new student, so the collection grows a little
+		// past its size during the measurement
+		return collection.createAccount("new" + created++, "pw");
+	}
+}
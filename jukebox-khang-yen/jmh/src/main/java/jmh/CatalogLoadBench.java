@@ -0,0 +1,98 @@
+package jmh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.SongCatalog;
+
+/**
+ * Times loading the catalog from a directory of 100 to 10k generated MP3
+ * files, each with an ID3v2.3 tag, a little audio and an ID3v1 tag. The
+ * directory is read before timing, so the files are in the page cache.
+ *
+ * This is what SongSelector.loadSongsFromDirectory used to do; the songs are
+ * now loaded once into the SongCatalog.
+ *
+ * @author Yen Lai
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogLoadBench {
+	@Param({ "100", "1000", "10000" })
+	public int files;
+
+	private Path library;
+
+	@Setup
+	public void generate() throws IOException {
+		library = Files.createTempDirectory("library");
+		byte[] audio = new byte[4096];
+		byte[] v1 = new byte[128];
+		v1[0] = 'T';
+		v1[1] = 'A';
+		v1[2] = 'G';
+		for (int i = 0; i < files; i++) {
+			ByteArrayOutputStream frames = new ByteArrayOutputStream();
+			frame(frames, "TIT2", "Title " + i);
+			frame(frames, "TPE1", "Artist " + i % 100);
+			frame(frames, "TALB", "Album " + i % 500);
+			frame(frames, "TLEN", Integer.toString(60_000 + i % 240_000));
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			int size = frames.size();
+			file.writeBytes(new byte[] { 'I', 'D', '3', 3, 0, 0, (byte) (size >>> 21 & 0x7F),
+					(byte) (size >>> 14 & 0x7F), (byte) (size >>> 7 & 0x7F), (byte) (size & 0x7F) });
+			frames.writeTo(file);
+			file.writeBytes(audio);
+			file.writeBytes(v1);
+			Files.write(library.resolve("song" + i + ".mp3"), file.toByteArray());
+		}
+		SongCatalog.loadFromDirectory(library.toString());
+	}
+
+	@TearDown
+	public void delete() throws IOException {
+		try (Stream<Path> walk = Files.walk(library)) {
+			walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public SongCatalog loadFromDirectory() {
+		return SongCatalog.loadFromDirectory(library.toString());
+	}
+
+	/*
+	 * A text frame, its text in ISO-8859-1.
+	 */
+	private static void frame(ByteArrayOutputStream frames, String id, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+		int size = bytes.length + 1;
+		frames.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		frames.writeBytes(new byte[] { (byte) (size >>> 24), (byte) (size >>> 16), (byte) (size >>> 8), (byte) size,
+				0, 0, 0 });
+		frames.writeBytes(bytes);
+	}
+}
@@ -0,0 +1,67 @@
+package jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.PlayList;
+import model.Song;
+import model.SongCatalog;
+
+/**
+ * Times queuing a song at the end of a PlayList and playing the song at its
+ * front, with the list holding 16 to 64k songs, and removing a song from the
+ * middle of the list and queuing it again.
+ *
+ * @author Yen Lai
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayListBench {
+	@Param({ "16", "1024", "65536" })
+	public int songs;
+
+	private SongCatalog catalog;
+	private PlayList playList;
+	private int next;
+
+	@Setup
+	public void fill() {
+		List<Song> catalogSongs = new ArrayList<>();
+		for (int i = 0; i < 256; i++)
+			catalogSongs.add(new Song("Title " + i, "Artist " + i, "3:00", "song" + i + ".mp3"));
+		catalog = new SongCatalog(catalogSongs);
+		playList = new PlayList(catalog);
+		for (int i = 0; i < songs; i++)
+			playList.queueUpNextSong(catalog.getSong(i & 255));
+	}
+
+	@Benchmark
+	public Song enqueueAndPoll() {
+		playList.queueUpNextSong(catalog.getSong(next++ & 255));
+		return playList.playNextSong();
+	}
+
+	@Benchmark
+	public Song removeFromMiddle() {
+		Song song = playList.removeSong(playList.size() / 2);
+		playList.queueUpNextSong(song);
+		return song;
+	}
+}
@@ -0,0 +1,96 @@
+package jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Account;
+import model.AccountCollection;
+import model.JukeboxAccount;
+import model.JukeboxState;
+import model.PasswordHash;
+import model.Song;
+import model.SongCatalog;
+import persistence.JukeboxStore;
+
+/**
+ * Times the round trip of JukeboxGUI.saveState and loadState: closing the
+ * JukeboxStore, which writes a snapshot, and loading it again, for 1k to 100k
+ * accounts that have each queued up to three songs. Loading builds a
+ * JukeboxAccount only when its account logs in, so the accounts are not
+ * built here either.
+ *
+ * @author Khang Tran
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class StoreRoundTripBench {
+	@Param({ "1000", "100000" })
+	public int accounts;
+
+	private Path directory;
+	private JukeboxStore store;
+
+	@Setup
+	public void save() throws IOException {
+		PasswordHash.setDefaultIterations(1);
+		List<Song> songs = new ArrayList<>();
+		for (int i = 0; i < 64; i++)
+			songs.add(new Song("Title " + i, "Artist " + i, "3:00", "song" + i + ".mp3"));
+		SongCatalog catalog = new SongCatalog(songs);
+		SongCatalog.publish(catalog);
+
+		directory = Files.createTempDirectory("jukebox");
+		store = new JukeboxStore(directory, Runnable::run);
+		JukeboxState state = store.startFresh();
+		AccountCollection collection = state.getAccountCollection();
+		for (int i = 0; i < accounts; i++) {
+			Account account = collection.createAccount("student" + i, "pw");
+			JukeboxAccount jukeboxAccount = state.logIn(account);
+			for (int n = 0; n < i % 4; n++)
+				jukeboxAccount.queueSong(catalog.getSong((i + n) % songs.size()));
+			if (i % 4 == 3)
+				jukeboxAccount.songFinished();
+		}
+	}
+
+	@TearDown
+	public void delete() throws IOException {
+		store.close().join();
+		try (Stream<Path> walk = Files.walk(directory)) {
+			walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public JukeboxState saveAndLoad() throws IOException, ClassNotFoundException {
+		store.close().join();
+		store = new JukeboxStore(directory, Runnable::run);
+		JukeboxState loaded = store.load();
+		if (loaded.getAccountCollection().size() < accounts)
+			throw new IllegalStateException("Accounts were lost");
+		return loaded;
+	}
+}
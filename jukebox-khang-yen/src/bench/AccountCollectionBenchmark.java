@@ -0,0 +1,73 @@
+package bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import model.AccountCollection;
+import model.PasswordHash;
+
+/**
+ * This program measures how long a login takes as the number of accounts
+ * grows. It fills an AccountCollection with 1k up to 1M accounts and times
+ * authorize() calls for random user names. The time per login should stay
+ * flat from the smallest collection to the largest one.
+ * 
+ * Passwords are hashed with a cost of 1 here, so the numbers show the cost of
+ * finding the account rather than the cost of hashing. LoginBenchmark measures
+ * logins with the real cost.
+ * 
+ * Run it with a large enough heap, for example -Xmx2g.
+ * 
+ * @author Khang Tran
+ */
+public class AccountCollectionBenchmark {
+
+	private static final int[] SIZES = { 1_000, 10_000, 100_000, 1_000_000 };
+	private static final int LOOKUPS = 2_000_000;
+
+	public static void main(String[] args) {
+		PasswordHash.setDefaultIterations(1);
+		System.out.printf("%10s %15s %15s%n", "accounts", "create ns/op", "login ns/op");
+		for (int size : SIZES) {
+			AccountCollection collection = new AccountCollection();
+
+			// Enroll the accounts for a semester
+			long start = System.nanoTime();
+			for (int i = 0; i < size; i++) {
+				collection.createAccount("student" + i, "pw" + i);
+			}
+			double createNanos = (System.nanoTime() - start) / (double) size;
+
+			// Warm up before timing the logins
+			login(collection, size, LOOKUPS);
+			start = System.nanoTime();
+			int found = login(collection, size, LOOKUPS);
+			double loginNanos = (System.nanoTime() - start) / (double) LOOKUPS;
+
+			if (found != LOOKUPS)
+				throw new IllegalStateException("Only " + found + " of " + LOOKUPS + " logins succeeded");
+			System.out.printf("%10d %15.1f %15.1f%n", size, createNanos, loginNanos);
+		}
+	}
+
+	/*
+	 * Logs in random students and returns how many logins succeeded. The user
+	 * names are built before the loop so only authorize() is being timed.
+	 */
+	private static int login(AccountCollection collection, int size, int count) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String[] names = new String[1024];
+		String[] passwords = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			int n = random.nextInt(size);
+			names[i] = "student" + n;
+			passwords[i] = "pw" + n;
+		}
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			int n = i & (names.length - 1);
+			if (collection.authorize(names[n], passwords[n]) != null)
+				found++;
+		}
+		return found;
+	}
+}
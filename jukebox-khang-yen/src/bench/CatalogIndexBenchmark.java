@@ -0,0 +1,84 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import model.SongCatalog;
+import persistence.CatalogIndex;
+
+/**
+ * This program times loading the catalog of a generated 50k song library the
+ * way the jukebox starts: listing the directory, then reading the songs with a
+ * CatalogIndex. It reports
+ * 
+ * <pre>
+ * cold        no index, the tags of every file are read and the index written
+ * warm        the index is up to date, only the files' sizes and times are looked at
+ * 100 changed 100 files were touched since the index was written
+ * </pre>
+ * 
+ * The library is generated as in CatalogIngestBenchmark, in a temporary
+ * directory or the one given as the first argument, and deleted afterwards.
+ * 
+ * @author Yen Lai
+ */
+public class CatalogIndexBenchmark {
+	private static final int FILES = 50_000;
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws IOException {
+		Path library = args.length > 0 ? Files.createDirectories(Path.of(args[0]))
+				: Files.createTempDirectory("library");
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : FILES;
+		Path indexFile = Files.createTempFile("catalog", ".idx");
+		try {
+			List<Path> files = CatalogIngestBenchmark.generate(library, count);
+			// read the library once so every run finds it in the page cache
+			SongCatalog.loadFromDirectory(library.toString());
+
+			long cold = Long.MAX_VALUE, warm = Long.MAX_VALUE, changed = Long.MAX_VALUE;
+			int parsedCold = 0, parsedWarm = 0, parsedChanged = 0;
+			for (int round = 0; round < ROUNDS; round++) {
+				Files.deleteIfExists(indexFile);
+				CatalogIndex index = new CatalogIndex(indexFile);
+				cold = Math.min(cold, time(library, index));
+				parsedCold = index.getParsedFiles();
+
+				warm = Math.min(warm, time(library, index));
+				parsedWarm = index.getParsedFiles();
+
+				FileTime now = FileTime.fromMillis(System.currentTimeMillis() + round + 1);
+				for (int i = 0; i < 100; i++)
+					Files.setLastModifiedTime(files.get(i * (count / 100)), now);
+				changed = Math.min(changed, time(library, index));
+				parsedChanged = index.getParsedFiles();
+			}
+
+			System.out.printf("%d files, index of %d bytes, best of %d rounds%n", count, Files.size(indexFile),
+					ROUNDS);
+			System.out.printf("%-12s %12s %14s%n", "start", "ms", "files parsed");
+			System.out.printf("%-12s %12.1f %14d%n", "cold", cold / 1e6, parsedCold);
+			System.out.printf("%-12s %12.1f %14d%n", "warm", warm / 1e6, parsedWarm);
+			System.out.printf("%-12s %12.1f %14d%n", "100 changed", changed / 1e6, parsedChanged);
+		} finally {
+			Files.deleteIfExists(indexFile);
+			try (Stream<Path> walk = Files.walk(library)) {
+				walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	private static long time(Path library, CatalogIndex index) {
+		long start = System.nanoTime();
+		SongCatalog catalog = SongCatalog.loadFromDirectory(library.toString(), index);
+		long elapsed = System.nanoTime() - start;
+		if (catalog.size() == 0)
+			throw new IllegalStateException("No songs were loaded");
+		return elapsed;
+	}
+}
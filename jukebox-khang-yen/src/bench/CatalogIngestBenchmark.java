@@ -0,0 +1,114 @@
+package bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import model.CatalogIngester;
+import model.Song;
+
+/**
+ * This program generates a library of 50k MP3 files with ID3v2.3 tags, a
+ * cover picture and an ID3v1 tag, then reads the library with
+ * CatalogIngester on fork-join pools of 1, 2, 4 ... threads up to the number
+ * of cores and reports the files read per second for each. The library is
+ * read once before timing so every run finds the files in the page cache.
+ *
+ * The library is written to a temporary directory, or to the directory given
+ * as the first argument, and deleted afterwards.
+ *
+ * @author Yen Lai
+ */
+public class CatalogIngestBenchmark {
+	private static final int FILES = 50_000;
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws IOException {
+		Path library = args.length > 0 ? Files.createDirectories(Path.of(args[0]))
+				: Files.createTempDirectory("library");
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : FILES;
+		try {
+			List<Path> files = generate(library, count);
+			CatalogIngester.ingest(files, ForkJoinPool.commonPool());
+
+			int cores = Runtime.getRuntime().availableProcessors();
+			System.out.printf("%d files, %d cores, best of %d rounds%n", count, cores, ROUNDS);
+			System.out.printf("%8s %12s %14s%n", "threads", "ms", "files/second");
+			List<Integer> threadCounts = new ArrayList<>();
+			for (int threads = 1; threads < cores; threads *= 2)
+				threadCounts.add(threads);
+			threadCounts.add(cores);
+			for (int threads : threadCounts) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				long best = Long.MAX_VALUE;
+				for (int round = 0; round < ROUNDS; round++) {
+					long start = System.nanoTime();
+					List<Song> songs = CatalogIngester.ingest(files, pool);
+					best = Math.min(best, System.nanoTime() - start);
+					if (!songs.get(count - 1).getTitle().equals("Title " + (count - 1)))
+						throw new IllegalStateException("Tags were read wrong");
+				}
+				pool.shutdown();
+				System.out.printf("%8d %12.1f %14.0f%n", threads, best / 1e6, count / (best / 1e9));
+			}
+		} finally {
+			try (Stream<Path> walk = Files.walk(library)) {
+				walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/*
+	 * Each file has a tag with a 2 KB picture first and the text frames after
+	 * it, 4 KB of audio and an ID3v1 tag.
+	 */
+	static List<Path> generate(Path library, int count) throws IOException {
+		List<Path> files = new ArrayList<>(count);
+		byte[] picture = new byte[2048];
+		byte[] audio = new byte[4096];
+		byte[] v1 = new byte[128];
+		v1[0] = 'T';
+		v1[1] = 'A';
+		v1[2] = 'G';
+		for (int i = 0; i < count; i++) {
+			ByteArrayOutputStream frames = new ByteArrayOutputStream();
+			frame(frames, "APIC", picture);
+			frame(frames, "TIT2", text("Title " + i));
+			frame(frames, "TPE1", text("Artist " + i % 1000));
+			frame(frames, "TALB", text("Album " + i % 5000));
+			frame(frames, "TLEN", text(Integer.toString(60_000 + i % 240_000)));
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			int size = frames.size() + 256; // padding
+			file.writeBytes(new byte[] { 'I', 'D', '3', 3, 0, 0, (byte) (size >>> 21 & 0x7F),
+					(byte) (size >>> 14 & 0x7F), (byte) (size >>> 7 & 0x7F), (byte) (size & 0x7F) });
+			frames.writeTo(file);
+			file.writeBytes(new byte[256]);
+			file.writeBytes(audio);
+			file.writeBytes(v1);
+			files.add(Files.write(library.resolve("song" + i + ".mp3"), file.toByteArray()));
+		}
+		return files;
+	}
+
+	private static void frame(ByteArrayOutputStream frames, String id, byte[] body) {
+		frames.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		int size = body.length;
+		frames.writeBytes(new byte[] { (byte) (size >>> 24), (byte) (size >>> 16), (byte) (size >>> 8), (byte) size,
+				0, 0 });
+		frames.writeBytes(body);
+	}
+
+	private static byte[] text(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+		byte[] body = new byte[bytes.length + 1];
+		System.arraycopy(bytes, 0, body, 1, bytes.length);
+		return body;
+	}
+}
@@ -0,0 +1,154 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.PasswordHash;
+import model.Song;
+import model.VenueQueue;
+
+/**
+ * This program simulates a peak hour at the jukebox to compare a first in,
+ * first out VenueQueue with a fair one. Students arrive at random during the
+ * hour and each one queues one to three songs at once. The songs play one
+ * after another on a simulated clock, and the program reports how long the
+ * students waited for their first song and for any song.
+ * 
+ * It then times adding and taking songs with thousands of accounts waiting,
+ * to show that picking a song in a fair queue doesn't slow down as more
+ * accounts wait.
+ * 
+ * @author Yen Lai
+ */
+public class FairQueueBenchmark {
+
+	private static final int STUDENTS = 15;
+	private static final int HOUR = 3600;
+	private static final int GAP = 2;
+	private static final long SEED = 42;
+
+	public static void main(String[] args) {
+		PasswordHash.setDefaultIterations(1);
+		List<Arrival> arrivals = peakHour();
+		System.out.printf("%d students in one hour, %d songs, %.1f hours of music%n", STUDENTS,
+				arrivals.stream().mapToInt(arrival -> arrival.songs.size()).sum(),
+				arrivals.stream().flatMap(arrival -> arrival.songs.stream()).mapToInt(Integer::intValue).sum()
+						/ 3600.0);
+		System.out.printf("%-22s %14s %14s %14s %14s%n", "queue", "first p50 min", "first p95 min",
+				"first max min", "any max min");
+		simulate("first in, first out", arrivals, VenueQueue::new);
+		simulate("fair", arrivals, VenueQueue::fair);
+		// every fifth student has a weight of 2
+		simulate("fair, weighted", arrivals,
+				() -> VenueQueue.fair(account -> account.getAccount().getID().hashCode() % 5 == 0 ? 2 : 1));
+
+		System.out.println();
+		System.out.printf("%-22s %10s %14s%n", "queue", "accounts", "ns per song");
+		for (int accounts : new int[] { 1_000, 10_000, 100_000 }) {
+			time("first in, first out", accounts, VenueQueue::new);
+			time("fair", accounts, VenueQueue::fair);
+		}
+	}
+
+	/*
+	 * A student who arrives at a time and queues songs of the given lengths in
+	 * seconds.
+	 */
+	private static class Arrival {
+		final int time;
+		final JukeboxAccount account;
+		final List<Integer> songs = new ArrayList<>();
+
+		Arrival(int time, JukeboxAccount account) {
+			this.time = time;
+			this.account = account;
+		}
+	}
+
+	private static List<Arrival> peakHour() {
+		Random random = new Random(SEED);
+		List<Arrival> arrivals = new ArrayList<>();
+		for (int i = 0; i < STUDENTS; i++) {
+			Arrival arrival = new Arrival(random.nextInt(HOUR), new JukeboxAccount(new Account("student" + i, "pw")));
+			int songs = 1 + random.nextInt(3);
+			for (int n = 0; n < songs; n++)
+				arrival.songs.add(150 + random.nextInt(120));
+			arrivals.add(arrival);
+		}
+		arrivals.sort((a, b) -> Integer.compare(a.time, b.time));
+		return arrivals;
+	}
+
+	/*
+	 * Plays the peak hour on a simulated clock, in seconds.
+	 */
+	private static void simulate(String name, List<Arrival> arrivals, Supplier<VenueQueue> queues) {
+		VenueQueue venue = queues.get();
+		// the song files carry their length, and the time they were queued
+		Map<Song, int[]> lengthAndQueued = new HashMap<>();
+		Map<JukeboxAccount, Integer> arrived = new HashMap<>();
+		Map<JukeboxAccount, Integer> firstWait = new HashMap<>();
+		int anyMax = 0;
+		int clock = 0;
+		int next = 0;
+		while (next < arrivals.size() || !venue.isEmpty()) {
+			// the students who arrived while the last song played queue their songs
+			if (venue.isEmpty() && arrivals.get(next).time > clock)
+				clock = arrivals.get(next).time;
+			while (next < arrivals.size() && arrivals.get(next).time <= clock) {
+				Arrival arrival = arrivals.get(next++);
+				arrived.put(arrival.account, arrival.time);
+				for (int length : arrival.songs) {
+					Song song = new Song("Song", "Artist", length / 60 + ":" + length % 60, "song.mp3");
+					lengthAndQueued.put(song, new int[] { length, arrival.time });
+					venue.offer(arrival.account, song);
+				}
+			}
+			VenueQueue.Entry entry = venue.poll();
+			int[] song = lengthAndQueued.get(entry.getSong());
+			int wait = clock - song[1];
+			anyMax = Math.max(anyMax, wait);
+			firstWait.putIfAbsent(entry.getAccount(), clock - arrived.get(entry.getAccount()));
+			clock += song[0] + GAP;
+		}
+		int[] waits = firstWait.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+		System.out.printf("%-22s %14.1f %14.1f %14.1f %14.1f%n", name, percentile(waits, 50) / 60.0,
+				percentile(waits, 95) / 60.0, waits[waits.length - 1] / 60.0, anyMax / 60.0);
+	}
+
+	private static int percentile(int[] sorted, int percent) {
+		return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+	}
+
+	/*
+	 * Times queuing three songs for each account and taking them all.
+	 */
+	private static void time(String name, int accounts, Supplier<VenueQueue> queues) {
+		JukeboxAccount[] students = new JukeboxAccount[accounts];
+		for (int i = 0; i < accounts; i++)
+			students[i] = new JukeboxAccount(new Account("student" + i, "pw"));
+		Song song = new Song("Capture", "Pikasong", "0:05", "Capture.mp3");
+		long[] nanos = new long[5];
+		for (int run = 0; run < nanos.length; run++) {
+			VenueQueue venue = queues.get();
+			long start = System.nanoTime();
+			for (int n = 0; n < 3; n++) {
+				for (JukeboxAccount student : students)
+					venue.offer(student, song);
+			}
+			while (venue.poll() != null)
+				;
+			nanos[run] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		System.out.printf("%-22s %10d %14.1f%n", name, accounts, nanos[0] / (3.0 * accounts));
+	}
+
+}
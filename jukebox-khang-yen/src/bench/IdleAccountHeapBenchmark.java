@@ -0,0 +1,52 @@
+package bench;
+
+import model.Account;
+import model.JukeboxState;
+import model.PasswordHash;
+
+/**
+ * This program measures how much heap an idle JukeboxAccount keeps, one that
+ * has logged in but hasn't queued a song. It creates the accounts first, then
+ * builds a JukeboxAccount for each and reports the growth of the used heap
+ * divided by the number of accounts.
+ * 
+ * Each JukeboxAccount used to build its own SongSelector, with a TableView, a
+ * ListView and a copy of the song list. Now it only keeps its songs, and the
+ * one SongSelector of the GUI shows whichever account is logged in.
+ * 
+ * @author Khang Tran
+ */
+public class IdleAccountHeapBenchmark {
+	private static final int ACCOUNTS = 100_000;
+
+	public static void main(String[] args) throws InterruptedException {
+		PasswordHash.setDefaultIterations(1);
+		int accounts = args.length > 0 ? Integer.parseInt(args[0]) : ACCOUNTS;
+		JukeboxState state = new JukeboxState();
+		Account[] created = new Account[accounts];
+		for (int i = 0; i < accounts; i++)
+			created[i] = state.getAccountCollection().createAccount("student" + i, "pw");
+
+		long before = usedHeap();
+		for (Account account : created)
+			state.getJukeboxAccount(account);
+		long after = usedHeap();
+
+		System.out.printf("%d idle accounts, %d bytes of heap each%n", state.getAccountMap().size(),
+				(after - before) / accounts);
+	}
+
+	/*
+	 * The heap in use after a few collections, so only reachable objects count.
+	 * The pause lets the cleaner thread free the password keys made while
+	 * hashing, before the next collection.
+	 */
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,74 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import model.AccountCollection;
+import model.LoginService;
+import model.PasswordHash;
+
+/**
+ * This program measures login latency when many students log in at once. It
+ * sends a burst of logins to LoginService at the same moment and reports the
+ * p50, p99 and max time from pressing "Log in" to getting the answer back.
+ * 
+ * Usage: LoginBenchmark [burst size] [hash iterations]
+ * 
+ * @author Khang Tran
+ */
+public class LoginBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int burst = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : PasswordHash.getDefaultIterations();
+		PasswordHash.setDefaultIterations(iterations);
+
+		AccountCollection collection = new AccountCollection();
+		int students = Math.min(burst, 64);
+		for (int i = 0; i < students; i++)
+			collection.createAccount("student" + i, "pw" + i);
+
+		// One warm up burst, then the measured one
+		runBurst(collection, students, burst);
+		long[] latencies = runBurst(collection, students, burst);
+		Arrays.sort(latencies);
+
+		System.out.printf("%d concurrent logins, %d iterations, %d worker threads%n", burst, iterations,
+				Runtime.getRuntime().availableProcessors());
+		System.out.printf("p50 %.1f ms, p99 %.1f ms, max %.1f ms%n", millis(percentile(latencies, 50)),
+				millis(percentile(latencies, 99)), millis(latencies[latencies.length - 1]));
+	}
+
+	/*
+	 * Sends all the logins at once and returns how long each one took in
+	 * nanoseconds.
+	 */
+	private static long[] runBurst(AccountCollection collection, int students, int burst) {
+		long[] latencies = new long[burst];
+		List<CompletableFuture<?>> futures = new ArrayList<>();
+		for (int i = 0; i < burst; i++) {
+			int n = i;
+			long start = System.nanoTime();
+			futures.add(LoginService.authorize(collection, "student" + (n % students), "pw" + (n % students))
+					.thenAccept(acc -> {
+						if (acc == null)
+							throw new IllegalStateException("Login failed");
+						latencies[n] = System.nanoTime() - start;
+					}));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		return latencies;
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(index, 0)];
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.Account;
+import model.PasswordHash;
+import model.PlayHistory.Outcome;
+import model.Song;
+import persistence.PlayHistoryLog;
+
+/**
+ * This program writes a year of plays to a PlayHistoryLog in a temporary
+ * folder, about a million records, and reports how fast they were written,
+ * how long opening the log again takes, and how long asking for the most
+ * played songs of a week and of the whole year takes.
+ *
+ * Usage: PlayHistoryBenchmark [plays] [accounts] [songs]
+ *
+ * @author Khang Tran
+ */
+public class PlayHistoryBenchmark {
+	private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) throws IOException {
+		int plays = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+		int songCount = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+		PasswordHash.setDefaultIterations(1);
+		Random random = new Random(42);
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < accountCount; i++)
+			accounts.add(new Account("student" + i, "pw"));
+		List<Song> songs = new ArrayList<>();
+		for (int i = 0; i < songCount; i++)
+			songs.add(new Song("Song " + i, "Artist", "3:00", "song" + i + ".mp3"));
+
+		Path dir = Files.createTempDirectory("history");
+		long first = FIRST_DAY.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		long step = 365L * 86_400_000 / plays;
+		long start = System.nanoTime();
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, ZoneOffset.UTC, 1000)) {
+			for (int i = 0; i < plays; i++) {
+				// a few songs are much more popular than the rest
+				int song = (int) (songCount * Math.pow(random.nextDouble(), 3));
+				history.songFinished(first + i * step, accounts.get(random.nextInt(accountCount)), songs.get(song),
+						random.nextInt(100) == 0 ? Outcome.FAILED : Outcome.PLAYED);
+			}
+		}
+		long write = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, ZoneOffset.UTC, 1000)) {
+			long open = System.nanoTime() - start;
+			LocalDate monday = FIRST_DAY.plusWeeks(20);
+			long week = Long.MAX_VALUE, year = Long.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				start = System.nanoTime();
+				history.topSongs(monday, monday.plusDays(6), 10);
+				week = Math.min(week, System.nanoTime() - start);
+				start = System.nanoTime();
+				history.topSongs(FIRST_DAY, FIRST_DAY.plusYears(1).minusDays(1), 10);
+				year = Math.min(year, System.nanoTime() - start);
+			}
+
+			System.out.printf("%d plays by %d accounts of %d songs, %.1f MB on disk%n", history.size(), accountCount,
+					songCount, folderSize(dir) / 1e6);
+			System.out.printf("write      %10.0f plays a second, closed after %.0f ms%n", plays * 1e9 / write,
+					write / 1e6);
+			System.out.printf("reopen     %10.1f ms%n", open / 1e6);
+			System.out.printf("top week   %10.3f ms, best of %d%n", week / 1e6, ROUNDS);
+			System.out.printf("top year   %10.3f ms, best of %d%n", year / 1e6, ROUNDS);
+			System.out.println("most played this year: "
+					+ history.topSongs(FIRST_DAY, FIRST_DAY.plusYears(1).minusDays(1), 3));
+		}
+	}
+
+	private static long folderSize(Path dir) throws IOException {
+		long size = 0;
+		try (var files = Files.list(dir)) {
+			for (Path file : (Iterable<Path>) files::iterator)
+				size += Files.size(file);
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,101 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import model.PlayList;
+import model.Song;
+import model.SongCatalog;
+
+/**
+ * This program compares the PlayList of catalog ids with the LinkedList of
+ * song file names it replaced. It measures the bytes allocated and the time
+ * to queue and play many songs, and the time to remove songs at random
+ * positions of a long list.
+ * 
+ * @author Yen Lai
+ */
+public class PlayListBenchmark {
+
+	private static final int SONGS = 1_000_000;
+	private static final int LONG_LIST = 100_000;
+	private static final int REMOVALS = 10_000;
+
+	public static void main(String[] args) {
+		SongCatalog catalog = SongCatalog.shared();
+		List<Song> songs = catalog.getSongs();
+
+		// warm up, then measure
+		for (int run = 0; run < 3; run++) {
+			queueAndPlayLinkedList(songs);
+			queueAndPlayPlayList(catalog, songs);
+		}
+		System.out.printf("%-12s %15s %15s %20s%n", "list", "ns per song", "bytes per song", "remove at random ns");
+		long bytes = allocated();
+		long start = System.nanoTime();
+		queueAndPlayLinkedList(songs);
+		double nanos = (System.nanoTime() - start) / (double) SONGS;
+		double perSong = (allocated() - bytes) / (double) SONGS;
+		System.out.printf("%-12s %15.1f %15.1f %20.1f%n", "LinkedList", nanos, perSong, removeLinkedList(songs));
+
+		bytes = allocated();
+		start = System.nanoTime();
+		queueAndPlayPlayList(catalog, songs);
+		nanos = (System.nanoTime() - start) / (double) SONGS;
+		perSong = (allocated() - bytes) / (double) SONGS;
+		System.out.printf("%-12s %15.1f %15.1f %20.1f%n", "PlayList", nanos, perSong, removePlayList(catalog, songs));
+	}
+
+	/*
+	 * Queues the songs the way the old PlayList did, then plays them all.
+	 */
+	private static int queueAndPlayLinkedList(List<Song> songs) {
+		LinkedList<String> queue = new LinkedList<>();
+		for (int i = 0; i < SONGS; i++)
+			queue.add("songfiles/" + songs.get(i % songs.size()).getFileName());
+		int played = 0;
+		while (queue.poll() != null)
+			played++;
+		return played;
+	}
+
+	private static int queueAndPlayPlayList(SongCatalog catalog, List<Song> songs) {
+		PlayList playList = new PlayList(catalog);
+		for (int i = 0; i < SONGS; i++)
+			playList.queueUpNextSong(songs.get(i % songs.size()));
+		int played = 0;
+		while (playList.playNextSong() != null)
+			played++;
+		return played;
+	}
+
+	private static double removeLinkedList(List<Song> songs) {
+		LinkedList<String> queue = new LinkedList<>();
+		for (int i = 0; i < LONG_LIST + REMOVALS; i++)
+			queue.add("songfiles/" + songs.get(i % songs.size()).getFileName());
+		Random random = new Random(1);
+		long start = System.nanoTime();
+		for (int i = 0; i < REMOVALS; i++)
+			queue.remove(random.nextInt(queue.size()));
+		return (System.nanoTime() - start) / (double) REMOVALS;
+	}
+
+	private static double removePlayList(SongCatalog catalog, List<Song> songs) {
+		PlayList playList = new PlayList(catalog);
+		for (int i = 0; i < LONG_LIST + REMOVALS; i++)
+			playList.queueUpNextSong(songs.get(i % songs.size()));
+		Random random = new Random(1);
+		long start = System.nanoTime();
+		for (int i = 0; i < REMOVALS; i++)
+			playList.removeSong(random.nextInt(playList.size()));
+		return (System.nanoTime() - start) / (double) REMOVALS;
+	}
+
+	private static long allocated() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getCurrentThreadAllocatedBytes();
+	}
+
+}
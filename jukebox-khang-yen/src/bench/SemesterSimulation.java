@@ -0,0 +1,295 @@
+package bench;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import model.Account;
+import model.AccountCollection;
+import model.JukeboxAccount;
+import model.JukeboxState;
+import model.Metrics;
+import model.PasswordHash;
+import model.QuotaService;
+import model.Song;
+import model.SongCatalog;
+import model.VenueQueue;
+
+/**
+ * This program runs a whole semester at the jukebox without a screen, to see
+ * how many students one jukebox can take before it is needed. It makes the
+ * student accounts and then plays the days on a simulated clock: each day,
+ * students log in at random times while the jukebox is open, queue up to
+ * three songs and log out, and the speaker plays the venue queue one song
+ * after another, all through AccountCollection, JukeboxState, JukeboxAccount,
+ * PlayList and VenueQueue as the GUI uses them.
+ *
+ * The clock only moves from one event to the next, so a semester takes
+ * seconds. The QuotaService runs on the same clock, so each simulated day
+ * starts over by itself. Every login, queued song and played song is timed on
+ * the real clock, and the program reports how many it handled a second, the
+ * p50, p99, p99.9 and max time of each, and the heap in use at the end of
+ * each week.
+ *
+ * Usage: SemesterSimulation [students] [days] [hash iterations] [seed]
+ *
+ * @author Khang Tran
+ */
+public class SemesterSimulation {
+	private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 8);
+	private static final LocalTime OPENS = LocalTime.of(8, 0);
+	private static final LocalTime CLOSES = LocalTime.of(22, 0);
+	// the share of the students who come in on a day
+	private static final double COMING_IN = 0.6;
+	private static final int SONGS = 200;
+	private static final long GAP_MILLIS = 2000;
+
+	private final SimulatedClock clock = new SimulatedClock(FIRST_DAY.atTime(OPENS).toInstant(ZoneOffset.UTC));
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+	private final Random random;
+	private final JukeboxState state = new JukeboxState();
+	private final VenueQueue venue = new VenueQueue();
+	private final SongCatalog catalog;
+	private final List<Account> students = new ArrayList<>();
+	private long sequence;
+	private boolean speakerPlaying;
+
+	private final Metrics.Histogram logins = new Metrics.Histogram();
+	private final Metrics.Histogram queued = new Metrics.Histogram();
+	private final Metrics.Histogram played = new Metrics.Histogram();
+	private int refused;
+	private int playedThisWeek;
+
+	public static void main(String[] args) throws InterruptedException {
+		int students = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 105;
+		PasswordHash.setDefaultIterations(args.length > 2 ? Integer.parseInt(args[2]) : 1);
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+		new SemesterSimulation(seed).run(students, days);
+	}
+
+	private SemesterSimulation(long seed) {
+		random = new Random(seed);
+		List<Song> songs = new ArrayList<>();
+		for (int i = 0; i < SONGS; i++) {
+			int seconds = 120 + random.nextInt(180);
+			songs.add(new Song("Song " + i, "Artist " + i % 20, seconds / 60 + ":" + String.format("%02d", seconds % 60),
+					"song" + i + ".mp3"));
+		}
+		catalog = new SongCatalog(songs);
+		// the play lists hold ids of the shared catalog, and the limits go by
+		// the simulated day
+		SongCatalog.publish(catalog);
+		QuotaService.publish(new QuotaService(clock, QuotaService.perDay(QuotaService.DAILY_LIMIT)));
+	}
+
+	private void run(int studentCount, int days) throws InterruptedException {
+		AccountCollection accounts = state.getAccountCollection();
+		for (int i = 0; i < studentCount; i++)
+			students.add(accounts.createAccount("student" + i, "pw" + i));
+		long heapBefore = usedHeap();
+		for (int day = 0; day < days; day++)
+			scheduleDay(FIRST_DAY.plusDays(day));
+
+		System.out.printf("%d students, %d days, %d%% come in a day, %d hash iterations%n", studentCount, days,
+				Math.round(COMING_IN * 100), PasswordHash.getDefaultIterations());
+		System.out.printf("%5s %10s %8s %8s %8s %8s %10s%n", "week", "date", "logins", "queued", "played",
+				"waiting", "heap MB");
+		long start = System.nanoTime();
+		long simulatedStart = clock.millis();
+		int week = 0;
+		LocalDate endOfWeek = FIRST_DAY.plusDays(7);
+		while (!events.isEmpty()) {
+			Event event = events.peek();
+			if (!Instant.ofEpochMilli(event.time).isBefore(endOfWeek.atStartOfDay(ZoneOffset.UTC).toInstant())) {
+				// the collections for the heap don't count as time spent
+				long reportStart = System.nanoTime();
+				report(++week, endOfWeek.minusDays(1));
+				start += System.nanoTime() - reportStart;
+				endOfWeek = endOfWeek.plusDays(7);
+				continue;
+			}
+			events.poll();
+			clock.set(event.time);
+			event.action.run();
+		}
+		long wall = System.nanoTime() - start;
+		report(++week, endOfWeek.minusDays(1));
+		long simulated = clock.millis() - simulatedStart;
+
+		long handled = logins.getCount() + queued.getCount() + played.getCount();
+		System.out.println();
+		System.out.printf("%.1f simulated days in %.2f s, %.0fx faster than real time%n", simulated / 86_400_000.0,
+				wall / 1e9, simulated * 1e6 / wall);
+		System.out.printf("%d operations, %.0f a second; %d songs refused by the daily limit%n", handled,
+				handled * 1e9 / wall, refused);
+		System.out.printf("%-8s %10s %10s %10s %10s %10s%n", "", "count", "p50 us", "p99 us", "p99.9 us", "max us");
+		print("login", logins);
+		print("queue", queued);
+		print("play", played);
+		long heap = usedHeap() - heapBefore;
+		System.out.printf("heap: %.1f MB more than before the first day, %d bytes a student%n", heap / 1e6,
+				heap / studentCount);
+	}
+
+	/*
+	 * Schedules the students who come in on the day, each at a random time
+	 * while the jukebox is open.
+	 */
+	private void scheduleDay(LocalDate day) {
+		long opens = day.atTime(OPENS).toInstant(ZoneOffset.UTC).toEpochMilli();
+		long open = day.atTime(CLOSES).toInstant(ZoneOffset.UTC).toEpochMilli() - opens;
+		for (Account student : students) {
+			if (random.nextDouble() < COMING_IN)
+				schedule(opens + (long) (random.nextDouble() * open), () -> visit(student));
+		}
+	}
+
+	/*
+	 * A student logs in, queues one to three songs if the account may play
+	 * them, and logs out.
+	 */
+	private void visit(Account student) {
+		long start = System.nanoTime();
+		Account account = state.getAccountCollection().authorize(student.getID(),
+				"pw" + student.getID().substring("student".length()));
+		JukeboxAccount jukeboxAccount = state.logIn(account);
+		logins.recordSince(start);
+
+		int songs = 1 + random.nextInt(3);
+		for (int i = 0; i < songs; i++) {
+			Song song = catalog.getSong(random.nextInt(catalog.size()));
+			start = System.nanoTime();
+			if (jukeboxAccount.canQueueSong()) {
+				jukeboxAccount.queueSong(song);
+				venue.offer(jukeboxAccount, song);
+				queued.recordSince(start);
+			} else {
+				refused++;
+			}
+		}
+		if (!speakerPlaying)
+			playNext();
+	}
+
+	/*
+	 * The speaker starts the next song in the venue queue, if there is one.
+	 */
+	private void playNext() {
+		VenueQueue.Entry entry = venue.poll();
+		speakerPlaying = entry != null;
+		if (entry == null)
+			return;
+		long length = lengthMillis(entry.getSong());
+		schedule(clock.millis() + length, () -> {
+			long start = System.nanoTime();
+			entry.getAccount().songFinished();
+			played.recordSince(start);
+			playedThisWeek++;
+			schedule(clock.millis() + GAP_MILLIS, this::playNext);
+		});
+	}
+
+	private static long lengthMillis(Song song) {
+		String[] parts = song.getPlaytime().split(":");
+		return (Integer.parseInt(parts[0]) * 60L + Integer.parseInt(parts[1])) * 1000;
+	}
+
+	private void schedule(long time, Runnable action) {
+		events.add(new Event(time, sequence++, action));
+	}
+
+	private long lastLogins;
+	private long lastQueued;
+
+	private void report(int week, LocalDate lastDay) throws InterruptedException {
+		System.out.printf("%5d %10s %8d %8d %8d %8d %10.1f%n", week, lastDay, logins.getCount() - lastLogins,
+				queued.getCount() - lastQueued, playedThisWeek, venue.size(), usedHeap() / 1e6);
+		lastLogins = logins.getCount();
+		lastQueued = queued.getCount();
+		playedThisWeek = 0;
+	}
+
+	private static void print(String name, Metrics.Histogram times) {
+		System.out.printf("%-8s %10d %10.1f %10.1f %10.1f %10.1f%n", name, times.getCount(),
+				times.percentile(50) / 1e3, times.percentile(99) / 1e3, times.percentile(99.9) / 1e3,
+				times.getMax() / 1e3);
+	}
+
+	/*
+	 * The heap in use after a collection, so only reachable objects count.
+	 */
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 2; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/*
+	 * Something that happens at a simulated time. Events at the same time
+	 * happen in the order they were scheduled.
+	 */
+	private static class Event implements Comparable<Event> {
+		final long time;
+		final long sequence;
+		final Runnable action;
+
+		Event(long time, long sequence, Runnable action) {
+			this.time = time;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		@Override
+		public int compareTo(Event other) {
+			int byTime = Long.compare(time, other.time);
+			return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/*
+	 * A clock that shows the time of the event being handled.
+	 */
+	private static class SimulatedClock extends Clock {
+		private long millis;
+
+		SimulatedClock(Instant start) {
+			millis = start.toEpochMilli();
+		}
+
+		void set(long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public long millis() {
+			return millis;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
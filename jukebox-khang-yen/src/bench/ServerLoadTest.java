@@ -0,0 +1,194 @@
+package bench;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.AccountCollection;
+import model.JukeboxState;
+import model.Metrics;
+import model.PasswordHash;
+import model.Song;
+import model.SongCatalog;
+import model.VenueQueue;
+import server.JukeboxServer;
+
+/**
+ * This program starts a JukeboxServer on the loopback address and has many
+ * clients use it at once, each on its own virtual thread with keep-alive
+ * connections. Every client logs in, then until the time is up browses a
+ * page of songs, looks at its queue and now and then queues a song, as a
+ * phone at the venue would. With a think time a client waits that long after
+ * each request, like a person reading the screen; without one every client
+ * sends its next request as soon as it has the answer, which shows the most
+ * the server can answer.
+ *
+ * It reports how many requests the server answered a second and the p50,
+ * p99, p99.9 and max time of each kind of request, measured by the clients.
+ *
+ * Usage: ServerLoadTest [clients] [seconds] [think millis] [hash iterations]
+ *
+ * @author Khang Tran
+ */
+public class ServerLoadTest {
+	private static final int SONGS = 2_000;
+
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		long think = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		PasswordHash.setDefaultIterations(args.length > 3 ? Integer.parseInt(args[3]) : 1);
+
+		List<Song> songs = new ArrayList<>();
+		for (int i = 0; i < SONGS; i++)
+			songs.add(new Song("Song " + i, "Artist " + i % 50, "3:00", "song" + i + ".mp3"));
+		SongCatalog catalog = new SongCatalog(songs);
+		SongCatalog.publish(catalog);
+		JukeboxState state = new JukeboxState();
+		AccountCollection accounts = state.getAccountCollection();
+		for (int i = 0; i < clients; i++)
+			accounts.createAccount("client" + i, "pw" + i);
+
+		ExecutorService modelThread = Executors.newSingleThreadExecutor();
+		JukeboxServer server = new JukeboxServer(state, catalog, new VenueQueue(), modelThread);
+		server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		URI base = URI.create("http://127.0.0.1:" + server.getPort());
+		HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+				.executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+
+		Metrics.Histogram logins = new Metrics.Histogram();
+		Metrics.Histogram browse = new Metrics.Histogram();
+		Metrics.Histogram mine = new Metrics.Histogram();
+		Metrics.Histogram queue = new Metrics.Histogram();
+		AtomicLong failed = new AtomicLong();
+		CountDownLatch loggedIn = new CountDownLatch(clients);
+		CountDownLatch go = new CountDownLatch(1);
+		AtomicLong deadline = new AtomicLong();
+
+		try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+			long loginStart = System.nanoTime();
+			for (int i = 0; i < clients; i++) {
+				int client = i;
+				threads.execute(() -> {
+					Client c = new Client(http, base, failed, think);
+					String token = null;
+					try {
+						long start = System.nanoTime();
+						String login = c.send("POST", "/api/sessions", null,
+								"{\"user\":\"client" + client + "\",\"password\":\"pw" + client + "\"}");
+						logins.recordSince(start);
+						if (login != null)
+							token = login.replaceAll(".*\"token\":\"([^\"]*)\".*", "$1");
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					}
+					loggedIn.countDown();
+					try {
+						go.await();
+						ThreadLocalRandom random = ThreadLocalRandom.current();
+						while (System.nanoTime() < deadline.get()) {
+							long start = System.nanoTime();
+							c.send("GET", "/api/songs?offset=" + random.nextInt(SONGS) + "&limit=20", null, null);
+							browse.recordSince(start);
+							c.think();
+							start = System.nanoTime();
+							c.send("GET", "/api/queue", token, null);
+							mine.recordSince(start);
+							c.think();
+							if (random.nextInt(10) == 0) {
+								start = System.nanoTime();
+								c.send("POST", "/api/queue", token, "{\"song\":" + random.nextInt(SONGS) + "}");
+								queue.recordSince(start);
+								c.think();
+							}
+						}
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					}
+				});
+			}
+			// the clock starts once every client has logged in
+			loggedIn.await();
+			long loginTime = System.nanoTime() - loginStart;
+			long start = System.nanoTime();
+			deadline.set(start + seconds * 1_000_000_000L);
+			go.countDown();
+			threads.shutdown();
+			threads.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+			long wall = System.nanoTime() - start;
+			long requests = browse.getCount() + mine.getCount() + queue.getCount();
+
+			System.out.printf("%d clients for %d s, %d ms think time, on %d cores, %d songs%n", clients, seconds,
+					think, Runtime.getRuntime().availableProcessors(), SONGS);
+			System.out.printf("%d logins in %.2f s%n", logins.getCount(), loginTime / 1e9);
+			System.out.printf("%d requests, %.0f a second, %d failed%n", requests, requests * 1e9 / wall,
+					failed.get());
+			System.out.printf("%-8s %10s %10s %10s %10s %10s%n", "", "count", "p50 ms", "p99 ms", "p99.9 ms",
+					"max ms");
+			print("login", logins);
+			print("songs", browse);
+			print("my queue", mine);
+			print("enqueue", queue);
+		} finally {
+			server.stop();
+			modelThread.shutdown();
+		}
+	}
+
+	private static void print(String name, Metrics.Histogram times) {
+		System.out.printf("%-8s %10d %10.2f %10.2f %10.2f %10.2f%n", name, times.getCount(),
+				times.percentile(50) / 1e6, times.percentile(99) / 1e6, times.percentile(99.9) / 1e6,
+				times.getMax() / 1e6);
+	}
+
+	/*
+	 * Sends the requests of one client, counting the answers that are not 2xx
+	 * or 429, the daily limit, as failed.
+	 */
+	private static final class Client {
+		private final HttpClient http;
+		private final URI base;
+		private final AtomicLong failed;
+		private final long think;
+
+		Client(HttpClient http, URI base, AtomicLong failed, long think) {
+			this.http = http;
+			this.base = base;
+			this.failed = failed;
+			this.think = think;
+		}
+
+		String send(String method, String path, String token, String body) throws Exception {
+			HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(path)).method(method,
+					body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+			if (token != null)
+				request.header("Authorization", "Bearer " + token);
+			HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() / 100 != 2 && response.statusCode() != 429) {
+				failed.incrementAndGet();
+				return null;
+			}
+			return response.body();
+		}
+
+		/*
+		 * Waits the think time, after a request was timed.
+		 */
+		void think() throws InterruptedException {
+			if (think > 0)
+				Thread.sleep(think);
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+import model.Account;
+import model.AccountCollection;
+import model.JukeboxAccount;
+import model.JukeboxState;
+import model.PasswordHash;
+import model.SongCatalog;
+import persistence.ModelCodec;
+import persistence.Snapshot;
+
+/**
+ * This program compares saving the jukebox with ObjectOutputStream, the way
+ * saveState used to, against ModelCodec. It builds 100k accounts that have
+ * each queued a few songs, then reports the size of each format and how long
+ * encoding and decoding take. ModelCodec only decodes the account index; a
+ * JukeboxAccount is built when its account logs in, so its decode time is the
+ * time the jukebox takes to start. The capture time is how long the model
+ * thread pauses for a background checkpoint, which encodes the copy later.
+ * 
+ * Run it from the project folder so the songfiles folder is found, with a
+ * large enough heap, for example -Xmx4g.
+ * 
+ * @author Khang Tran
+ */
+public class SnapshotCodecBenchmark {
+	private static final int ACCOUNTS = 100_000;
+	private static final int ROUNDS = 5;
+	private static final String[] FILES = { "Capture.mp3", "DanseMacabreViolinHook.mp3", "DeterminedTumbao.mp3",
+			"LopingSting.mp3", "SwingCheese.mp3", "TheCurtainRises.mp3" };
+
+	public static void main(String[] args) throws Exception {
+		PasswordHash.setDefaultIterations(1);
+		int accounts = args.length > 0 ? Integer.parseInt(args[0]) : ACCOUNTS;
+		JukeboxState state = buildState(accounts);
+
+		byte[] java = null;
+		byte[] codec = null;
+		long javaWrite = Long.MAX_VALUE, javaRead = Long.MAX_VALUE;
+		long codecWrite = Long.MAX_VALUE, codecRead = Long.MAX_VALUE, capture = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			java = writeJava(state);
+			javaWrite = Math.min(javaWrite, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			readJava(java);
+			javaRead = Math.min(javaRead, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ModelCodec.write(bytes, state, 0);
+			codec = bytes.toByteArray();
+			codecWrite = Math.min(codecWrite, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			ModelCodec.capture(state, 0);
+			capture = Math.min(capture, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			Snapshot read = ModelCodec.read(new ByteArrayInputStream(codec));
+			codecRead = Math.min(codecRead, System.nanoTime() - start);
+			if (read.getState().getAccountCollection().size() != state.getAccountCollection().size())
+				throw new IllegalStateException("Round trip lost accounts");
+		}
+
+		System.out.printf("%d accounts, best of %d rounds%n", accounts, ROUNDS);
+		System.out.printf("%-20s %12s %12s %12s%n", "format", "bytes", "encode ms", "decode ms");
+		System.out.printf("%-20s %12d %12.1f %12.1f%n", "ObjectOutputStream", java.length, javaWrite / 1e6,
+				javaRead / 1e6);
+		System.out.printf("%-20s %12d %12.1f %12.1f%n", "ModelCodec", codec.length, codecWrite / 1e6,
+				codecRead / 1e6);
+		System.out.printf("ModelCodec.capture on the model thread: %.1f ms%n", capture / 1e6);
+	}
+
+	/*
+	 * Every account has logged in and queued 0 to 3 songs, and has played some
+	 * of them.
+	 */
+	private static JukeboxState buildState(int accounts) {
+		SongCatalog catalog = SongCatalog.shared();
+		JukeboxState state = new JukeboxState();
+		AccountCollection collection = state.getAccountCollection();
+		for (int i = 0; i < accounts; i++) {
+			Account account = collection.createAccount("student" + i, "pw");
+			JukeboxAccount jukeboxAccount = state.getJukeboxAccount(account);
+			for (int n = 0; n < i % 4; n++)
+				jukeboxAccount.queueSong(catalog.findSong(FILES[(i + n) % FILES.length]));
+			if (i % 4 == 3)
+				jukeboxAccount.songFinished();
+			jukeboxAccount.canPlaySong();
+		}
+		return state;
+	}
+
+	private static byte[] writeJava(JukeboxState state) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(state.getAccountCollection());
+			out.writeObject(state.getAccountMap());
+			out.writeObject(state.getLastLoggedInAccount());
+		}
+		return bytes.toByteArray();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void readJava(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			in.readObject();
+			Map<Account, JukeboxAccount> map = (Map<Account, JukeboxAccount>) in.readObject();
+			in.readObject();
+			if (map.isEmpty())
+				throw new IllegalStateException("Nothing was read");
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Song;
+import model.SongCatalog;
+import model.SongTable;
+
+/**
+ * This program measures how much heap a catalog of 100k songs keeps. It
+ * compares the catalog as it used to be, a Song object with four or five
+ * Strings for each song and a HashMap from file name to id, against the
+ * SongCatalog kept by column in a SongTable: once before any Song is asked
+ * for, and once after every Song was made, as when the GUI lists them all.
+ *
+ * The songs have about as many artists and albums as a real library, one
+ * artist for every 10 songs and one album for every 12.
+ *
+ * @author Yen Lai
+ */
+public class SongCatalogHeapBenchmark {
+	private static final int SONGS = 100_000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : SONGS;
+
+		long before = usedHeap();
+		ObjectPerSong objects = new ObjectPerSong(count);
+		long objectBytes = usedHeap() - before;
+		System.out.printf("%-28s %8d songs, %6.1f bytes each%n", "object per song", objects.songs.size(),
+				(double) objectBytes / count);
+		objects = null;
+
+		before = usedHeap();
+		SongTable.Builder builder = new SongTable.Builder();
+		for (int i = 0; i < count; i++)
+			builder.add(title(i), artist(i), playtime(i), fileName(i), album(i));
+		SongCatalog catalog = new SongCatalog(builder.build());
+		builder = null;
+		long columnBytes = usedHeap() - before;
+		System.out.printf("%-28s %8d songs, %6.1f bytes each%n", "columns, no Song made", catalog.size(),
+				(double) columnBytes / count);
+
+		long made = 0;
+		for (int i = 0; i < count; i++)
+			made += catalog.getSong(i).getDurationMillis() >= 0 ? 1 : 0;
+		long viewBytes = usedHeap() - before;
+		System.out.printf("%-28s %8d songs, %6.1f bytes each%n", "columns, every Song made", made,
+				(double) viewBytes / count);
+		if (catalog.findSong(fileName(count / 2)) == null)
+			throw new IllegalStateException("A song was lost");
+	}
+
+	private static String title(int i) {
+		return "Song number " + i;
+	}
+
+	private static String artist(int i) {
+		return "Artist " + i / 10;
+	}
+
+	private static String playtime(int i) {
+		int seconds = 60 + i % 300;
+		return seconds / 60 + ":" + String.format("%02d", seconds % 60);
+	}
+
+	private static String fileName(int i) {
+		return "song" + i + ".mp3";
+	}
+
+	private static String album(int i) {
+		return "Album " + i / 12;
+	}
+
+	/*
+	 * The catalog as it was before SongTable, with its own copy of each
+	 * string as the tags were read.
+	 */
+	private static class ObjectPerSong {
+		final List<OldSong> songs = new ArrayList<>();
+		final Map<String, Integer> idByFileName = new HashMap<>();
+
+		ObjectPerSong(int count) {
+			for (int i = 0; i < count; i++) {
+				OldSong song = new OldSong(title(i), artist(i), playtime(i), fileName(i), album(i));
+				songs.add(song);
+				idByFileName.put(song.fileName, i);
+			}
+		}
+	}
+
+	private static class OldSong {
+		final String title;
+		final String artist;
+		final String playtime;
+		final String fileName;
+		final String album;
+
+		OldSong(String title, String artist, String playtime, String fileName, String album) {
+			this.title = title;
+			this.artist = artist;
+			this.playtime = playtime;
+			this.fileName = fileName;
+			this.album = album;
+		}
+	}
+
+	/*
+	 * The heap in use after a few collections, so only reachable objects count.
+	 */
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,143 @@
+package bench;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.PasswordHash;
+import model.Song;
+import model.VenueQueue;
+
+/**
+ * This program measures how many songs per second 64 threads can add to the
+ * one queue of the venue while a consumer takes them. It compares the
+ * VenueQueue with a LinkedList behind a lock, the way a shared PlayList would
+ * have to be guarded, and with a ConcurrentLinkedQueue.
+ * 
+ * Each run is repeated, and the best run of each queue is printed.
+ * 
+ * @author Yen Lai
+ */
+public class VenueQueueBenchmark {
+
+	private static final int PRODUCERS = 64;
+	private static final int SONGS_EACH = 50_000;
+	private static final int RUNS = 5;
+
+	/*
+	 * The operations the benchmark needs from each queue.
+	 */
+	private interface Target {
+		void offer(JukeboxAccount account, Song song);
+
+		// null if empty, only called by the consumer
+		Object poll();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		PasswordHash.setDefaultIterations(1);
+		JukeboxAccount[] accounts = new JukeboxAccount[PRODUCERS];
+		for (int i = 0; i < PRODUCERS; i++)
+			accounts[i] = new JukeboxAccount(new Account("student" + i, "pw"));
+		Song song = new Song("Capture", "Pikasong", "0:05", "Capture.mp3");
+
+		System.out.printf("%d producers, %d songs each, 1 consumer, %d cores%n", PRODUCERS, SONGS_EACH,
+				Runtime.getRuntime().availableProcessors());
+		System.out.printf("%-22s %15s%n", "queue", "songs/s");
+		for (String name : new String[] { "VenueQueue", "synchronized LinkedList", "ConcurrentLinkedQueue" }) {
+			double best = 0;
+			for (int run = 0; run < RUNS; run++)
+				best = Math.max(best, run(create(name), accounts, song));
+			System.out.printf("%-22s %,15.0f%n", name, best);
+		}
+	}
+
+	private static Target create(String name) {
+		switch (name) {
+		case "VenueQueue": {
+			VenueQueue venue = new VenueQueue();
+			return new Target() {
+				public void offer(JukeboxAccount account, Song song) {
+					venue.offer(account, song);
+				}
+
+				public Object poll() {
+					return venue.poll();
+				}
+			};
+		}
+		case "synchronized LinkedList": {
+			Queue<VenueQueue.Entry> queue = new LinkedList<>();
+			return new Target() {
+				public void offer(JukeboxAccount account, Song song) {
+					VenueQueue.Entry entry = new VenueQueue.Entry(account, song);
+					synchronized (queue) {
+						queue.add(entry);
+					}
+				}
+
+				public Object poll() {
+					synchronized (queue) {
+						return queue.poll();
+					}
+				}
+			};
+		}
+		default: {
+			Queue<VenueQueue.Entry> queue = new ConcurrentLinkedQueue<>();
+			return new Target() {
+				public void offer(JukeboxAccount account, Song song) {
+					queue.add(new VenueQueue.Entry(account, song));
+				}
+
+				public Object poll() {
+					return queue.poll();
+				}
+			};
+		}
+		}
+	}
+
+	/*
+	 * Returns the songs added per second, from the start until the last
+	 * producer is done. The consumer takes songs all along.
+	 */
+	private static double run(Target target, JukeboxAccount[] accounts, Song song) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(PRODUCERS);
+		for (JukeboxAccount account : accounts) {
+			Thread producer = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int n = 0; n < SONGS_EACH; n++)
+					target.offer(account, song);
+				done.countDown();
+			});
+			producer.start();
+		}
+
+		long total = (long) PRODUCERS * SONGS_EACH;
+		long begin = System.nanoTime();
+		start.countDown();
+		long taken = 0;
+		while (done.getCount() > 0) {
+			if (target.poll() != null)
+				taken++;
+			else
+				Thread.yield();
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		while (taken < total) {
+			if (target.poll() != null)
+				taken++;
+		}
+		return total / seconds;
+	}
+
+}
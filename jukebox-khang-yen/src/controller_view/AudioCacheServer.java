@@ -0,0 +1,160 @@
+package controller_view;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import model.AudioCache;
+
+/**
+ * The AudioCacheServer class serves song files from an AudioCache to the
+ * JavaFX media players. A Media can only be made from a URI, so the songs are
+ * served over HTTP on the loopback address, and the players load them from
+ * there instead of from the disk.
+ *
+ * Only files inside the song directory are served. Range requests are
+ * answered, so a player can read a song in parts.
+ *
+ * @author Yen Lai
+ */
+public class AudioCacheServer {
+	private static final String CONTEXT = "/songs/";
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+	private final AudioCache cache;
+	private final Path songDirectory;
+	private final HttpServer server;
+
+	/**
+	 * Starts serving the files of a song directory on a free port of the
+	 * loopback address.
+	 *
+	 * @param cache         the cache the files are served from
+	 * @param songDirectory the directory whose files may be served
+	 * @throws IOException if the server can't be started
+	 */
+	public AudioCacheServer(AudioCache cache, Path songDirectory) throws IOException {
+		this.cache = cache;
+		this.songDirectory = songDirectory.toAbsolutePath().normalize();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext(CONTEXT, this::handle);
+		server.setExecutor(Executors.newFixedThreadPool(2, runnable -> {
+			Thread thread = new Thread(runnable, "audio-cache-server");
+			thread.setDaemon(true);
+			return thread;
+		}));
+		server.start();
+	}
+
+	/**
+	 * Gets the URI a player can load a song file from.
+	 *
+	 * @param path the song file, for example songfiles/Capture.mp3
+	 * @return the URI of the file on this server
+	 */
+	public String uriOf(String path) {
+		Path relative = songDirectory.relativize(Path.of(path).toAbsolutePath().normalize());
+		try {
+			return new URI("http", null, server.getAddress().getHostString(), server.getAddress().getPort(),
+					CONTEXT + relative.toString().replace('\\', '/'), null, null).toASCIIString();
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Song path " + path + " can't be served", e);
+		}
+	}
+
+	public AudioCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Stops serving songs.
+	 */
+	public void stop() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			Path file = songDirectory
+					.resolve(exchange.getRequestURI().getPath().substring(CONTEXT.length()))
+					.normalize();
+			if (!file.startsWith(songDirectory)) {
+				exchange.sendResponseHeaders(403, -1);
+				return;
+			}
+			ByteBuffer bytes;
+			try {
+				bytes = cache.get(file);
+			} catch (IOException e) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			int size = bytes.remaining();
+			int start = 0;
+			int end = size - 1;
+			int status = 200;
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			Matcher matcher = range == null ? null : RANGE.matcher(range);
+			if (matcher != null && matcher.matches()) {
+				boolean satisfiable = true;
+				try {
+					if (matcher.group(1).isEmpty()) {
+						// the last n bytes, and "bytes=-" asks for no bytes at all
+						satisfiable = !matcher.group(2).isEmpty();
+						if (satisfiable)
+							start = Math.max(0, size - Integer.parseInt(matcher.group(2)));
+					} else {
+						start = Integer.parseInt(matcher.group(1));
+						if (!matcher.group(2).isEmpty())
+							end = Math.min(end, Integer.parseInt(matcher.group(2)));
+					}
+				} catch (NumberFormatException e) {
+					// larger than any file that is served
+					satisfiable = false;
+				}
+				if (!satisfiable || start >= size || start > end) {
+					exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+					exchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				status = 206;
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+			}
+			exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+			exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+			int length = end - start + 1;
+			if (method.equals("HEAD")) {
+				exchange.getResponseHeaders().set("Content-Length", Integer.toString(length));
+				exchange.sendResponseHeaders(status, -1);
+				return;
+			}
+			// a length of 0 would mean a chunked body, -1 is no body
+			exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+			bytes.position(start).limit(end + 1);
+			OutputStream body = exchange.getResponseBody();
+			WritableByteChannel channel = Channels.newChannel(body);
+			while (bytes.hasRemaining())
+				channel.write(bytes);
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package controller_view;
+
+import java.io.File;
+
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import model.PlaybackEngine;
+
+/**
+ * The FxAudioOutput class plays songs for the PlaybackEngine with JavaFX
+ * MediaPlayers. A MediaPlayer loads its media in the background as soon as it
+ * is created, and calls its handlers on the JavaFX thread; the engine hands
+ * them over to its own thread.
+ *
+ * With an AudioCacheServer the songs are loaded from its cache, otherwise
+ * from their files.
+ *
+ * @author Yen Lai
+ */
+public class FxAudioOutput implements PlaybackEngine.Output<MediaPlayer> {
+	private final AudioCacheServer server;
+
+	/**
+	 * @param server serves the songs from a cache, or null to load them from
+	 *               their files
+	 */
+	public FxAudioOutput(AudioCacheServer server) {
+		this.server = server;
+	}
+
+	@Override
+	public MediaPlayer prepare(String path, Runnable onReady, Runnable onEnd, Runnable onError) {
+		// Convert the file path to a URI
+		String uri = server != null ? server.uriOf(path) : new File(path).toURI().toString();
+		Media media = new Media(uri);
+		// Create a new MediaPlayer to play the media
+		MediaPlayer player = new MediaPlayer(media);
+		player.setOnReady(onReady);
+		player.setOnEndOfMedia(onEnd);
+		player.setOnError(onError);
+		return player;
+	}
+
+	@Override
+	public void play(MediaPlayer player) {
+		player.play();
+	}
+
+	@Override
+	public void stop(MediaPlayer player) {
+		player.stop();
+	}
+
+	@Override
+	public void dispose(MediaPlayer player) {
+		player.dispose();
+	}
+
+}
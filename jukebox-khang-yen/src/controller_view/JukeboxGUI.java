@@ -1,14 +1,16 @@
 package controller_view;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import javax.management.JMException;
+
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
@@ -23,7 +25,17 @@ import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 import model.Account;
 import model.AccountCollection;
+import model.AudioCache;
 import model.JukeboxAccount;
+import model.JukeboxState;
+import model.Metrics;
+import model.Song;
+import model.SongCatalog;
+import model.VenueQueue;
+import persistence.CatalogIndex;
+import persistence.JukeboxStore;
+import persistence.PlayHistoryLog;
+import persistence.SharedAccountStore;
 
 /**
  * This class represents an event-driven program with a graphical user
@@ -41,15 +53,33 @@ public class JukeboxGUI extends Application {
 	private LoginCreateAccountPane loginPane;
 	private BorderPane everything;
 	private JukeboxAccount jukeBoxAccount;
-	private Account lastLoggedInAccount;
-	// so JukeboxAccount will hold account
-	private Map<Account, JukeboxAccount> accountMap = new HashMap<>();
+	// all the accounts, saved by the store as they change
+	private volatile JukeboxState state;
+	private JukeboxStore store = new JukeboxStore(Paths.get("."), Platform::runLater);
+	// every song that finished, kept in the history folder
+	private PlayHistoryLog history;
+	private SharedAccountStore sharedAccounts;
+	// the one view of the songs, showing the account that is logged in
+	private SongSelector songSelector;
+	// the songs of every account, played round-robin with -Djukebox.queue=fair
+	private final VenueQueue venue = "fair".equals(System.getProperty("jukebox.queue")) ? VenueQueue.fair()
+			: new VenueQueue();
+	// the accounts whose saved songs were added to the venue queue
+	private final Set<JukeboxAccount> queuedAccounts = new HashSet<>();
 	private MenuItem item = new MenuItem("Log Out");
 	private Menu option = new Menu("Option");
 	private MenuBar menuBar = new MenuBar();
 
 	@Override
 	public void start(Stage primaryStage) throws Exception {
+		// Load the songs, reading only the tags of song files that are new or
+		// changed since the catalog index was written
+		SongCatalog.publish(SongCatalog.loadFromDirectory(SongCatalog.SONG_DIRECTORY,
+				new CatalogIndex(Paths.get("catalog.idx"))));
+		AudioCacheServer audio = startAudioCache();
+		songSelector = new SongSelector(SongCatalog.shared(), venue, audio);
+		startPlayHistory();
+		publishMetrics(audio);
 		// Call the LayoutGUI method to set up the graphical user interface
 		LayoutGUI();
 		// Call the setAlert method to display a confirmation dialog for loading
@@ -62,54 +92,110 @@ public class JukeboxGUI extends Application {
 		primaryStage.setTitle("Jukebox");
 		primaryStage.show();
 
-		// Handling window close event. Allow users to save the current state and data
-		// or leave unchanged from startup
+		// Handling window close event. Every change is already in the journal, so
+		// closing only writes a last snapshot
 		primaryStage.setOnCloseRequest(event -> {
 
 			// Create a confirmation dialog for closing the window
 			Alert alertClose = new Alert(AlertType.CONFIRMATION);
-			alertClose.setHeaderText("Click cancel to not save any changes");
-			alertClose.setContentText("Save data?");
+			alertClose.setHeaderText("Click cancel to keep the jukebox running");
+			alertClose.setContentText("Close the jukebox?");
 
 			// Show the confirmation dialog and wait for user input
 			Optional<ButtonType> result = alertClose.showAndWait();
-			// If the user clicks OK, save data to a serialized file and exit the
-			// application
+			// If the user clicks OK, save a snapshot and exit the application
 			if (result.get() == ButtonType.OK) {
-				saveState();
-
-				// Exit the application
+				// the window closes at once, the last snapshot is written in
+				// the background and the application exits once it is
+				saveState().orTimeout(30, TimeUnit.SECONDS).whenComplete((saved, e) -> {
+					if (e != null) {
+						System.out.println("Writing objects failed");
+						e.printStackTrace();
+					}
+					System.exit(0);
+				});
 				Platform.exit();
-				System.exit(0);
 
 			} else {
-				// If the user clicks Cancel, simply return and keep the application running
-				return;
+				// If the user clicks Cancel, keep the window open
+				event.consume();
 			}
 		});
 	}
 
-	public void saveState() {
+	/*
+	 * Closes the journal and starts writing a snapshot of the whole jukebox in
+	 * the background. Changes are saved to the journal as they happen, so the
+	 * snapshot only makes the next start faster.
+	 */
+	public CompletableFuture<Void> saveState() {
 		try {
+			if (history != null)
+				history.close();
+			if (sharedAccounts != null)
+				sharedAccounts.close();
+			return store.close();
+		} catch (IOException ioe) {
+			return CompletableFuture.failedFuture(ioe);
+		}
+	}
 
-			// Create output streams for writing objects to a file
-			FileOutputStream bytesToDisk = new FileOutputStream("objects.ser");
-			ObjectOutputStream outFile = new ObjectOutputStream(bytesToDisk);
-
-			// Save various objects including account data and song list to the file
-			outFile.writeObject(loginPane.getAccountCollection());
-			outFile.writeObject(accountMap);
-			outFile.writeObject(lastLoggedInAccount);
+	/*
+	 * Starts serving the song files from a cache of the songs played recently.
+	 * The budget is set with -Djukebox.audio.cache.bytes. Without the server the
+	 * songs are played from their files.
+	 */
+	private AudioCacheServer startAudioCache() {
+		long budget = Long.getLong("jukebox.audio.cache.bytes", 64L * 1024 * 1024);
+		try {
+			return new AudioCacheServer(new AudioCache(budget), Paths.get(SongCatalog.SONG_DIRECTORY));
+		} catch (IOException e) {
+			System.out.println("Playing songs from their files, the audio cache can't start");
+			e.printStackTrace();
+			return null;
+		}
+	}
 
-			outFile.close();
+	/*
+	 * Starts keeping every song that finishes in the history folder. Without it
+	 * the songs play, but nothing records them.
+	 */
+	private void startPlayHistory() {
+		try {
+			history = new PlayHistoryLog(Paths.get("history"), ZoneId.systemDefault(), 1000);
+			songSelector.setPlayHistory(history);
+		} catch (IOException e) {
+			System.out.println("The play history can't be opened, songs played aren't recorded");
+			e.printStackTrace();
+		}
+	}
 
-		} catch (IOException ioe) {
-			// Handle IO exception if occurred during saving objects
-			System.out.println("Writing objects failed");
-			ioe.printStackTrace();
-			// Exit the application
-			Platform.exit();
-			System.exit(0);
+	/*
+	 * Publishes the metrics of the jukebox as JMX MBeans, so they can be read
+	 * with jconsole while it runs. The gauges read the jukebox that is loaded
+	 * when they are read.
+	 */
+	private void publishMetrics(AudioCacheServer audio) {
+		Metrics metrics = Metrics.shared();
+		songSelector.getMetrics().registerWith(metrics);
+		metrics.gauge("queue.depth", venue::size);
+		metrics.gauge("sessions.active", () -> state == null ? 0 : state.getSessionCount());
+		metrics.gauge("heap.retainedBytes", Metrics::retainedHeapBytes);
+		metrics.gauge("heap.retainedBytesPerAccount", () -> {
+			JukeboxState current = state;
+			int accounts = current == null ? 0 : current.getAccountCollection().size();
+			return accounts == 0 ? 0 : (double) Metrics.retainedHeapBytes() / accounts;
+		});
+		if (audio != null) {
+			AudioCache cache = audio.getCache();
+			metrics.gauge("audioCache.hitRatio", cache::getHitRatio);
+			metrics.gauge("audioCache.bytesResident", cache::getBytesResident);
+		}
+		try {
+			metrics.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+		} catch (JMException e) {
+			System.out.println("The metrics can't be published over JMX");
+			e.printStackTrace();
 		}
 	}
 
@@ -124,46 +210,88 @@ public class JukeboxGUI extends Application {
 		alert.setContentText("Click OK to read saved data");
 		// Show the confirmation dialog and wait for user input
 		Optional<ButtonType> result = alert.showAndWait();
-		// If the user clicks OK, load data from a serialized file
+		// If the user clicks OK, load the snapshot and replay the journal
 		if (result.get() == ButtonType.OK) {
 			loadState();
 		} else {
-			// If the user clicks Cancel, simply return and start with fresh data
-			return;
+			// If the user clicks Cancel, start with fresh data
+			startFresh();
 		}
 	}
 
-	@SuppressWarnings("unchecked")
+	/*
+	 * Loads the last snapshot and replays the journal written after it.
+	 */
 	public void loadState() {
 		try {
-
-			// Create input streams for reading objects from a file
-			FileInputStream rawBytes = new FileInputStream("objects.ser");
-			ObjectInputStream inFile = new ObjectInputStream(rawBytes);
-
-			// Deserialize objects and load data back into the application
-			AccountCollection deserializedCollection = (AccountCollection) inFile.readObject();
-			loginPane.setAccountCollection(deserializedCollection);
-
-			this.accountMap = (Map<Account, JukeboxAccount>) inFile.readObject();
-			this.lastLoggedInAccount = (Account) inFile.readObject();
-			if (lastLoggedInAccount != null)
-				userLoggedIn(lastLoggedInAccount);
-
-
-
-			inFile.close();
-
-		} catch (FileNotFoundException e) {
-			// Handle file not found exception
+			useState(store.load());
+			if (state.getLastLoggedInAccount() != null)
+				userLoggedIn(state.getLastLoggedInAccount());
+		} catch (IOException | ClassNotFoundException e) {
+			// Leave the saved files as they are, so nothing is lost and they can
+			// be looked at, and exit. Only Cancel starts fresh
 			e.printStackTrace();
+			Alert error = new Alert(AlertType.ERROR);
+			error.setHeaderText("The saved data can't be read");
+			error.setContentText(e.getMessage() + "\nThe jukebox will close, the saved files are left as they are.");
+			error.showAndWait();
+			Platform.exit();
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * Starts with only the hard coded accounts, replacing the saved data. The
+	 * store keeps the old data until the new snapshot is on disk.
+	 */
+	private void startFresh() {
+		try {
+			useState(store.startFresh());
 		} catch (IOException e) {
-			// Handle IO exception if occurred during reading objects
+			System.out.println("Writing objects failed");
 			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			// Handle class not found exception
+			Platform.exit();
+			System.exit(0);
+		}
+	}
+
+	private void useState(JukeboxState loaded) {
+		state = loaded;
+		shareAccounts();
+		queuedAccounts.clear();
+		loginPane.setAccountCollection(state.getAccountCollection());
+	}
+
+	/*
+	 * Shares the accounts and their songs played today with the other jukebox
+	 * processes on this machine, through the file set with
+	 * -Djukebox.shared.accounts. Without it each jukebox keeps its own. The
+	 * accounts are added to the file in the background, not on the JavaFX
+	 * thread.
+	 */
+	private void shareAccounts() {
+		String file = System.getProperty("jukebox.shared.accounts");
+		if (file == null)
+			return;
+		try {
+			if (sharedAccounts == null)
+				sharedAccounts = new SharedAccountStore(Paths.get(file), SharedAccountStore.DEFAULT_SLOTS);
+		} catch (IOException | RuntimeException e) {
+			System.out.println("The accounts can't be shared, this jukebox keeps its own");
 			e.printStackTrace();
+			return;
 		}
+		SharedAccountStore directory = sharedAccounts;
+		AccountCollection accounts = state.getAccountCollection();
+		CompletableFuture.supplyAsync(() -> accounts.setDirectory(directory)).whenComplete((notShared, e) -> {
+			if (e != null) {
+				System.out.println("The accounts can't be shared, this jukebox keeps its own");
+				e.printStackTrace();
+			} else if (!notShared.isEmpty()) {
+				System.out.println("These accounts are not shared with the other jukeboxes: "
+						+ String.join(", ", notShared));
+			}
+		});
 	}
 
 	/**
@@ -188,25 +316,20 @@ public class JukeboxGUI extends Application {
 	 */
 	public void userLoggedIn(Account account) {
 
-		lastLoggedInAccount = account;
-		if (accountMap.containsKey(account)) {
-			// Retrieve existing JukeboxAccount if present
-			jukeBoxAccount = accountMap.get(account);
-
-		} else {
-			// Create a new JukeboxAccount if not present
-			jukeBoxAccount = new JukeboxAccount(account);
-			// SongSelector class contains the table view with Title, Artist, and Time
-			accountMap.put(account, jukeBoxAccount);
-		}
+		// Retrieve the existing JukeboxAccount, or create one if not present
+		jukeBoxAccount = state.logIn(account);
 
-		// Add the SongSelector to the layout after a user has logged in
+		// Show the songs of this account in the SongSelector
 		// Now the user can view their song titles, artists, and time
-		everything.setCenter(jukeBoxAccount.getSongSelector().getSongTable());
-		// play the song ( Song Selector inside JukeboxAccount)
-		jukeBoxAccount.getSongSelector().playNextSong();
+		songSelector.bind(jukeBoxAccount);
+		// the songs the account picked before the jukebox was closed join the
+		// venue queue when it first logs in
+		if (queuedAccounts.add(jukeBoxAccount)) {
+			for (Song song : jukeBoxAccount.getSelectedSongs())
+				venue.offer(jukeBoxAccount, song);
+		}
 		// This is for the temporary playButton that will be grade in Iteration1
-		everything.setCenter(jukeBoxAccount.getSongSelector().getLayout());
+		everything.setCenter(songSelector.getLayout());
 
 	}
 
@@ -217,10 +340,9 @@ public class JukeboxGUI extends Application {
 		item.setOnAction((ActionEvent arg0) -> {
 			MenuItem menuClicked = (MenuItem) arg0.getSource();
 			if (menuClicked.getText().equals("Log Out")) {
-				// Stop the music
-				jukeBoxAccount.getSongSelector().stopMusic();
-
-				// Return to the login view
+				if (jukeBoxAccount != null)
+					state.logOut(jukeBoxAccount.getAccount());
+				// The music keeps playing for the venue, return to the login view
 				everything.setCenter(loginPane);
 			}
 		});
@@ -1,5 +1,8 @@
 package controller_view;
 
+import java.util.concurrent.CompletionException;
+
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Alert;
@@ -12,6 +15,7 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import model.Account;
 import model.AccountCollection;
+import model.LoginService;
 
 
 /**
@@ -24,6 +28,10 @@ import model.AccountCollection;
  * 
  * The password field displays dots instead of the actual characters entered.
  * 
+ * Passwords are checked by LoginService on a worker thread, and the result is
+ * handled back on the JavaFX thread, so the window stays responsive while a
+ * password is hashed.
+ * 
  * The account saving feature is not yet implemented, but users can still create
  * accounts or log in. The implementation will be finished soon!
  * 
@@ -97,29 +105,34 @@ public class LoginCreateAccountPane extends GridPane {
 	 *    - If no account exists, it notifies the user that they need to create an account.
 	 *
 	 * The appropriate methods in the JukeboxGUI class are called to handle login and account creation.
+	 * Both checks run on a worker thread, and the buttons are disabled until the answer comes back.
 	 */
 	private void registerHandlers() {
 		createAccount.setOnAction((event) -> {
-			if (userID.getText().trim().isEmpty() || userPW.getText().trim().isEmpty()) {
+			String id = userID.getText().trim();
+			String pw = userPW.getText().trim();
+			if (id.isEmpty() || pw.isEmpty()) {
 				// If either field is empty, do nothing and return
 				return;
 			}
-	        // Check if an account with the given userName already exists
-	        if (setAccount.getAccount(userID.getText()) != null) {
-	            // If it does, display a message and return
-	            Alert alert = new Alert(AlertType.WARNING);
-	            alert.setTitle("Error");
-	            alert.setHeaderText(null);
-	            alert.setContentText("Username already exists!");
-	            alert.showAndWait();
-	            return;
-	        }
-			account = setAccount.createAccount(userID.getText().trim(), userPW.getText().trim());
-			// If account creation is successful, display the Table View
-			userPW.clear();
-			userID.clear();
-			jukeboxGUI.userLoggedIn(account);
-			
+			// Hash the password on a worker thread so the window doesn't freeze,
+			// createAccount checks and claims the userName in one step
+			setBusy(true);
+			LoginService.createAccount(setAccount, id, pw).whenCompleteAsync((created, error) -> {
+				setBusy(false);
+				if (error != null) {
+					// If the userName already exists, display a message and return
+					Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+					showAlert(AlertType.WARNING, cause instanceof IllegalArgumentException ? cause.getMessage()
+							: "The jukebox is busy, please try again.");
+					return;
+				}
+				// If account creation is successful, display the Table View
+				account = created;
+				userPW.clear();
+				userID.clear();
+				jukeboxGUI.userLoggedIn(account);
+			}, Platform::runLater);
 		});
 
 		login.setOnAction((event) -> {
@@ -129,28 +142,49 @@ public class LoginCreateAccountPane extends GridPane {
 		        // If either field is empty, do nothing and return
 		        return;
 		    }
-		    account = setAccount.authorize(id, pw);
-		    // If login is successful, display the Table View
-		    if (account != null) {
-		        userPW.clear();
-		        userID.clear();
-		        
-		        
-		        jukeboxGUI.userLoggedIn(account);
-		        
-		        
-		    } else {
-		        // Display a clear message asking the user to create an account 
-		    	// if they attempt to log in without having one
-		        Alert alert = new Alert(AlertType.ERROR);
-		        alert.setTitle("Error");
-		        alert.setHeaderText(null);
-		        alert.setContentText("No account found with this username. Please create an account.");
-		        alert.showAndWait();
-		    }
+		    // Check the password on a worker thread, the answer comes back on the
+		    // JavaFX thread
+		    setBusy(true);
+		    LoginService.authorize(setAccount, id, pw).whenCompleteAsync((authorized, error) -> {
+		        setBusy(false);
+		        if (error != null) {
+		            showAlert(AlertType.ERROR, "The jukebox is busy, please try again.");
+		            return;
+		        }
+		        // If login is successful, display the Table View
+		        if (authorized != null) {
+		            account = authorized;
+		            userPW.clear();
+		            userID.clear();
+		            jukeboxGUI.userLoggedIn(account);
+		        } else {
+		            // Display a clear message asking the user to create an account 
+		            // if they attempt to log in without having one
+		            showAlert(AlertType.ERROR, "No account found with this username. Please create an account.");
+		        }
+		    }, Platform::runLater);
 		});
 
 	}
+
+	/*
+	 * Disables the buttons while a password is being checked, so the same login
+	 * can't be sent twice
+	 */
+	private void setBusy(boolean busy) {
+		login.setDisable(busy);
+		createAccount.setDisable(busy);
+		messageLabel.setText(busy ? "Checking..." : "");
+	}
+
+	private void showAlert(AlertType type, String message) {
+		Alert alert = new Alert(type);
+		alert.setTitle("Error");
+		alert.setHeaderText(null);
+		alert.setContentText(message);
+		alert.showAndWait();
+	}
+
 	/*
 	 * getter and setter for setAccount
 	 */
@@ -0,0 +1,359 @@
+package controller_view;
+
+import java.util.Comparator;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Pos;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.media.MediaPlayer;
+import model.JukeboxAccount;
+import model.PlaybackEngine;
+import model.PlayHistory;
+import model.PlaybackMetrics;
+import model.QuotaService;
+import model.Song;
+import model.SongCatalog;
+import model.TrendingSongs;
+import model.VenueQueue;
+
+/**
+ * The SongSelector class represents a table of songs. It allows songs to be
+ * added to the table and provides functionality for selecting a song and
+ * displays them in a sortable TableView
+ * 
+ * Users can click on the Title, Artist, and Time to sort them in ascending
+ * order.
+ * 
+ * There is one SongSelector for the whole jukebox. It shows the songs of the
+ * catalog, and bind() points it at the JukeboxAccount that is logged in; the
+ * selected songs, play list and song counts live in that JukeboxAccount.
+ * 
+ * The songs every account picks go to the one VenueQueue of the jukebox, and
+ * keep playing after the account logs out.
+ * 
+ * Next to the queue it shows the songs played the most in the last hour and
+ * the last day, updated when a song finishes and when an account logs in.
+ * 
+ * @author Yen Lai
+ */
+public class SongSelector {
+	// A TableView to display songs.
+	private TableView<Song> songTable;
+	// The songs of every account, in the order they play
+	private final VenueQueue venue;
+	// Plays the songs of the venue queue
+	private final PlaybackEngine<MediaPlayer> engine;
+
+	// The account that is logged in
+	private JukeboxAccount jukeboxAccount;
+
+	// Label text to show users how many songs they have selected so far.
+	private Label messageLabel = new Label();
+	
+	// An ObservableList to hold Song objects.
+	// It's a list that allows listeners to track changes when they occur.
+	private ObservableList<Song> songs;
+
+	// Create a ListView to display the selected songs, a view of the play list
+	// of the logged in account
+	private ListView<Song> selectedSongListView;
+
+	// The songs played the most lately, counted by the engine on the playback
+	// thread and read here on the JavaFX thread
+	private final TrendingSongs lastHour = TrendingSongs.lastHour(QuotaService.shared().getClock());
+	private final TrendingSongs lastDay = TrendingSongs.lastDay(QuotaService.shared().getClock());
+	private final ListView<String> trendingListView = new ListView<>();
+
+	// The layout is built once and shown for every account
+	private HBox layout;
+
+	/**
+	 * This class represents a song selector that allows users to select songs from
+	 * a table.
+	 * 
+	 * @param catalog the songs to show in the table
+	 * @param venue   the queue the picked songs are added to
+	 * @param audio   serves the songs from a cache, or null to play them from
+	 *                their files
+	 */
+	@SuppressWarnings("unchecked")
+	public SongSelector(SongCatalog catalog, VenueQueue venue, AudioCacheServer audio) {
+		this.venue = venue;
+		engine = new PlaybackEngine<>(new FxAudioOutput(audio), venue, Platform::runLater);
+		// Initialize the ObservableList with the songs of the catalog
+		songs = FXCollections.observableArrayList(catalog.getSongs());
+		// Initialize the TableView with the ObservableList
+		songTable = new TableView<>(songs);
+		selectedSongListView = new ListView<>();
+		// Create a TableColumn for the song title. This will be one of the columns in
+		// our table
+		TableColumn<Song, String> titleColumn = new TableColumn<>("Title");
+		titleColumn.setCellValueFactory(new PropertyValueFactory<>("title"));
+		// Allow the column to be sorted by clicking on its header
+		titleColumn.setSortable(true);
+
+		// Similar setup for "Artist" and "Time" columns
+		TableColumn<Song, String> artistColumn = new TableColumn<>("Artist");
+		artistColumn.setCellValueFactory(new PropertyValueFactory<>("artist"));
+		artistColumn.setSortable(true);
+
+		TableColumn<Song, Song> timeColumn = new TableColumn<>("Time");
+		// sort by length rather than by text, so 10:00 comes after 9:59
+		timeColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue()));
+		timeColumn.setCellFactory(column -> new TableCell<Song, Song>() {
+			@Override
+			protected void updateItem(Song song, boolean empty) {
+				super.updateItem(song, empty);
+				setText(empty || song == null ? null : song.getPlaytime());
+			}
+		});
+		timeColumn.setComparator(Comparator.comparingInt(Song::getDurationMillis));
+		timeColumn.setSortable(true);
+
+		// This will delete the extra column making it show only 3 columns
+		double tableWidth = 650;
+		titleColumn.setPrefWidth(tableWidth / 4);
+		artistColumn.setPrefWidth(tableWidth / 4);
+		timeColumn.setPrefWidth(tableWidth / 4);
+
+		// Add all columns to the TableView. This makes them visible in the table
+		songTable.getColumns().addAll(titleColumn, artistColumn, timeColumn);
+
+		// Remove a song from the ListView once it has played
+		engine.setSongFinishedListener(account -> {
+			if (account == jukeboxAccount)
+				refreshSelection();
+			refreshTrending();
+		});
+		engine.setPlayHistory(lastHour.andThen(lastDay));
+
+		layout = createLayout();
+	}
+
+	/**
+	 * Shows the songs of the account that just logged in.
+	 * 
+	 * @param jukeboxAccount the account that is logged in
+	 */
+	public void bind(JukeboxAccount jukeboxAccount) {
+		this.jukeboxAccount = jukeboxAccount;
+		refreshSelection();
+		refreshTrending();
+	}
+
+	/**
+	 * This method returns the HBox layout for the music player. The layout
+	 * includes a TableView for the song list, a "Play" button, and a ListView for
+	 * the song queue.
+	 *
+	 * @return HBox layout for the music player
+	 */
+	public HBox getLayout() {
+		return layout;
+	}
+
+	/*
+	 * When the "Play" button is clicked, it adds the selected song to both the
+	 * ListView and playList, and starts playing the song if no song is currently
+	 * playing.
+	 * 
+	 * A maximum of 3 songs can be added to the playList. If this limit is reached
+	 * or if the account has already played 3 songs, a warning pop-up is shown and
+	 * no more songs can be added.
+	 */
+	private HBox createLayout() {
+		// Create a new HBox layout
+		HBox layout = new HBox(5);
+		layout.setAlignment(Pos.CENTER); // move the view to the right a little bit
+
+		// Create a label for the TableView
+		Label tableViewLabel = new Label("Song List");
+		tableViewLabel.setStyle("-fx-font-size: 20px; -fx-font-weight: bold;");
+		// Add the label and song table to a VBox layout
+		// now the tableViewLayout holds the label "Song List" as well as the actual
+		// song table
+		VBox tableViewLayout = new VBox(10); // adjust the spacing
+		tableViewLayout.getChildren().addAll(tableViewLabel, songTable);
+
+		// Add the VBox to the HBox layout
+		layout.getChildren().add(tableViewLayout);
+
+		// Create a new "Play" button
+		Button playButton = new Button("Play");
+
+		// Set an action for when the button is clicked
+	    // Once songs are chosen, the '0 songs selected' message will be updated
+		playButton.setOnAction(e -> {
+			// Limit song additions to three and also check if this account has played 3
+			// songs or not
+			if (jukeboxAccount.canQueueSong()) {
+				// Get the song selected by the user
+				Song selectedSong = getSelectedSong();
+				if (selectedSong != null) {
+					jukeboxAccount.queueSong(selectedSong);
+					refreshSelection();
+
+					// The engine starts the song if nothing is playing
+					venue.offer(jukeboxAccount, selectedSong);
+				}
+			} else {
+				// Show a warning pop-up when user tries to listen more than 3 songs!
+				Alert alert = new Alert(Alert.AlertType.WARNING);
+				alert.setTitle("Warning");
+				alert.setHeaderText(null);
+				alert.setContentText("3 songs have already been played today.");
+				alert.showAndWait();
+			}
+			
+		});
+		
+		
+		// Add the "Play" button to the HBox layout
+		// this will make the button stays in the middle
+		layout.getChildren().add(playButton);
+
+		// Create a label for the ListView
+		Label listViewLabel = new Label("Song Queue");
+		listViewLabel.setStyle("-fx-font-size: 20px; -fx-font-weight: bold;");
+		// Create a new VBox layout for the ListView
+		VBox listViewLayout = new VBox(10); // adjust the spacing
+		listViewLayout.getChildren().addAll(listViewLabel, selectedSongListView, messageLabel);
+
+		// Add the VBox to the HBox layout
+		layout.getChildren().add(listViewLayout);
+
+		// The songs trending now, to the right of the queue
+		Label trendingLabel = new Label("Trending Now");
+		trendingLabel.setStyle("-fx-font-size: 20px; -fx-font-weight: bold;");
+		VBox trendingLayout = new VBox(10);
+		trendingLayout.getChildren().addAll(trendingLabel, trendingListView);
+		layout.getChildren().add(trendingLayout);
+
+		return layout;
+	}
+
+	/*
+	 * Shows the selected songs of the logged in account, and how many songs it
+	 * has selected. The ListView reads the songs from the play list, the songs
+	 * are not copied.
+	 */
+	private void refreshSelection() {
+		selectedSongListView.setItems(FXCollections.observableList(jukeboxAccount.getSelectedSongs()));
+		// The songs waiting in the play list plus the songs the QuotaService
+		// counted as played today; display '0 songs selected' before any
+		// songs are chosen
+		int selected = jukeboxAccount.getSelectedSongs().size() + jukeboxAccount.songsSelectedToday();
+		if (selected == 0) {
+			messageLabel.setText("0 songs selected");
+		} else {
+			messageLabel.setText("You have selected " + selected + " song(s) today.");
+		}
+	}
+
+	/*
+	 * Shows the songs played the most in the last hour and in the last day.
+	 * Reading them takes no lock, so the playback thread never waits for it.
+	 */
+	private void refreshTrending() {
+		ObservableList<String> lines = FXCollections.observableArrayList();
+		lines.add("Last hour");
+		for (TrendingSongs.Trend trend : lastHour.getTop())
+			lines.add("  " + trend);
+		lines.add("Last day");
+		for (TrendingSongs.Trend trend : lastDay.getTop())
+			lines.add("  " + trend);
+		trendingListView.setItems(lines);
+	}
+
+	/*
+	 * Plays the venue queue if nothing is playing, also after stopMusic().
+	 */
+	public void playNextSong() {
+		engine.play();
+	}
+
+	/*
+	 * Sets the silence between two songs, in milliseconds. 0 plays the songs
+	 * back to back.
+	 */
+	public void setGapMillis(long gapMillis) {
+		engine.setGapMillis(gapMillis);
+	}
+
+	/*
+	 * Sets the history that is told about every song that finished, besides
+	 * the songs trending now.
+	 */
+	public void setPlayHistory(PlayHistory history) {
+		engine.setPlayHistory(history.andThen(lastHour).andThen(lastDay));
+	}
+
+	/*
+	 * Gets the time from the end of each song to the start of the next.
+	 */
+	public PlaybackMetrics getMetrics() {
+		return engine.getMetrics();
+	}
+
+	/*
+	 * Gets the state of the playback.
+	 */
+	public PlaybackEngine.State getPlaybackState() {
+		return engine.getState();
+	}
+
+	/*
+	 * Return the currently selected song in the TableView
+	 */
+	public Song getSelectedSong() {
+		return songTable.getSelectionModel().getSelectedItem();
+	}
+
+	/*
+	 * This will refresh the TableView. This is useful if items in the list have
+	 * been changed directly and you want to ensure that the table displays the
+	 * current data.
+	 */
+	public void refresh() {
+		songTable.refresh();
+	}
+
+	/*
+	 * Return the TableView. This is useful if you want to add it to a scene or
+	 * modify its properties elsewhere in your code.
+	 */
+	public TableView<Song> getSongTable() {
+		return songTable;
+	}
+
+	/*
+	 * Stops the music until playNextSong() is called.
+	 */
+	public void stopMusic() {
+		engine.stop();
+	}
+
+	/*
+	 * Retrieves the ObservableList of songs displayed in the ListView.
+	 */
+	public ObservableList<Song> getSongListView() {
+		return selectedSongListView.getItems();
+	}
+
+	// Getter for messageLabel
+    public Label getMessageLabel() {
+        return messageLabel;
+    }
+}
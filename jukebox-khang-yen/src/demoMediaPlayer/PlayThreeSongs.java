@@ -6,6 +6,7 @@ import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 import model.PlayList;
+import model.SongCatalog;
 
 public class PlayThreeSongs extends Application {
 
@@ -15,10 +16,11 @@ public class PlayThreeSongs extends Application {
   
   @Override
   public void start(Stage stage) throws Exception {
-    PlayList playList = new PlayList();
-    playList.queueUpNextSong("Capture.mp3");
-    playList.queueUpNextSong("SwingCheese.mp3");
-    playList.queueUpNextSong("Capture.mp3");
+    SongCatalog catalog = SongCatalog.shared();
+    PlayList playList = new PlayList(catalog);
+    playList.queueUpNextSong(catalog.findSong("Capture.mp3"));
+    playList.queueUpNextSong(catalog.findSong("SwingCheese.mp3"));
+    playList.queueUpNextSong(catalog.findSong("Capture.mp3"));
 
     BorderPane pane = new BorderPane();
     pane.setCenter(new Label("Play three songs"));
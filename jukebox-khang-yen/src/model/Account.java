@@ -1,19 +1,32 @@
 package model;
 
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Account class which holds an account, each has a user name, password, and the
  * songs that account has played throughout the day.
  * 
+ * The password is kept as a salted PasswordHash.
+ * 
+ * The songs played are counted in the account, or in a PlayCounter of an
+ * AccountDirectory shared with other processes once shareSongPlayed() is
+ * called.
+ * 
  * @author Khang Tran
  */
 
 @SuppressWarnings("serial")
 public class Account implements Serializable{
 	private String userName;
-	private String passWord;
-	private int songPlayed;
+	private PasswordHash passWordHash;
+	// the day the songs were played on, plus 1, in the high 32 bits and the
+	// number of songs in the low 32 bits; 0 if no song was played
+	private final AtomicLong songPlayed = new AtomicLong();
+	// counts the songs instead of songPlayed, in memory shared with other
+	// processes; not saved
+	private transient volatile PlayCounter sharedSongPlayed;
 
 
 	/**
@@ -24,8 +37,31 @@ public class Account implements Serializable{
 	 */
 	public Account(String userName, String passWord) {
 		this.userName = userName;
-		this.passWord = passWord;
-		this.songPlayed = 0;
+		this.passWordHash = PasswordHash.create(passWord);
+	}
+
+	/**
+	 * constructor for an account whose password was hashed earlier
+	 * 
+	 * @param userName
+	 * @param passWordHash
+	 */
+	public Account(String userName, PasswordHash passWordHash) {
+		this(userName, passWordHash, 0, null);
+	}
+
+	/**
+	 * constructor for an account that was saved earlier
+	 * 
+	 * @param userName
+	 * @param passWordHash
+	 * @param songPlayed
+	 * @param playDay      the day the songs were played on, or null
+	 */
+	public Account(String userName, PasswordHash passWordHash, int songPlayed, LocalDate playDay) {
+		this.userName = userName;
+		this.passWordHash = passWordHash;
+		restoreSongPlayed(songPlayed, playDay);
 	}
 
 	/*
@@ -33,7 +69,7 @@ public class Account implements Serializable{
 	 */
 	public Account() {
 		this.userName = null;
-		this.passWord = null;
+		this.passWordHash = null;
 	}
 
 	/**
@@ -46,36 +82,114 @@ public class Account implements Serializable{
 	}
 
 	/**
-	 * method to get password of the account
+	 * method to check if the password is the password of the account. This is
+	 * slow on purpose, so don't call it on the JavaFX thread.
+	 * 
+	 * @param passWord the password to check
+	 * @return true if the password is correct
+	 */
+	public boolean checkPassWord(String passWord) {
+		PasswordHash hash;
+		synchronized (this) {
+			hash = this.passWordHash;
+		}
+		return hash != null && hash.matches(passWord);
+	}
+
+	/**
+	 * method to check if the password should be hashed again because the hash
+	 * cost has changed
+	 * 
+	 * @return true if the password should be hashed again
+	 */
+	public synchronized boolean needsRehash() {
+		return passWordHash != null && passWordHash.needsRehash();
+	}
+
+	/**
+	 * method to hash the password again with the current cost. Call it only
+	 * after checkPassWord has accepted the password.
+	 * 
+	 * @param passWord the password of the account
+	 */
+	public void rehashPassWord(String passWord) {
+		PasswordHash hash = PasswordHash.create(passWord);
+		synchronized (this) {
+			this.passWordHash = hash;
+		}
+	}
+
+	/**
+	 * method to get the password hash of the account
 	 * 
-	 * @return password of the account
+	 * @return the password hash, or null for an account made with the default
+	 *         constructor
 	 */
-	public String getPassWord() {
-		return this.passWord;
+	public synchronized PasswordHash getPassWordHash() {
+		return this.passWordHash;
 	}
 
 	/**
-	 * method to get how many songs the account has played
+	 * method to get how many songs the account has played on the day it last
+	 * played
 	 * 
 	 * @return songPlayed
 	 */
 	public int getSongPlayed() {
-		return this.songPlayed;
+		return (int) songPlayedCounter().get();
 	}
 
 	/**
-	 * Method that increments the song that the account has played everytime a song
-	 * is played
+	 * method to get the day the account last played, the day getSongPlayed()
+	 * counts
+	 * 
+	 * @return the day, or null if the account never played a song
 	 */
-	public void recordSongPlayed() {
-		songPlayed++;
+	public LocalDate getPlayDay() {
+		long day = songPlayedCounter().get() >>> 32;
+		return day == 0 ? null : LocalDate.ofEpochDay(day - 1);
 	}
 
 	/**
-	 * Method to reset songPlayed of the account to 0 when a new day starts
+	 * method to get how many songs the account has played on a day, 0 unless it
+	 * is the day the account last played
+	 * 
+	 * @param day the day
+	 * @return the songs played on that day
+	 */
+	public int getSongsPlayedOn(LocalDate day) {
+		long value = songPlayedCounter().get();
+		return value >>> 32 == day.toEpochDay() + 1 ? (int) value : 0;
+	}
+
+	/**
+	 * Method to put back the songs played that were saved earlier, or to set
+	 * them to 0 when a new day starts
+	 * 
+	 * @param count the songs played
+	 * @param day   the day they were played on, or null
+	 */
+	public final void restoreSongPlayed(int count, LocalDate day) {
+		songPlayedCounter().set(day == null ? count : QuotaService.pack(day.toEpochDay(), count));
+	}
+
+	/**
+	 * Counts the songs played in a counter shared with other processes from now
+	 * on. The songs counted in the account before are left behind, the shared
+	 * counter holds its own.
+	 * 
+	 * @param counter the shared counter
+	 */
+	public void shareSongPlayed(PlayCounter counter) {
+		this.sharedSongPlayed = counter;
+	}
+
+	/*
+	 * Gets the day and count of the songs played, for the QuotaService.
 	 */
-	public void resetSongCount() {
-		songPlayed = 0;
+	final PlayCounter songPlayedCounter() {
+		PlayCounter shared = sharedSongPlayed;
+		return shared != null ? shared : PlayCounter.of(songPlayed);
 	}
 
 }
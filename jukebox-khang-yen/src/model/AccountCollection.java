@@ -1,87 +1,216 @@
 package model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * The AccountCollection class represents a set that holds all of the accounts. 
  * Every time an account is created, it is added to the set. 
  * It also gives the user authorization to an account
  * 
+ * Accounts are indexed by their user name in a concurrent hash map, so looking
+ * up, creating or authorizing an account costs the same no matter how many
+ * accounts have been enrolled, and it is safe to call from several threads.
+ * 
+ * With an AccountDirectory the accounts are shared with the other jukebox
+ * processes on the machine: a user name is only taken if no process has
+ * taken it, and an account this process doesn't know is looked up in the
+ * directory.
+ * 
  * @author Khang Tran
  */
-import java.util.HashSet;
-import java.util.Set;
-
 @SuppressWarnings("serial")
 public class AccountCollection implements Serializable{
-	// Use a set to create unique user name
-	private Set<Account> accountSet;
+	// the cost the hard coded passwords were hashed with
+	private static final int HARD_CODED_ITERATIONS = 210_000;
+	// Index the accounts by user name, which also keeps user names unique
+	private ConcurrentMap<String, Account> accounts;
+	private transient Journal journal = Journal.NONE;
+	private transient volatile AccountDirectory directory = AccountDirectory.NONE;
+	// the user names that have another password in the directory, which are
+	// kept apart from it
+	private transient volatile Set<String> notShared;
 
 	public AccountCollection() {
-		accountSet = new HashSet<>();
+		accounts = new ConcurrentHashMap<>();
 		
-	    // Hard code the accounts
-	    accountSet.add(new Account("Chris", "1"));
-	    accountSet.add(new Account("Devon", "22"));
-	    accountSet.add(new Account("River", "333"));
-	    accountSet.add(new Account("Ryan", "4444"));
+	    // Hard code the accounts. Their passwords were hashed once, ahead of
+	    // time, so making a collection doesn't cost four slow hashes and every
+	    // process has the same hashes
+	    addHardCoded("Chris", "rzMnQ7xXeIT+VqJ1+p2h/g==", "DJs2Uz26gwuifGtSQnwYPYt+D1XlTn9pWkcSFANe5w4=");
+	    addHardCoded("Devon", "C9DuAN1pvFi29sfrvP8Mdg==", "atR3kjnATLhSR9gdvUMoqcWCSMYHTzCYbtZaYIEfKcw=");
+	    addHardCoded("River", "vrPiwMEXq7OR4cWA1YlLgQ==", "RLVENAsQ+AZCkVQ7QKpzmTIq5hx7tBqbJUon983ynTM=");
+	    addHardCoded("Ryan", "1bsV0iBE9GDbXxtB/2+alw==", "sSSPiTKvwllXiByVZTvss5lKJyhXSJVJ+ZARYxBh+OE=");
+	}
+
+	/*
+	 * Adds a hard coded account whose password was hashed with
+	 * HARD_CODED_ITERATIONS; the salt and hash are in Base64.
+	 */
+	private void addHardCoded(String userName, String salt, String hash) {
+		Base64.Decoder base64 = Base64.getDecoder();
+		accounts.put(userName, new Account(userName,
+				PasswordHash.of(base64.decode(salt), HARD_CODED_ITERATIONS, base64.decode(hash))));
+	}
+
+	/*
+	 * constructor for accounts that were saved earlier, the hard coded accounts
+	 * are only added if they were saved too
+	 */
+	public AccountCollection(Collection<Account> saved) {
+		accounts = new ConcurrentHashMap<>(Math.max(16, saved.size() * 4 / 3 + 1));
+		for (Account acc : saved)
+			accounts.put(acc.getID(), acc);
 	}
 
 	/*
 	 * method to create an account. If the userName has already existed, throw an
-	 * exception. If not, then create a new account and put it to the set
+	 * exception. If not, then create a new account and put it to the set. The
+	 * check and the insert happen in one atomic step, so two users signing up
+	 * with the same name at the same time can't both succeed. A name that is
+	 * already taken is turned away before the password is hashed.
 	 */
 	public Account createAccount(String userName, String passWord) {
-		for (Account acc : accountSet) {
-			if (acc.getID().equals(userName))
-				throw new IllegalArgumentException("Username already exists!");
-		}
+		if (getAccount(userName) != null)
+			throw new IllegalArgumentException("Username already exists!");
 		Account accnt = new Account(userName, passWord);
-		accountSet.add(accnt);
+		if (accounts.putIfAbsent(userName, accnt) != null)
+			throw new IllegalArgumentException("Username already exists!");
+		// another process may have taken the name
+		if (!getDirectory().add(accnt)) {
+			accounts.remove(userName, accnt);
+			throw new IllegalArgumentException("Username already exists!");
+		}
+		getJournal().accountCreated(accnt);
 		return accnt;
 	}
 
+	/*
+	 * method to put back an account that was saved earlier. Returns false and
+	 * leaves the collection alone if the userName is already taken.
+	 */
+	public boolean addAccount(Account acc) {
+		return accounts.putIfAbsent(acc.getID(), acc) == null;
+	}
+
 	/*
 	 * remove the account from the JukeBox
 	 */
 	public void removeAccount(Account acc) {
-		accountSet.remove(acc);
+		accounts.remove(acc.getID(), acc);
 	}
 
 	/*
 	 * method to check if the userName and password is correct. Let the user login
-	 * if it's correct
+	 * if it's correct. Passwords are hashed, so this is slow on purpose; the GUI
+	 * calls it through LoginService. A password that was hashed with an old cost
+	 * is hashed again while we know it.
 	 */
 	public Account authorize(String id, String pw) {
-		for (Account acc : accountSet) {
-			if (acc.getID().equals(id))
-				if (acc.getPassWord().equals(pw))
-					return acc;
+		Account acc = getAccount(id);
+		if (acc == null || !acc.checkPassWord(pw))
+			return null;
+		if (acc.needsRehash()) {
+			acc.rehashPassWord(pw);
+			if (!isNotShared(id))
+				getDirectory().passWordChanged(acc);
 		}
-		return null;
+		return acc;
 	}
 
 	public String toString() {
-		String accounts = null;
-		for (Account acc : accountSet) {
-			accounts += acc.getID();
-		}
-		return accounts;
+		return String.join("", accounts.keySet());
 	}
 
 	/*
-	 * method to get an account by its userName.
+	 * method to get an account by its userName, also one another process
+	 * created. Returns null if no account has that userName.
 	 */
 	public Account getAccount(String userName) {
-		// Iterate over each account in the set
-		for (Account acc : accountSet) {
-			// If the current account's ID matches the provided username
-			if (acc.getID().equals(userName)) {
-				// Return the matching account
-				return acc;
-			}
+		Account acc = accounts.get(userName);
+		if (acc != null || userName == null)
+			return acc;
+		Account shared = getDirectory().find(userName);
+		if (shared == null)
+			return null;
+		acc = accounts.putIfAbsent(userName, shared);
+		return acc != null ? acc : shared;
+	}
+
+	/*
+	 * Gets a read-only view of all the accounts.
+	 */
+	public Collection<Account> getAccounts() {
+		return Collections.unmodifiableCollection(accounts.values());
+	}
+
+	/*
+	 * Sets the journal that is told about new accounts.
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Shares the accounts with the other processes that use the directory. The
+	 * accounts of this collection are added to it all at once. Where another
+	 * process added the user name first with the same password hash, the
+	 * account counts its songs in the directory's account.
+	 * 
+	 * An account whose password hash differs from the directory's, or that the
+	 * directory can't hold, is not shared: it keeps its own password and songs
+	 * played, and its user name is returned so the caller can report it.
+	 * Neither password is changed.
+	 * 
+	 * Adding thousands of accounts takes a while, so call it off the JavaFX
+	 * thread.
+	 * 
+	 * @param directory the accounts of every process
+	 * @return the user names that are not shared
+	 */
+	public List<String> setDirectory(AccountDirectory directory) {
+		// set first, so an account created meanwhile is added to it too
+		this.directory = directory;
+		List<String> conflicts = new ArrayList<>();
+		for (Account acc : directory.addAll(accounts.values())) {
+			Account shared = directory.find(acc.getID());
+			if (shared != null && Objects.equals(shared.getPassWordHash(), acc.getPassWordHash()))
+				acc.shareSongPlayed(shared.songPlayedCounter());
+			else
+				conflicts.add(acc.getID());
 		}
-		// If no matching account was found, return null
-		return null;
+		notShared = conflicts.isEmpty() ? null : Set.copyOf(conflicts);
+		return conflicts;
+	}
+
+	private boolean isNotShared(String userName) {
+		Set<String> names = notShared;
+		return names != null && names.contains(userName);
+	}
+
+	private AccountDirectory getDirectory() {
+		// the directory is not saved, so it is null after loading
+		return directory == null ? AccountDirectory.NONE : directory;
+	}
+
+	private Journal getJournal() {
+		// the journal is not saved, so it is null after loading
+		return journal == null ? Journal.NONE : journal;
+	}
+
+	/*
+	 * Gets the number of accounts in the collection.
+	 */
+	public int size() {
+		return accounts.size();
 	}
 
 }
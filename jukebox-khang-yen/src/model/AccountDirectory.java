@@ -0,0 +1,73 @@
+package model;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An AccountDirectory holds the accounts of every jukebox process on the
+ * machine, so an account created by one kiosk can log in at another and its
+ * songs count against the same daily limit everywhere. The AccountCollection
+ * asks it before taking a user name, and looks in it for accounts it doesn't
+ * know.
+ * 
+ * NONE is a directory that holds nothing, it is used until a real one is set;
+ * then the AccountCollection only knows its own accounts.
+ * 
+ * @author Khang Tran
+ */
+public interface AccountDirectory {
+
+	AccountDirectory NONE = new AccountDirectory() {
+		@Override
+		public boolean add(Account account) {
+			return true;
+		}
+
+		@Override
+		public List<Account> addAll(Collection<Account> accounts) {
+			return List.of();
+		}
+
+		@Override
+		public Account find(String userName) {
+			return null;
+		}
+
+		@Override
+		public void passWordChanged(Account account) {
+		}
+	};
+
+	/**
+	 * Adds a new account, unless another process took its user name. The
+	 * account then counts its songs in the directory.
+	 * 
+	 * @param account the account
+	 * @return false if the user name is taken
+	 */
+	boolean add(Account account);
+
+	/**
+	 * Adds the accounts as add() does, all at once, for example when a jukebox
+	 * starts sharing the accounts it loaded.
+	 * 
+	 * @param accounts the accounts
+	 * @return the accounts that were not added, because another process took
+	 *         the user name or it can't be kept in the directory
+	 */
+	List<Account> addAll(Collection<Account> accounts);
+
+	/**
+	 * Finds an account, for example one another process created.
+	 * 
+	 * @param userName the user name
+	 * @return the account, counting its songs in the directory, or null
+	 */
+	Account find(String userName);
+
+	/*
+	 * The account's password was hashed again.
+	 */
+	void passWordChanged(Account account);
+
+}
@@ -0,0 +1,170 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The AudioCache class keeps the bytes of recently played song files, so a
+ * song that is played again is served from memory instead of the disk. Small
+ * files are read into the heap. Larger files are memory-mapped, so the
+ * operating system keeps their pages and the heap doesn't hold them.
+ *
+ * The cache holds at most its budget of bytes. When a new file doesn't fit,
+ * the files used least recently are dropped until it does; a mapped file is
+ * unmapped once nothing uses its buffer any more. A file that changed on disk
+ * since it was cached is read again.
+ *
+ * It may be used from any thread. Files are read without holding the lock, so
+ * a slow read doesn't hold up songs that are already cached.
+ *
+ * @author Yen Lai
+ */
+public class AudioCache {
+	// files up to this size are read into the heap, larger ones are mapped
+	public static final int DEFAULT_IN_MEMORY_LIMIT = 1024 * 1024;
+
+	private final long budget;
+	private final int inMemoryLimit;
+	// least recently used first
+	private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytesResident;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param budget the most bytes the cache holds
+	 */
+	public AudioCache(long budget) {
+		this(budget, DEFAULT_IN_MEMORY_LIMIT);
+	}
+
+	/**
+	 * @param budget        the most bytes the cache holds
+	 * @param inMemoryLimit files up to this size are read into the heap, larger
+	 *                      ones are memory-mapped
+	 */
+	public AudioCache(long budget, int inMemoryLimit) {
+		this.budget = budget;
+		this.inMemoryLimit = inMemoryLimit;
+	}
+
+	/**
+	 * Gets the bytes of a song file, from the cache if the file hasn't changed
+	 * since it was cached.
+	 *
+	 * @param file the song file
+	 * @return a read-only buffer of the whole file, positioned at its start
+	 * @throws IOException if the file can't be read
+	 */
+	public ByteBuffer get(Path file) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.size == size && entry.modified == modified) {
+				hits.increment();
+				return entry.bytes.duplicate();
+			}
+		}
+		misses.increment();
+		ByteBuffer bytes = load(key, size);
+		synchronized (this) {
+			if (size <= budget) {
+				Entry old = entries.remove(key);
+				if (old != null)
+					bytesResident -= old.size;
+				evict(size);
+				entries.put(key, new Entry(bytes, size, modified));
+				bytesResident += size;
+			}
+		}
+		return bytes.duplicate();
+	}
+
+	private ByteBuffer load(Path file, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (size > inMemoryLimit)
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+			ByteBuffer bytes = ByteBuffer.allocate((int) size);
+			while (bytes.hasRemaining()) {
+				if (channel.read(bytes, bytes.position()) < 0)
+					break;
+			}
+			return bytes.flip().asReadOnlyBuffer();
+		}
+	}
+
+	/*
+	 * Drops the least recently used files until there is room for size bytes.
+	 */
+	private void evict(long size) {
+		Iterator<Map.Entry<Path, Entry>> oldest = entries.entrySet().iterator();
+		while (bytesResident + size > budget && oldest.hasNext()) {
+			bytesResident -= oldest.next().getValue().size;
+			oldest.remove();
+		}
+	}
+
+	/*
+	 * Gets the share of get() calls that were served from the cache, or 0 if
+	 * get() wasn't called yet.
+	 */
+	public double getHitRatio() {
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/*
+	 * Gets the bytes of all the cached files, in the heap or mapped.
+	 */
+	public synchronized long getBytesResident() {
+		return bytesResident;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/*
+	 * Gets the number of cached files.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/*
+	 * The bytes of a file and the size and time it had when they were read.
+	 */
+	private static class Entry {
+		final ByteBuffer bytes;
+		final long size;
+		final long modified;
+
+		Entry(ByteBuffer bytes, long size, long modified) {
+			this.bytes = bytes;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The CatalogIngester class turns MP3 files into Songs by reading their ID3
+ * tags. The files are split in halves on a fork-join pool until a part is
+ * small enough to read on one thread, so a large library is read by every
+ * core at once. The Songs come back in the same order as the files.
+ *
+ * A file without a title is shown by its file name, and a missing artist or
+ * length by "Unknown Artist" or "Unknown Duration". A file that can't be read
+ * is treated as a file without tags.
+ *
+ * @author Yen Lai
+ */
+public final class CatalogIngester {
+	// files read one after another by a single task
+	private static final int FILES_PER_TASK = 64;
+
+	private CatalogIngester() {
+	}
+
+	/**
+	 * Reads the tags of the files on the common fork-join pool.
+	 *
+	 * @param files the MP3 files
+	 * @return a Song for each file, in the same order
+	 */
+	public static List<Song> ingest(List<Path> files) {
+		return ingest(files, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Reads the tags of the files on the given pool.
+	 *
+	 * @param files the MP3 files
+	 * @param pool  the pool that reads them
+	 * @return a Song for each file, in the same order
+	 */
+	public static List<Song> ingest(List<Path> files, ForkJoinPool pool) {
+		Path[] paths = files.toArray(new Path[0]);
+		Song[] songs = new Song[paths.length];
+		pool.invoke(new IngestTask(paths, songs, 0, paths.length));
+		return Arrays.asList(songs);
+	}
+
+	/**
+	 * Reads the tags of one file.
+	 *
+	 * @param file   the MP3 file
+	 * @param buffer a buffer of Id3Tag.bufferSize() bytes
+	 * @return the Song of the file
+	 */
+	public static Song readSong(Path file, ByteBuffer buffer) {
+		String fileName = file.getFileName().toString();
+		Id3Tag tag;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			tag = Id3Tag.read(channel, buffer);
+		} catch (IOException | RuntimeException e) {
+			// a damaged tag doesn't stop the other files from being read
+			return new Song(fileName, "Unknown Artist", "Unknown Duration", fileName);
+		}
+		String title = tag.getTitle() != null ? tag.getTitle() : fileName;
+		String artist = tag.getArtist() != null ? tag.getArtist() : "Unknown Artist";
+		return new Song(title, artist, playtime(tag.getLengthMillis()), fileName, tag.getAlbum());
+	}
+
+	/*
+	 * Shows a length as minutes and seconds, like the songs the jukebox came
+	 * with.
+	 */
+	private static String playtime(long millis) {
+		if (millis < 0)
+			return "Unknown Duration";
+		long seconds = millis / 1000;
+		return String.format("%d:%02d", seconds / 60, seconds % 60);
+	}
+
+	/*
+	 * Reads the files from start to end, or splits them in two.
+	 */
+	@SuppressWarnings("serial")
+	private static class IngestTask extends RecursiveAction {
+		private final Path[] files;
+		private final Song[] songs;
+		private final int start;
+		private final int end;
+
+		IngestTask(Path[] files, Song[] songs, int start, int end) {
+			this.files = files;
+			this.songs = songs;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= FILES_PER_TASK) {
+				// one buffer for all the files of this task
+				ByteBuffer buffer = ByteBuffer.allocate(Id3Tag.bufferSize());
+				for (int i = start; i < end; i++)
+					songs[i] = readSong(files[i], buffer);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new IngestTask(files, songs, start, middle), new IngestTask(files, songs, middle, end));
+		}
+	}
+
+}
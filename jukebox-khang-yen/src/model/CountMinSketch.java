@@ -0,0 +1,92 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The CountMinSketch class counts how often keys were added in a fixed amount
+ * of memory, however many different keys there are. It keeps depth rows of
+ * width counters; each key adds to one counter of every row, picked by a
+ * different hash for each row, and its count is the smallest of its counters.
+ *
+ * The count is never too low. It is too high when other keys share all its
+ * counters; with probability 1 - e^-depth it is too high by at most
+ * e / width of everything added. With 4 rows of 1024 counters that is 0.27%
+ * of the total, 98% of the time, in 16 KB.
+ *
+ * It is not thread safe.
+ *
+ * @author Yen Lai
+ */
+public final class CountMinSketch {
+	private final int depth;
+	private final int mask;
+	private final int[] counters;
+
+	/**
+	 * Makes an empty sketch.
+	 *
+	 * @param depth the number of rows, at least 1
+	 * @param width the number of counters in a row, a power of two
+	 */
+	public CountMinSketch(int depth, int width) {
+		if (depth < 1 || width < 1 || Integer.bitCount(width) != 1)
+			throw new IllegalArgumentException("depth " + depth + ", width " + width);
+		this.depth = depth;
+		this.mask = width - 1;
+		this.counters = new int[depth * width];
+	}
+
+	/**
+	 * Adds to the count of a key.
+	 *
+	 * @param key   the key
+	 * @param count how much to add, not negative
+	 */
+	public void add(long key, int count) {
+		for (int row = 0; row < depth; row++) {
+			int i = index(key, row);
+			counters[i] = (int) Math.min(Integer.MAX_VALUE, (long) counters[i] + count);
+		}
+	}
+
+	/**
+	 * Gets the count of a key, which may be too high but never too low.
+	 *
+	 * @param key the key
+	 * @return the smallest counter of the key
+	 */
+	public int estimate(long key) {
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++)
+			min = Math.min(min, counters[index(key, row)]);
+		return min;
+	}
+
+	/*
+	 * Sets every count back to 0.
+	 */
+	public void clear() {
+		Arrays.fill(counters, 0);
+	}
+
+	/*
+	 * Gets the memory the counters take, in bytes.
+	 */
+	public long getBytes() {
+		return counters.length * (long) Integer.BYTES;
+	}
+
+	/*
+	 * The counter of the key in a row. Each row mixes the key with its own
+	 * seed, so two keys that share a counter in one row rarely share one in
+	 * the others.
+	 */
+	private int index(long key, int row) {
+		long h = key ^ (row + 1) * 0x9E3779B97F4A7C15L;
+		h = (h ^ h >>> 33) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ h >>> 33) * 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return row * (mask + 1) + ((int) h & mask);
+	}
+
+}
@@ -0,0 +1,324 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Id3Tag class reads the title, artist, album and length of an MP3 file
+ * from its ID3 tags. It understands ID3v2.2, v2.3 and v2.4 tags at the start
+ * of the file and the ID3v1 tag in its last 128 bytes. A field that the v2 tag
+ * doesn't have is taken from the v1 tag.
+ *
+ * Only the tag bytes are read, with positional reads on a FileChannel. The
+ * frames of a v2 tag are read one at a time and frames that aren't needed,
+ * like cover pictures, are skipped over, so the audio and most of the tag are
+ * never read.
+ *
+ * @author Yen Lai
+ */
+public final class Id3Tag {
+	private static final int V1_SIZE = 128;
+	// frames larger than this hold no text we want
+	private static final int MAX_TEXT_FRAME = 4096;
+	// the largest unsynchronised tag that is read as a whole
+	private static final int MAX_UNSYNCHRONISED_TAG = 256 * 1024;
+
+	private String title;
+	private String artist;
+	private String album;
+	private long lengthMillis = -1;
+
+	private Id3Tag() {
+	}
+
+	/*
+	 * Gets the title, or null if the file has none.
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/*
+	 * Gets the artist, or null if the file has none.
+	 */
+	public String getArtist() {
+		return artist;
+	}
+
+	/*
+	 * Gets the album, or null if the file has none.
+	 */
+	public String getAlbum() {
+		return album;
+	}
+
+	/*
+	 * Gets the length of the song in milliseconds, or -1 if the tag doesn't
+	 * say.
+	 */
+	public long getLengthMillis() {
+		return lengthMillis;
+	}
+
+	/**
+	 * Reads the tags of a file. A file without tags gives an Id3Tag whose
+	 * fields are all missing.
+	 *
+	 * @param channel the file
+	 * @param buffer  a buffer of at least MAX_TEXT_FRAME bytes to read into; it
+	 *                is reused by the caller for the next file
+	 * @return the tags of the file
+	 * @throws IOException if the file can't be read
+	 */
+	public static Id3Tag read(FileChannel channel, ByteBuffer buffer) throws IOException {
+		Id3Tag tag = new Id3Tag();
+		long fileSize = channel.size();
+		if (fileSize >= 10)
+			tag.readV2(channel, buffer, fileSize);
+		if ((tag.title == null || tag.artist == null || tag.album == null) && fileSize >= V1_SIZE)
+			tag.readV1(channel, buffer, fileSize);
+		return tag;
+	}
+
+	/**
+	 * @return the size of buffer that read() needs
+	 */
+	public static int bufferSize() {
+		return MAX_TEXT_FRAME;
+	}
+
+	private void readV2(FileChannel channel, ByteBuffer buffer, long fileSize) throws IOException {
+		ByteBuffer header = readAt(channel, buffer, 0, 10);
+		if (header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3')
+			return;
+		int version = header.get(3);
+		int flags = header.get(5) & 0xFF;
+		long end = 10 + syncsafe(header, 6);
+		if (version < 2 || version > 4 || end > fileSize)
+			return;
+		if ((flags & 0x80) != 0) {
+			// unsynchronisation changes every frame, so the whole tag is needed
+			if (end - 10 <= MAX_UNSYNCHRONISED_TAG)
+				readFrames(resynchronise(readAt(channel, ByteBuffer.allocate((int) (end - 10)), 10, (int) (end - 10))),
+						version, flags);
+			return;
+		}
+		long position = 10;
+		if ((flags & 0x40) != 0 && version >= 3) {
+			// skip the extended header
+			ByteBuffer size = readAt(channel, buffer, position, 4);
+			position += version == 4 ? syncsafe(size, 0) : 4 + (size.getInt(0) & 0xFFFFFFFFL);
+		}
+		int headerSize = version == 2 ? 6 : 10;
+		while (position + headerSize <= end && !isComplete()) {
+			ByteBuffer frame = readAt(channel, buffer, position, headerSize);
+			if (frame.get(0) == 0)
+				break; // padding
+			String id = frameId(frame, version);
+			long size = frameSize(frame, version);
+			int frameFlags = version == 2 ? 0 : frame.getShort(8) & 0xFFFF;
+			position += headerSize;
+			if (size < 0 || position + size > end)
+				break;
+			// compressed or encrypted frames are skipped
+			if (size > 1 && size <= MAX_TEXT_FRAME && isWanted(id) && (frameFlags & 0x00CF) == 0)
+				setFrame(id, readAt(channel, buffer, position, (int) size));
+			position += size;
+		}
+	}
+
+	/*
+	 * Reads the frames of a tag that was read as a whole. A tag whose extended
+	 * header is larger than the tag is damaged and ignored.
+	 */
+	private void readFrames(ByteBuffer frames, int version, int flags) {
+		if ((flags & 0x40) != 0 && version >= 3 && frames.remaining() >= 4) {
+			long skip = version == 4 ? syncsafe(frames, 0) : 4 + (frames.getInt(0) & 0xFFFFFFFFL);
+			if (skip > frames.limit())
+				return;
+			frames.position((int) skip);
+		}
+		int headerSize = version == 2 ? 6 : 10;
+		while (frames.remaining() >= headerSize && frames.get(frames.position()) != 0) {
+			ByteBuffer frame = frames.slice();
+			String id = frameId(frame, version);
+			long size = frameSize(frame, version);
+			frames.position(frames.position() + headerSize);
+			if (size < 0 || size > frames.remaining())
+				break;
+			if (size > 1 && isWanted(id)) {
+				ByteBuffer body = frames.slice();
+				body.limit((int) size);
+				setFrame(id, body);
+			}
+			frames.position(frames.position() + (int) size);
+		}
+	}
+
+	private void readV1(FileChannel channel, ByteBuffer buffer, long fileSize) throws IOException {
+		ByteBuffer v1 = readAt(channel, buffer, fileSize - V1_SIZE, V1_SIZE);
+		if (v1.get(0) != 'T' || v1.get(1) != 'A' || v1.get(2) != 'G')
+			return;
+		if (title == null)
+			title = v1Field(v1, 3);
+		if (artist == null)
+			artist = v1Field(v1, 33);
+		if (album == null)
+			album = v1Field(v1, 63);
+	}
+
+	private boolean isComplete() {
+		return title != null && artist != null && album != null && lengthMillis >= 0;
+	}
+
+	private static boolean isWanted(String id) {
+		switch (id) {
+		case "TT2":
+		case "TIT2":
+		case "TP1":
+		case "TPE1":
+		case "TAL":
+		case "TALB":
+		case "TLE":
+		case "TLEN":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void setFrame(String id, ByteBuffer body) {
+		String text = text(body);
+		if (text == null)
+			return;
+		switch (id) {
+		case "TT2":
+		case "TIT2":
+			title = text;
+			break;
+		case "TP1":
+		case "TPE1":
+			artist = text;
+			break;
+		case "TAL":
+		case "TALB":
+			album = text;
+			break;
+		default:
+			try {
+				lengthMillis = Long.parseLong(text.trim());
+			} catch (NumberFormatException e) {
+				// leave the length unknown
+			}
+		}
+	}
+
+	/*
+	 * Decodes a text frame: an encoding byte, then the text. Only the first of
+	 * several null separated values is kept.
+	 */
+	private static String text(ByteBuffer body) {
+		int start = body.position();
+		int encoding = body.get(start);
+		byte[] bytes = new byte[body.limit() - start - 1];
+		body.get(start + 1, bytes);
+		Charset charset;
+		int width = 1;
+		switch (encoding) {
+		case 0:
+			charset = StandardCharsets.ISO_8859_1;
+			break;
+		case 1:
+			charset = StandardCharsets.UTF_16; // uses the byte order mark
+			width = 2;
+			break;
+		case 2:
+			charset = StandardCharsets.UTF_16BE;
+			width = 2;
+			break;
+		case 3:
+			charset = StandardCharsets.UTF_8;
+			break;
+		default:
+			return null;
+		}
+		int length = 0;
+		while (length + width <= bytes.length && !isNull(bytes, length, width))
+			length += width;
+		String text = new String(bytes, 0, length, charset).trim();
+		return text.isEmpty() ? null : text;
+	}
+
+	private static boolean isNull(byte[] bytes, int at, int width) {
+		return bytes[at] == 0 && (width == 1 || bytes[at + 1] == 0);
+	}
+
+	private static String v1Field(ByteBuffer v1, int offset) {
+		byte[] bytes = new byte[30];
+		v1.get(offset, bytes);
+		int length = 0;
+		while (length < bytes.length && bytes[length] != 0)
+			length++;
+		String text = new String(bytes, 0, length, StandardCharsets.ISO_8859_1).trim();
+		return text.isEmpty() ? null : text;
+	}
+
+	private static String frameId(ByteBuffer frame, int version) {
+		int length = version == 2 ? 3 : 4;
+		char[] id = new char[length];
+		for (int i = 0; i < length; i++)
+			id[i] = (char) (frame.get(i) & 0xFF);
+		return new String(id);
+	}
+
+	private static long frameSize(ByteBuffer frame, int version) {
+		if (version == 2)
+			return (frame.get(3) & 0xFF) << 16 | (frame.get(4) & 0xFF) << 8 | frame.get(5) & 0xFF;
+		if (version == 4)
+			return syncsafe(frame, 4);
+		return frame.getInt(4) & 0xFFFFFFFFL;
+	}
+
+	/*
+	 * A syncsafe integer keeps 7 bits in each of its 4 bytes.
+	 */
+	private static long syncsafe(ByteBuffer buffer, int at) {
+		long value = 0;
+		for (int i = 0; i < 4; i++)
+			value = value << 7 | buffer.get(at + i) & 0x7F;
+		return value;
+	}
+
+	/*
+	 * Removes the 0x00 that unsynchronisation puts after every 0xFF.
+	 */
+	private static ByteBuffer resynchronise(ByteBuffer tag) {
+		byte[] bytes = new byte[tag.remaining()];
+		int length = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			byte b = tag.get(i);
+			bytes[length++] = b;
+			if (b == (byte) 0xFF && i + 1 < bytes.length && tag.get(i + 1) == 0)
+				i++;
+		}
+		return ByteBuffer.wrap(bytes, 0, length).slice();
+	}
+
+	/*
+	 * Reads length bytes at position into the start of buffer.
+	 */
+	private static ByteBuffer readAt(FileChannel channel, ByteBuffer buffer, long position, int length)
+			throws IOException {
+		buffer.clear().limit(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("The tag is cut short");
+		}
+		return buffer.flip();
+	}
+
+}
@@ -0,0 +1,74 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * A Journal is told about every change to the jukebox as it happens, so the
+ * change can be saved right away instead of saving everything when the window
+ * closes. The model classes call it after they change their own state.
+ * 
+ * NONE is a journal that does nothing, it is used until a real one is set.
+ * 
+ * @author Khang Tran
+ */
+public interface Journal {
+
+	Journal NONE = new Journal() {
+		@Override
+		public void accountCreated(Account account) {
+		}
+
+		@Override
+		public void loggedIn(Account account) {
+		}
+
+		@Override
+		public void songEnqueued(Account account, String fileName) {
+		}
+
+		@Override
+		public void songPlayed(Account account, LocalDate day) {
+		}
+
+		@Override
+		public void songSkipped(Account account) {
+		}
+
+		@Override
+		public void dailyReset(Account account, LocalDate day) {
+		}
+	};
+
+	/*
+	 * A new account was added to the AccountCollection.
+	 */
+	void accountCreated(Account account);
+
+	/*
+	 * The account logged in, so it is the last logged in account.
+	 */
+	void loggedIn(Account account);
+
+	/*
+	 * The account added the song with this file name to its play list.
+	 */
+	void songEnqueued(Account account, String fileName);
+
+	/*
+	 * The song at the front of the account's play list finished playing on the
+	 * given day.
+	 */
+	void songPlayed(Account account, LocalDate day);
+
+	/*
+	 * The song at the front of the account's play list couldn't be played, so
+	 * it was taken off without counting.
+	 */
+	void songSkipped(Account account);
+
+	/*
+	 * The account's song count was set back to 0 on the given day.
+	 */
+	void dailyReset(Account account, LocalDate day);
+
+}
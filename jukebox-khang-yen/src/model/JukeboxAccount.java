@@ -6,13 +6,15 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.LinkedList;
-
-import javafx.collections.FXCollections;
+import java.util.List;
 
 /**
  * This class represents an account when user has logged in. It keeps track of
- * the account's music record.
+ * the account's music record: the songs the user has selected, the play list
+ * they are waiting in, and how many songs the user may still add today.
+ * 
+ * It doesn't use JavaFX. The SongSelector view shows whichever JukeboxAccount
+ * is logged in.
  * 
  * @author Khang Tran
  */
@@ -23,78 +25,202 @@ public class JukeboxAccount implements Serializable {
 	// lastplayDate keeps track of the last song was played on the account
 	private LocalDate lastPlayDate;
 	private Account account;
-	private SongSelector songSelector;
+	// The playList that hold the songs the user has selected that haven't
+	// played yet
+	private PlayList playList = new PlayList();
+	private transient Journal journal = Journal.NONE;
+	// decides how many songs the account may play, null after loading
+	private transient QuotaService quotas;
 
 	/*
-	 * constructor
+	 * constructor for an account whose songs are limited by the shared
+	 * QuotaService
 	 */
 	public JukeboxAccount(Account account) {
+		this(account, null);
+	}
+
+	/*
+	 * constructor for an account whose songs are limited by the given
+	 * QuotaService, or by the shared one if it is null
+	 */
+	public JukeboxAccount(Account account, QuotaService quotas) {
 		this.account = account;
-		songSelector = new SongSelector(account);
+		this.quotas = quotas;
 	}
 
 	/*
-	 * method to check if the account can play more song
+	 * method to check if the account can play more song. A new day starts by
+	 * itself, the QuotaService reads the songs played on an earlier day as 0.
 	 */
 	public boolean canPlaySong() {
-		today = LocalDate.now();
-		// if today is a new day then reset the song count
-		// of the account and return true to let to user play song
-		if (!today.equals(lastPlayDate)) {
-			account.resetSongCount();
-			return true;
-		}
-		// if today is not a new day but the account has not played
-		// more than 3 songs then return true and let the user play song
-		else if (today.equals(lastPlayDate) && account.getSongPlayed() < 3)
-			return true;
-		// if today is not a new day and the account has played
-		// more than 3 songs then return false
-		return false;
+		today = getQuotas().today();
+		return getQuotas().allows(account);
 	}
 
 	/*
 	 * method to let the user play a song if the account can play song
 	 */
 	public void playASong() {
-		// check if the account can play song
-		if (canPlaySong()) {
-			// record the last play date and play the song
-			lastPlayDate = LocalDate.now();
-			account.recordSongPlayed();
+		// count the song only if the account can still play one
+		if (getQuotas().tryRecordPlay(account)) {
+			// record the last play date
+			lastPlayDate = getQuotas().today();
 		}
 	}
 
 	// This method returns the number of songs that have been selected today.
 	public int songsSelectedToday() {
-		return account.getSongPlayed();
+		return getQuotas().playedToday(account);
 	}
 
 	// Add current date by one day
 	// Increase the current date by one day and resets the count of songs selected
 	// today to zero.
 	public void pretendItsTomorrow() {
-		today = today.plusDays(1);
-		account.resetSongCount();
+		today = (today == null ? getQuotas().today() : today).plusDays(1);
+		getQuotas().reset(account);
+		getJournal().dailyReset(account, getQuotas().today());
+	}
+
+	/*
+	 * method to check if the user can add another song. The songs waiting in the
+	 * play list count against the songs the account may still play today.
+	 */
+	public boolean canQueueSong() {
+		return playList.size() < getQuotas().remaining(account);
+	}
+
+	/*
+	 * Gets how many more songs the account may queue today.
+	 */
+	public int songsLeftToQueue() {
+		return Math.max(0, getQuotas().remaining(account) - playList.size());
+	}
+
+	/**
+	 * Adds a song to the end of the play list, counts it against the account's
+	 * songs for the day and tells the journal.
+	 * 
+	 * @param song the song to add
+	 */
+	public void queueSong(Song song) {
+		// add the next song to the PlayList
+		playList.queueUpNextSong(song);
+		getJournal().songEnqueued(account, song.getFileName());
+	}
+
+	/**
+	 * Removes the song at the front of the play list after it has played,
+	 * records it as played by the account and tells the journal.
+	 */
+	public void songFinished() {
+		songFinished(getQuotas().today());
+	}
+
+	/**
+	 * Removes the song at the front of the play list after it has played on the
+	 * given day, for example when the journal is read back, and records it as
+	 * played by the account.
+	 * 
+	 * @param day the day the song was played
+	 */
+	public void songFinished(LocalDate day) {
+		playList.playNextSong();
+		// it was queued while the account could play it, so it always counts
+		getQuotas().recordPlay(account, day);
+		if (lastPlayDate == null || day.isAfter(lastPlayDate))
+			lastPlayDate = day;
+		getJournal().songPlayed(account, day);
+	}
+
+	/**
+	 * Removes the song at the front of the play list because it couldn't be
+	 * played. It doesn't count against the account's songs, and the journal is
+	 * told it was skipped.
+	 */
+	public void songSkipped() {
+		playList.playNextSong();
+		getJournal().songSkipped(account);
+	}
+
+	/*
+	 * Gets the songs the user has selected that haven't played yet. The list is
+	 * a view of the play list and can't be changed.
+	 */
+	public List<Song> getSelectedSongs() {
+		return playList.getSongs();
+	}
+
+	/*
+	 * Return the playList
+	 */
+	public PlayList getPlayList() {
+		return playList;
+	}
+
+	/**
+	 * Puts back the play list that was saved earlier.
+	 * 
+	 * @param songs the songs in the play list
+	 */
+	public void restoreSongs(List<Song> songs) {
+		// keep the catalog's songs rather than the copies that were read, so
+		// the play list holds their ids
+		SongCatalog catalog = SongCatalog.shared();
+		playList = new PlayList(catalog);
+		for (Song song : songs)
+			playList.queueUpNextSong(catalog.intern(song));
+	}
+
+	/*
+	 * Gets the account of this JukeboxAccount.
+	 */
+	public Account getAccount() {
+		return account;
+	}
+
+	/*
+	 * Gets the date the account last checked if it can play a song, or null.
+	 */
+	public LocalDate getToday() {
+		return today;
+	}
+
+	/*
+	 * Gets the date the account last played a song, or null.
+	 */
+	public LocalDate getLastPlayDate() {
+		return lastPlayDate;
 	}
 
 	/*
-	 * Gets the SongSelector associated with this JukeboxAccount.
+	 * Sets the dates that were saved earlier.
 	 */
-	public SongSelector getSongSelector() {
-		return this.songSelector;
+	public void setPlayDates(LocalDate today, LocalDate lastPlayDate) {
+		this.today = today;
+		this.lastPlayDate = lastPlayDate;
 	}
 
 	/*
-	 * Sets the SongSelector for this JukeboxAccount.
+	 * Sets the journal that is told about changes to this JukeboxAccount.
 	 */
-	public void setSongSelector(SongSelector songSelector) {
-		this.songSelector = songSelector;
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
+
+	private Journal getJournal() {
+		// the journal is not saved, so it is null after loading
+		return journal == null ? Journal.NONE : journal;
+	}
+
+	private QuotaService getQuotas() {
+		return quotas == null ? QuotaService.shared() : quotas;
 	}
 
 	/**
 	 * Custom serialization process for saving the state of the JukeboxAccount
-	 * object. This method saves the current date, last play date, song list-view,
+	 * object. This method saves the current date, last play date, selected songs,
 	 * play-list, and associated account.
 	 * 
 	 * @param out ObjectOutputStream to write the object's state
@@ -105,21 +231,25 @@ public class JukeboxAccount implements Serializable {
 		out.writeObject(today);
 		out.writeObject(lastPlayDate);
 
-		// Save the song list from the SongSelector's ListView
-		out.writeObject(new ArrayList<>(songSelector.getSongListView()));
+		// Save the selected songs
+		out.writeObject(new ArrayList<>(playList.getSongs()));
 
-		// Save the playList from the SongSelector's PlayList
-		out.writeObject(new ArrayList<>(songSelector.getPlayList().getSongQueue()));
+		// Save the song files of the playList, the same songs as above
+		ArrayList<String> playlistSongs = new ArrayList<>();
+		for (Song song : playList.getSongs())
+			playlistSongs.add(SongCatalog.SONG_DIRECTORY + "/" + song.getFileName());
+		out.writeObject(playlistSongs);
 
 		// Save the associated Account object
 		out.writeObject(account);
-		// Save the number of songs played
-		out.writeInt(songSelector.getTotalSongsAdded()); 
+		// The number of songs added is no longer kept, the songs waiting are
+		// written in its place
+		out.writeInt(playList.size());
 	}
 
 	/**
 	 * This method restores the saved state of the JukeboxAccount object. It READS
-	 * the saved current date, last play date, song list view, play-list, and
+	 * the saved current date, last play date, selected songs, play-list, and
 	 * associated account.
 	 * 
 	 * @param in ObjectInputStream to read the object's state
@@ -133,41 +263,21 @@ public class JukeboxAccount implements Serializable {
 		today = (LocalDate) in.readObject();
 		lastPlayDate = (LocalDate) in.readObject();
 
-		// Deserialize the song list view from the input stream
+		// Deserialize the selected songs from the input stream
 		@SuppressWarnings("unchecked")
 		ArrayList<Song> songs = (ArrayList<Song>) in.readObject();
 
-		// Deserialize the playList from the input stream
-		@SuppressWarnings("unchecked")
-		ArrayList<String> playlistSongs = (ArrayList<String>) in.readObject();
+		// The song files of the playList are the selected songs again
+		in.readObject();
 
 		// Deserialize the associated Account object
 		account = (Account) in.readObject();
 
-		// Deserialize the number of songs played
-		// this prevents users from adding more songs to the list if they already have 3 songs!
-		int totalAdd = in.readInt();
-
-		// Initialize a new SongSelector object with deserialized data
-		songSelector = new SongSelector(account);
-		songSelector.setSongs(FXCollections.observableArrayList(songs));
-		songSelector.setTotalSongsAdded(totalAdd);
-
-		// Create a new playList and add the old playList back
-		PlayList playList = new PlayList();
-		playList.setSongQueue(new LinkedList<>(playlistSongs));
-
-		// Set the old playList to SongSelector
-		songSelector.setPlayList(playList);
-		songSelector.setSongListView(FXCollections.observableArrayList(songs));
-		
-		// Check if users have already added songs to the list and display it on the pane
-		if (songSelector.getTotalSongsAdded() == 0) {
-		    songSelector.getMessageLabel().setText("0 songs selected");
-		} else {
-		    songSelector.getMessageLabel().setText("You have selected " + songSelector.getTotalSongsAdded() + " song(s) so far.");
-		}
+		// The number of songs added, which the QuotaService counts now
+		in.readInt();
 
+		// Put back the playList
+		restoreSongs(songs);
 	}
 
 }
@@ -0,0 +1,161 @@
+package model;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The JukeboxState class holds everything the jukebox saves: all of the
+ * accounts, the JukeboxAccount of every account that has logged in, and the
+ * account that logged in last.
+ * 
+ * A loaded jukebox doesn't build the JukeboxAccount of every account up
+ * front. Each one is built from its saved state by the Loader the first time
+ * it is needed, usually when the account logs in.
+ * 
+ * @author Khang Tran
+ */
+@SuppressWarnings("serial")
+public class JukeboxState implements Serializable {
+	private AccountCollection accountCollection;
+	// so JukeboxAccount will hold account
+	private Map<Account, JukeboxAccount> accountMap;
+	private Account lastLoggedInAccount;
+	private transient Journal journal = Journal.NONE;
+	private transient Loader loader;
+	// the accounts logged in now, not saved
+	private transient Set<Account> sessions = ConcurrentHashMap.newKeySet();
+
+	/*
+	 * constructor for a jukebox with only the hard coded accounts
+	 */
+	public JukeboxState() {
+		this(new AccountCollection(), new HashMap<>(), null);
+	}
+
+	public JukeboxState(AccountCollection accountCollection, Map<Account, JukeboxAccount> accountMap,
+			Account lastLoggedInAccount) {
+		this(accountCollection, accountMap, lastLoggedInAccount, null);
+	}
+
+	/*
+	 * constructor for a loaded jukebox whose JukeboxAccounts are built by the
+	 * loader when they are first needed
+	 */
+	public JukeboxState(AccountCollection accountCollection, Map<Account, JukeboxAccount> accountMap,
+			Account lastLoggedInAccount, Loader loader) {
+		this.accountCollection = accountCollection;
+		this.accountMap = accountMap;
+		this.lastLoggedInAccount = lastLoggedInAccount;
+		this.loader = loader;
+	}
+
+	/*
+	 * Gets the JukeboxAccount of the account, loading it from its saved state or
+	 * creating it the first time the account uses the jukebox.
+	 */
+	public JukeboxAccount getJukeboxAccount(Account account) {
+		JukeboxAccount jukeboxAccount = accountMap.get(account);
+		if (jukeboxAccount != null)
+			return jukeboxAccount;
+		if (loader != null)
+			jukeboxAccount = loader.load(account);
+		if (jukeboxAccount == null)
+			jukeboxAccount = new JukeboxAccount(account);
+		jukeboxAccount.setJournal(getJournal());
+		accountMap.put(account, jukeboxAccount);
+		return jukeboxAccount;
+	}
+
+	/*
+	 * Records that the account logged in and returns its JukeboxAccount.
+	 */
+	public JukeboxAccount logIn(Account account) {
+		JukeboxAccount jukeboxAccount = getJukeboxAccount(account);
+		lastLoggedInAccount = account;
+		getSessions().add(account);
+		getJournal().loggedIn(account);
+		return jukeboxAccount;
+	}
+
+	/*
+	 * Records that the account logged out.
+	 */
+	public void logOut(Account account) {
+		getSessions().remove(account);
+	}
+
+	/*
+	 * Gets the number of accounts logged in now. May be called on any thread.
+	 */
+	public int getSessionCount() {
+		return getSessions().size();
+	}
+
+	private synchronized Set<Account> getSessions() {
+		// not saved, so it is null after Java serialization
+		if (sessions == null)
+			sessions = ConcurrentHashMap.newKeySet();
+		return sessions;
+	}
+
+	public AccountCollection getAccountCollection() {
+		return accountCollection;
+	}
+
+	/*
+	 * Gets the JukeboxAccounts that have been built so far. Accounts that were
+	 * loaded but haven't been used yet are only in the loader.
+	 */
+	public Map<Account, JukeboxAccount> getAccountMap() {
+		return accountMap;
+	}
+
+	/*
+	 * Gets the loader of the JukeboxAccounts that haven't been built yet, or
+	 * null.
+	 */
+	public Loader getLoader() {
+		return loader;
+	}
+
+	public Account getLastLoggedInAccount() {
+		return lastLoggedInAccount;
+	}
+
+	public void setLastLoggedInAccount(Account lastLoggedInAccount) {
+		this.lastLoggedInAccount = lastLoggedInAccount;
+	}
+
+	/*
+	 * Gets the journal that is told about changes, never null.
+	 */
+	public Journal getJournal() {
+		return journal == null ? Journal.NONE : journal;
+	}
+
+	/*
+	 * Sets the journal that is told about changes to the accounts and to every
+	 * JukeboxAccount.
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+		accountCollection.setJournal(journal);
+		for (JukeboxAccount jukeboxAccount : accountMap.values())
+			jukeboxAccount.setJournal(journal);
+	}
+
+	/**
+	 * A Loader builds the JukeboxAccount of an account from its saved state.
+	 */
+	public interface Loader {
+		/**
+		 * @param account the account to load
+		 * @return the account's JukeboxAccount, or null if none was saved
+		 */
+		JukeboxAccount load(Account account);
+	}
+
+}
@@ -0,0 +1,95 @@
+package model;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The LoginService class checks passwords away from the JavaFX thread. Hashing
+ * a password is slow on purpose, so logging in or creating an account runs on
+ * a small pool of worker threads and the result comes back as a
+ * CompletableFuture. The pool has one thread per core and a bounded queue; if
+ * too many logins are waiting, the future fails with a
+ * RejectedExecutionException instead of piling up work.
+ * 
+ * The time each login takes, waiting included, goes to the login.latency
+ * histogram of the shared Metrics.
+ * 
+ * @author Khang Tran
+ */
+public final class LoginService {
+	private static final int QUEUE_SIZE = 1024;
+
+	private static final ExecutorService WORKERS = new ThreadPoolExecutor(
+			Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(),
+			0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE),
+			threadFactory("login-worker"));
+
+	private LoginService() {
+	}
+
+	/**
+	 * Checks the user name and password on a worker thread.
+	 * 
+	 * @param accounts the accounts to log in to
+	 * @param id       the user name
+	 * @param pw       the password
+	 * @return a future with the account, or null if the login is wrong
+	 */
+	public static CompletableFuture<Account> authorize(AccountCollection accounts, String id, String pw) {
+		return timed(() -> accounts.authorize(id, pw), "login.latency", "login.failures");
+	}
+
+	/**
+	 * Creates an account on a worker thread. The future fails with an
+	 * IllegalArgumentException if the user name is taken.
+	 * 
+	 * @param accounts the accounts to add the new account to
+	 * @param id       the user name
+	 * @param pw       the password
+	 * @return a future with the new account
+	 */
+	public static CompletableFuture<Account> createAccount(AccountCollection accounts, String id, String pw) {
+		return timed(() -> accounts.createAccount(id, pw), "login.createLatency", "login.createFailures");
+	}
+
+	private static <T> CompletableFuture<T> supply(Supplier<T> task) {
+		try {
+			return CompletableFuture.supplyAsync(task, WORKERS);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/*
+	 * Runs the task on a worker thread and records the time from asking to
+	 * getting the answer in the latency histogram. Wrong logins, taken user
+	 * names and logins turned away count as failures.
+	 */
+	private static CompletableFuture<Account> timed(Supplier<Account> task, String latency, String failures) {
+		long start = System.nanoTime();
+		Metrics metrics = Metrics.shared();
+		return supply(task).whenComplete((account, error) -> {
+			metrics.histogram(latency).recordSince(start);
+			if (account == null)
+				metrics.counter(failures).increment();
+		});
+	}
+
+	private static ThreadFactory threadFactory(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			// don't keep the application running after the window closes
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+}
@@ -0,0 +1,457 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * The Metrics class holds the numbers that show what the jukebox is doing:
+ * counters, gauges that read a value when asked, and histograms of times. Each
+ * one has a name made of a group and a name in the group, for example
+ * login.latency or queue.depth.
+ *
+ * The metrics can be published as JMX MBeans, one for each group, named
+ * jukebox:type=login and so on, so jconsole or any other JMX client can read
+ * them on the running jukebox. A histogram shows as its count, mean, p50, p99
+ * and max in milliseconds.
+ *
+ * Counters and histograms may be updated from any thread and never lock.
+ *
+ * The whole jukebox shares one registry, which shared() returns.
+ *
+ * @author Khang Tran
+ */
+public class Metrics {
+	private static final AtomicReference<Metrics> shared = new AtomicReference<>();
+	private static final String DOMAIN = "jukebox";
+
+	// by name, so a group's metrics are next to each other
+	private final ConcurrentNavigableMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+	private final ConcurrentMap<String, ObjectName> published = new ConcurrentHashMap<>();
+	private volatile MBeanServer server;
+
+	/*
+	 * Gets the registry shared by the whole jukebox.
+	 */
+	public static Metrics shared() {
+		Metrics metrics = shared.get();
+		if (metrics == null) {
+			shared.compareAndSet(null, new Metrics());
+			metrics = shared.get();
+		}
+		return metrics;
+	}
+
+	/**
+	 * Replaces the shared registry.
+	 *
+	 * @param metrics the new shared registry
+	 */
+	public static void publish(Metrics metrics) {
+		shared.set(Objects.requireNonNull(metrics));
+	}
+
+	/**
+	 * Gets the counter with a name, making it the first time.
+	 *
+	 * @param name the group and name, for example login.failures
+	 * @return the counter
+	 */
+	public Counter counter(String name) {
+		return get(name, Counter.class, Counter::new);
+	}
+
+	/**
+	 * Gets the histogram with a name, making it the first time.
+	 *
+	 * @param name the group and name, for example login.latency
+	 * @return the histogram
+	 */
+	public Histogram histogram(String name) {
+		return get(name, Histogram.class, Histogram::new);
+	}
+
+	/**
+	 * Adds a histogram that was made elsewhere, replacing the one with the same
+	 * name.
+	 *
+	 * @param name      the group and name
+	 * @param histogram the histogram
+	 */
+	public void register(String name, Histogram histogram) {
+		put(name, Objects.requireNonNull(histogram));
+	}
+
+	/**
+	 * Adds a gauge, replacing the one with the same name. The value is read
+	 * each time the gauge is, on the thread that reads it, so it must be quick
+	 * and safe to call from any thread.
+	 *
+	 * @param name  the group and name, for example queue.depth
+	 * @param value reads the value
+	 */
+	public void gauge(String name, DoubleSupplier value) {
+		put(name, new Gauge(Objects.requireNonNull(value)));
+	}
+
+	private <T> T get(String name, Class<T> type, Supplier<T> maker) {
+		Object metric = metrics.get(name);
+		if (metric == null) {
+			String group = groupOf(name);
+			metric = maker.get();
+			Object old = metrics.putIfAbsent(name, metric);
+			if (old != null)
+				metric = old;
+			else
+				groupChanged(group);
+		}
+		if (!type.isInstance(metric))
+			throw new IllegalArgumentException(name + " is not a " + type.getSimpleName());
+		return type.cast(metric);
+	}
+
+	private void put(String name, Object metric) {
+		String group = groupOf(name);
+		metrics.put(name, metric);
+		groupChanged(group);
+	}
+
+	/**
+	 * Gets the value of every metric, by name. A histogram gives its count,
+	 * mean, p50, p99 and max, for example login.latencyP99Millis.
+	 *
+	 * @return the values, in the order of their names
+	 */
+	public Map<String, Object> getValues() {
+		Map<String, Object> values = new LinkedHashMap<>();
+		for (Map.Entry<String, Object> metric : metrics.entrySet())
+			addValues(values, metric.getKey(), metric.getValue());
+		return values;
+	}
+
+	private static void addValues(Map<String, Object> values, String name, Object metric) {
+		if (metric instanceof Counter) {
+			values.put(name, ((Counter) metric).get());
+		} else if (metric instanceof Gauge) {
+			values.put(name, ((Gauge) metric).value.getAsDouble());
+		} else {
+			Histogram histogram = (Histogram) metric;
+			values.put(name + "Count", histogram.getCount());
+			values.put(name + "MeanMillis", histogram.getMean() / 1e6);
+			values.put(name + "P50Millis", histogram.percentile(50) / 1e6);
+			values.put(name + "P99Millis", histogram.percentile(99) / 1e6);
+			values.put(name + "MaxMillis", histogram.getMax() / 1e6);
+		}
+	}
+
+	/**
+	 * Publishes the metrics as MBeans, one for each group. Groups added later
+	 * are published when their first metric is added.
+	 *
+	 * @param server the MBean server, usually the platform's
+	 * @throws JMException if an MBean can't be registered
+	 */
+	public void registerMBeans(MBeanServer server) throws JMException {
+		this.server = server;
+		for (String name : metrics.keySet())
+			registerGroup(groupOf(name));
+	}
+
+	/**
+	 * Removes the MBeans this registry published.
+	 *
+	 * @throws JMException if an MBean can't be removed
+	 */
+	public void unregisterMBeans() throws JMException {
+		MBeanServer from = server;
+		server = null;
+		for (ObjectName name : published.values()) {
+			if (from != null && from.isRegistered(name))
+				from.unregisterMBean(name);
+		}
+		published.clear();
+	}
+
+	private void groupChanged(String group) {
+		if (server == null)
+			return;
+		try {
+			registerGroup(group);
+		} catch (JMException e) {
+			System.out.println("Publishing the " + group + " metrics failed");
+			e.printStackTrace();
+		}
+	}
+
+	private void registerGroup(String group) throws JMException {
+		MBeanServer to = server;
+		if (to == null || published.containsKey(group))
+			return;
+		ObjectName name = new ObjectName(DOMAIN, "type", group);
+		if (published.putIfAbsent(group, name) != null)
+			return;
+		if (to.isRegistered(name))
+			to.unregisterMBean(name);
+		to.registerMBean(new GroupMBean(group), name);
+	}
+
+	private static String groupOf(String name) {
+		int dot = name.indexOf('.');
+		if (dot <= 0 || dot == name.length() - 1)
+			throw new IllegalArgumentException("A metric is named group.name, not " + name);
+		return name.substring(0, dot);
+	}
+
+	/**
+	 * Gets the heap that was still in use after the last garbage collection,
+	 * the heap the live objects hold, or the heap in use now if the JVM doesn't
+	 * tell.
+	 *
+	 * @return the bytes
+	 */
+	public static long retainedHeapBytes() {
+		long retained = 0;
+		boolean known = false;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP)
+				continue;
+			MemoryUsage afterCollection = pool.getCollectionUsage();
+			if (afterCollection != null) {
+				retained += afterCollection.getUsed();
+				known = true;
+			}
+		}
+		if (known && retained > 0)
+			return retained;
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Override
+	public String toString() {
+		return getValues().toString();
+	}
+
+	/**
+	 * A count that only changes by being added to.
+	 */
+	public static class Counter {
+		private final LongAdder count = new LongAdder();
+
+		public void increment() {
+			count.increment();
+		}
+
+		public void add(long amount) {
+			count.add(amount);
+		}
+
+		public long get() {
+			return count.sum();
+		}
+	}
+
+	/*
+	 * A value read when it is asked for.
+	 */
+	private static class Gauge {
+		final DoubleSupplier value;
+
+		Gauge(DoubleSupplier value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * A histogram of times in nanoseconds. The times are counted in buckets
+	 * 1/16 of a power of two wide, so it takes a few kilobytes however many
+	 * times it holds, and a percentile is off by at most 1/16.
+	 */
+	public static class Histogram {
+		private static final int SUB_BUCKETS = 16;
+		private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * Records a time.
+		 *
+		 * @param nanos the time in nanoseconds, a negative one counts as 0
+		 */
+		public void record(long nanos) {
+			nanos = Math.max(0, nanos);
+			counts.incrementAndGet(bucketOf(nanos));
+			count.increment();
+			total.add(nanos);
+			if (nanos > max.get())
+				max.accumulateAndGet(nanos, Math::max);
+		}
+
+		/**
+		 * Records the time since a start.
+		 *
+		 * @param startNanos the start, from System.nanoTime()
+		 */
+		public void recordSince(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		/*
+		 * Gets the mean time in nanoseconds, or 0 if none was recorded.
+		 */
+		public double getMean() {
+			long recorded = count.sum();
+			return recorded == 0 ? 0 : (double) total.sum() / recorded;
+		}
+
+		/*
+		 * Gets the longest time in nanoseconds.
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * Gets the time that the given share of the times are at or below.
+		 *
+		 * @param percent the share, from 0 to 100
+		 * @return the time in nanoseconds, or 0 if none was recorded
+		 */
+		public long percentile(double percent) {
+			long[] snapshot = new long[counts.length()];
+			long recorded = 0;
+			for (int i = 0; i < snapshot.length; i++) {
+				snapshot[i] = counts.get(i);
+				recorded += snapshot[i];
+			}
+			if (recorded == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(recorded * percent / 100));
+			long seen = 0;
+			for (int bucket = 0; bucket < snapshot.length; bucket++) {
+				seen += snapshot[bucket];
+				if (seen >= rank)
+					return Math.min(max.get(), upperOf(bucket));
+			}
+			return max.get();
+		}
+
+		private static int bucketOf(long nanos) {
+			if (nanos < SUB_BUCKETS)
+				return (int) nanos;
+			int power = 63 - Long.numberOfLeadingZeros(nanos);
+			int fraction = (int) (nanos >>> (power - 4)) & (SUB_BUCKETS - 1);
+			return (power - 3) * SUB_BUCKETS + fraction;
+		}
+
+		/*
+		 * The largest time that falls in a bucket.
+		 */
+		private static long upperOf(int bucket) {
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			int power = bucket / SUB_BUCKETS + 3;
+			long fraction = bucket % SUB_BUCKETS;
+			return ((SUB_BUCKETS + fraction + 1) << (power - 4)) - 1;
+		}
+	}
+
+	/*
+	 * The MBean of a group, whose attributes are the values of the group's
+	 * metrics without the group's name. The attributes are looked up each time,
+	 * so metrics added later show up too.
+	 */
+	private class GroupMBean implements DynamicMBean {
+		private final String prefix;
+
+		GroupMBean(String group) {
+			this.prefix = group + ".";
+		}
+
+		private Map<String, Object> values() {
+			Map<String, Object> values = new LinkedHashMap<>();
+			for (Map.Entry<String, Object> metric : metrics.subMap(prefix, prefix + Character.MAX_VALUE)
+					.entrySet())
+				addValues(values, metric.getKey().substring(prefix.length()), metric.getValue());
+			return values;
+		}
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Object value = values().get(attribute);
+			if (value == null)
+				throw new AttributeNotFoundException(prefix + attribute);
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Object> values = values();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				if (values.containsKey(attribute))
+					list.add(new Attribute(attribute, values.get(attribute)));
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics can't be set");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			// the metrics have no operations
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			List<MBeanAttributeInfo> attributes = new ArrayList<>();
+			for (Map.Entry<String, Object> value : values().entrySet())
+				attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+						value.getKey(), true, false, false));
+			return new MBeanInfo(Metrics.class.getName(), "The " + prefix + "* metrics of the jukebox",
+					attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package model;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * The PasswordHash class holds a salted PBKDF2 hash of a password, so an
+ * account never has to keep the password itself. Each hash remembers its own
+ * salt and cost (the number of PBKDF2 iterations), so the cost can be raised
+ * later without breaking the accounts that were hashed before.
+ * 
+ * Hashing is slow on purpose. Don't create or check a hash on the JavaFX
+ * thread, use LoginService instead.
+ * 
+ * @author Khang Tran
+ */
+@SuppressWarnings("serial")
+public final class PasswordHash implements Serializable {
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	// The cost for new hashes, it can be set with -Djukebox.password.iterations
+	private static volatile int defaultIterations = Integer.getInteger("jukebox.password.iterations", 210_000);
+
+	private final byte[] salt;
+	private final int iterations;
+	private final byte[] hash;
+
+	private PasswordHash(byte[] salt, int iterations, byte[] hash) {
+		this.salt = salt;
+		this.iterations = iterations;
+		this.hash = hash;
+	}
+
+	/**
+	 * Hashes a password with a new random salt and the default cost.
+	 * 
+	 * @param passWord the password to hash
+	 * @return the hash of the password
+	 */
+	public static PasswordHash create(String passWord) {
+		return create(passWord, defaultIterations);
+	}
+
+	/**
+	 * Hashes a password with a new random salt and the given cost.
+	 * 
+	 * @param passWord   the password to hash
+	 * @param iterations the number of PBKDF2 iterations
+	 * @return the hash of the password
+	 */
+	public static PasswordHash create(String passWord, int iterations) {
+		byte[] salt = new byte[SALT_BYTES];
+		RANDOM.nextBytes(salt);
+		return new PasswordHash(salt, iterations, pbkdf2(passWord, salt, iterations));
+	}
+
+	/**
+	 * Rebuilds a hash that was saved earlier.
+	 * 
+	 * @param salt       the salt of the saved hash
+	 * @param iterations the cost of the saved hash
+	 * @param hash       the saved hash bytes
+	 * @return the hash
+	 */
+	public static PasswordHash of(byte[] salt, int iterations, byte[] hash) {
+		return new PasswordHash(salt.clone(), iterations, hash.clone());
+	}
+
+	/*
+	 * Checks if the password matches this hash. The comparison takes the same
+	 * time no matter where the bytes differ.
+	 */
+	public boolean matches(String passWord) {
+		return MessageDigest.isEqual(hash, pbkdf2(passWord, salt, iterations));
+	}
+
+	/*
+	 * Checks if this hash was made with a different cost than the one new hashes
+	 * use, so it should be hashed again the next time the password is known.
+	 */
+	public boolean needsRehash() {
+		return iterations != defaultIterations;
+	}
+
+	// Getters, they return copies so the hash can't be changed
+
+	public byte[] getSalt() {
+		return salt.clone();
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public byte[] getHash() {
+		return hash.clone();
+	}
+
+	/*
+	 * Two hashes are equal if they have the same salt, cost and hash bytes.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof PasswordHash))
+			return false;
+		PasswordHash that = (PasswordHash) other;
+		return iterations == that.iterations && Arrays.equals(salt, that.salt) && Arrays.equals(hash, that.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(hash) + iterations;
+	}
+
+	/*
+	 * Gets the cost used for new hashes.
+	 */
+	public static int getDefaultIterations() {
+		return defaultIterations;
+	}
+
+	/*
+	 * Sets the cost used for new hashes. Existing hashes keep their cost until
+	 * they are hashed again.
+	 */
+	public static void setDefaultIterations(int iterations) {
+		if (iterations < 1)
+			throw new IllegalArgumentException("Iterations must be positive");
+		defaultIterations = iterations;
+	}
+
+	private static byte[] pbkdf2(String passWord, byte[] salt, int iterations) {
+		PBEKeySpec spec = new PBEKeySpec(passWord.toCharArray(), salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+			// Every Java runtime has to support PBKDF2WithHmacSHA256
+			throw new IllegalStateException(e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A PlayCounter holds the day and count of the songs an account played, packed
+ * into one number the QuotaService changes with compare-and-set. An account
+ * keeps its own counter in memory; a store shared by several processes can
+ * give the account a counter in shared memory instead, so every process
+ * counts the same songs.
+ * 
+ * @author Khang Tran
+ */
+public interface PlayCounter {
+
+	long get();
+
+	void set(long value);
+
+	/**
+	 * Sets the value if it is still the expected one, as one atomic step.
+	 * 
+	 * @param expected the value read before
+	 * @param value    the new value
+	 * @return true if the value was set
+	 */
+	boolean compareAndSet(long expected, long value);
+
+	/**
+	 * A counter kept in an AtomicLong.
+	 * 
+	 * @param value the number
+	 * @return the counter
+	 */
+	static PlayCounter of(AtomicLong value) {
+		return new PlayCounter() {
+			@Override
+			public long get() {
+				return value.get();
+			}
+
+			@Override
+			public void set(long update) {
+				value.set(update);
+			}
+
+			@Override
+			public boolean compareAndSet(long expected, long update) {
+				return value.compareAndSet(expected, update);
+			}
+		};
+	}
+
+}
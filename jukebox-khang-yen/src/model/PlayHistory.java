@@ -0,0 +1,53 @@
+package model;
+
+/**
+ * A PlayHistory is told about every song the jukebox finished, whether it
+ * played to the end or couldn't be played. Unlike the count of songs an
+ * account played today, the history is never reset, so it can tell which
+ * songs and which accounts played the most over any days.
+ * 
+ * NONE is a history that does nothing, it is used until a real one is set.
+ * andThen() tells more than one history, such as the log kept on disk and
+ * the songs trending now.
+ * 
+ * @author Khang Tran
+ */
+public interface PlayHistory {
+
+	PlayHistory NONE = (epochMillis, account, song, outcome) -> {
+	};
+
+	/**
+	 * How a song finished.
+	 */
+	enum Outcome {
+		// it played to the end
+		PLAYED,
+		// its file couldn't be played
+		FAILED
+	}
+
+	/**
+	 * A song finished. May be called on any thread.
+	 * 
+	 * @param epochMillis when it finished
+	 * @param account     the account that picked it
+	 * @param song        the song
+	 * @param outcome     how it finished
+	 */
+	void songFinished(long epochMillis, Account account, Song song, Outcome outcome);
+
+	/**
+	 * Makes a history that tells this history and then the next one.
+	 * 
+	 * @param next the history told second
+	 * @return a history that tells both
+	 */
+	default PlayHistory andThen(PlayHistory next) {
+		return (epochMillis, account, song, outcome) -> {
+			songFinished(epochMillis, account, song, outcome);
+			next.songFinished(epochMillis, account, song, outcome);
+		};
+	}
+
+}
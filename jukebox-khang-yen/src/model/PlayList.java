@@ -1,30 +1,69 @@
 package model;
 
-import java.io.Serializable;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * The PlayList class represents a playList of songs in a Jukebox. It maintains
  * a queue of songs to be played in a First-In-First-Out (FIFO) order. When a
  * song finishes playing, the next song in the queue is automatically queued up
  * to play.
- * 
+ *
  * This class is particularly useful for managing the play order of songs. It
  * ensures that songs are played in the order they were added (clicked on), and
  * it automatically handles the transition from one song to the next.
  *
+ * The songs are kept as their catalog ids in a ring of ints, so adding or
+ * taking a song at either end takes constant time and the list holds no
+ * objects of its own. A song in the middle is removed by marking its slot, and
+ * a tree of counts over the marked slots finds the song at a position in
+ * O(log n) time, so removing a song, moving it to the front to play next, and
+ * getting it by position stay fast in a long list. The marked slots are
+ * dropped when the songs at the ends are taken, or all at once when they
+ * outnumber the songs.
+ *
+ * getSongs() is a view of the list, not a copy, so a view can show it without
+ * keeping a list of its own.
+ *
  * @author Yen Lai
  */
-@SuppressWarnings("serial")
-public class PlayList implements Serializable {
-	private Queue<String> songQueue;
+public class PlayList {
+	// marks the slot of a song that was removed
+	private static final int REMOVED = -1;
+	private static final int MIN_CAPACITY = 8;
+	// an account that never queues a song holds no ring
+	private static final int[] NO_SLOTS = {};
+
+	private final SongCatalog catalog;
+	// songs that aren't in the catalog, their ids are -2, -3, ...
+	private List<Song> others;
+	// a power of two long, the songs are slots[head] to slots[head + used - 1]
+	private int[] slots = NO_SLOTS;
+	private int head;
+	// the slots in use, including the removed ones
+	private int used;
+	private int removed;
+	// a Fenwick tree of the removed slots, slot i at index i + 1
+	private int[] removedTree;
+	private List<Song> view;
 
 	/**
-	 * Constructs a new PlayList object. Initializes the song queue as a LinkedList.
+	 * Constructs a new empty PlayList of songs of the shared catalog.
 	 */
 	public PlayList() {
-		songQueue = new LinkedList<>();
+		this(SongCatalog.shared());
+	}
+
+	/**
+	 * Constructs a new empty PlayList.
+	 *
+	 * @param catalog the catalog whose ids the list holds
+	 */
+	public PlayList(SongCatalog catalog) {
+		this.catalog = catalog;
 	}
 
 	/**
@@ -32,8 +71,24 @@ public class PlayList implements Serializable {
 	 *
 	 * @param songToAdd The song to be added to the queue.
 	 */
-	public void queueUpNextSong(String songToAdd) {
-		songQueue.add(songToAdd);
+	public void queueUpNextSong(Song songToAdd) {
+		int id = idOf(songToAdd);
+		grow();
+		slots[(head + used) & mask()] = id;
+		used++;
+	}
+
+	/**
+	 * Adds a song to the front of the queue, so it plays next.
+	 *
+	 * @param songToAdd The song to be added to the queue.
+	 */
+	public void queueFirst(Song songToAdd) {
+		int id = idOf(songToAdd);
+		grow();
+		head = (head - 1) & mask();
+		slots[head] = id;
+		used++;
 	}
 
 	/**
@@ -41,46 +96,281 @@ public class PlayList implements Serializable {
 	 *
 	 * @return The next song to be played. Returns null if the queue is empty.
 	 */
-	public String playNextSong() {
-		return songQueue.poll();
+	public Song playNextSong() {
+		if (used == 0)
+			return null;
+		Song song = songOf(slots[head]);
+		head = (head + 1) & mask();
+		used--;
+		dropRemovedAtEnds();
+		return song;
+	}
+
+	/*
+	 * Removes the last song in the queue, or returns null if the queue is empty.
+	 */
+	public Song removeLastSong() {
+		if (used == 0)
+			return null;
+		used--;
+		Song song = songOf(slots[(head + used) & mask()]);
+		dropRemovedAtEnds();
+		return song;
 	}
 
 	/*
 	 * Checks if the song queue is empty.
 	 */
 	public boolean isEmpty() {
-		return songQueue.size() == 0;
+		return used == 0;
 	}
 
 	/*
 	 * Gets the number of songs in the song queue.
 	 */
 	public int size() {
-		return songQueue.size();
+		return used - removed;
 	}
 
 	/*
-	 * Retrieves the name of the next song to be played without removing it from the
-	 * queue.
+	 * Retrieves the next song to be played without removing it from the queue,
+	 * or null if the queue is empty.
 	 */
-	public String startNextSong() {
-		return songQueue.peek();
+	public Song startNextSong() {
+		return used == 0 ? null : songOf(slots[head]);
 	}
 
 	/*
-	 * Gets the song queue.
+	 * Gets the song at a position in the queue, 0 being the next to play.
+	 */
+	public Song getSong(int index) {
+		return songOf(slots[slotOf(index)]);
+	}
+
+	/**
+	 * Removes the song at a position in the queue.
+	 *
+	 * @param index the position of the song, 0 being the next to play
+	 * @return the song that was removed
+	 */
+	public Song removeSong(int index) {
+		int size = size();
+		if (index == 0 && size > 0)
+			return playNextSong();
+		if (index == size - 1 && size > 0)
+			return removeLastSong();
+		int slot = slotOf(index);
+		Song song = songOf(slots[slot]);
+		slots[slot] = REMOVED;
+		removed++;
+		if (removedTree == null)
+			removedTree = new int[slots.length + 1];
+		for (int i = slot + 1; i < removedTree.length; i += i & -i)
+			removedTree[i]++;
+		if (removed > size() && removed >= MIN_CAPACITY)
+			rebuild(slots.length);
+		return song;
+	}
+
+	/**
+	 * Moves the song at a position to the front of the queue, so it plays
+	 * next.
+	 *
+	 * @param index the position of the song
 	 */
-	public Queue<String> getSongQueue() {
-		return songQueue;
+	public void playNext(int index) {
+		if (index != 0)
+			queueFirst(removeSong(index));
 	}
 
 	/**
-	 * Sets the song queue using a LinkedList of song names.
-	 * 
-	 * @param linkedList The LinkedList of song names to be set as the song queue.
+	 * Moves the song at a position to another position. Moving a song to
+	 * either end takes O(log n) time; any other move shifts the songs between
+	 * the two positions by one.
+	 *
+	 * @param from the position of the song
+	 * @param to   the position it moves to
 	 */
-	public void setSongQueue(LinkedList<String> linkedList) {
-		songQueue = linkedList;
+	public void moveSong(int from, int to) {
+		int size = size();
+		if (to < 0 || to >= size)
+			throw new IndexOutOfBoundsException("Position " + to + " of " + size);
+		if (from == to) {
+			slotOf(from);
+			return;
+		}
+		if (to == 0) {
+			playNext(from);
+			return;
+		}
+		if (to == size - 1) {
+			queueUpNextSong(removeSong(from));
+			return;
+		}
+		int slot = slotOf(from);
+		int id = slots[slot];
+		int step = from < to ? 1 : -1;
+		for (int i = from; i != to; i += step) {
+			int next = slot;
+			do {
+				next = (next + step) & mask();
+			} while (slots[next] == REMOVED);
+			slots[slot] = slots[next];
+			slot = next;
+		}
+		slots[slot] = id;
+	}
+
+	/*
+	 * Gets the songs in the queue, next to play first. The list is a view that
+	 * follows the queue as it changes, and it can't be changed itself.
+	 */
+	public List<Song> getSongs() {
+		if (view == null)
+			view = new SongView();
+		return view;
+	}
+
+	private int mask() {
+		return slots.length - 1;
+	}
+
+	private int idOf(Song song) {
+		int id = catalog.idOf(song);
+		if (id >= 0)
+			return id;
+		if (others == null)
+			others = new ArrayList<>(1);
+		others.add(song);
+		return -1 - others.size();
+	}
+
+	private Song songOf(int id) {
+		return id >= 0 ? catalog.getSong(id) : others.get(-2 - id);
+	}
+
+	/*
+	 * Makes room for one more song.
+	 */
+	private void grow() {
+		if (used == slots.length)
+			rebuild(Math.max(MIN_CAPACITY, slots.length * 2));
+	}
+
+	/*
+	 * Moves the songs to the start of a new ring without the removed slots.
+	 */
+	private void rebuild(int capacity) {
+		int[] songs = new int[capacity];
+		int size = 0;
+		for (int i = 0; i < used; i++) {
+			int id = slots[(head + i) & mask()];
+			if (id != REMOVED)
+				songs[size++] = id;
+		}
+		slots = songs;
+		head = 0;
+		used = size;
+		removed = 0;
+		removedTree = null;
+	}
+
+	/*
+	 * Drops the removed slots at both ends, so the songs at the ends are never
+	 * removed ones.
+	 */
+	private void dropRemovedAtEnds() {
+		while (used > 0 && slots[head] == REMOVED) {
+			unmark(head);
+			head = (head + 1) & mask();
+			used--;
+		}
+		while (used > 0 && slots[(head + used - 1) & mask()] == REMOVED) {
+			unmark((head + used - 1) & mask());
+			used--;
+		}
+		if (used == 0) {
+			head = 0;
+			others = null;
+		}
+	}
+
+	private void unmark(int slot) {
+		slots[slot] = 0;
+		removed--;
+		for (int i = slot + 1; i < removedTree.length; i += i & -i)
+			removedTree[i]--;
+	}
+
+	/*
+	 * Finds the slot of the song at a position. Without removed slots it is
+	 * found directly, otherwise by walking down the tree.
+	 */
+	private int slotOf(int index) {
+		int size = size();
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Position " + index + " of " + size);
+		if (removed == 0)
+			return (head + index) & mask();
+		// the songs in slots 0 to head - 1 are the end of the queue if the ring
+		// wraps around, so the wanted song is the target-th counting from slot 0
+		int before = occupiedBefore(head);
+		for (int i = head; i > 0; i -= i & -i)
+			before -= removedTree[i];
+		int target = (before + index) % size + 1;
+
+		int slot = 0;
+		int removedBefore = 0;
+		for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1) {
+			int next = slot + step;
+			if (next <= slots.length && occupiedBefore(next) - removedBefore - removedTree[next] < target) {
+				slot = next;
+				removedBefore += removedTree[next];
+			}
+		}
+		return slot;
+	}
+
+	/*
+	 * Counts the slots in use, removed or not, among slots 0 to slot - 1.
+	 */
+	private int occupiedBefore(int slot) {
+		int end = head + used;
+		if (end <= slots.length)
+			return Math.max(0, Math.min(slot, end) - head);
+		return Math.min(slot, end - slots.length) + Math.max(0, slot - head);
+	}
+
+	@Override
+	public String toString() {
+		return getSongs().toString();
+	}
+
+	/*
+	 * The songs of the list, read through the ring.
+	 */
+	private class SongView extends AbstractList<Song> implements RandomAccess {
+		@Override
+		public Song get(int index) {
+			return getSong(index);
+		}
+
+		@Override
+		public int size() {
+			return PlayList.this.size();
+		}
+
+		@Override
+		public Object[] toArray() {
+			Object[] songs = new Object[size()];
+			int i = 0;
+			for (int n = 0; n < used; n++) {
+				int id = slots[(head + n) & mask()];
+				if (id != REMOVED)
+					songs[i++] = songOf(id);
+			}
+			return Arrays.copyOf(songs, i);
+		}
 	}
 
 }
@@ -0,0 +1,392 @@
+package model;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The PlaybackEngine class plays the songs of the VenueQueue, one after
+ * another with a gap between them. It is a state machine:
+ *
+ * <pre>
+ * IDLE       nothing to play
+ * PREPARING  the song is loading and starts as soon as it is ready
+ * PLAYING    the song is playing, and the song after it is being prepared
+ * GAP        the song ended; the next one starts when the gap is over
+ * STOPPED    stop() was called; nothing plays until play() is called
+ * </pre>
+ *
+ * All the state belongs to one playback thread, which is also the one thread
+ * that takes songs from the queue. Events from the player and songs added to
+ * the queue are handed to that thread as tasks, and the gap is a task
+ * scheduled for later, so nothing ever waits: handling the end of a song only
+ * records it and schedules what comes next.
+ *
+ * The accounts belong to the model thread (the JavaFX thread in the GUI). The
+ * engine only changes them in tasks it runs on the model thread.
+ *
+ * @param <T> the players the Output makes
+ * @author Yen Lai
+ */
+public class PlaybackEngine<T> {
+
+	/**
+	 * The states of the engine.
+	 */
+	public enum State {
+		IDLE, PREPARING, PLAYING, GAP, STOPPED
+	}
+
+	/**
+	 * Plays audio files. Its callbacks may be called on any thread.
+	 *
+	 * @param <T> the players it makes
+	 */
+	public interface Output<T> {
+		/**
+		 * Starts loading a song without playing it.
+		 *
+		 * @param path    the song file
+		 * @param onReady called when the song can start playing
+		 * @param onEnd   called when the song has played to its end
+		 * @param onError called if the song can't be played
+		 * @return the player of the song
+		 */
+		T prepare(String path, Runnable onReady, Runnable onEnd, Runnable onError);
+
+		void play(T player);
+
+		void stop(T player);
+
+		/**
+		 * Releases everything the player holds. The player is not used again.
+		 */
+		void dispose(T player);
+	}
+
+	private final Output<T> output;
+	private final VenueQueue venue;
+	private final Executor modelThread;
+	private final ScheduledExecutorService playbackThread;
+	private final PlaybackMetrics metrics = new PlaybackMetrics();
+	// set while a look at the queue is scheduled, so adding many songs at once
+	// schedules only one
+	private final AtomicBoolean queueChangePending = new AtomicBoolean();
+	private volatile State state = State.IDLE;
+	private volatile long gapMillis = Long.getLong("jukebox.gap.millis", 2000);
+	private volatile Consumer<JukeboxAccount> songFinishedListener = account -> {
+	};
+	private volatile PlayHistory history = PlayHistory.NONE;
+
+	// Only used on the playback thread
+	private Track current;
+	private Track prepared;
+	// the song stop() interrupted, it plays again first
+	private VenueQueue.Entry interrupted;
+	// counts every start and stop, so events of an older song are ignored
+	private int generation;
+	private ScheduledFuture<?> gapTimer;
+	// when the last song ended, or -1
+	private long ended = -1;
+
+	/**
+	 * Makes the engine the consumer of the queue. It starts playing as soon as
+	 * a song is added.
+	 *
+	 * @param output      plays the songs
+	 * @param venue       the songs to play
+	 * @param modelThread runs a task on the thread that changes the model
+	 */
+	public PlaybackEngine(Output<T> output, VenueQueue venue, Executor modelThread) {
+		this.output = output;
+		this.venue = venue;
+		this.modelThread = modelThread;
+		this.playbackThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jukebox-playback");
+			thread.setDaemon(true);
+			return thread;
+		});
+		venue.setConsumer(this::songQueued);
+	}
+
+	/**
+	 * Plays the queue if nothing is playing, also after stop(). May be called
+	 * on any thread.
+	 */
+	public void play() {
+		playbackThread.execute(() -> {
+			if (state == State.IDLE || state == State.STOPPED)
+				startNext();
+		});
+	}
+
+	/**
+	 * Stops the song that is playing, or the gap, and releases the players.
+	 * The song that was playing plays again from its start after play(). May
+	 * be called on any thread.
+	 */
+	public void stop() {
+		playbackThread.execute(() -> {
+			generation++;
+			cancelGap();
+			if (current != null) {
+				output.stop(current.player);
+				dispose(current);
+				interrupted = current.entry;
+				current = null;
+			}
+			disposePrepared();
+			ended = -1;
+			state = State.STOPPED;
+		});
+	}
+
+	/**
+	 * Stops playing and ends the playback thread.
+	 */
+	public void shutdown() {
+		stop();
+		playbackThread.shutdown();
+	}
+
+	/*
+	 * Gets the state of the engine. It may change right after it is read.
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/*
+	 * Sets the silence between two songs, in milliseconds. 0 plays the songs
+	 * back to back.
+	 */
+	public void setGapMillis(long gapMillis) {
+		this.gapMillis = gapMillis;
+	}
+
+	/*
+	 * Sets what to do on the model thread after a song left the account's play
+	 * list, counted as played or skipped because it couldn't be played.
+	 */
+	public void setSongFinishedListener(Consumer<JukeboxAccount> listener) {
+		this.songFinishedListener = listener;
+	}
+
+	/*
+	 * Sets the history that is told about every song that finished, on the
+	 * playback thread.
+	 */
+	public void setPlayHistory(PlayHistory history) {
+		this.history = history;
+	}
+
+	/*
+	 * Gets the time from the end of each song to the start of the next.
+	 */
+	public PlaybackMetrics getMetrics() {
+		return metrics;
+	}
+
+	/*
+	 * A song was added to the queue, on the thread that added it.
+	 */
+	private void songQueued() {
+		if (queueChangePending.get() || queueChangePending.getAndSet(true))
+			return;
+		try {
+			playbackThread.execute(this::queueChanged);
+		} catch (RejectedExecutionException e) {
+			// the engine was shut down, nothing plays any more
+		}
+	}
+
+	private void queueChanged() {
+		// cleared before the queue is read, so a song added from now on
+		// schedules another look
+		queueChangePending.set(false);
+		switch (state) {
+		case IDLE:
+			startNext();
+			break;
+		case PREPARING:
+		case PLAYING:
+			prepare(venue.peek());
+			break;
+		default:
+			// the next song is taken when the gap is over, or after play()
+			break;
+		}
+	}
+
+	/*
+	 * Starts the song that stop() interrupted or the one at the front of the
+	 * queue, or goes idle if there is none.
+	 */
+	private void startNext() {
+		boolean replay = interrupted != null;
+		VenueQueue.Entry entry = replay ? interrupted : venue.poll();
+		interrupted = null;
+		if (entry == null) {
+			disposePrepared();
+			ended = -1;
+			state = State.IDLE;
+			return;
+		}
+		generation++;
+		if (prepared != null && prepared.entry == entry) {
+			current = prepared;
+			prepared = null;
+		} else {
+			current = open(entry);
+		}
+		current.taken = System.nanoTime();
+		current.replay = replay;
+		state = State.PREPARING;
+		prepare(venue.peek());
+		if (current.failed)
+			songEnded(current);
+		else if (current.ready)
+			startPlaying();
+	}
+
+	private void startPlaying() {
+		long now = System.nanoTime();
+		if (ended >= 0) {
+			metrics.recordGap(now - ended);
+			ended = -1;
+		}
+		metrics.recordStart(now - current.taken);
+		// an interrupted song waited once already
+		if (!current.replay)
+			metrics.recordWait(now - current.entry.getQueuedNanos());
+		state = State.PLAYING;
+		output.play(current.player);
+	}
+
+	/*
+	 * Starts loading the song that plays after the current one.
+	 */
+	private void prepare(VenueQueue.Entry entry) {
+		if (prepared != null && prepared.entry == entry)
+			return;
+		disposePrepared();
+		if (entry != null)
+			prepared = open(entry);
+	}
+
+	private Track open(VenueQueue.Entry entry) {
+		Track track = new Track(entry);
+		try {
+			track.player = output.prepare(entry.getPath(), () -> playbackThread.execute(() -> ready(track)),
+					() -> playbackThread.execute(() -> songEnded(track)),
+					() -> playbackThread.execute(() -> failed(track)));
+		} catch (RuntimeException e) {
+			// reported like a song whose player fails, to the play history
+			track.failed = true;
+		}
+		return track;
+	}
+
+	private void ready(Track track) {
+		track.ready = true;
+		if (track == current && state == State.PREPARING)
+			startPlaying();
+	}
+
+	private void failed(Track track) {
+		track.failed = true;
+		if (track == prepared)
+			disposePrepared();
+		else if (track == current)
+			songEnded(track);
+	}
+
+	/*
+	 * The song ended, or can't be played. A song that played counts as played,
+	 * and the next song starts once the gap is over. A song that can't be
+	 * played is told to the play history as FAILED and taken off the account's
+	 * play list without counting, and the next song starts without a gap.
+	 */
+	private void songEnded(Track track) {
+		if (track != current || (state != State.PLAYING && state != State.PREPARING))
+			return;
+		dispose(current);
+		current = null;
+		state = State.GAP;
+
+		JukeboxAccount finished = track.entry.getAccount();
+		history.songFinished(QuotaService.shared().getClock().millis(), finished.getAccount(),
+				track.entry.getSong(), track.failed ? PlayHistory.Outcome.FAILED : PlayHistory.Outcome.PLAYED);
+		if (track.failed) {
+			modelThread.execute(() -> {
+				finished.songSkipped();
+				songFinishedListener.accept(finished);
+			});
+		} else {
+			// a song that failed is silent, so the gap runs from the last one
+			// that played
+			ended = System.nanoTime();
+			modelThread.execute(() -> {
+				finished.songFinished();
+				songFinishedListener.accept(finished);
+			});
+		}
+
+		int gen = generation;
+		long gap = track.failed ? 0 : gapMillis;
+		if (gap > 0)
+			gapTimer = playbackThread.schedule(() -> gapOver(gen), gap, TimeUnit.MILLISECONDS);
+		else
+			// a task of its own, so many songs failing in a row don't recurse
+			playbackThread.execute(() -> gapOver(gen));
+	}
+
+	private void gapOver(int gen) {
+		if (gen != generation || state != State.GAP)
+			return;
+		gapTimer = null;
+		startNext();
+	}
+
+	private void cancelGap() {
+		if (gapTimer != null) {
+			gapTimer.cancel(false);
+			gapTimer = null;
+		}
+	}
+
+	private void disposePrepared() {
+		if (prepared != null) {
+			dispose(prepared);
+			prepared = null;
+		}
+	}
+
+	private void dispose(Track track) {
+		if (track.player != null)
+			output.dispose(track.player);
+	}
+
+	/*
+	 * A song of the queue and its player.
+	 */
+	private class Track {
+		final VenueQueue.Entry entry;
+		T player;
+		boolean ready;
+		boolean failed;
+		// when the engine took the song to play, and if it was interrupted before
+		long taken;
+		boolean replay;
+
+		Track(VenueQueue.Entry entry) {
+			this.entry = entry;
+		}
+	}
+
+}
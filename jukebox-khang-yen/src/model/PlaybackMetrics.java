@@ -0,0 +1,115 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PlaybackMetrics class measures the time from the end of one song to the
+ * start of the next one, the silence a listener hears between songs. It keeps
+ * the number of gaps, their total, the longest and the last one.
+ *
+ * It also measures how long a song takes to start once the engine takes it,
+ * and how long songs wait in the venue queue from being added to starting.
+ * registerWith() adds these histograms to a Metrics registry, so they can be
+ * read over JMX.
+ *
+ * Times are recorded by the thread that plays the songs and can be read from
+ * any thread.
+ *
+ * @author Yen Lai
+ */
+public class PlaybackMetrics {
+	private final Metrics.Histogram gaps = new Metrics.Histogram();
+	private final Metrics.Histogram starts = new Metrics.Histogram();
+	private final Metrics.Histogram waits = new Metrics.Histogram();
+	private final AtomicLong lastGapNanos = new AtomicLong(-1);
+
+	/**
+	 * Records the time between a song ending and the next one starting.
+	 *
+	 * @param nanos the gap in nanoseconds
+	 */
+	public void recordGap(long nanos) {
+		gaps.record(nanos);
+		lastGapNanos.set(nanos);
+	}
+
+	/**
+	 * Records the time from the engine taking a song to the song playing.
+	 *
+	 * @param nanos the time in nanoseconds
+	 */
+	public void recordStart(long nanos) {
+		starts.record(nanos);
+	}
+
+	/**
+	 * Records the time a song waited from being queued to playing.
+	 *
+	 * @param nanos the time in nanoseconds
+	 */
+	public void recordWait(long nanos) {
+		waits.record(nanos);
+	}
+
+	/**
+	 * Adds the histograms to a registry as playback.gap, playback.start and
+	 * queue.wait.
+	 *
+	 * @param metrics the registry
+	 */
+	public void registerWith(Metrics metrics) {
+		metrics.register("playback.gap", gaps);
+		metrics.register("playback.start", starts);
+		metrics.register("queue.wait", waits);
+	}
+
+	/*
+	 * Gets the number of gaps recorded.
+	 */
+	public long getGapCount() {
+		return gaps.getCount();
+	}
+
+	/*
+	 * Gets the average gap in milliseconds, or 0 if no gap was recorded.
+	 */
+	public double getAverageGapMillis() {
+		return gaps.getMean() / 1e6;
+	}
+
+	/*
+	 * Gets the longest gap in milliseconds.
+	 */
+	public double getMaxGapMillis() {
+		return gaps.getMax() / 1e6;
+	}
+
+	/*
+	 * Gets the last gap in milliseconds, or -1 if no gap was recorded.
+	 */
+	public double getLastGapMillis() {
+		long last = lastGapNanos.get();
+		return last < 0 ? -1 : last / 1e6;
+	}
+
+	/*
+	 * Gets the times songs took to start, in nanoseconds.
+	 */
+	public Metrics.Histogram getStarts() {
+		return starts;
+	}
+
+	/*
+	 * Gets the times songs waited in the queue, in nanoseconds.
+	 */
+	public Metrics.Histogram getWaits() {
+		return waits;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d gaps, average %.1f ms, max %.1f ms", getGapCount(), getAverageGapMillis(),
+				getMaxGapMillis());
+	}
+
+}
@@ -0,0 +1,438 @@
+package model;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The QuotaService class decides how many songs an account may play, and
+ * counts the songs it plays. It is the one place the limits live: the
+ * accounts and the view only ask it.
+ *
+ * The limits are Policies, for example at most 3 songs a day, or at most 2 in
+ * any hour. A song may play only if every policy allows it, and it is counted
+ * by all of them.
+ *
+ * The time comes from a Clock, so tests and simulations can move it. Nothing
+ * is reset at midnight: each account's count is kept together with its day in
+ * one atomic number, and a count from an earlier day is read as 0. The counts
+ * are changed with compare-and-set, so plays counted from several threads at
+ * once are never lost or counted twice. An account in an AccountDirectory
+ * keeps that number in memory shared with the other jukebox processes, so
+ * they all count the same songs.
+ *
+ * The whole jukebox shares one service, which shared() returns.
+ *
+ * @author Khang Tran
+ */
+public class QuotaService {
+	// the songs an account may play a day
+	public static final int DAILY_LIMIT = 3;
+	private static final AtomicReference<QuotaService> shared = new AtomicReference<>();
+
+	private final Clock clock;
+	private final List<Policy> policies;
+
+	/**
+	 * @param clock    tells the time
+	 * @param policies the limits, all of which must allow a song
+	 */
+	public QuotaService(Clock clock, Policy... policies) {
+		this.clock = Objects.requireNonNull(clock);
+		this.policies = List.of(policies);
+	}
+
+	/**
+	 * Gets the service shared by the whole jukebox, 3 songs a day on the system
+	 * clock if no service has been published.
+	 *
+	 * @return the shared service
+	 */
+	public static QuotaService shared() {
+		QuotaService service = shared.get();
+		if (service == null) {
+			shared.compareAndSet(null, new QuotaService(Clock.systemDefaultZone(), perDay(DAILY_LIMIT)));
+			service = shared.get();
+		}
+		return service;
+	}
+
+	/**
+	 * Replaces the shared service, for example with one on a simulated clock.
+	 *
+	 * @param service the new shared service
+	 */
+	public static void publish(QuotaService service) {
+		shared.set(Objects.requireNonNull(service));
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	/*
+	 * Gets the day it is on the service's clock.
+	 */
+	public LocalDate today() {
+		return LocalDate.now(clock);
+	}
+
+	/**
+	 * Counts a song played by the account if every policy allows it.
+	 *
+	 * @param account the account
+	 * @return true if the song was counted, false if a limit was reached
+	 */
+	public boolean tryRecordPlay(Account account) {
+		ZonedDateTime now = ZonedDateTime.now(clock);
+		for (int i = 0; i < policies.size(); i++) {
+			if (!policies.get(i).tryAcquire(account, now)) {
+				// give back what the earlier policies counted
+				for (int j = 0; j < i; j++)
+					policies.get(j).release(account, now);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Counts a song the account has played, even if a limit is reached, for
+	 * example because it was queued while the account could still play.
+	 *
+	 * @param account the account
+	 */
+	public void recordPlay(Account account) {
+		recordPlay(account, ZonedDateTime.now(clock));
+	}
+
+	/**
+	 * Counts a song the account played on an earlier day, for example when the
+	 * journal is read back. A day before the one the account last played on is
+	 * not counted.
+	 *
+	 * @param account the account
+	 * @param day     the day the song was played
+	 */
+	public void recordPlay(Account account, LocalDate day) {
+		ZonedDateTime now = ZonedDateTime.now(clock);
+		recordPlay(account, day.equals(now.toLocalDate()) ? now : day.atStartOfDay(clock.getZone()));
+	}
+
+	private void recordPlay(Account account, ZonedDateTime time) {
+		for (Policy policy : policies)
+			policy.record(account, time);
+	}
+
+	/*
+	 * Checks if the account may play another song now.
+	 */
+	public boolean allows(Account account) {
+		return remaining(account) > 0;
+	}
+
+	/*
+	 * Gets how many more songs the account may play now, the fewest any policy
+	 * allows.
+	 */
+	public int remaining(Account account) {
+		ZonedDateTime now = ZonedDateTime.now(clock);
+		int remaining = Integer.MAX_VALUE;
+		for (Policy policy : policies)
+			remaining = Math.min(remaining, policy.remaining(account, now));
+		return remaining;
+	}
+
+	/*
+	 * Gets how many songs the account has played today.
+	 */
+	public int playedToday(Account account) {
+		return account.getSongsPlayedOn(today());
+	}
+
+	/*
+	 * Forgets the songs the account played, as if a new day had started.
+	 */
+	public void reset(Account account) {
+		ZonedDateTime now = ZonedDateTime.now(clock);
+		for (Policy policy : policies)
+			policy.reset(account, now);
+	}
+
+	/**
+	 * A policy that allows at most a number of songs on each day. It keeps the
+	 * count in the account, so it is saved with it.
+	 *
+	 * @param limit the songs an account may play a day
+	 * @return the policy
+	 */
+	public static Policy perDay(int limit) {
+		return new PerDay(limit);
+	}
+
+	/**
+	 * A policy that allows at most a number of songs in any window of time, for
+	 * example 2 songs in any hour. The times of the songs are only kept in
+	 * memory.
+	 *
+	 * @param limit  the songs an account may play in a window
+	 * @param window the length of the window
+	 * @return the policy
+	 */
+	public static Policy sliding(int limit, Duration window) {
+		return new Sliding(limit, window);
+	}
+
+	/*
+	 * Packs a day and a count of songs into one number, as Account keeps them.
+	 */
+	static long pack(long epochDay, int count) {
+		return (epochDay + 1) << 32 | (count & 0xFFFF_FFFFL);
+	}
+
+	/**
+	 * A limit on the songs an account may play. Its methods may be called on
+	 * any thread at the same time.
+	 */
+	public interface Policy {
+		/**
+		 * Counts a song if the limit allows it.
+		 *
+		 * @param account the account playing the song
+		 * @param now     the time
+		 * @return true if the song was counted
+		 */
+		boolean tryAcquire(Account account, ZonedDateTime now);
+
+		/**
+		 * Counts a song whether the limit allows it or not.
+		 */
+		void record(Account account, ZonedDateTime time);
+
+		/**
+		 * Takes back a song counted by tryAcquire() at the same time.
+		 */
+		void release(Account account, ZonedDateTime now);
+
+		/**
+		 * Gets how many more songs the account may play.
+		 */
+		int remaining(Account account, ZonedDateTime now);
+
+		/**
+		 * Forgets the songs the account played.
+		 */
+		void reset(Account account, ZonedDateTime now);
+	}
+
+	/*
+	 * At most limit songs a day, counted in the account's day and count.
+	 */
+	private static class PerDay implements Policy {
+		private final int limit;
+
+		PerDay(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean tryAcquire(Account account, ZonedDateTime now) {
+			long today = now.toLocalDate().toEpochDay();
+			PlayCounter counter = account.songPlayedCounter();
+			while (true) {
+				long value = counter.get();
+				int count = countOn(value, today);
+				if (count >= limit)
+					return false;
+				if (counter.compareAndSet(value, pack(today, count + 1)))
+					return true;
+			}
+		}
+
+		@Override
+		public void record(Account account, ZonedDateTime time) {
+			long day = time.toLocalDate().toEpochDay();
+			PlayCounter counter = account.songPlayedCounter();
+			while (true) {
+				long value = counter.get();
+				// a song from before the day the account last played doesn't count
+				if ((value >>> 32) > day + 1)
+					return;
+				if (counter.compareAndSet(value, pack(day, countOn(value, day) + 1)))
+					return;
+			}
+		}
+
+		@Override
+		public void release(Account account, ZonedDateTime now) {
+			long today = now.toLocalDate().toEpochDay();
+			PlayCounter counter = account.songPlayedCounter();
+			while (true) {
+				long value = counter.get();
+				int count = countOn(value, today);
+				if (count == 0 || counter.compareAndSet(value, pack(today, count - 1)))
+					return;
+			}
+		}
+
+		@Override
+		public int remaining(Account account, ZonedDateTime now) {
+			long value = account.songPlayedCounter().get();
+			return Math.max(0, limit - countOn(value, now.toLocalDate().toEpochDay()));
+		}
+
+		@Override
+		public void reset(Account account, ZonedDateTime now) {
+			account.songPlayedCounter().set(pack(now.toLocalDate().toEpochDay(), 0));
+		}
+
+		/*
+		 * The count of a packed value if it is for the given day, otherwise 0:
+		 * this is where a new day starts.
+		 */
+		private static int countOn(long value, long epochDay) {
+			return (value >>> 32) == epochDay + 1 ? (int) value : 0;
+		}
+	}
+
+	/*
+	 * At most limit songs in any window, keeping the times of the songs played
+	 * in the last window, oldest first. An account whose songs have all left
+	 * the window is removed, when it is asked about and every few hundred songs
+	 * for all of them, so accounts that stopped playing aren't kept.
+	 */
+	private static class Sliding implements Policy {
+		private static final long[] NONE = {};
+		// set before an account is removed, so a song added at the same time
+		// isn't lost with it but starts a new entry
+		private static final long[] REMOVED = new long[0];
+		private static final int SWEEP_EVERY = 256;
+		private final int limit;
+		private final long windowMillis;
+		private final Map<Account, AtomicReference<long[]>> played = new ConcurrentHashMap<>();
+		private final AtomicInteger adds = new AtomicInteger();
+
+		Sliding(int limit, Duration window) {
+			this.limit = limit;
+			this.windowMillis = window.toMillis();
+		}
+
+		@Override
+		public boolean tryAcquire(Account account, ZonedDateTime now) {
+			return add(account, now.toInstant().toEpochMilli(), true);
+		}
+
+		@Override
+		public void record(Account account, ZonedDateTime time) {
+			add(account, time.toInstant().toEpochMilli(), false);
+		}
+
+		private boolean add(Account account, long millis, boolean limited) {
+			if (adds.incrementAndGet() % SWEEP_EVERY == 0)
+				removeExpired(millis);
+			while (true) {
+				AtomicReference<long[]> times = played.computeIfAbsent(account, key -> new AtomicReference<>(NONE));
+				long[] old = times.get();
+				if (old == REMOVED) {
+					// being removed, wait for the new entry
+					played.remove(account, times);
+					continue;
+				}
+				int from = firstInWindow(old, millis);
+				int count = old.length - from;
+				if (limited && count >= limit)
+					return false;
+				// a song counted late may be older than the last one, so it is
+				// put in its place rather than at the end
+				int at = firstAfter(old, from, millis);
+				long[] updated = new long[count + 1];
+				System.arraycopy(old, from, updated, 0, at - from);
+				updated[at - from] = millis;
+				System.arraycopy(old, at, updated, at - from + 1, old.length - at);
+				if (times.compareAndSet(old, updated))
+					return true;
+			}
+		}
+
+		/*
+		 * Removes every account whose songs have all left the window.
+		 */
+		private void removeExpired(long millis) {
+			for (Map.Entry<Account, AtomicReference<long[]>> entry : played.entrySet())
+				removeIfExpired(entry.getKey(), entry.getValue(), millis);
+		}
+
+		private void removeIfExpired(Account account, AtomicReference<long[]> times, long millis) {
+			long[] old = times.get();
+			if (old != REMOVED && firstInWindow(old, millis) == old.length && times.compareAndSet(old, REMOVED))
+				played.remove(account, times);
+		}
+
+		@Override
+		public void release(Account account, ZonedDateTime now) {
+			AtomicReference<long[]> times = played.get(account);
+			if (times == null)
+				return;
+			long millis = now.toInstant().toEpochMilli();
+			while (true) {
+				long[] old = times.get();
+				int at = Arrays.binarySearch(old, millis);
+				if (at < 0)
+					return;
+				long[] updated = new long[old.length - 1];
+				System.arraycopy(old, 0, updated, 0, at);
+				System.arraycopy(old, at + 1, updated, at, updated.length - at);
+				if (times.compareAndSet(old, updated))
+					return;
+			}
+		}
+
+		@Override
+		public int remaining(Account account, ZonedDateTime now) {
+			AtomicReference<long[]> times = played.get(account);
+			if (times == null)
+				return limit;
+			long millis = now.toInstant().toEpochMilli();
+			long[] old = times.get();
+			int count = old.length - firstInWindow(old, millis);
+			if (count == 0)
+				removeIfExpired(account, times, millis);
+			return Math.max(0, limit - count);
+		}
+
+		@Override
+		public void reset(Account account, ZonedDateTime now) {
+			played.remove(account);
+		}
+
+		private int firstInWindow(long[] times, long millis) {
+			return firstAfter(times, 0, millis - windowMillis);
+		}
+
+		/*
+		 * The index of the first of the sorted times after from that is later
+		 * than millis, or the length if there is none.
+		 */
+		private static int firstAfter(long[] times, int from, long millis) {
+			int low = from;
+			int high = times.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (times[middle] <= millis)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+	}
+
+}
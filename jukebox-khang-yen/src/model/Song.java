@@ -1,35 +1,68 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
  * The Song class represents a song in the music player application. It stores
- * information about a song, including its title, artist, playtime, and file
- * name. This information is used in the SongSelector and Playlist classes to
+ * information about a song, including its title, artist, playtime, file name
+ * and, if it is known, its album. This information is used in the SongSelector and Playlist classes to
  * display song details and play songs.
  * 
  * Each Song object corresponds to a single song file. The title, artist, and
  * playtime are displayed in the SongSelector table, and the file name is used
  * to locate the file when the song is played.
  * 
+ * A Song can't be changed, so the same Song from the SongCatalog is shared by
+ * every account that selects it.
+ * 
+ * A Song holds no strings of its own: it is a view of one row of a SongTable,
+ * which keeps every song of a catalog in a few arrays. A Song made with a
+ * constructor has a table of one row. It is saved with Java serialization in
+ * the same form as before, as its title, artist, playtime, file name and
+ * album.
+ * 
  * @author Yen Lai
  */
 
-@SuppressWarnings("serial")
 public class Song implements Serializable {
-	private String title;
-	private String artist;
-	private String playtime;
-	private String fileName;
+	// the id and fields of the first Song, so the snapshots it was saved in
+	// with Java serialization can still be read
+	private static final long serialVersionUID = 5261491565460427894L;
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("title", String.class), new ObjectStreamField("artist", String.class),
+			new ObjectStreamField("playtime", String.class), new ObjectStreamField("fileName", String.class),
+			new ObjectStreamField("album", String.class) };
+
+	private final transient SongTable table;
+	private final transient int row;
+	// the song that was read, set by readObject() for readResolve()
+	private transient Song read;
 
 	/**
 	 * Constructs a new Song with the given title, artist, playtime, and file name.
 	 */
 	public Song(String title, String artist, String playtime, String fileName) {
-		this.title = title;
-		this.artist = artist;
-		this.playtime = playtime;
-		this.fileName = fileName;
+		this(title, artist, playtime, fileName, null);
+	}
+
+	/**
+	 * Constructs a new Song with the given title, artist, playtime, file name and
+	 * album.
+	 */
+	public Song(String title, String artist, String playtime, String fileName, String album) {
+		this(SongTable.of(title, artist, playtime, fileName, album), 0);
+	}
+
+	/*
+	 * constructor for the view of a row of a table
+	 */
+	Song(SongTable table, int row) {
+		this.table = table;
+		this.row = row;
 	}
 
 	// Getters
@@ -38,28 +71,42 @@ public class Song implements Serializable {
 	 * @return the title of this song
 	 */
 	public String getTitle() {
-		return title;
+		return table.title(row);
 	}
 
 	/**
 	 * @return the artist of this song
 	 */
 	public String getArtist() {
-		return artist;
+		return table.artist(row);
 	}
 
 	/**
 	 * @return the playtime of this song
 	 */
 	public String getPlaytime() {
-		return playtime;
+		return table.playtime(row);
+	}
+
+	/**
+	 * @return the playtime of this song in milliseconds, or -1 if it isn't known
+	 */
+	public int getDurationMillis() {
+		return table.durationMillis(row);
 	}
 
 	/**
 	 * @return the name of the file that contains this song
 	 */
 	public String getFileName() {
-		return fileName;
+		return table.fileName(row);
+	}
+
+	/**
+	 * @return the album of this song, or null if it isn't known
+	 */
+	public String getAlbum() {
+		return table.album(row);
 	}
 	
 	/*
@@ -68,10 +115,40 @@ public class Song implements Serializable {
 	 */
     @Override
     public String toString() {
-        return title;  
+        return getTitle();  
     }
 
+	/*
+	 * The row this song is in, so the catalog can check it is one of its own.
+	 */
+	SongTable getTable() {
+		return table;
+	}
+
+	int getRow() {
+		return row;
+	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("title", getTitle());
+		fields.put("artist", getArtist());
+		fields.put("playtime", getPlaytime());
+		fields.put("fileName", getFileName());
+		fields.put("album", getAlbum());
+		out.writeFields();
+	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		// songs saved before albums were known have none
+		read = new Song((String) fields.get("title", null), (String) fields.get("artist", null),
+				(String) fields.get("playtime", null), (String) fields.get("fileName", null),
+				(String) fields.get("album", null));
+	}
+
+	private Object readResolve() {
+		return read;
+	}
 
 }
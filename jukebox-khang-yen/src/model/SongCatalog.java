@@ -0,0 +1,283 @@
+package model;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The SongCatalog class holds every song the jukebox can play. The songs are
+ * loaded from the MP3 files in a directory, and the catalog can find a song by
+ * its file name. The songs the jukebox came with are described by hand; the
+ * title, artist and album of any other file are read from its ID3 tags.
+ * 
+ * It doesn't use JavaFX, so it can be shared by the view and by code that runs
+ * without a window.
+ * 
+ * Each song has an id, its position in the catalog, so a play list can hold
+ * ints instead of Songs.
+ * 
+ * The songs are kept in a SongTable, by column, and found by file name
+ * through a hash table of ids, so a large catalog is a few arrays. The Song of
+ * an id is made the first time it is asked for and kept, so there is one
+ * Song for each id.
+ * 
+ * A catalog can't be changed once it is built. The whole jukebox shares one,
+ * which shared() returns. It is loaded from the songfiles directory the first
+ * time it is asked for, and publish() swaps in a new one in a single step, so
+ * readers never need a lock and never see a catalog that is half built.
+ * 
+ * @author Yen Lai
+ */
+public final class SongCatalog {
+	// the directory the shared catalog is loaded from
+	public static final String SONG_DIRECTORY = "songfiles";
+	private static final AtomicReference<SongCatalog> shared = new AtomicReference<>();
+
+	private final SongTable table;
+	// the id plus 1 of the song whose file name hashes there, or 0
+	private final int[] slots;
+	// the Song of each id, made when first asked for
+	private final AtomicReferenceArray<Song> views;
+	private final List<Song> songs = new SongList();
+
+	/**
+	 * Constructs a catalog of the given songs, in the given order.
+	 * 
+	 * @param songs the songs in the catalog
+	 */
+	public SongCatalog(List<Song> songs) {
+		this(tableOf(songs));
+	}
+
+	/**
+	 * Constructs a catalog of the rows of the table, in their order.
+	 * 
+	 * @param table the songs in the catalog
+	 */
+	public SongCatalog(SongTable table) {
+		this.table = table;
+		this.views = new AtomicReferenceArray<>(table.size());
+		this.slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, table.size()) * 2 - 1) * 2)];
+		int mask = slots.length - 1;
+		for (int id = 0; id < table.size(); id++) {
+			int slot = table.fileNameHash(id) & mask;
+			while (slots[slot] != 0 && !sameFileName(slots[slot] - 1, id))
+				slot = (slot + 1) & mask;
+			// a file name that is in the catalog twice is found as its last song
+			slots[slot] = id + 1;
+		}
+	}
+
+	private static SongTable tableOf(List<Song> songs) {
+		SongTable.Builder builder = new SongTable.Builder();
+		for (Song song : songs)
+			builder.add(song);
+		return builder.build();
+	}
+
+	private boolean sameFileName(int id, int other) {
+		return table.fileNameHash(id) == table.fileNameHash(other)
+				&& table.fileNameEquals(id, table.fileName(other).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Gets the catalog shared by the whole jukebox, loading it from the songfiles
+	 * directory if no catalog has been published yet.
+	 * 
+	 * @return the shared catalog
+	 */
+	public static SongCatalog shared() {
+		SongCatalog catalog = shared.get();
+		if (catalog == null) {
+			// if two threads load it at once, the first one published wins
+			shared.compareAndSet(null, loadFromDirectory(SONG_DIRECTORY));
+			catalog = shared.get();
+		}
+		return catalog;
+	}
+
+	/**
+	 * Replaces the shared catalog. Accounts keep the songs they already hold,
+	 * and songs looked up from now on come from the new catalog.
+	 * 
+	 * @param catalog the new shared catalog
+	 */
+	public static void publish(SongCatalog catalog) {
+		shared.set(Objects.requireNonNull(catalog));
+	}
+
+	/*
+	 * This method loads song files from a specified directory into a new
+	 * catalog, reading the tags of every file that isn't described by hand.
+	 */
+	public static SongCatalog loadFromDirectory(String directoryPath) {
+		return loadFromDirectory(directoryPath, CatalogIngester::ingest);
+	}
+
+	/**
+	 * Loads the song files of a directory into a new catalog. The files that
+	 * aren't described by hand are turned into Songs by the reader.
+	 * 
+	 * @param directoryPath the directory of MP3 files
+	 * @param reader        makes the Songs of the other files
+	 * @return the new catalog
+	 */
+	public static SongCatalog loadFromDirectory(String directoryPath, Reader reader) {
+		// Get the directory as a File object
+		File directory = new File(directoryPath);
+
+		// Get all files in the directory.
+		File[] files = directory.listFiles();
+
+		// Manually add songs
+		Map<String, Song> song = new HashMap<>();
+		// Manually add songs to the map. Each song is represented as a Song object,
+		// which includes the title, artist, duration, and filename of the song.
+		song.put("Capture.mp3", new Song("Caught a Pokemon!", "Game Freak", "0:05", "Capture.mp3"));
+		song.put("DanseMacabreViolinHook.mp3",
+				new Song("Danse Macabre", "Kevin MacLeod", "0:34", "DanseMacabreViolinHook.mp3"));
+		song.put("DeterminedTumbao.mp3",
+				new Song("Determined Tumbao", "FreePlay Music", "0:20", "DeterminedTumbao.mp3"));
+		song.put("LongingInTheirHearts.mp3",
+				new Song("Longing In Their Hearts", "Bonnie Raitt", "4:48", "LongingInTheirHearts.mp3"));
+		song.put("LopingSting.mp3", new Song("Loping Sting", "Kevin MacLeod", "0:05", "LopingSting.mp3"));
+		song.put("SwingCheese.mp3", new Song("Swing Cheese 15", "Artist for Swing Cheese", "0:15", "SwingCheese.mp3"));
+		song.put("TheCurtainRises.mp3", new Song("The Curtain Rises", "FreePlay Music", "0:28", "TheCurtainRises.mp3"));
+		song.put("UntameableFire.mp3", new Song("UntameableFire", "Pierre Langer", "4:42", "UntameableFire.mp3"));
+
+		List<Song> songs = new ArrayList<>();
+		// a missing directory gives an empty catalog
+		if (files == null)
+			return new SongCatalog(songs);
+		// the files that aren't in the map, and where their songs go in the list
+		List<Path> untagged = new ArrayList<>();
+		List<Integer> untaggedAt = new ArrayList<>();
+		// For each file in the directory...
+		for (File file : files) {
+			// If it's an MP3 file
+			if (file.getName().endsWith(".mp3")) {
+				// Extract the filename of the MP3 file
+				String songName = file.getName();
+				// If not in our map, the song is read from the file's ID3 tags below
+				if (!song.containsKey(songName)) {
+					untagged.add(file.toPath());
+					untaggedAt.add(songs.size());
+				}
+				// Now that we've ensured our song is in the map,
+				// we can add it to our list of songs.
+				songs.add(song.get(songName));
+			}
+		}
+		// read the tags of the other files
+		List<Song> read = reader.read(untagged);
+		for (int i = 0; i < read.size(); i++)
+			songs.set(untaggedAt.get(i), read.get(i));
+		return new SongCatalog(songs);
+	}
+
+	/*
+	 * Gets all the songs, the list can't be changed.
+	 */
+	public List<Song> getSongs() {
+		return songs;
+	}
+
+	/*
+	 * Finds the song with the given file name, or null if there is no such song.
+	 */
+	public Song findSong(String fileName) {
+		int id = idOf(fileName);
+		return id < 0 ? null : getSong(id);
+	}
+
+	private int idOf(String fileName) {
+		byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+		int mask = slots.length - 1;
+		for (int slot = SongTable.hashOf(name) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			if (table.fileNameEquals(slots[slot] - 1, name))
+				return slots[slot] - 1;
+		}
+		return -1;
+	}
+
+	/*
+	 * Gets the catalog's own Song for the file of the given song, so accounts
+	 * don't keep copies of the same song. A song that isn't in the catalog is
+	 * returned as it is.
+	 */
+	public Song intern(Song song) {
+		Song entry = findSong(song.getFileName());
+		return entry == null ? song : entry;
+	}
+
+	/*
+	 * Gets the id of a song of this catalog, or -1 if the song isn't one of the
+	 * catalog's own Songs.
+	 */
+	public int idOf(Song song) {
+		return song.getTable() == table ? song.getRow() : -1;
+	}
+
+	/*
+	 * Gets the song with the given id.
+	 */
+	public Song getSong(int id) {
+		Song song = views.get(id);
+		if (song == null) {
+			// if two threads ask at once, both get the first one kept
+			views.compareAndSet(id, null, new Song(table, id));
+			song = views.get(id);
+		}
+		return song;
+	}
+
+	/*
+	 * Gets the number of songs in the catalog.
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/*
+	 * Gets the columns the songs are kept in.
+	 */
+	public SongTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Makes the Songs of MP3 files, for example by reading their tags.
+	 */
+	public interface Reader {
+		/**
+		 * @param files the MP3 files
+		 * @return a Song for each file, in the same order
+		 */
+		List<Song> read(List<Path> files);
+	}
+
+	/*
+	 * The songs of the catalog, in id order, as a list that can't be changed.
+	 */
+	private class SongList extends AbstractList<Song> implements RandomAccess {
+		@Override
+		public Song get(int index) {
+			return getSong(index);
+		}
+
+		@Override
+		public int size() {
+			return table.size();
+		}
+	}
+
+}
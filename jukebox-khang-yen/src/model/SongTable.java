@@ -0,0 +1,295 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The SongTable class keeps songs by column instead of as an object each. A
+ * song is a row number; its title and file name are UTF-8 bytes in one array
+ * for each column, its artist and album are ids into pools that hold every
+ * distinct name once, and its play time is an int of milliseconds. A catalog
+ * of hundreds of thousands of songs is then a few arrays rather than several
+ * objects per song.
+ *
+ * A play time that isn't minutes and seconds, such as "Unknown Duration", is
+ * kept in a pool too, so getPlaytime() gives back the text the song was made
+ * with.
+ *
+ * A table can't be changed once it is built, so it can be read by any thread.
+ * Song is a view of one row.
+ *
+ * @author Yen Lai
+ */
+public final class SongTable {
+	private static final String[] NONE = {};
+
+	private final int size;
+	// the bytes of row i are from offsets[i] to offsets[i + 1]
+	private final byte[] titles;
+	private final int[] titleOffsets;
+	private final byte[] fileNames;
+	private final int[] fileNameOffsets;
+	// milliseconds, or -1 - the index of the text in playtimes
+	private final int[] durations;
+	private final String[] playtimes;
+	// an index into artists or albums, or -1 for null
+	private final int[] artistIds;
+	private final String[] artists;
+	private final int[] albumIds;
+	private final String[] albums;
+
+	private SongTable(int size, byte[] titles, int[] titleOffsets, byte[] fileNames, int[] fileNameOffsets,
+			int[] durations, String[] playtimes, int[] artistIds, String[] artists, int[] albumIds, String[] albums) {
+		this.size = size;
+		this.titles = titles;
+		this.titleOffsets = titleOffsets;
+		this.fileNames = fileNames;
+		this.fileNameOffsets = fileNameOffsets;
+		this.durations = durations;
+		this.playtimes = playtimes;
+		this.artistIds = artistIds;
+		this.artists = artists;
+		this.albumIds = albumIds;
+		this.albums = albums;
+	}
+
+	/*
+	 * A table of one row, for a Song made on its own. It skips the pools of
+	 * the Builder, there is nothing to share.
+	 */
+	static SongTable of(String title, String artist, String playtime, String fileName, String album) {
+		byte[] titleBytes = Objects.requireNonNull(title, "title").getBytes(StandardCharsets.UTF_8);
+		byte[] fileNameBytes = Objects.requireNonNull(fileName, "fileName").getBytes(StandardCharsets.UTF_8);
+		int millis = durationOf(playtime);
+		return new SongTable(1, titleBytes, new int[] { 0, titleBytes.length }, fileNameBytes,
+				new int[] { 0, fileNameBytes.length }, new int[] { millis < 0 ? -1 : millis },
+				millis < 0 ? new String[] { playtime } : NONE, new int[] { artist == null ? -1 : 0 },
+				artist == null ? NONE : new String[] { artist }, new int[] { album == null ? -1 : 0 },
+				album == null ? NONE : new String[] { album });
+	}
+
+	/*
+	 * Gets the number of rows.
+	 */
+	public int size() {
+		return size;
+	}
+
+	String title(int row) {
+		return decode(titles, titleOffsets, row);
+	}
+
+	String fileName(int row) {
+		return decode(fileNames, fileNameOffsets, row);
+	}
+
+	String artist(int row) {
+		int id = artistIds[row];
+		return id < 0 ? null : artists[id];
+	}
+
+	String album(int row) {
+		int id = albumIds[row];
+		return id < 0 ? null : albums[id];
+	}
+
+	String playtime(int row) {
+		int duration = durations[row];
+		return duration >= 0 ? formatPlaytime(duration) : playtimes[-1 - duration];
+	}
+
+	/*
+	 * The play time in milliseconds, or -1 if it isn't known.
+	 */
+	int durationMillis(int row) {
+		return Math.max(-1, durations[row]);
+	}
+
+	/*
+	 * Gets the number of distinct artists, the size of the pool.
+	 */
+	public int artistCount() {
+		return artists.length;
+	}
+
+	/*
+	 * The hash of the UTF-8 bytes of a file name, the same as hashOf() gives
+	 * for the name.
+	 */
+	int fileNameHash(int row) {
+		return hash(fileNames, fileNameOffsets[row], fileNameOffsets[row + 1]);
+	}
+
+	/*
+	 * Checks if the row's file name has the given UTF-8 bytes.
+	 */
+	boolean fileNameEquals(int row, byte[] name) {
+		int start = fileNameOffsets[row];
+		return Arrays.equals(fileNames, start, fileNameOffsets[row + 1], name, 0, name.length);
+	}
+
+	static int hashOf(byte[] name) {
+		return hash(name, 0, name.length);
+	}
+
+	private static int hash(byte[] bytes, int start, int end) {
+		int h = 1;
+		for (int i = start; i < end; i++)
+			h = 31 * h + bytes[i];
+		h *= 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+
+	private static String decode(byte[] arena, int[] offsets, int row) {
+		int start = offsets[row];
+		return new String(arena, start, offsets[row + 1] - start, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a play time such as 3:05.
+	 *
+	 * @param playtime the play time
+	 * @return the milliseconds, or -1 if it isn't minutes and seconds
+	 */
+	public static int parsePlaytime(String playtime) {
+		if (playtime == null)
+			return -1;
+		int colon = playtime.indexOf(':');
+		if (colon < 1 || colon != playtime.length() - 3)
+			return -1;
+		try {
+			int minutes = Integer.parseInt(playtime.substring(0, colon));
+			int seconds = Integer.parseInt(playtime.substring(colon + 1));
+			if (minutes < 0 || seconds < 0 || seconds > 59 || minutes > 35_000)
+				return -1;
+			return (minutes * 60 + seconds) * 1000;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * The milliseconds of a play time that reads back as the same text, or -1.
+	 */
+	private static int durationOf(String playtime) {
+		int millis = parsePlaytime(playtime);
+		return millis >= 0 && formatPlaytime(millis).equals(playtime) ? millis : -1;
+	}
+
+	private static String formatPlaytime(int millis) {
+		int seconds = millis / 1000;
+		int rest = seconds % 60;
+		return seconds / 60 + (rest < 10 ? ":0" : ":") + rest;
+	}
+
+	/**
+	 * Collects rows for a new SongTable.
+	 */
+	public static final class Builder {
+		private int size;
+		private byte[] titles = new byte[256];
+		private int[] titleOffsets = new int[17];
+		private byte[] fileNames = new byte[256];
+		private int[] fileNameOffsets = new int[17];
+		private int[] durations = new int[16];
+		private int[] artistIds = new int[16];
+		private int[] albumIds = new int[16];
+		private final Pool playtimes = new Pool();
+		private final Pool artists = new Pool();
+		private final Pool albums = new Pool();
+
+		/**
+		 * Adds a row with the fields of the song.
+		 *
+		 * @return the row number
+		 */
+		public int add(Song song) {
+			return add(song.getTitle(), song.getArtist(), song.getPlaytime(), song.getFileName(), song.getAlbum());
+		}
+
+		/**
+		 * Adds a row.
+		 *
+		 * @param title    the title
+		 * @param artist   the artist, or null
+		 * @param playtime the play time such as 3:05, or any other text
+		 * @param fileName the name of the song file
+		 * @param album    the album, or null if it isn't known
+		 * @return the row number
+		 */
+		public int add(String title, String artist, String playtime, String fileName, String album) {
+			Objects.requireNonNull(title, "title");
+			Objects.requireNonNull(fileName, "fileName");
+			if (size == durations.length) {
+				int capacity = size * 2;
+				durations = Arrays.copyOf(durations, capacity);
+				artistIds = Arrays.copyOf(artistIds, capacity);
+				albumIds = Arrays.copyOf(albumIds, capacity);
+				titleOffsets = Arrays.copyOf(titleOffsets, capacity + 1);
+				fileNameOffsets = Arrays.copyOf(fileNameOffsets, capacity + 1);
+			}
+			titles = append(titles, titleOffsets, title);
+			fileNames = append(fileNames, fileNameOffsets, fileName);
+			int millis = durationOf(playtime);
+			durations[size] = millis >= 0 ? millis : -1 - playtimes.idOf(playtime);
+			artistIds[size] = artist == null ? -1 : artists.idOf(artist);
+			albumIds[size] = album == null ? -1 : albums.idOf(album);
+			return size++;
+		}
+
+		private byte[] append(byte[] arena, int[] offsets, String text) {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			int start = offsets[size];
+			if (start + bytes.length > arena.length)
+				arena = Arrays.copyOf(arena, Math.max(arena.length * 2, start + bytes.length));
+			System.arraycopy(bytes, 0, arena, start, bytes.length);
+			offsets[size + 1] = start + bytes.length;
+			return arena;
+		}
+
+		/*
+		 * Gets the number of rows added.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return a table of the rows added, trimmed to their size
+		 */
+		public SongTable build() {
+			return new SongTable(size, Arrays.copyOf(titles, titleOffsets[size]), Arrays.copyOf(titleOffsets, size + 1),
+					Arrays.copyOf(fileNames, fileNameOffsets[size]), Arrays.copyOf(fileNameOffsets, size + 1),
+					Arrays.copyOf(durations, size), playtimes.toArray(), Arrays.copyOf(artistIds, size),
+					artists.toArray(), Arrays.copyOf(albumIds, size), albums.toArray());
+		}
+	}
+
+	/*
+	 * Gives each distinct string an id, while a table is built.
+	 */
+	private static final class Pool {
+		private final Map<String, Integer> ids = new HashMap<>();
+		private String[] strings = new String[4];
+
+		int idOf(String value) {
+			Integer id = ids.get(value);
+			if (id == null) {
+				id = ids.size();
+				if (id == strings.length)
+					strings = Arrays.copyOf(strings, id * 2);
+				strings[id] = value;
+				ids.put(value, id);
+			}
+			return id;
+		}
+
+		String[] toArray() {
+			return Arrays.copyOf(strings, ids.size());
+		}
+	}
+
+}
@@ -0,0 +1,321 @@
+package model;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The TrendingSongs class keeps the songs played the most in a window of time
+ * that slides along with the clock, such as the last hour or the last day. It
+ * is a PlayHistory, so the playback engine tells it about every song that
+ * finished.
+ *
+ * The window is split into slots; the last hour into 12 slots of 5 minutes.
+ * Each slot counts its plays in a CountMinSketch, and the oldest slot is
+ * cleared and used again when the window moves past it. A song's plays in the
+ * window is the sum of its counts in the slots. Next to the sketches a few
+ * more candidates than the songs to show are counted one by one: a song
+ * played more often than the least played candidate replaces it. So the
+ * memory it takes is fixed by the window and the number of songs to show,
+ * not by the size of the catalog or how many songs are played.
+ *
+ * Songs are counted on one thread at a time. getTop() takes no lock: every
+ * change publishes a new array of the counts of the candidates, and
+ * getTop() picks the most played of them with a heap, leaving out the slots
+ * that have left the window since.
+ *
+ * @author Yen Lai
+ */
+public class TrendingSongs implements PlayHistory {
+	private static final int SKETCH_DEPTH = 4;
+	private static final int SKETCH_WIDTH = 1024;
+	// candidates counted one by one, for every song shown
+	private static final int CANDIDATES_PER_SONG = 4;
+
+	private final Clock clock;
+	private final long slotMillis;
+	private final int slots;
+	private final int limit;
+	private final int capacity;
+	private final CountMinSketch[] sketches;
+
+	// Only used while holding the lock
+	private final Map<String, Candidate> candidates = new HashMap<>();
+	private long currentSlot = Long.MIN_VALUE;
+	// the plays of the least played candidate, or -1 if it has to be found
+	private int floor = -1;
+
+	private volatile Entry[] published = new Entry[0];
+
+	/**
+	 * Makes an empty window.
+	 *
+	 * @param clock  the clock that moves the window for getTop()
+	 * @param window how far back plays count
+	 * @param slots  the number of parts the window moves by
+	 * @param limit  the number of songs getTop() returns
+	 */
+	public TrendingSongs(Clock clock, Duration window, int slots, int limit) {
+		if (slots < 1 || limit < 1 || window.toMillis() < slots)
+			throw new IllegalArgumentException(window + " in " + slots + " slots, " + limit + " songs");
+		this.clock = clock;
+		this.slotMillis = window.toMillis() / slots;
+		this.slots = slots;
+		this.limit = limit;
+		this.capacity = limit * CANDIDATES_PER_SONG;
+		this.sketches = new CountMinSketch[slots];
+		for (int i = 0; i < slots; i++)
+			sketches[i] = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+	}
+
+	/**
+	 * The 10 songs played the most in the last hour, in slots of 5 minutes.
+	 *
+	 * @param clock the clock that moves the window
+	 * @return an empty window
+	 */
+	public static TrendingSongs lastHour(Clock clock) {
+		return new TrendingSongs(clock, Duration.ofHours(1), 12, 10);
+	}
+
+	/**
+	 * The 10 songs played the most in the last day, in slots of an hour.
+	 *
+	 * @param clock the clock that moves the window
+	 * @return an empty window
+	 */
+	public static TrendingSongs lastDay(Clock clock) {
+		return new TrendingSongs(clock, Duration.ofDays(1), 24, 10);
+	}
+
+	/**
+	 * Counts a song that played to the end. Songs that couldn't be played and
+	 * songs that finished before the window are not counted.
+	 */
+	@Override
+	public synchronized void songFinished(long epochMillis, Account account, Song song, Outcome outcome) {
+		if (outcome != Outcome.PLAYED)
+			return;
+		long slot = Math.floorDiv(epochMillis, slotMillis);
+		if (slot > currentSlot)
+			advanceTo(slot);
+		else if (slot <= currentSlot - slots)
+			return;
+		long key = key(song);
+		sketches[index(slot)].add(key, 1);
+
+		Candidate candidate = candidates.get(song.getFileName());
+		if (candidate != null) {
+			candidate.roll(currentSlot);
+			boolean wasFloor = candidate.total() == floor;
+			candidate.counts[index(slot)]++;
+			candidate.entry = null;
+			if (wasFloor)
+				floor = -1;
+		} else {
+			// the counts of the sketches, which may be a little too high
+			int[] counts = new int[slots];
+			int total = 0;
+			for (long s = currentSlot - slots + 1; s <= currentSlot; s++) {
+				counts[index(s)] = sketches[index(s)].estimate(key);
+				total += counts[index(s)];
+			}
+			if (candidates.size() >= capacity) {
+				if (total <= floor())
+					return;
+				candidates.remove(leastPlayed().song.getFileName());
+			}
+			candidate = new Candidate(song, currentSlot, counts);
+			candidates.put(song.getFileName(), candidate);
+			floor = -1;
+		}
+		publish();
+	}
+
+	/**
+	 * Gets the songs played the most in the window that ends now, most played
+	 * first. Songs played as often are in the order of their titles. Takes no
+	 * lock, so it can be called from the JavaFX thread while songs are counted.
+	 *
+	 * @return at most limit songs, each played at least once
+	 */
+	public List<Trend> getTop() {
+		Entry[] entries = published;
+		long now = Math.floorDiv(clock.millis(), slotMillis);
+		// the least played of the songs found so far is at the head
+		PriorityQueue<Trend> top = new PriorityQueue<>(limit + 1, Trend.ORDER.reversed());
+		for (Entry entry : entries) {
+			int plays = entry.playsAt(now);
+			if (plays == 0)
+				continue;
+			top.add(new Trend(entry.song, plays));
+			if (top.size() > limit)
+				top.poll();
+		}
+		List<Trend> result = new ArrayList<>(top);
+		result.sort(Trend.ORDER);
+		return Collections.unmodifiableList(result);
+	}
+
+	/*
+	 * Gets the memory the sketches and candidates take, in bytes, which does
+	 * not grow with the songs played.
+	 */
+	public long getBytes() {
+		return sketches.length * sketches[0].getBytes() + (long) capacity * slots * Integer.BYTES * 2;
+	}
+
+	/*
+	 * Moves the window to end with the slot, clearing the slots it left.
+	 */
+	private void advanceTo(long slot) {
+		if (currentSlot != Long.MIN_VALUE) {
+			for (long s = currentSlot + 1; s <= Math.min(slot, currentSlot + slots); s++)
+				sketches[index(s)].clear();
+		}
+		currentSlot = slot;
+		floor = -1;
+	}
+
+	private int floor() {
+		if (floor < 0)
+			floor = leastPlayed().total();
+		return floor;
+	}
+
+	private Candidate leastPlayed() {
+		Candidate least = null;
+		for (Candidate candidate : candidates.values()) {
+			candidate.roll(currentSlot);
+			if (least == null || candidate.total() < least.total())
+				least = candidate;
+		}
+		return least;
+	}
+
+	/*
+	 * Publishes the counts of the candidates for getTop().
+	 */
+	private void publish() {
+		Entry[] entries = new Entry[candidates.size()];
+		int i = 0;
+		for (Candidate candidate : candidates.values())
+			entries[i++] = candidate.entry();
+		published = entries;
+	}
+
+	private int index(long slot) {
+		return (int) Math.floorMod(slot, (long) slots);
+	}
+
+	private static long key(Song song) {
+		String fileName = song.getFileName();
+		return (long) fileName.hashCode() << 32 ^ fileName.length();
+	}
+
+	/**
+	 * A song and the times it was played in the window.
+	 */
+	public static final class Trend {
+		static final Comparator<Trend> ORDER = Comparator.comparingInt(Trend::getPlays).reversed()
+				.thenComparing(trend -> trend.getSong().getTitle());
+
+		private final Song song;
+		private final int plays;
+
+		public Trend(Song song, int plays) {
+			this.song = song;
+			this.plays = plays;
+		}
+
+		public Song getSong() {
+			return song;
+		}
+
+		public int getPlays() {
+			return plays;
+		}
+
+		@Override
+		public String toString() {
+			return song.getTitle() + " (" + plays + ")";
+		}
+	}
+
+	/*
+	 * A song counted one by one, by slot. counts[index(s)] holds the plays in
+	 * slot s, for the slots of the window that ends with lastSlot.
+	 */
+	private final class Candidate {
+		final Song song;
+		final int[] counts;
+		long lastSlot;
+		// the counts as last published, or null if they changed since
+		Entry entry;
+
+		Candidate(Song song, long lastSlot, int[] counts) {
+			this.song = song;
+			this.lastSlot = lastSlot;
+			this.counts = counts;
+		}
+
+		/*
+		 * Moves the window to end with the slot, clearing the slots it left.
+		 */
+		void roll(long slot) {
+			for (long s = lastSlot + 1; s <= Math.min(slot, lastSlot + slots); s++)
+				counts[index(s)] = 0;
+			if (slot > lastSlot) {
+				lastSlot = slot;
+				entry = null;
+			}
+		}
+
+		int total() {
+			int total = 0;
+			for (int count : counts)
+				total += count;
+			return total;
+		}
+
+		Entry entry() {
+			if (entry == null)
+				entry = new Entry(song, lastSlot, counts.clone());
+			return entry;
+		}
+	}
+
+	/*
+	 * The counts of a candidate as they were published. It never changes, so
+	 * getTop() can read it without a lock.
+	 */
+	private final class Entry {
+		final Song song;
+		final long lastSlot;
+		final int[] counts;
+
+		Entry(Song song, long lastSlot, int[] counts) {
+			this.song = song;
+			this.lastSlot = lastSlot;
+			this.counts = counts;
+		}
+
+		/*
+		 * The plays in the window that ends with the slot, leaving out the
+		 * slots that left the window since the counts were published.
+		 */
+		int playsAt(long slot) {
+			int plays = 0;
+			for (long s = Math.max(slot, lastSlot) - slots + 1; s <= lastSlot; s++)
+				plays += counts[index(s)];
+			return plays;
+		}
+	}
+
+}
@@ -0,0 +1,341 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * The VenueQueue class is the one queue of songs for the whole jukebox. Every
+ * session, the GUI or any other front end, adds the songs its user picks to
+ * it, and one PlaybackEngine plays them, by default in the order they were
+ * added.
+ *
+ * Many threads may add songs at the same time, but only one thread, the
+ * consumer, may take them. Adding never waits and never retries: it swaps
+ * the new song in as the tail with one atomic step and then links the old
+ * tail to it. The consumer only follows the links from the head, so it needs
+ * no lock either.
+ *
+ * Between the swap and the link, the songs added after the new one can't be
+ * seen by the consumer yet. This is why adding a song tells the consumer
+ * after it is linked: the consumer is told again if it looked too early.
+ *
+ * A fair queue plays the songs round-robin instead of first in, first out:
+ * each round, every account with songs waiting plays one song, or as many as
+ * its weight, in the order it added them. An account that adds three songs
+ * at once doesn't hold back the first song of the accounts after it. The
+ * consumer moves the added songs into a queue per account before it picks
+ * one, so adding stays the same, and picking a song takes constant time
+ * however many accounts are waiting.
+ *
+ * @author Yen Lai
+ */
+public class VenueQueue {
+	// only the consumer moves the head, a node whose song was taken already
+	private Node head;
+	private final AtomicReference<Node> tail;
+	private final LongAdder added = new LongAdder();
+	// only changed by the consumer
+	private volatile long taken;
+	private volatile Runnable consumer = () -> {
+	};
+	// null if the songs play first in, first out
+	private final Rounds rounds;
+
+	/**
+	 * Makes a queue that plays the songs in the order they were added.
+	 */
+	public VenueQueue() {
+		this(null);
+	}
+
+	/**
+	 * Makes a fair queue that plays the songs of the accounts round-robin.
+	 *
+	 * @param weights the songs an account plays each round, at least 1
+	 * @return the fair queue
+	 */
+	public static VenueQueue fair(ToIntFunction<JukeboxAccount> weights) {
+		return new VenueQueue(new Rounds(weights));
+	}
+
+	/**
+	 * Makes a fair queue where each account plays one song a round.
+	 *
+	 * @return the fair queue
+	 */
+	public static VenueQueue fair() {
+		return fair(account -> 1);
+	}
+
+	private VenueQueue(Rounds rounds) {
+		head = new Node(null);
+		tail = new AtomicReference<>(head);
+		this.rounds = rounds;
+	}
+
+	/*
+	 * Checks if the songs play round-robin rather than in the order they were
+	 * added.
+	 */
+	public boolean isFair() {
+		return rounds != null;
+	}
+
+	/**
+	 * Adds a song to the end of the queue and tells the consumer. May be called
+	 * on any thread.
+	 *
+	 * @param account the account that picked the song
+	 * @param song    the song to play
+	 */
+	public void offer(JukeboxAccount account, Song song) {
+		Node node = new Node(new Entry(account, song));
+		Node previous = tail.getAndSet(node);
+		previous.next = node;
+		added.increment();
+		consumer.run();
+	}
+
+	/**
+	 * Takes the song at the front of the queue. Only the consumer may call it.
+	 *
+	 * @return the song at the front, or null if the queue is empty
+	 */
+	public Entry poll() {
+		Entry entry;
+		if (rounds != null) {
+			moveAdded();
+			entry = rounds.poll();
+		} else {
+			entry = take();
+		}
+		if (entry != null)
+			taken++;
+		return entry;
+	}
+
+	/*
+	 * Takes the song added first, or null.
+	 */
+	private Entry take() {
+		Node next = head.next;
+		if (next == null)
+			return null;
+		Entry entry = next.entry;
+		// the node is the new head, it doesn't need to hold its song
+		next.entry = null;
+		head = next;
+		return entry;
+	}
+
+	/*
+	 * Moves the songs added since the last look to their accounts' queues.
+	 */
+	private void moveAdded() {
+		for (Entry entry = take(); entry != null; entry = take())
+			rounds.add(entry);
+	}
+
+	/**
+	 * Gets the song at the front of the queue without taking it. Only the
+	 * consumer may call it.
+	 *
+	 * @return the song at the front, or null if the queue is empty
+	 */
+	public Entry peek() {
+		if (rounds != null) {
+			moveAdded();
+			return rounds.peek();
+		}
+		Node next = head.next;
+		return next == null ? null : next.entry;
+	}
+
+	/*
+	 * Gets the songs in the queue in the order they will play. Only the
+	 * consumer may call it.
+	 */
+	public List<Entry> snapshot() {
+		if (rounds != null) {
+			moveAdded();
+			return rounds.snapshot();
+		}
+		List<Entry> entries = new ArrayList<>();
+		for (Node node = head.next; node != null; node = node.next)
+			entries.add(node.entry);
+		return entries;
+	}
+
+	/*
+	 * Checks if the consumer has nothing to take. Only the consumer may call it.
+	 */
+	public boolean isEmpty() {
+		return peek() == null;
+	}
+
+	/*
+	 * Gets the number of songs in the queue. May be called on any thread, and
+	 * may be out of date by the time it returns.
+	 */
+	public int size() {
+		return (int) Math.max(0, added.sum() - taken);
+	}
+
+	/*
+	 * Sets what to run after each song is added, on the thread that added it.
+	 * It must be quick, the consumer usually only schedules a look at the
+	 * queue.
+	 */
+	public void setConsumer(Runnable consumer) {
+		this.consumer = consumer;
+	}
+
+	/**
+	 * A song in the queue and the account that picked it.
+	 */
+	public static final class Entry {
+		private final JukeboxAccount account;
+		private final Song song;
+		// System.nanoTime() when the song was queued
+		private final long queuedNanos = System.nanoTime();
+
+		public Entry(JukeboxAccount account, Song song) {
+			this.account = account;
+			this.song = song;
+		}
+
+		public JukeboxAccount getAccount() {
+			return account;
+		}
+
+		public Song getSong() {
+			return song;
+		}
+
+		/*
+		 * Gets the System.nanoTime() of when the song was queued.
+		 */
+		public long getQueuedNanos() {
+			return queuedNanos;
+		}
+
+		/*
+		 * Gets the file of the song, for example songfiles/Capture.mp3.
+		 */
+		public String getPath() {
+			return SongCatalog.SONG_DIRECTORY + "/" + song.getFileName();
+		}
+
+		@Override
+		public String toString() {
+			return account.getAccount().getID() + ": " + song.getFileName();
+		}
+	}
+
+	private static class Node {
+		Entry entry;
+		volatile Node next;
+
+		Node(Entry entry) {
+			this.entry = entry;
+		}
+	}
+
+	/*
+	 * The songs of a fair queue: a queue of songs per account, and a ring of
+	 * the accounts that have songs waiting, in the order they play. Only the
+	 * consumer uses it.
+	 */
+	private static class Rounds {
+		private final ToIntFunction<JukeboxAccount> weights;
+		private final Map<JukeboxAccount, Waiting> waiting = new HashMap<>();
+		private final ArrayDeque<Waiting> ring = new ArrayDeque<>();
+
+		Rounds(ToIntFunction<JukeboxAccount> weights) {
+			this.weights = weights;
+		}
+
+		void add(Entry entry) {
+			Waiting account = waiting.get(entry.account);
+			if (account == null) {
+				// an account joins at the end of the round
+				account = new Waiting(Math.max(1, weights.applyAsInt(entry.account)));
+				waiting.put(entry.account, account);
+				ring.addLast(account);
+			}
+			account.songs.addLast(entry);
+		}
+
+		Entry peek() {
+			Waiting account = ring.peekFirst();
+			return account == null ? null : account.songs.peekFirst();
+		}
+
+		Entry poll() {
+			Waiting account = ring.peekFirst();
+			if (account == null)
+				return null;
+			Entry entry = account.songs.pollFirst();
+			account.played++;
+			if (account.songs.isEmpty()) {
+				ring.pollFirst();
+				waiting.remove(entry.account);
+			} else if (account.played >= account.weight) {
+				// its turn is over, it plays again next round
+				account.played = 0;
+				ring.addLast(ring.pollFirst());
+			}
+			return entry;
+		}
+
+		List<Entry> snapshot() {
+			List<Entry> entries = new ArrayList<>();
+			// play the rounds on copies of the queues
+			ArrayDeque<Iterator<Entry>> turns = new ArrayDeque<>();
+			ArrayDeque<Integer> left = new ArrayDeque<>();
+			boolean first = true;
+			for (Waiting account : ring) {
+				turns.addLast(account.songs.iterator());
+				left.addLast(first ? account.weight - account.played : account.weight);
+				first = false;
+			}
+			while (!turns.isEmpty()) {
+				Iterator<Entry> songs = turns.pollFirst();
+				int turn = left.pollFirst();
+				for (int i = 0; i < turn && songs.hasNext(); i++)
+					entries.add(songs.next());
+				if (songs.hasNext()) {
+					turns.addLast(songs);
+					left.addLast(weightOf(entries.get(entries.size() - 1).account));
+				}
+			}
+			return entries;
+		}
+
+		private int weightOf(JukeboxAccount account) {
+			return waiting.get(account).weight;
+		}
+	}
+
+	/*
+	 * An account with songs waiting in a fair queue.
+	 */
+	private static class Waiting {
+		final int weight;
+		final ArrayDeque<Entry> songs = new ArrayDeque<>();
+		// the songs it played in this round
+		int played;
+
+		Waiting(int weight) {
+			this.weight = weight;
+		}
+	}
+
+}
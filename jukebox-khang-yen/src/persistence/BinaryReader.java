@@ -0,0 +1,115 @@
+package persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * The BinaryReader class reads the compact binary format written by
+ * BinaryWriter.
+ * 
+ * @author Khang Tran
+ */
+public class BinaryReader {
+	private final InputStream in;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+	private final StringTable strings;
+
+	public BinaryReader(InputStream in, StringTable strings) {
+		this(in, strings, 64 * 1024);
+	}
+
+	/*
+	 * constructor with a smaller buffer, for reading one small record
+	 */
+	public BinaryReader(InputStream in, StringTable strings, int bufferSize) {
+		this.in = in;
+		this.strings = strings;
+		this.buffer = new byte[Math.max(bufferSize, 16)];
+	}
+
+	public int readByte() throws IOException {
+		if (position == limit && !fill())
+			throw new EOFException();
+		return buffer[position++] & 0xFF;
+	}
+
+	public int readVarInt() throws IOException {
+		long value = readVarLong();
+		if (value > 0xFFFFFFFFL)
+			throw new IOException("Bad varint");
+		return (int) value;
+	}
+
+	public long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Bad varint");
+	}
+
+	public long readSignedVarLong() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public byte[] readBytes() throws IOException {
+		byte[] bytes = new byte[readVarInt()];
+		readRaw(bytes);
+		return bytes;
+	}
+
+	/*
+	 * Reads bytes that were written without their length, filling the array.
+	 */
+	public void readRaw(byte[] bytes) throws IOException {
+		int done = 0;
+		while (done < bytes.length) {
+			if (position == limit && !fill())
+				throw new EOFException();
+			int n = Math.min(bytes.length - done, limit - position);
+			System.arraycopy(buffer, position, bytes, done, n);
+			position += n;
+			done += n;
+		}
+	}
+
+	public String readString() throws IOException {
+		int index = readVarInt();
+		if (index == 0)
+			return null;
+		if (index > strings.size())
+			throw new IOException("Bad string index " + index);
+		return strings.get(index - 1);
+	}
+
+	public String readUtf() throws IOException {
+		return new String(readBytes(), StandardCharsets.UTF_8);
+	}
+
+	public LocalDate readDate() throws IOException {
+		long value = readVarLong();
+		if (value == 0)
+			return null;
+		value--;
+		return LocalDate.ofEpochDay((value >>> 1) ^ -(value & 1));
+	}
+
+	private boolean fill() throws IOException {
+		int n = in.read(buffer);
+		if (n <= 0)
+			return false;
+		position = 0;
+		limit = n;
+		return true;
+	}
+
+}
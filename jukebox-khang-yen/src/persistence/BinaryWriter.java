@@ -0,0 +1,145 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * The BinaryWriter class writes the compact binary format read by
+ * BinaryReader. Numbers are written as varints, so small numbers take one
+ * byte. writeString only writes the index of the string in a StringTable, so
+ * an artist or a song file that appears thousands of times is stored once;
+ * the table itself is written separately. writeUtf writes the UTF-8 bytes of
+ * strings that are not worth sharing, like user names. Dates are written as
+ * epoch days.
+ * 
+ * @author Khang Tran
+ */
+public class BinaryWriter implements Closeable {
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int position;
+	private final StringTable strings;
+
+	public BinaryWriter(OutputStream out, StringTable strings) {
+		this(out, strings, 64 * 1024);
+	}
+
+	/*
+	 * constructor with a smaller buffer, for writing many small records
+	 */
+	public BinaryWriter(OutputStream out, StringTable strings, int bufferSize) {
+		this.out = out;
+		this.strings = strings;
+		this.buffer = new byte[Math.max(bufferSize, 16)];
+	}
+
+	public void writeByte(int value) throws IOException {
+		if (position == buffer.length)
+			flushBuffer();
+		buffer[position++] = (byte) value;
+	}
+
+	/*
+	 * Writes a number that is never negative, 7 bits at a time.
+	 */
+	public void writeVarInt(int value) throws IOException {
+		writeVarLong(value & 0xFFFFFFFFL);
+	}
+
+	public void writeVarLong(long value) throws IOException {
+		if (buffer.length - position < 10)
+			flushBuffer();
+		while ((value & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+	}
+
+	/*
+	 * Writes a number that may be negative, small negative numbers stay small.
+	 */
+	public void writeSignedVarLong(long value) throws IOException {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	public void writeBytes(byte[] bytes) throws IOException {
+		writeVarInt(bytes.length);
+		writeRaw(bytes);
+	}
+
+	/*
+	 * Writes a string, or null, as its index in the string table.
+	 */
+	public void writeString(String value) throws IOException {
+		// 0 means null, so shift every index up by one
+		writeVarInt(value == null ? 0 : strings.indexOf(value) + 1);
+	}
+
+	/*
+	 * Writes the UTF-8 bytes of a string that is not null.
+	 */
+	public void writeUtf(String value) throws IOException {
+		writeBytes(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Writes a date, or null, as an epoch day.
+	 */
+	public void writeDate(LocalDate date) throws IOException {
+		if (date == null) {
+			writeVarLong(0);
+			return;
+		}
+		// 0 means null, so shift every day up by one
+		long day = date.toEpochDay();
+		writeVarLong(((day << 1) ^ (day >> 63)) + 1);
+	}
+
+	/*
+	 * Writes a part of an array with its length in front.
+	 */
+	public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		writeVarInt(length);
+		writeRaw(bytes, offset, length);
+	}
+
+	/*
+	 * Writes bytes as they are, without their length.
+	 */
+	public void writeRaw(byte[] bytes, int offset, int length) throws IOException {
+		if (length > buffer.length - position) {
+			flushBuffer();
+			if (length > buffer.length) {
+				out.write(bytes, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(bytes, offset, buffer, position, length);
+		position += length;
+	}
+
+	private void writeRaw(byte[] bytes) throws IOException {
+		writeRaw(bytes, 0, bytes.length);
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, position);
+		position = 0;
+	}
+
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+
+}
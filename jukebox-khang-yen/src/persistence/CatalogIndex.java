@@ -0,0 +1,229 @@
+package persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import model.CatalogIngester;
+import model.Song;
+import model.SongCatalog;
+
+/**
+ * The CatalogIndex class keeps the tags read from the song files in a file,
+ * so the jukebox doesn't read the tags of every file each time it starts. Each
+ * song is saved with the path, size and modification time of its file; a file
+ * whose size or time has changed, or that is new, has its tags read again with
+ * CatalogIngester. When anything changed the index file is written again.
+ *
+ * The index file is read with a single read of the whole file. Layout of
+ * version 1, after the 4 byte magic number and the version:
+ *
+ * <pre>
+ * string table                  varint count, then utf for each
+ * songs                         varint count, then for each:
+ *   path                        string
+ *   size, modified              varlong, varlong nanoseconds since 1970
+ *   title, artist, playtime     string, string, string
+ *   fileName, album             string, string
+ * </pre>
+ *
+ * An index that can't be read is ignored and every file is read again.
+ *
+ * @author Yen Lai
+ */
+public class CatalogIndex implements SongCatalog.Reader {
+	static final int MAGIC = 0x4A42_5843; // "JBXC"
+	static final int VERSION = 1;
+
+	private final Path indexFile;
+	// how many files the last read() had to read the tags of
+	private int parsedFiles;
+
+	/**
+	 * @param indexFile the file the index is kept in
+	 */
+	public CatalogIndex(Path indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Makes the Songs of the files, from the index where the file hasn't
+	 * changed and from the file's tags where it has.
+	 *
+	 * @param files the MP3 files
+	 * @return a Song for each file, in the same order
+	 */
+	@Override
+	public List<Song> read(List<Path> files) {
+		Map<String, Entry> index = readIndex();
+		List<Entry> entries = new ArrayList<>(files.size());
+		List<Path> changed = new ArrayList<>();
+		List<Integer> changedAt = new ArrayList<>();
+		for (Path file : files) {
+			Entry entry = stat(file);
+			Entry saved = entry == null ? null : index.get(entry.path);
+			if (saved != null && saved.size == entry.size && saved.modified == entry.modified) {
+				entries.add(saved);
+			} else {
+				changed.add(file);
+				changedAt.add(entries.size());
+				entries.add(entry);
+			}
+		}
+
+		List<Song> parsed = CatalogIngester.ingest(changed);
+		for (int i = 0; i < parsed.size(); i++) {
+			int at = changedAt.get(i);
+			Entry entry = entries.get(at);
+			// a file that can't be looked at isn't saved in the index
+			entries.set(at, entry == null ? new Entry(null, -1, -1, parsed.get(i))
+					: new Entry(entry.path, entry.size, entry.modified, parsed.get(i)));
+		}
+		parsedFiles = changed.size();
+
+		List<Song> songs = new ArrayList<>(entries.size());
+		for (Entry entry : entries)
+			songs.add(entry.song);
+		// write the index again if a file was added, changed or removed
+		if (!changed.isEmpty() || index.size() != entries.size()) {
+			try {
+				writeIndex(entries);
+			} catch (IOException e) {
+				// the songs are still right, the next start reads the tags again
+				e.printStackTrace();
+			}
+		}
+		return songs;
+	}
+
+	/*
+	 * Gets how many files the last read() had to read the tags of.
+	 */
+	public int getParsedFiles() {
+		return parsedFiles;
+	}
+
+	private static Entry stat(Path file) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return new Entry(file.toAbsolutePath().normalize().toString(), attributes.size(),
+					attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), null);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Reads the index file, or gives an empty index if there is none or it
+	 * can't be read.
+	 */
+	private Map<String, Entry> readIndex() {
+		try {
+			byte[] bytes = Files.readAllBytes(indexFile);
+			return decode(bytes);
+		} catch (NoSuchFileException e) {
+			return new HashMap<>();
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Catalog index is not usable, reading every song file: " + e.getMessage());
+			return new HashMap<>();
+		}
+	}
+
+	private static Map<String, Entry> decode(byte[] bytes) throws IOException {
+		if (bytes.length < 4 || ((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8
+				| bytes[3] & 0xFF) != MAGIC)
+			throw new IOException("Not a catalog index");
+		StringTable strings = new StringTable();
+		BinaryReader reader = new BinaryReader(new ByteArrayInputStream(bytes, 4, bytes.length - 4), strings);
+		int version = reader.readVarInt();
+		if (version != VERSION)
+			throw new IOException("Catalog index version " + version + " can't be read, expected " + VERSION);
+		int count = reader.readVarInt();
+		// the table was written without repeats, so each string keeps its index
+		for (int i = 0; i < count; i++)
+			strings.indexOf(reader.readUtf());
+
+		count = reader.readVarInt();
+		Map<String, Entry> index = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+		for (int i = 0; i < count; i++) {
+			String path = reader.readString();
+			long size = reader.readVarLong();
+			long modified = reader.readVarLong();
+			Song song = new Song(reader.readString(), reader.readString(), reader.readString(),
+					reader.readString(), reader.readString());
+			index.put(path, new Entry(path, size, modified, song));
+		}
+		return index;
+	}
+
+	private void writeIndex(List<Entry> entries) throws IOException {
+		// encode the songs first, they fill the string table
+		StringTable strings = new StringTable();
+		ByteArrayOutputStream songs = new ByteArrayOutputStream();
+		BinaryWriter songWriter = new BinaryWriter(songs, strings);
+		int count = 0;
+		for (Entry entry : entries) {
+			if (entry.path == null)
+				continue;
+			Song song = entry.song;
+			songWriter.writeString(entry.path);
+			songWriter.writeVarLong(entry.size);
+			songWriter.writeVarLong(entry.modified);
+			songWriter.writeString(song.getTitle());
+			songWriter.writeString(song.getArtist());
+			songWriter.writeString(song.getPlaytime());
+			songWriter.writeString(song.getFileName());
+			songWriter.writeString(song.getAlbum());
+			count++;
+		}
+		songWriter.flush();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(songs.size() + 1024);
+		bytes.write(MAGIC >>> 24);
+		bytes.write(MAGIC >>> 16);
+		bytes.write(MAGIC >>> 8);
+		bytes.write(MAGIC);
+		BinaryWriter writer = new BinaryWriter(bytes, strings);
+		writer.writeVarInt(VERSION);
+		writer.writeVarInt(strings.size());
+		for (int i = 0; i < strings.size(); i++)
+			writer.writeUtf(strings.get(i));
+		writer.writeVarInt(count);
+		byte[] encoded = songs.toByteArray();
+		writer.writeRaw(encoded, 0, encoded.length);
+		writer.flush();
+
+		// a new file renamed over the old one, so a crash leaves one whole index
+		Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+		Files.write(temp, bytes.toByteArray());
+		Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * A song file as it was when its tags were read.
+	 */
+	private static class Entry {
+		final String path;
+		final long size;
+		final long modified;
+		final Song song;
+
+		Entry(String path, long size, long modified, Song song) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.song = song;
+		}
+	}
+
+}
@@ -0,0 +1,393 @@
+package persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import model.Account;
+import model.Journal;
+import model.PasswordHash;
+
+/**
+ * The JournalFile class writes every change to the jukebox to an append-only
+ * log on disk. Each change is a small record with a sequence number, so saving
+ * a change costs as much as the change itself, not as much as the whole
+ * jukebox.
+ * 
+ * Records are collected in memory and written out and synced by a background
+ * thread every flush interval (100 ms by default), so a crash loses at most
+ * the changes made during the last interval. Each record ends with a CRC32, so
+ * a record that was only half written when the process died is found and
+ * ignored when the journal is read back.
+ * 
+ * The log is split into segment files named journal.<first sequence number>.
+ * rotate() starts a new segment, so the older ones can be deleted once a
+ * snapshot holds their changes.
+ * 
+ * @author Khang Tran
+ */
+public class JournalFile implements Journal, Closeable {
+	// record types
+	static final byte ACCOUNT_CREATED = 1;
+	static final byte LOGGED_IN = 2;
+	static final byte SONG_ENQUEUED = 3;
+	static final byte SONG_PLAYED = 4;
+	static final byte DAILY_RESET = 5;
+	static final byte SONG_SKIPPED = 6;
+
+	private static final String PREFIX = "journal.";
+	// sequence number, type and CRC32
+	private static final int MIN_RECORD_BYTES = 13;
+	// more than the largest record, an account with a 64 KiB user name
+	private static final int MAX_RECORD_BYTES = 128 * 1024;
+
+	private final Path directory;
+	private final Runnable compactionNeeded;
+	private final int compactAfter;
+	private final ScheduledExecutorService background;
+
+	// guarded by this
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private long nextSeq;
+	private int recordsSinceRotate;
+	private boolean compactionRequested;
+
+	// guarded by writeLock, only touched while writing to disk
+	private final Object writeLock = new Object();
+	private FileChannel channel;
+
+	/**
+	 * Opens a new segment that starts at the given sequence number.
+	 * 
+	 * @param directory        the directory that holds the journal
+	 * @param nextSeq          the sequence number of the next record
+	 * @param flushMillis      how often records are written to disk
+	 * @param compactAfter     how many records to write before asking for a
+	 *                         snapshot
+	 * @param compactionNeeded called on the background thread when a snapshot
+	 *                         should be taken
+	 * @throws IOException if the segment can't be created
+	 */
+	public JournalFile(Path directory, long nextSeq, long flushMillis, int compactAfter, Runnable compactionNeeded)
+			throws IOException {
+		this.directory = directory;
+		this.nextSeq = nextSeq;
+		this.compactAfter = compactAfter;
+		this.compactionNeeded = compactionNeeded;
+		this.channel = openSegment(nextSeq);
+		this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		background.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void accountCreated(Account account) {
+		PasswordHash hash = account.getPassWordHash();
+		byte[] salt = hash.getSalt();
+		byte[] bytes = hash.getHash();
+		append(ACCOUNT_CREATED, out -> {
+			out.writeUTF(account.getID());
+			out.writeInt(hash.getIterations());
+			out.writeByte(salt.length);
+			out.write(salt);
+			out.writeByte(bytes.length);
+			out.write(bytes);
+		});
+	}
+
+	@Override
+	public void loggedIn(Account account) {
+		append(LOGGED_IN, out -> out.writeUTF(account.getID()));
+	}
+
+	@Override
+	public void songEnqueued(Account account, String fileName) {
+		append(SONG_ENQUEUED, out -> {
+			out.writeUTF(account.getID());
+			out.writeUTF(fileName);
+		});
+	}
+
+	@Override
+	public void songPlayed(Account account, LocalDate day) {
+		append(SONG_PLAYED, out -> {
+			out.writeUTF(account.getID());
+			out.writeLong(day.toEpochDay());
+		});
+	}
+
+	@Override
+	public void songSkipped(Account account) {
+		append(SONG_SKIPPED, out -> out.writeUTF(account.getID()));
+	}
+
+	@Override
+	public void dailyReset(Account account, LocalDate day) {
+		append(DAILY_RESET, out -> {
+			out.writeUTF(account.getID());
+			out.writeLong(day.toEpochDay());
+		});
+	}
+
+	/*
+	 * Writes the record into the pending buffer. Layout: length of the rest, then
+	 * sequence number, type, payload and the CRC32 of those.
+	 */
+	private void append(byte type, Payload payload) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(body);
+		boolean compact;
+		synchronized (this) {
+			try {
+				out.writeLong(nextSeq);
+				out.writeByte(type);
+				payload.write(out);
+				CRC32 crc = new CRC32();
+				crc.update(body.toByteArray());
+				out.writeInt((int) crc.getValue());
+				DataOutputStream pendingOut = new DataOutputStream(pending);
+				pendingOut.writeInt(body.size());
+				body.writeTo(pendingOut);
+			} catch (IOException e) {
+				// writing to memory doesn't fail
+				throw new UncheckedIOException(e);
+			}
+			nextSeq++;
+			recordsSinceRotate++;
+			compact = recordsSinceRotate >= compactAfter && !compactionRequested;
+			if (compact)
+				compactionRequested = true;
+		}
+		if (compact)
+			background.execute(compactionNeeded);
+	}
+
+	/**
+	 * Writes the pending records to the current segment and syncs it.
+	 * 
+	 * @throws IOException if the records can't be written
+	 */
+	public void flush() throws IOException {
+		synchronized (writeLock) {
+			byte[] data;
+			synchronized (this) {
+				if (pending.size() == 0)
+					return;
+				data = pending.toByteArray();
+				pending.reset();
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException e) {
+			System.out.println("Writing the journal failed");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Finishes the current segment and starts a new one. Every record up to the
+	 * returned sequence number is in the old segments.
+	 * 
+	 * @return the sequence number of the last record before the new segment
+	 * @throws IOException if the segments can't be written
+	 */
+	public long rotate() throws IOException {
+		synchronized (writeLock) {
+			long lastSeq;
+			byte[] data;
+			synchronized (this) {
+				lastSeq = nextSeq - 1;
+				data = pending.toByteArray();
+				pending.reset();
+				recordsSinceRotate = 0;
+				compactionRequested = false;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+			channel.close();
+			channel = openSegment(lastSeq + 1);
+			return lastSeq;
+		}
+	}
+
+	/*
+	 * Gets the number of records written since the last rotate().
+	 */
+	public synchronized int getRecordsSinceRotate() {
+		return recordsSinceRotate;
+	}
+
+	/**
+	 * Deletes the segments that only hold records up to the given sequence
+	 * number.
+	 * 
+	 * @param lastSeq the last sequence number that is safe in a snapshot
+	 * @throws IOException if a segment can't be deleted
+	 */
+	public void deleteSegmentsUpTo(long lastSeq) throws IOException {
+		List<Long> starts = segmentStarts(directory);
+		for (int i = 0; i + 1 < starts.size(); i++) {
+			if (starts.get(i + 1) <= lastSeq + 1)
+				Files.deleteIfExists(segmentPath(directory, starts.get(i)));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		background.shutdown();
+		try {
+			background.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		synchronized (writeLock) {
+			channel.close();
+		}
+	}
+
+	private FileChannel openSegment(long firstSeq) throws IOException {
+		return FileChannel.open(segmentPath(directory, firstSeq), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Reads every record after the given sequence number, oldest first. A
+	 * segment is read until its end or until a record that is cut short or fails
+	 * its checksum. What follows its last good record is cut off the segment,
+	 * so records written to it after a restart follow good ones and are read
+	 * back. Call it before a JournalFile is opened in the directory.
+	 * 
+	 * @param directory the directory that holds the journal
+	 * @param afterSeq  records up to this sequence number are skipped
+	 * @param handler   called for every record
+	 * @return the sequence number of the last record that was read, or afterSeq
+	 * @throws IOException if a segment can't be read
+	 */
+	public static long replay(Path directory, long afterSeq, RecordHandler handler) throws IOException {
+		long lastSeq = afterSeq;
+		for (long start : segmentStarts(directory)) {
+			Path segment = segmentPath(directory, start);
+			long size = Files.size(segment);
+			long remaining = size;
+			try (InputStream file = Files.newInputStream(segment)) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(file));
+				byte[] body;
+				while ((body = readRecord(in, remaining)) != null) {
+					remaining -= Integer.BYTES + body.length;
+					// the handler only sees the payload, not the checksum after it
+					DataInputStream record = new DataInputStream(
+							new ByteArrayInputStream(body, 0, body.length - Integer.BYTES));
+					long seq = record.readLong();
+					byte type = record.readByte();
+					if (seq > lastSeq) {
+						handler.handle(type, record);
+						lastSeq = seq;
+					}
+				}
+			}
+			if (remaining > 0) {
+				// a record that was only half written when the process died
+				try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+					channel.truncate(size - remaining);
+				}
+			}
+		}
+		return lastSeq;
+	}
+
+	/*
+	 * Reads one record body, or null at the end of the segment or at a record
+	 * that was not written completely. A length that is longer than the rest of
+	 * the segment, or than any record, is a damaged length, and nothing is
+	 * allocated for it.
+	 */
+	private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+		try {
+			int length = in.readInt();
+			if (length < MIN_RECORD_BYTES || length > MAX_RECORD_BYTES || length > remaining - Integer.BYTES)
+				return null;
+			byte[] record = new byte[length];
+			in.readFully(record);
+			CRC32 crc = new CRC32();
+			crc.update(record, 0, length - 4);
+			int stored = ByteBuffer.wrap(record, length - 4, 4).getInt();
+			if (stored != (int) crc.getValue())
+				return null;
+			return record;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Gets the first sequence number of every segment, in order.
+	 */
+	static List<Long> segmentStarts(Path directory) throws IOException {
+		List<Long> starts = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+			for (Path file : files) {
+				try {
+					starts.add(Long.parseLong(file.getFileName().toString().substring(PREFIX.length())));
+				} catch (NumberFormatException e) {
+					// not a segment
+				}
+			}
+		}
+		starts.sort(null);
+		return starts;
+	}
+
+	private static Path segmentPath(Path directory, long firstSeq) {
+		return directory.resolve(PREFIX + firstSeq);
+	}
+
+	/*
+	 * Writes the payload of a record.
+	 */
+	private interface Payload {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Handles one record read back from the journal. The input holds the
+	 * payload, without the sequence number, type and checksum.
+	 */
+	public interface RecordHandler {
+		void handle(byte type, DataInputStream payload) throws IOException;
+	}
+
+}
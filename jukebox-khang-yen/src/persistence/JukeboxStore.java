@@ -0,0 +1,426 @@
+package persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import model.Account;
+import model.AccountCollection;
+import model.JukeboxState;
+import model.Metrics;
+import model.PasswordHash;
+import model.JukeboxAccount;
+import model.Song;
+import model.SongCatalog;
+
+/**
+ * The JukeboxStore class saves the jukebox as a snapshot plus a journal of the
+ * changes made since the snapshot. Every change is written to the journal as
+ * it happens. Once the journal has grown long enough, a new snapshot is taken
+ * and the journal segments it covers are deleted. Loading reads the snapshot
+ * and replays the journal records after it.
+ * 
+ * Snapshots are written in the binary format of ModelCodec, followed by the
+ * CRC32 of the snapshot and a footer. A snapshot whose checksum doesn't match
+ * is not loaded. Snapshots that were written with Java serialization, or
+ * before they had a checksum, can still be loaded.
+ * 
+ * A snapshot is also taken every few minutes if anything changed. It is
+ * copied on the model thread (the JavaFX thread in the GUI), the thread that
+ * changes the play lists, so it sees a consistent jukebox; the copy is cheap.
+ * Encoding and writing it happen on a checkpoint thread of their own. It is
+ * written to a temporary file, synced and renamed over the last snapshot,
+ * which is kept as objects.ser.prev along with the journal segments after
+ * it. If the newest snapshot is damaged, the one before it is loaded and
+ * the journal replayed from there.
+ * 
+ * close() only waits for the journal, whose records are few; the last
+ * snapshot is written in the background, and the next start replays the
+ * journal if it isn't finished.
+ * 
+ * The time loading and saving take and the size of the snapshot go to the
+ * store group of the shared Metrics.
+ * 
+ * @author Khang Tran
+ */
+public class JukeboxStore {
+	private static final String SNAPSHOT = "objects.ser";
+	private static final String PREVIOUS = "objects.ser.prev";
+	private static final String DAMAGED = "objects.ser.damaged";
+	private static final int FOOTER = 0x4A42_5843; // "JBXC"
+	private static final int FOOTER_BYTES = 8;
+	private static final long FLUSH_MILLIS = 100;
+	private static final int COMPACT_AFTER = 10_000;
+	public static final Duration DEFAULT_CHECKPOINT_INTERVAL = Duration.ofMinutes(5);
+
+	private final Path directory;
+	private final Executor modelThread;
+	private final long checkpointMillis;
+	// only touched on the model thread
+	private JukeboxState state;
+	private JournalFile journal;
+	private ScheduledExecutorService checkpointer;
+	private long capturedSeq;
+	private boolean closed;
+	// the last journal record of the snapshot on disk, touched by the
+	// checkpoint thread once it runs
+	private long snapshotSeq;
+	// the size of the last snapshot written or read
+	private volatile long snapshotBytes;
+
+	/**
+	 * @param directory   the directory that holds the snapshot and journal
+	 * @param modelThread runs a task on the thread that changes the model
+	 */
+	public JukeboxStore(Path directory, Executor modelThread) {
+		this(directory, modelThread, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * @param directory          the directory that holds the snapshot and
+	 *                           journal
+	 * @param modelThread        runs a task on the thread that changes the
+	 *                           model
+	 * @param checkpointInterval how often a snapshot is taken if anything
+	 *                           changed
+	 */
+	public JukeboxStore(Path directory, Executor modelThread, Duration checkpointInterval) {
+		this.directory = directory;
+		this.modelThread = modelThread;
+		this.checkpointMillis = checkpointInterval.toMillis();
+	}
+
+	/**
+	 * Loads the saved jukebox, or a new one if nothing was saved, and starts
+	 * journaling changes to it.
+	 * 
+	 * @return the loaded jukebox
+	 * @throws IOException            if the saved jukebox can't be read
+	 * @throws ClassNotFoundException if the snapshot holds an unknown class
+	 */
+	public JukeboxState load() throws IOException, ClassNotFoundException {
+		long start = System.nanoTime();
+		snapshotSeq = 0;
+		JukeboxState loaded = new JukeboxState();
+		Snapshot read = readNewestSnapshot();
+		if (read != null) {
+			snapshotSeq = read.getLastSeq();
+			loaded = read.getState();
+		}
+		JukeboxState replayed = loaded;
+		long lastSeq = JournalFile.replay(directory, snapshotSeq, (type, payload) -> apply(replayed, type, payload));
+		capturedSeq = snapshotSeq;
+		start(loaded, lastSeq + 1);
+		Metrics.shared().histogram("store.load").recordSince(start);
+		return loaded;
+	}
+
+	/**
+	 * Starts a new jukebox, replacing anything that was saved before. The old
+	 * snapshot is kept as objects.ser.prev and the old journal segments are
+	 * left on disk, as for any other snapshot, so nothing is deleted until the
+	 * new snapshot has been written and synced; the next checkpoint deletes
+	 * the segments.
+	 * 
+	 * @return the new jukebox
+	 * @throws IOException if the new snapshot can't be written
+	 */
+	public JukeboxState startFresh() throws IOException {
+		JukeboxState fresh = new JukeboxState();
+		// keep counting from the old journal so its records are never replayed
+		// on top of the new snapshot
+		long lastSeq = JournalFile.replay(directory, 0, (type, payload) -> {
+		});
+		writeSnapshot(ModelCodec.capture(fresh, lastSeq));
+		snapshotSeq = lastSeq;
+		capturedSeq = lastSeq;
+		start(fresh, lastSeq + 1);
+		return fresh;
+	}
+
+	private void start(JukeboxState loaded, long nextSeq) throws IOException {
+		if (checkpointer != null)
+			checkpointer.shutdown();
+		state = loaded;
+		closed = false;
+		journal = new JournalFile(directory, nextSeq, FLUSH_MILLIS, COMPACT_AFTER,
+				() -> modelThread.execute(this::compactQuietly));
+		state.setJournal(journal);
+		checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jukebox-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checkpointer.scheduleWithFixedDelay(() -> modelThread.execute(this::checkpointIfChanged), checkpointMillis,
+				checkpointMillis, TimeUnit.MILLISECONDS);
+		Metrics.shared().gauge("store.snapshotBytes", () -> snapshotBytes);
+	}
+
+	/**
+	 * Takes a snapshot and deletes the journal segments that only the snapshot
+	 * before it needed. Call it on the model thread, which only pauses to copy
+	 * the jukebox; the snapshot is encoded and written on the checkpoint
+	 * thread.
+	 * 
+	 * @throws IOException if the journal can't be rotated
+	 */
+	public void compact() throws IOException {
+		if (closed)
+			return;
+		long start = System.nanoTime();
+		long lastSeq = journal.rotate();
+		ModelCodec.Capture capture = ModelCodec.capture(state, lastSeq);
+		capturedSeq = lastSeq;
+		Metrics.shared().histogram("store.capture").recordSince(start);
+		checkpointer.execute(() -> {
+			try {
+				checkpoint(capture, start);
+			} catch (IOException e) {
+				System.out.println("Writing the snapshot failed");
+				e.printStackTrace();
+			}
+		});
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (IOException e) {
+			System.out.println("Compacting the journal failed");
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Takes a snapshot if anything was journaled since the last one.
+	 */
+	private void checkpointIfChanged() {
+		if (!closed && journal.getRecordsSinceRotate() > 0)
+			compactQuietly();
+	}
+
+	/*
+	 * Writes the snapshot on the checkpoint thread, keeping the last one and
+	 * the journal after it.
+	 */
+	private void checkpoint(ModelCodec.Capture capture, long start) throws IOException {
+		writeSnapshot(capture);
+		Metrics.shared().histogram("store.save").recordSince(start);
+		long previousSeq = snapshotSeq;
+		snapshotSeq = capture.getLastSeq();
+		journal.deleteSegmentsUpTo(previousSeq);
+	}
+
+	/**
+	 * Closes the journal and starts writing a last snapshot if anything changed
+	 * since the one before. Call it on the model thread. It only waits for the
+	 * journal; every change is in the journal, so the snapshot only makes the
+	 * next start faster, and the process may end before it is written.
+	 * 
+	 * @return completes once the last snapshot is written
+	 * @throws IOException if the journal can't be written
+	 */
+	public CompletableFuture<Void> close() throws IOException {
+		long start = System.nanoTime();
+		closed = true;
+		long lastSeq = journal.rotate();
+		journal.close();
+		ModelCodec.Capture capture = lastSeq == capturedSeq ? null : ModelCodec.capture(state, lastSeq);
+		capturedSeq = lastSeq;
+		CompletableFuture<Void> written = CompletableFuture.runAsync(() -> {
+			try {
+				if (capture != null)
+					checkpoint(capture, start);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, checkpointer);
+		checkpointer.shutdown();
+		return written;
+	}
+
+	/*
+	 * Reads the newest snapshot that isn't damaged, or null if there is none.
+	 * A damaged snapshot is renamed to objects.ser.damaged, so it is never
+	 * kept as the one before the next.
+	 */
+	private Snapshot readNewestSnapshot() throws IOException, ClassNotFoundException {
+		Path snapshot = directory.resolve(SNAPSHOT);
+		Path previous = directory.resolve(PREVIOUS);
+		if (Files.exists(snapshot)) {
+			try {
+				Snapshot read = readSnapshot(snapshot);
+				snapshotBytes = Files.size(snapshot);
+				return read;
+			} catch (IOException e) {
+				if (!Files.exists(previous))
+					throw e;
+				System.out.println("The snapshot is damaged, loading the one before it");
+				e.printStackTrace();
+				Files.move(snapshot, directory.resolve(DAMAGED), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		// also when the process ended between renaming the two snapshots
+		if (!Files.exists(previous))
+			return null;
+		Snapshot read = readSnapshot(previous);
+		snapshotBytes = Files.size(previous);
+		return read;
+	}
+
+	/*
+	 * Reads a snapshot written by ModelCodec, or an older one written with Java
+	 * serialization, after checking its checksum if it has one.
+	 */
+	private static Snapshot readSnapshot(Path snapshot) throws IOException, ClassNotFoundException {
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+			verifyChecksum(snapshot, channel);
+			channel.position(0);
+			// the footer after the snapshot is never read
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+			in.mark(2);
+			boolean javaSerialization = in.read() == 0xAC && in.read() == 0xED;
+			in.reset();
+			if (!javaSerialization)
+				return ModelCodec.read(in);
+			ObjectInputStream objects = new ObjectInputStream(in);
+			long lastSeq = objects.readLong();
+			return new Snapshot((JukeboxState) objects.readObject(), lastSeq);
+		}
+	}
+
+	/*
+	 * Checks the CRC32 in the footer against the bytes before it. A snapshot
+	 * without a footer was written before they had one.
+	 */
+	private static void verifyChecksum(Path snapshot, FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size < FOOTER_BYTES)
+			return;
+		ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+		channel.read(footer, size - FOOTER_BYTES);
+		if (footer.position() < FOOTER_BYTES || footer.getInt(4) != FOOTER)
+			return;
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+		channel.position(0);
+		for (long left = size - FOOTER_BYTES; left > 0;) {
+			buffer.clear().limit((int) Math.min(buffer.capacity(), left));
+			int read = channel.read(buffer);
+			if (read < 0)
+				throw new IOException("The snapshot " + snapshot + " is cut short");
+			left -= read;
+			crc.update(buffer.flip());
+		}
+		if ((int) crc.getValue() != footer.getInt(0))
+			throw new IOException("The snapshot " + snapshot + " is damaged, its checksum doesn't match");
+	}
+
+	/*
+	 * Encodes the snapshot into a temporary file, with its checksum after it,
+	 * syncs it and renames it over the last one, so there is always a complete
+	 * snapshot on disk. The last one is kept as objects.ser.prev.
+	 */
+	private void writeSnapshot(ModelCodec.Capture capture) throws IOException {
+		Path temp = directory.resolve(SNAPSHOT + ".tmp");
+		long bytes;
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			CRC32 crc = new CRC32();
+			OutputStream out = new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc),
+					64 * 1024);
+			ModelCodec.write(out, capture);
+			ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES).putInt((int) crc.getValue()).putInt(FOOTER).flip();
+			while (footer.hasRemaining())
+				channel.write(footer);
+			channel.force(true);
+			bytes = channel.size();
+		}
+		Path snapshot = directory.resolve(SNAPSHOT);
+		Path previous = directory.resolve(PREVIOUS);
+		if (Files.exists(snapshot))
+			Files.move(snapshot, previous, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory();
+		snapshotBytes = bytes;
+	}
+
+	/*
+	 * Syncs the renames, so the new snapshot is still the one in the directory
+	 * after a power cut.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not every system can sync a directory, Windows can't
+		}
+	}
+
+	/*
+	 * Applies one journal record to the jukebox.
+	 */
+	private static void apply(JukeboxState state, byte type, DataInputStream in) throws IOException {
+		AccountCollection accounts = state.getAccountCollection();
+		String userName = in.readUTF();
+		if (type == JournalFile.ACCOUNT_CREATED) {
+			int iterations = in.readInt();
+			byte[] salt = new byte[in.readUnsignedByte()];
+			in.readFully(salt);
+			byte[] hash = new byte[in.readUnsignedByte()];
+			in.readFully(hash);
+			accounts.addAccount(new Account(userName, PasswordHash.of(salt, iterations, hash)));
+			return;
+		}
+		Account account = accounts.getAccount(userName);
+		if (account == null)
+			return;
+		switch (type) {
+		case JournalFile.LOGGED_IN:
+			state.setLastLoggedInAccount(account);
+			break;
+		case JournalFile.SONG_ENQUEUED:
+			JukeboxAccount jukeboxAccount = state.getJukeboxAccount(account);
+			String fileName = in.readUTF();
+			Song song = SongCatalog.shared().findSong(fileName);
+			// a song that left the catalog keeps its place, so the songs played
+			// and skipped after it take the songs they took when they were live
+			jukeboxAccount.queueSong(song != null ? song
+					: new Song(fileName, "Unknown Artist", "Unknown Duration", fileName));
+			break;
+		case JournalFile.SONG_PLAYED:
+			state.getJukeboxAccount(account).songFinished(LocalDate.ofEpochDay(in.readLong()));
+			break;
+		case JournalFile.SONG_SKIPPED:
+			state.getJukeboxAccount(account).songSkipped();
+			break;
+		case JournalFile.DAILY_RESET:
+			account.restoreSongPlayed(0, LocalDate.ofEpochDay(in.readLong()));
+			break;
+		default:
+			throw new IOException("Unknown journal record " + type);
+		}
+	}
+
+}
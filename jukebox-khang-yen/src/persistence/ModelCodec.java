@@ -0,0 +1,338 @@
+package persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import model.Account;
+import model.AccountCollection;
+import model.JukeboxAccount;
+import model.JukeboxState;
+import model.PasswordHash;
+import model.Song;
+import model.SongCatalog;
+
+/**
+ * The ModelCodec class saves the jukebox in a compact, versioned binary
+ * format, instead of default Java serialization which writes class
+ * descriptions, LocalDate objects and every song path in full.
+ * 
+ * Layout of version 5, after the 4 byte magic number and the version:
+ * 
+ * <pre>
+ * lastSeq                       varlong
+ * accounts                      varint count, then for each:
+ *   userName                    utf
+ *   iterations, salt, hash      varint, bytes, bytes
+ *   songPlayed                  varint
+ *   playDay                     varlong, the epoch day plus 1, or 0
+ * string table                  varint count, then utf for each
+ * jukebox accounts              varint count, varint total length, then for each:
+ *   userName                    utf
+ *   record                      varint length, then:
+ *     today, lastPlayDate       date, date
+ *     selected songs            varint count, then title, artist, playtime, fileName strings
+ * lastLoggedInAccount           byte 0, or byte 1 and utf
+ * </pre>
+ * 
+ * Strings inside the records are indexes into the string table, and every
+ * record has its length in front. That lets read() keep the records as bytes
+ * and decode a JukeboxAccount only when it logs in, and lets write() copy the
+ * records it never decoded as they are.
+ * 
+ * capture() copies the jukebox into plain arrays, which is much cheaper than
+ * encoding it, so the thread that changes the jukebox only pauses for the
+ * copy; write() then encodes the copy on any thread.
+ * 
+ * Change VERSION whenever the layout changes; a file from another version is
+ * refused rather than read wrongly.
+ * 
+ * @author Khang Tran
+ */
+public class ModelCodec {
+	static final int MAGIC = 0x4A42_5853; // "JBXS"
+	static final int VERSION = 5;
+
+	private ModelCodec() {
+	}
+
+	/**
+	 * Writes the jukebox to the stream.
+	 * 
+	 * @param out     the stream to write to, it is flushed but not closed
+	 * @param state   the jukebox to write
+	 * @param lastSeq the last journal record the jukebox includes
+	 * @throws IOException if the stream can't be written
+	 */
+	public static void write(OutputStream out, JukeboxState state, long lastSeq) throws IOException {
+		write(out, capture(state, lastSeq));
+	}
+
+	/**
+	 * Copies what write() needs out of the jukebox, without encoding it. Call
+	 * it on the thread that changes the play lists; the copy can then be
+	 * written on any thread while the jukebox keeps changing.
+	 * 
+	 * @param state   the jukebox to copy
+	 * @param lastSeq the last journal record the jukebox includes
+	 * @return the copy
+	 */
+	public static Capture capture(JukeboxState state, long lastSeq) {
+		return new Capture(state, lastSeq);
+	}
+
+	/**
+	 * Writes a jukebox copied by capture() to the stream.
+	 * 
+	 * @param out     the stream to write to, it is flushed but not closed
+	 * @param capture the copy of the jukebox
+	 * @throws IOException if the stream can't be written
+	 */
+	public static void write(OutputStream out, Capture capture) throws IOException {
+		writeHeader(out);
+		SavedJukeboxAccounts saved = capture.saved;
+		StringTable strings = saved == null ? new StringTable() : saved.getStrings().copy();
+		BinaryWriter writer = new BinaryWriter(out, strings);
+		writer.writeVarInt(VERSION);
+		writer.writeVarLong(capture.lastSeq);
+
+		writer.writeVarInt(capture.userNames.length);
+		for (int i = 0; i < capture.userNames.length; i++) {
+			PasswordHash hash = capture.passWordHashes[i];
+			writer.writeUtf(capture.userNames[i]);
+			writer.writeVarInt(hash.getIterations());
+			writer.writeBytes(hash.getSalt());
+			writer.writeBytes(hash.getHash());
+			writer.writeVarInt(capture.songsPlayed[i]);
+			writer.writeVarLong(capture.playDays[i]);
+		}
+
+		// Encode the records first, they add to the string table
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		BinaryWriter recordWriter = new BinaryWriter(records, strings);
+		ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+		for (PlayListCopy playList : capture.playLists) {
+			record.reset();
+			BinaryWriter single = new BinaryWriter(record, strings, 256);
+			writeJukeboxAccount(single, playList);
+			single.flush();
+			recordWriter.writeUtf(playList.userName);
+			recordWriter.writeBytes(record.toByteArray(), 0, record.size());
+		}
+		// the saved accounts that never logged in are copied as they are
+		for (String userName : capture.savedUserNames) {
+			recordWriter.writeUtf(userName);
+			saved.copyRecord(userName, recordWriter);
+		}
+		recordWriter.flush();
+
+		writer.writeVarInt(strings.size());
+		for (int i = 0; i < strings.size(); i++)
+			writer.writeUtf(strings.get(i));
+		writer.writeVarInt(capture.playLists.length + capture.savedUserNames.size());
+		writer.writeVarInt(records.size());
+		byte[] bytes = records.toByteArray();
+		writer.writeRaw(bytes, 0, bytes.length);
+
+		writer.writeByte(capture.lastLoggedIn == null ? 0 : 1);
+		if (capture.lastLoggedIn != null)
+			writer.writeUtf(capture.lastLoggedIn);
+		writer.flush();
+	}
+
+	/**
+	 * Reads a jukebox written by write(). Only the accounts are built; each
+	 * JukeboxAccount is built when the jukebox first asks for it.
+	 * 
+	 * @param in the stream to read from, positioned at the magic number
+	 * @return the jukebox and the last journal record it includes
+	 * @throws IOException if the stream can't be read or is not in this format
+	 */
+	public static Snapshot read(InputStream in) throws IOException {
+		if (readInt(in) != MAGIC)
+			throw new IOException("Not a jukebox snapshot");
+		BinaryReader reader = new BinaryReader(in, new StringTable());
+		int version = reader.readVarInt();
+		if (version != VERSION)
+			throw new IOException("Snapshot version " + version + " can't be read, expected " + VERSION);
+		long lastSeq = reader.readVarLong();
+
+		int count = reader.readVarInt();
+		List<Account> accounts = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			accounts.add(readAccount(reader));
+		AccountCollection collection = new AccountCollection(accounts);
+
+		count = reader.readVarInt();
+		List<String> strings = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			strings.add(reader.readUtf());
+
+		count = reader.readVarInt();
+		byte[] records = new byte[reader.readVarInt()];
+		reader.readRaw(records);
+		SavedJukeboxAccounts saved = new SavedJukeboxAccounts(records, count, new StringTable(strings));
+
+		Account lastLoggedIn = reader.readByte() == 0 ? null : collection.getAccount(reader.readUtf());
+		return new Snapshot(new JukeboxState(collection, new HashMap<>(), lastLoggedIn, saved), lastSeq);
+	}
+
+	private static Account readAccount(BinaryReader reader) throws IOException {
+		String userName = reader.readUtf();
+		int iterations = reader.readVarInt();
+		byte[] salt = reader.readBytes();
+		byte[] hash = reader.readBytes();
+		int songPlayed = reader.readVarInt();
+		long playDay = reader.readVarLong();
+		return new Account(userName, PasswordHash.of(salt, iterations, hash), songPlayed,
+				playDay == 0 ? null : LocalDate.ofEpochDay(playDay - 1));
+	}
+
+	private static void writeJukeboxAccount(BinaryWriter writer, PlayListCopy playList) throws IOException {
+		writer.writeDate(playList.today);
+		writer.writeDate(playList.lastPlayDate);
+
+		Song[] songs = playList.songs;
+		writer.writeVarInt(songs.length);
+		for (Song song : songs) {
+			writer.writeString(song.getTitle());
+			writer.writeString(song.getArtist());
+			writer.writeString(song.getPlaytime());
+			writer.writeString(song.getFileName());
+		}
+	}
+
+	/*
+	 * Reads one record written by writeJukeboxAccount.
+	 */
+	static JukeboxAccount readJukeboxAccount(BinaryReader reader, Account account) throws IOException {
+		JukeboxAccount jukeboxAccount = new JukeboxAccount(account);
+		jukeboxAccount.setPlayDates(reader.readDate(), reader.readDate());
+
+		int count = reader.readVarInt();
+		List<Song> songs = new ArrayList<>(count);
+		SongCatalog catalog = SongCatalog.shared();
+		for (int i = 0; i < count; i++) {
+			String title = reader.readString();
+			String artist = reader.readString();
+			String playtime = reader.readString();
+			String fileName = reader.readString();
+			// only songs that have left the catalog need a Song of their own
+			Song song = catalog.findSong(fileName);
+			songs.add(song != null ? song : new Song(title, artist, playtime, fileName));
+		}
+
+		jukeboxAccount.restoreSongs(songs);
+		return jukeboxAccount;
+	}
+
+	private static void writeHeader(OutputStream out) throws IOException {
+		out.write(MAGIC >>> 24);
+		out.write(MAGIC >>> 16);
+		out.write(MAGIC >>> 8);
+		out.write(MAGIC);
+	}
+
+	private static int readInt(InputStream in) throws IOException {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = in.read();
+			if (b < 0)
+				throw new IOException("Not a jukebox snapshot");
+			value = value << 8 | b;
+		}
+		return value;
+	}
+
+	/**
+	 * A copy of a jukebox taken by capture(). It holds the accounts, the songs
+	 * they played and their play lists as they were, and the saved records to
+	 * copy, which never change; nothing is encoded yet.
+	 */
+	public static final class Capture {
+		private final long lastSeq;
+		private final String[] userNames;
+		private final PasswordHash[] passWordHashes;
+		private final int[] songsPlayed;
+		// the epoch day plus 1, or 0
+		private final long[] playDays;
+		private final PlayListCopy[] playLists;
+		private final SavedJukeboxAccounts saved;
+		private final List<String> savedUserNames = new ArrayList<>();
+		private final String lastLoggedIn;
+
+		private Capture(JukeboxState state, long lastSeq) {
+			this.lastSeq = lastSeq;
+			AccountCollection collection = state.getAccountCollection();
+			List<Account> accounts = new ArrayList<>(collection.getAccounts());
+			userNames = new String[accounts.size()];
+			passWordHashes = new PasswordHash[accounts.size()];
+			songsPlayed = new int[accounts.size()];
+			playDays = new long[accounts.size()];
+			for (int i = 0; i < accounts.size(); i++) {
+				Account acc = accounts.get(i);
+				userNames[i] = acc.getID();
+				passWordHashes[i] = acc.getPassWordHash();
+				// read both at once, a song may finish on another thread
+				LocalDate playDay;
+				int songPlayed;
+				do {
+					playDay = acc.getPlayDay();
+					songPlayed = acc.getSongPlayed();
+				} while (!Objects.equals(playDay, acc.getPlayDay()));
+				songsPlayed[i] = songPlayed;
+				playDays[i] = playDay == null ? 0 : playDay.toEpochDay() + 1;
+			}
+
+			Map<Account, JukeboxAccount> accountMap = state.getAccountMap();
+			playLists = new PlayListCopy[accountMap.size()];
+			int i = 0;
+			for (JukeboxAccount jukeboxAccount : accountMap.values())
+				playLists[i++] = new PlayListCopy(jukeboxAccount);
+
+			saved = state.getLoader() instanceof SavedJukeboxAccounts ? (SavedJukeboxAccounts) state.getLoader()
+					: null;
+			if (saved != null) {
+				for (String userName : saved.getUserNames()) {
+					Account acc = collection.getAccount(userName);
+					if (acc != null && !accountMap.containsKey(acc))
+						savedUserNames.add(userName);
+				}
+			}
+			Account last = state.getLastLoggedInAccount();
+			lastLoggedIn = last == null ? null : last.getID();
+		}
+
+		/*
+		 * Gets the last journal record the copy includes.
+		 */
+		public long getLastSeq() {
+			return lastSeq;
+		}
+	}
+
+	/*
+	 * The dates and songs of a JukeboxAccount.
+	 */
+	private static final class PlayListCopy {
+		final String userName;
+		final LocalDate today;
+		final LocalDate lastPlayDate;
+		final Song[] songs;
+
+		PlayListCopy(JukeboxAccount jukeboxAccount) {
+			userName = jukeboxAccount.getAccount().getID();
+			today = jukeboxAccount.getToday();
+			lastPlayDate = jukeboxAccount.getLastPlayDate();
+			songs = jukeboxAccount.getSelectedSongs().toArray(new Song[0]);
+		}
+	}
+
+}
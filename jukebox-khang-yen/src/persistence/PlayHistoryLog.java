@@ -0,0 +1,514 @@
+package persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import model.Account;
+import model.PlayHistory;
+import model.Song;
+
+/**
+ * The PlayHistoryLog class keeps every song the jukebox finished in an
+ * append-only log on disk, and counts them as they arrive so questions like
+ * "the top songs this week" are answered without reading the log again.
+ *
+ * The log is split into one file a month, plays.2024-03 and so on, in the
+ * order the songs finished. Every record has the same size: when the song
+ * finished in epoch milliseconds, the id of the account, the id of the song,
+ * the outcome and a CRC32. The ids stand for the user names and song file
+ * names in the names file, which only grows, so a record stays 24 bytes
+ * however long the names are.
+ *
+ * Records are collected in memory and written and synced by a background
+ * thread every flush interval, like the journal. A record or name that was
+ * only half written when the process died is cut off when the log is opened
+ * again.
+ *
+ * The counts are kept per day, per song and per account. A day only holds the
+ * songs and accounts that played on it, so a year of days takes little
+ * memory, and the top songs of a week only adds up seven days. Opening the
+ * log reads it once to build the counts. Only songs that played to the end
+ * are counted; the failed ones are counted per day on their own.
+ *
+ * It may be used from any thread.
+ *
+ * @author Khang Tran
+ */
+public class PlayHistoryLog implements PlayHistory, Closeable {
+	public static final int RECORD_BYTES = 24;
+	private static final String NAMES = "names";
+	private static final String PREFIX = "plays.";
+	private static final byte ACCOUNT_NAME = 0;
+	private static final byte SONG_NAME = 1;
+
+	private final Path directory;
+	private final ZoneId zone;
+	private final ScheduledExecutorService background;
+
+	// guarded by this
+	private final Names accounts = new Names();
+	private final Names songs = new Names();
+	private final ByteArrayOutputStream pendingNames = new ByteArrayOutputStream();
+	private final TreeMap<YearMonth, ByteArrayOutputStream> pendingRecords = new TreeMap<>();
+	private final TreeMap<Long, Day> days = new TreeMap<>();
+	private int[] songPlays = new int[16];
+	private int[] accountPlays = new int[16];
+	private long records;
+
+	// guarded by writeLock, only touched while writing to disk
+	private final Object writeLock = new Object();
+	private final FileChannel namesChannel;
+	private YearMonth segmentMonth;
+	private FileChannel segment;
+
+	/**
+	 * Opens the log in a directory, reading what it holds, or starts a new one.
+	 *
+	 * @param directory   the directory of the log
+	 * @param zone        the time zone the days are counted in
+	 * @param flushMillis how often records are written to disk
+	 * @throws IOException if the log can't be read
+	 */
+	public PlayHistoryLog(Path directory, ZoneId zone, long flushMillis) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.zone = zone;
+		readNames();
+		for (Path file : segments())
+			readSegment(file);
+		namesChannel = FileChannel.open(directory.resolve(NAMES), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "play-history-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		background.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void songFinished(long epochMillis, Account account, Song song, Outcome outcome) {
+		ZonedDateTime time = Instant.ofEpochMilli(epochMillis).atZone(zone);
+		synchronized (this) {
+			int accountId = idOf(accounts, ACCOUNT_NAME, account.getID());
+			int songId = idOf(songs, SONG_NAME, song.getFileName());
+			ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+			record.putLong(epochMillis).putInt(accountId).putInt(songId).put((byte) outcome.ordinal());
+			record.position(RECORD_BYTES - 4);
+			CRC32 crc = new CRC32();
+			crc.update(record.array(), 0, RECORD_BYTES - 4);
+			record.putInt((int) crc.getValue());
+			pendingRecords.computeIfAbsent(YearMonth.from(time), month -> new ByteArrayOutputStream())
+					.writeBytes(record.array());
+			count(time.toLocalDate().toEpochDay(), accountId, songId, outcome);
+		}
+	}
+
+	/*
+	 * Gets the id of a name, adding it to the names to write if it is new.
+	 */
+	private int idOf(Names names, byte kind, String name) {
+		Integer id = names.ids.get(name);
+		if (id != null)
+			return id;
+		try {
+			DataOutputStream out = new DataOutputStream(pendingNames);
+			out.writeByte(kind);
+			out.writeUTF(name);
+		} catch (IOException e) {
+			// writing to memory doesn't fail
+			throw new UncheckedIOException(e);
+		}
+		return names.add(name);
+	}
+
+	private void count(long epochDay, int accountId, int songId, Outcome outcome) {
+		Day day = days.computeIfAbsent(epochDay, key -> new Day());
+		records++;
+		if (outcome != Outcome.PLAYED) {
+			day.failed++;
+			return;
+		}
+		day.played++;
+		day.songs.add(songId, 1);
+		day.accounts.add(accountId, 1);
+		songPlays = add(songPlays, songId);
+		accountPlays = add(accountPlays, accountId);
+	}
+
+	private static int[] add(int[] counts, int id) {
+		if (id >= counts.length)
+			counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+		counts[id]++;
+		return counts;
+	}
+
+	/**
+	 * Gets the songs played most from one day to another.
+	 *
+	 * @param from  the first day
+	 * @param to    the last day
+	 * @param limit the most songs to get
+	 * @return the song file names and how often they played, most first
+	 */
+	public synchronized List<Count> topSongs(LocalDate from, LocalDate to, int limit) {
+		return top(from, to, limit, songs, true);
+	}
+
+	/**
+	 * Gets the accounts that played the most songs from one day to another.
+	 *
+	 * @param from  the first day
+	 * @param to    the last day
+	 * @param limit the most accounts to get
+	 * @return the user names and how many songs they played, most first
+	 */
+	public synchronized List<Count> topAccounts(LocalDate from, LocalDate to, int limit) {
+		return top(from, to, limit, accounts, false);
+	}
+
+	private List<Count> top(LocalDate from, LocalDate to, int limit, Names names, boolean bySong) {
+		int[] totals = new int[names.names.size()];
+		for (Day day : days.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+			Counts counts = bySong ? day.songs : day.accounts;
+			for (int i = 0; i < counts.keys.length; i++) {
+				if (counts.keys[i] != 0)
+					totals[counts.keys[i] - 1] += counts.values[i];
+			}
+		}
+		// the fewest plays at the head, so it is the one dropped
+		Comparator<Count> order = Comparator.comparingInt(Count::getPlays)
+				.thenComparing(Count::getName, Comparator.reverseOrder());
+		PriorityQueue<Count> top = new PriorityQueue<>(order);
+		for (int id = 0; id < totals.length; id++) {
+			if (totals[id] == 0 || limit <= 0)
+				continue;
+			if (top.size() < limit) {
+				top.add(new Count(names.names.get(id), totals[id]));
+			} else if (totals[id] >= top.peek().plays) {
+				Count count = new Count(names.names.get(id), totals[id]);
+				if (order.compare(count, top.peek()) > 0) {
+					top.poll();
+					top.add(count);
+				}
+			}
+		}
+		List<Count> sorted = new ArrayList<>(top);
+		sorted.sort(order.reversed());
+		return sorted;
+	}
+
+	/*
+	 * Gets the number of songs that played to the end on a day.
+	 */
+	public synchronized int getPlays(LocalDate day) {
+		Day counts = days.get(day.toEpochDay());
+		return counts == null ? 0 : counts.played;
+	}
+
+	/*
+	 * Gets the number of songs that couldn't be played on a day.
+	 */
+	public synchronized int getFailures(LocalDate day) {
+		Day counts = days.get(day.toEpochDay());
+		return counts == null ? 0 : counts.failed;
+	}
+
+	/*
+	 * Gets how often a song played to the end, ever.
+	 */
+	public synchronized int getSongPlays(String fileName) {
+		Integer id = songs.ids.get(fileName);
+		return id == null || id >= songPlays.length ? 0 : songPlays[id];
+	}
+
+	/*
+	 * Gets how many songs an account played to the end, ever.
+	 */
+	public synchronized int getAccountPlays(String userName) {
+		Integer id = accounts.ids.get(userName);
+		return id == null || id >= accountPlays.length ? 0 : accountPlays[id];
+	}
+
+	/*
+	 * Gets the number of records in the log.
+	 */
+	public synchronized long size() {
+		return records;
+	}
+
+	/**
+	 * Writes the pending names and records to disk and syncs them. The names
+	 * go first, so a record on disk never stands for a name that isn't.
+	 *
+	 * @throws IOException if they can't be written
+	 */
+	public void flush() throws IOException {
+		synchronized (writeLock) {
+			byte[] names;
+			Map<YearMonth, byte[]> recordsByMonth = new TreeMap<>();
+			synchronized (this) {
+				names = pendingNames.toByteArray();
+				pendingNames.reset();
+				for (Map.Entry<YearMonth, ByteArrayOutputStream> month : pendingRecords.entrySet())
+					recordsByMonth.put(month.getKey(), month.getValue().toByteArray());
+				pendingRecords.clear();
+			}
+			if (names.length > 0) {
+				write(namesChannel, names);
+				namesChannel.force(false);
+			}
+			for (Map.Entry<YearMonth, byte[]> month : recordsByMonth.entrySet()) {
+				if (!month.getKey().equals(segmentMonth)) {
+					if (segment != null)
+						segment.close();
+					segment = FileChannel.open(segmentPath(month.getKey()), StandardOpenOption.CREATE,
+							StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+					segmentMonth = month.getKey();
+				}
+				write(segment, month.getValue());
+				segment.force(false);
+			}
+		}
+	}
+
+	private static void write(FileChannel channel, byte[] data) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException e) {
+			System.out.println("Writing the play history failed");
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		background.shutdown();
+		try {
+			background.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		synchronized (writeLock) {
+			namesChannel.close();
+			if (segment != null)
+				segment.close();
+		}
+	}
+
+	/*
+	 * Reads the names file, cutting off a name that was only half written.
+	 */
+	private void readNames() throws IOException {
+		Path file = directory.resolve(NAMES);
+		if (!Files.exists(file))
+			return;
+		byte[] bytes = Files.readAllBytes(file);
+		ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+		DataInputStream in = new DataInputStream(stream);
+		long complete = 0;
+		while (true) {
+			byte kind;
+			String name;
+			try {
+				kind = in.readByte();
+				name = in.readUTF();
+			} catch (EOFException e) {
+				break;
+			}
+			(kind == ACCOUNT_NAME ? accounts : songs).add(name);
+			complete = bytes.length - stream.available();
+		}
+		truncate(file, complete);
+	}
+
+	/*
+	 * Reads the records of a month into the counts. Reading stops at a record
+	 * that was only half written or fails its checksum, and the file is cut
+	 * there so the next records are appended after good ones.
+	 */
+	private void readSegment(Path file) throws IOException {
+		long complete = 0;
+		byte[] record = new byte[RECORD_BYTES];
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		CRC32 crc = new CRC32();
+		try (InputStream stream = Files.newInputStream(file)) {
+			BufferedInputStream in = new BufferedInputStream(stream, 64 * 1024);
+			while (in.readNBytes(record, 0, RECORD_BYTES) == RECORD_BYTES) {
+				crc.reset();
+				crc.update(record, 0, RECORD_BYTES - 4);
+				if (buffer.getInt(RECORD_BYTES - 4) != (int) crc.getValue())
+					break;
+				long millis = buffer.getLong(0);
+				int accountId = buffer.getInt(8);
+				int songId = buffer.getInt(12);
+				int outcome = record[16];
+				complete += RECORD_BYTES;
+				if (accountId >= accounts.names.size() || songId >= songs.names.size()
+						|| outcome >= Outcome.values().length)
+					continue;
+				long epochDay = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay();
+				count(epochDay, accountId, songId, Outcome.values()[outcome]);
+			}
+		}
+		truncate(file, complete);
+	}
+
+	private static void truncate(Path file, long size) throws IOException {
+		if (Files.size(file) == size)
+			return;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+		}
+	}
+
+	/*
+	 * The month files, oldest first.
+	 */
+	private List<Path> segments() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+			for (Path file : stream)
+				files.add(file);
+		}
+		// yyyy-MM sorts by date
+		files.sort(Comparator.comparing(Path::toString));
+		return files;
+	}
+
+	private Path segmentPath(YearMonth month) {
+		return directory.resolve(PREFIX + month);
+	}
+
+	/**
+	 * A name and how often it played.
+	 */
+	public static final class Count {
+		private final String name;
+		private final int plays;
+
+		public Count(String name, int plays) {
+			this.name = name;
+			this.plays = plays;
+		}
+
+		/*
+		 * Gets the song file name or the user name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public int getPlays() {
+			return plays;
+		}
+
+		@Override
+		public String toString() {
+			return name + "=" + plays;
+		}
+	}
+
+	/*
+	 * Names and their ids, in the order they were added.
+	 */
+	private static class Names {
+		final List<String> names = new ArrayList<>();
+		final Map<String, Integer> ids = new HashMap<>();
+
+		int add(String name) {
+			Integer id = ids.get(name);
+			if (id != null)
+				return id;
+			ids.put(name, names.size());
+			names.add(name);
+			return names.size() - 1;
+		}
+	}
+
+	/*
+	 * The counts of one day.
+	 */
+	private static class Day {
+		int played;
+		int failed;
+		final Counts songs = new Counts();
+		final Counts accounts = new Counts();
+	}
+
+	/*
+	 * Counts by id in an open addressing hash table, so a day only holds the
+	 * ids that played on it. A key is stored as id + 1, 0 is an empty slot.
+	 */
+	private static class Counts {
+		int[] keys = new int[8];
+		int[] values = new int[8];
+		int size;
+
+		void add(int id, int amount) {
+			int key = id + 1;
+			int mask = keys.length - 1;
+			int hash = key * 0x9E3779B9;
+			int slot = (hash ^ hash >>> 16) & mask;
+			while (keys[slot] != 0 && keys[slot] != key)
+				slot = (slot + 1) & mask;
+			if (keys[slot] == 0) {
+				keys[slot] = key;
+				size++;
+			}
+			values[slot] += amount;
+			if (size * 4 > keys.length * 3)
+				grow();
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0)
+					add(oldKeys[i] - 1, oldValues[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.JukeboxState;
+
+/**
+ * The SavedJukeboxAccounts class keeps the saved JukeboxAccounts of a snapshot
+ * as the encoded bytes they were read as, with an index from user name to
+ * where each one starts. A JukeboxAccount is only decoded when load() is
+ * called for it, so loading a
+ * snapshot doesn't cost more for accounts that never log in.
+ * 
+ * Each record refers to the snapshot's string table, so it can be copied as
+ * it is into the next snapshot.
+ * 
+ * @author Khang Tran
+ */
+public class SavedJukeboxAccounts implements JukeboxState.Loader {
+	private final byte[] records;
+	private final StringTable strings;
+	// user name -> offset of the record's length in records
+	private final Map<String, Integer> offsets;
+
+	/**
+	 * Indexes the records section of a snapshot. Each record is the user name,
+	 * then the length and bytes of the encoded JukeboxAccount.
+	 * 
+	 * @param records the records section
+	 * @param count   the number of records
+	 * @param strings the string table the records refer to
+	 * @throws IOException if the records are cut short
+	 */
+	SavedJukeboxAccounts(byte[] records, int count, StringTable strings) throws IOException {
+		this.records = records;
+		this.strings = strings;
+		this.offsets = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+		int position = 0;
+		for (int i = 0; i < count; i++) {
+			long nameLength = readVarInt(position);
+			position = skipVarInt(position);
+			String name = new String(records, position, (int) nameLength, StandardCharsets.UTF_8);
+			position += (int) nameLength;
+			offsets.put(name, position);
+			long length = readVarInt(position);
+			position = skipVarInt(position) + (int) length;
+			if (position > records.length)
+				throw new IOException("Snapshot records are cut short");
+		}
+	}
+
+	@Override
+	public JukeboxAccount load(Account account) {
+		Integer offset = offsets.get(account.getID());
+		if (offset == null)
+			return null;
+		int length = (int) readVarInt(offset);
+		int start = skipVarInt(offset);
+		BinaryReader reader = new BinaryReader(new ByteArrayInputStream(records, start, length), strings, length);
+		try {
+			return ModelCodec.readJukeboxAccount(reader, account);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Saved state of " + account.getID() + " can't be read", e);
+		}
+	}
+
+	/*
+	 * Gets the user names that have a saved record.
+	 */
+	Set<String> getUserNames() {
+		return offsets.keySet();
+	}
+
+	/*
+	 * Gets the string table the records refer to.
+	 */
+	StringTable getStrings() {
+		return strings;
+	}
+
+	/*
+	 * Writes the saved record of the user name as it is, with its length in
+	 * front.
+	 */
+	void copyRecord(String userName, BinaryWriter writer) throws IOException {
+		int offset = offsets.get(userName);
+		int length = (int) readVarInt(offset);
+		writer.writeBytes(records, skipVarInt(offset), length);
+	}
+
+	private long readVarInt(int position) {
+		long value = 0;
+		for (int shift = 0; position < records.length; shift += 7) {
+			int b = records[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	private int skipVarInt(int position) {
+		while (position < records.length && (records[position] & 0x80) != 0)
+			position++;
+		return position + 1;
+	}
+
+}
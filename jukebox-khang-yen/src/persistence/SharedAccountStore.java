@@ -0,0 +1,434 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import model.Account;
+import model.AccountDirectory;
+import model.PasswordHash;
+import model.PlayCounter;
+
+/**
+ * The SharedAccountStore class keeps the accounts of every jukebox process on
+ * the machine in one memory-mapped file, so the kiosks agree on who can log in
+ * and how many songs each account played today, without a server. Each
+ * process maps the whole file; a change one process makes is seen by the
+ * others at once, because they all map the same pages.
+ *
+ * The file is a hash table of fixed-size records, found by linear probing
+ * from the hash of the user name. Its size is set when it is created and it
+ * is never resized, so a record stays at the same place for as long as the
+ * file exists. Layout, in the byte order of the machine:
+ *
+ * <pre>
+ * header             64 bytes
+ *   magic, version   int, int
+ *   slots            int, a power of two
+ *   record size      int
+ *   accounts         int
+ * records            128 bytes each
+ *   state            int, 0 empty or 1 in use
+ *   password version int, odd while the password is being written
+ *   songs played     long, the packed day and count of the QuotaService
+ *   name hash        int
+ *   iterations       int
+ *   salt, hash       16 bytes, 32 bytes
+ *   name             byte length, then up to 55 bytes of UTF-8
+ * </pre>
+ *
+ * The songs played are changed with compare-and-set on the mapped memory,
+ * which is atomic between processes as it is between threads, so a song
+ * counted by two kiosks at once is never lost. Adding an account or changing
+ * a password takes a file lock on the header, so only one process writes
+ * records at a time; the record is filled in before its state is set, so
+ * readers don't take a lock. A reader of a password checks that its version
+ * is even and didn't change while it read.
+ *
+ * A file lock belongs to the whole Java process, so the threads of one
+ * process take turns before they ask for it.
+ *
+ * @author Khang Tran
+ */
+public class SharedAccountStore implements AccountDirectory, Closeable {
+	static final int MAGIC = 0x4A42_5841; // "JBXA"
+	static final int VERSION = 1;
+	public static final int DEFAULT_SLOTS = 1 << 16;
+	static final int HEADER_BYTES = 64;
+	static final int RECORD_BYTES = 128;
+	static final int MAX_NAME_BYTES = 55;
+
+	// header
+	private static final int SLOTS = 8;
+	private static final int RECORD_SIZE = 12;
+	private static final int ACCOUNTS = 16;
+	// record
+	private static final int STATE = 0;
+	private static final int PASSWORD_VERSION = 4;
+	private static final int SONGS_PLAYED = 8;
+	private static final int NAME_HASH = 16;
+	private static final int ITERATIONS = 20;
+	private static final int SALT = 24;
+	private static final int HASH = 40;
+	private static final int NAME_LENGTH = 72;
+	private static final int NAME = 73;
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BYTES = 32;
+
+	private static final int EMPTY = 0;
+	private static final int IN_USE = 1;
+
+	private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class,
+			ByteOrder.nativeOrder());
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.nativeOrder());
+	// file locks belong to the process, so its threads take turns first
+	private static final Object PROCESS_LOCK = new Object();
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int slots;
+
+	/**
+	 * Opens the store, creating the file if no process has yet.
+	 *
+	 * @param file  the file shared by the processes
+	 * @param slots the number of records of a new file, a power of two; an
+	 *              existing file keeps its own
+	 * @throws IOException if the file can't be opened or isn't a store
+	 */
+	public SharedAccountStore(Path file, int slots) throws IOException {
+		if (slots < 2 || Integer.bitCount(slots) != 1)
+			throw new IllegalArgumentException("slots must be a power of two: " + slots);
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			synchronized (PROCESS_LOCK) {
+				// only one process sets up a new file
+				FileLock lock = channel.lock();
+				try {
+					if (channel.size() < HEADER_BYTES || magic(channel) == 0) {
+						this.slots = slots;
+						buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+								HEADER_BYTES + (long) slots * RECORD_BYTES);
+						buffer.order(ByteOrder.nativeOrder());
+						buffer.putInt(4, VERSION);
+						buffer.putInt(SLOTS, slots);
+						buffer.putInt(RECORD_SIZE, RECORD_BYTES);
+						// the magic number last: a file without one, left by a
+						// process that died here, is set up again
+						buffer.putInt(0, MAGIC);
+						buffer.force();
+					} else {
+						buffer = map(channel);
+						this.slots = buffer.getInt(SLOTS);
+					}
+				} finally {
+					lock.release();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static int magic(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+		channel.read(magic, 0);
+		return magic.getInt(0);
+	}
+
+	private static MappedByteBuffer map(FileChannel channel) throws IOException {
+		if (channel.size() < HEADER_BYTES)
+			throw new IOException("Not a shared account store");
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+		header.order(ByteOrder.nativeOrder());
+		if (header.getInt(0) != MAGIC)
+			throw new IOException("Not a shared account store");
+		if (header.getInt(4) != VERSION || header.getInt(RECORD_SIZE) != RECORD_BYTES)
+			throw new IOException("Shared account store version " + header.getInt(4) + " can't be read");
+		int slots = header.getInt(SLOTS);
+		long size = HEADER_BYTES + (long) slots * RECORD_BYTES;
+		if (Integer.bitCount(slots) != 1 || channel.size() < size)
+			throw new IOException("The shared account store is cut short");
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		buffer.order(ByteOrder.nativeOrder());
+		return buffer;
+	}
+
+	/**
+	 * Adds a new account and counts its songs in the store from now on.
+	 *
+	 * @throws IllegalArgumentException if the user name is longer than 55
+	 *                                  bytes
+	 * @throws IllegalStateException    if the store is three quarters full
+	 */
+	@Override
+	public boolean add(Account account) {
+		byte[] name = nameBytes(account.getID());
+		try {
+			return locked(() -> addLocked(account, name));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Adds the accounts taking the file lock once, rather than once for each.
+	 * An account whose user name is longer than 55 bytes is not added.
+	 *
+	 * @throws IllegalStateException if the store is three quarters full
+	 */
+	@Override
+	public List<Account> addAll(Collection<Account> accounts) {
+		List<Account> notAdded = new ArrayList<>();
+		try {
+			locked(() -> {
+				for (Account account : accounts) {
+					byte[] name = account.getID().getBytes(StandardCharsets.UTF_8);
+					if (name.length > MAX_NAME_BYTES || !addLocked(account, name))
+						notAdded.add(account);
+				}
+				return null;
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return notAdded;
+	}
+
+	/*
+	 * Adds the account, unless its name is taken. Call it holding the lock.
+	 */
+	private boolean addLocked(Account account, byte[] name) {
+		int hash = hash(name);
+		int at = probe(name, hash);
+		if (stateAt(at) == IN_USE)
+			return false;
+		if (size() >= slots / 4 * 3)
+			throw new IllegalStateException("The shared account store is full");
+		INTS.setVolatile(buffer, at + PASSWORD_VERSION, 0);
+		writePassWord(at, account.getPassWordHash());
+		LONGS.setVolatile(buffer, at + SONGS_PLAYED, 0L);
+		buffer.putInt(at + NAME_HASH, hash);
+		buffer.put(at + NAME_LENGTH, (byte) name.length);
+		buffer.put(at + NAME, name);
+		// from here on readers see the record
+		INTS.setVolatile(buffer, at + STATE, IN_USE);
+		INTS.setVolatile(buffer, ACCOUNTS, size() + 1);
+		int count = account.getSongPlayed();
+		LocalDate day = account.getPlayDay();
+		account.shareSongPlayed(new Counter(at));
+		account.restoreSongPlayed(count, day);
+		return true;
+	}
+
+	/**
+	 * Finds an account without taking a lock. The account counts its songs in
+	 * the store.
+	 */
+	@Override
+	public Account find(String userName) {
+		byte[] name = userName.getBytes(StandardCharsets.UTF_8);
+		if (name.length > MAX_NAME_BYTES)
+			return null;
+		int at = probe(name, hash(name));
+		if (stateAt(at) != IN_USE)
+			return null;
+		Account account = new Account(userName, readPassWord(at));
+		account.shareSongPlayed(new Counter(at));
+		return account;
+	}
+
+	/**
+	 * Writes the new password hash of the account, so the other processes
+	 * check its password with it too.
+	 */
+	@Override
+	public void passWordChanged(Account account) {
+		byte[] name = nameBytes(account.getID());
+		PasswordHash passWordHash = account.getPassWordHash();
+		try {
+			locked(() -> {
+				int at = probe(name, hash(name));
+				if (stateAt(at) == IN_USE) {
+					// even if a process died while writing it
+					int version = buffer.getInt(at + PASSWORD_VERSION) | 1;
+					INTS.setVolatile(buffer, at + PASSWORD_VERSION, version);
+					writePassWord(at, passWordHash);
+					INTS.setVolatile(buffer, at + PASSWORD_VERSION, version + 1);
+				}
+				return null;
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Gets the number of accounts in the store, added by every process.
+	 */
+	public int size() {
+		return (int) INTS.getVolatile(buffer, ACCOUNTS);
+	}
+
+	/*
+	 * Gets the number of records of the file. It holds up to three quarters
+	 * of that many accounts.
+	 */
+	public int getSlots() {
+		return slots;
+	}
+
+	/**
+	 * Writes the mapped pages to the disk and closes the file. The accounts
+	 * are also written when the process ends without closing it, by the
+	 * operating system.
+	 */
+	@Override
+	public void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	/*
+	 * The record holding the name, or the empty record where it would go.
+	 */
+	private int probe(byte[] name, int hash) {
+		int mask = slots - 1;
+		for (int i = 0, slot = hash & mask; i < slots; i++, slot = (slot + 1) & mask) {
+			int at = HEADER_BYTES + slot * RECORD_BYTES;
+			if (stateAt(at) == EMPTY || (buffer.getInt(at + NAME_HASH) == hash && nameIs(at, name)))
+				return at;
+		}
+		throw new IllegalStateException("The shared account store is full");
+	}
+
+	private int stateAt(int at) {
+		return (int) INTS.getVolatile(buffer, at + STATE);
+	}
+
+	private boolean nameIs(int at, byte[] name) {
+		if ((buffer.get(at + NAME_LENGTH) & 0xFF) != name.length)
+			return false;
+		for (int i = 0; i < name.length; i++) {
+			if (buffer.get(at + NAME + i) != name[i])
+				return false;
+		}
+		return true;
+	}
+
+	private void writePassWord(int at, PasswordHash passWordHash) {
+		byte[] salt = passWordHash.getSalt();
+		byte[] hash = passWordHash.getHash();
+		if (salt.length != SALT_BYTES || hash.length != HASH_BYTES)
+			throw new IllegalArgumentException("The password hash doesn't fit the shared account store");
+		buffer.putInt(at + ITERATIONS, passWordHash.getIterations());
+		buffer.put(at + SALT, salt);
+		buffer.put(at + HASH, hash);
+	}
+
+	/*
+	 * Reads the password again if another process changed it while it was
+	 * read. While a password is being written it is read under the lock, so
+	 * after the writer is done, or after it died while writing.
+	 */
+	private PasswordHash readPassWord(int at) {
+		while (true) {
+			int version = (int) INTS.getVolatile(buffer, at + PASSWORD_VERSION);
+			if ((version & 1) != 0) {
+				try {
+					return locked(() -> passWordAt(at));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			PasswordHash passWordHash = passWordAt(at);
+			VarHandle.acquireFence();
+			if ((int) INTS.getVolatile(buffer, at + PASSWORD_VERSION) == version)
+				return passWordHash;
+		}
+	}
+
+	private PasswordHash passWordAt(int at) {
+		byte[] salt = new byte[SALT_BYTES];
+		byte[] hash = new byte[HASH_BYTES];
+		buffer.get(at + SALT, salt);
+		buffer.get(at + HASH, hash);
+		return PasswordHash.of(salt, buffer.getInt(at + ITERATIONS), hash);
+	}
+
+	/*
+	 * Runs the task while this thread holds the lock of the process and the
+	 * process holds the file lock on the header.
+	 */
+	private <T> T locked(LockedTask<T> task) throws IOException {
+		synchronized (PROCESS_LOCK) {
+			FileLock lock = channel.lock(0, HEADER_BYTES, false);
+			try {
+				return task.run();
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	private static byte[] nameBytes(String userName) {
+		byte[] name = userName.getBytes(StandardCharsets.UTF_8);
+		if (name.length > MAX_NAME_BYTES)
+			throw new IllegalArgumentException("User names can be at most " + MAX_NAME_BYTES + " bytes long");
+		return name;
+	}
+
+	private static int hash(byte[] name) {
+		int h = Arrays.hashCode(name) * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+
+	private interface LockedTask<T> {
+		T run() throws IOException;
+	}
+
+	/*
+	 * The songs played of a record, changed atomically in the mapped memory.
+	 */
+	private final class Counter implements PlayCounter {
+		private final int at;
+
+		Counter(int at) {
+			this.at = at + SONGS_PLAYED;
+		}
+
+		@Override
+		public long get() {
+			return (long) LONGS.getVolatile(buffer, at);
+		}
+
+		@Override
+		public void set(long value) {
+			LONGS.setVolatile(buffer, at, value);
+		}
+
+		@Override
+		public boolean compareAndSet(long expected, long value) {
+			return LONGS.compareAndSet(buffer, at, expected, value);
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+package persistence;
+
+import model.JukeboxState;
+
+/**
+ * A Snapshot is the whole jukebox as it was after a journal record, so loading
+ * only has to replay the records after lastSeq.
+ * 
+ * @author Khang Tran
+ */
+public class Snapshot {
+	private final JukeboxState state;
+	private final long lastSeq;
+
+	public Snapshot(JukeboxState state, long lastSeq) {
+		this.state = state;
+		this.lastSeq = lastSeq;
+	}
+
+	public JukeboxState getState() {
+		return state;
+	}
+
+	public long getLastSeq() {
+		return lastSeq;
+	}
+
+}
@@ -0,0 +1,63 @@
+package persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A StringTable gives every distinct string a small index, so a title, artist
+ * or song path that is used by thousands of accounts is stored once and
+ * referred to by its index everywhere else. Indexes never change once given
+ * out, so records written with an older table can be copied as they are into
+ * a snapshot that extends that table.
+ * 
+ * @author Khang Tran
+ */
+public class StringTable {
+	private final List<String> strings;
+	private final Map<String, Integer> indexes;
+
+	public StringTable() {
+		this(new ArrayList<>());
+	}
+
+	/*
+	 * constructor for a table that was read back, the strings keep their indexes
+	 */
+	public StringTable(List<String> strings) {
+		this.strings = new ArrayList<>(strings);
+		this.indexes = new HashMap<>();
+		for (int i = 0; i < this.strings.size(); i++)
+			indexes.put(this.strings.get(i), i);
+	}
+
+	/*
+	 * Gets the index of the string, adding it to the table if it is new.
+	 */
+	public int indexOf(String value) {
+		Integer index = indexes.get(value);
+		if (index == null) {
+			index = strings.size();
+			strings.add(value);
+			indexes.put(value, index);
+		}
+		return index;
+	}
+
+	public String get(int index) {
+		return strings.get(index);
+	}
+
+	public int size() {
+		return strings.size();
+	}
+
+	/*
+	 * Gets a copy of this table that can grow without changing this one.
+	 */
+	public StringTable copy() {
+		return new StringTable(strings);
+	}
+
+}
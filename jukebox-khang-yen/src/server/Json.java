@@ -0,0 +1,185 @@
+package server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Json class writes the strings of the JSON answers of the server and
+ * reads the bodies of its requests. The requests are flat objects such as
+ * {"user": "khang", "password": "a"}, so only objects of strings, numbers,
+ * true, false and null are read; anything else is a bad request.
+ *
+ * @author Khang Tran
+ */
+final class Json {
+
+	private Json() {
+	}
+
+	/**
+	 * Quotes a string, escaping what JSON doesn't allow inside one.
+	 *
+	 * @param text the string
+	 * @return the string in quotes
+	 */
+	static String quote(String text) {
+		StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				quoted.append("\\\"");
+				break;
+			case '\\':
+				quoted.append("\\\\");
+				break;
+			case '\n':
+				quoted.append("\\n");
+				break;
+			case '\r':
+				quoted.append("\\r");
+				break;
+			case '\t':
+				quoted.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					quoted.append(String.format("\\u%04x", (int) c));
+				else
+					quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * Reads a flat JSON object. Numbers, true and false are kept as their text,
+	 * null values are left out.
+	 *
+	 * @param text the object
+	 * @return the values by name
+	 * @throws IllegalArgumentException if the text is not a flat object
+	 */
+	static Map<String, String> parseObject(String text) {
+		Parser parser = new Parser(text);
+		Map<String, String> values = new HashMap<>();
+		parser.expect('{');
+		if (!parser.next('}')) {
+			do {
+				String name = parser.string();
+				parser.expect(':');
+				String value = parser.value();
+				if (value != null)
+					values.put(name, value);
+			} while (parser.next(','));
+			parser.expect('}');
+		}
+		parser.end();
+		return values;
+	}
+
+	private static final class Parser {
+		private final String text;
+		private int at;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		/*
+		 * Skips the character if it comes next.
+		 */
+		boolean next(char c) {
+			skipSpace();
+			if (at < text.length() && text.charAt(at) == c) {
+				at++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(char c) {
+			if (!next(c))
+				throw error("expected " + c);
+		}
+
+		void end() {
+			skipSpace();
+			if (at != text.length())
+				throw error("expected the end");
+		}
+
+		String value() {
+			skipSpace();
+			if (at < text.length() && text.charAt(at) == '"')
+				return string();
+			int start = at;
+			while (at < text.length() && "-+.eE0123456789truefalsn".indexOf(text.charAt(at)) >= 0)
+				at++;
+			String literal = text.substring(start, at);
+			if (literal.equals("null"))
+				return null;
+			if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?"))
+				return literal;
+			throw error("expected a string, number, true, false or null");
+		}
+
+		String string() {
+			expect('"');
+			StringBuilder string = new StringBuilder();
+			while (at < text.length()) {
+				char c = text.charAt(at++);
+				if (c == '"')
+					return string.toString();
+				if (c != '\\') {
+					string.append(c);
+					continue;
+				}
+				if (at >= text.length())
+					break;
+				char escaped = text.charAt(at++);
+				switch (escaped) {
+				case 'n':
+					string.append('\n');
+					break;
+				case 'r':
+					string.append('\r');
+					break;
+				case 't':
+					string.append('\t');
+					break;
+				case 'b':
+					string.append('\b');
+					break;
+				case 'f':
+					string.append('\f');
+					break;
+				case 'u':
+					if (at + 4 > text.length())
+						throw error("bad escape");
+					try {
+						string.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("bad escape");
+					}
+					at += 4;
+					break;
+				default:
+					// \" \\ and \/
+					string.append(escaped);
+				}
+			}
+			throw error("unterminated string");
+		}
+
+		private void skipSpace() {
+			while (at < text.length() && Character.isWhitespace(text.charAt(at)))
+				at++;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at " + at);
+		}
+	}
+
+}
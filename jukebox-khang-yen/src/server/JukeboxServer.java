@@ -0,0 +1,574 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.JukeboxState;
+import model.LoginService;
+import model.Metrics;
+import model.PlaybackEngine;
+import model.Song;
+import model.SongCatalog;
+import model.VenueQueue;
+import persistence.CatalogIndex;
+import persistence.JukeboxStore;
+import persistence.PlayHistoryLog;
+import persistence.SharedAccountStore;
+
+/**
+ * The JukeboxServer class runs the jukebox without a screen and lets phones
+ * and kiosks use it over HTTP. It serves a JSON API on the same
+ * AccountCollection, catalog and VenueQueue the GUI uses:
+ *
+ * <pre>
+ * POST   /api/accounts  {"user", "password"}   creates an account
+ * POST   /api/sessions  {"user", "password"}   logs in, answers a token
+ * DELETE /api/sessions                         logs out
+ * GET    /api/songs?offset=0&amp;limit=50         the songs of the catalog
+ * GET    /api/queue                            the account's songs and the queue length
+ * POST   /api/queue     {"song": id}           queues a song of the catalog
+ * </pre>
+ *
+ * Logging out and the queue need an account: they send the token of the
+ * login in an "Authorization: Bearer" header. A token that isn't used for the
+ * session timeout, 4 hours unless another is given, expires; the account is
+ * logged out once its last token is gone.
+ *
+ * Each request is handled on its own virtual thread, so a thousand clients
+ * waiting on a password hash or the model thread cost a thousand small
+ * stacks, not a thousand threads. As in the GUI the accounts' play lists are
+ * only changed on the model thread: a handler hands the change to it and
+ * waits for the answer. Passwords are checked by the LoginService.
+ *
+ * The time each kind of request takes goes to the http group of the shared
+ * Metrics.
+ *
+ * Usage: JukeboxServer [port], from the project folder so the songfiles
+ * folder and the saved jukebox are found. The songs play silently, so the
+ * queue moves on as it would at the venue.
+ *
+ * main() turns on -Dsun.net.httpserver.nodelay=true unless it is set on the
+ * command line. The JDK server writes the headers and the body of an answer
+ * separately; with Nagle's algorithm the body then waits up to 40 ms for the
+ * client to acknowledge the headers. The flag is read once, before the first
+ * HttpServer is made, so a program that starts a JukeboxServer itself should
+ * pass it to the JVM.
+ *
+ * @author Khang Tran
+ */
+public class JukeboxServer {
+	private static final int BACKLOG = 1024;
+	private static final int MAX_BODY = 4096;
+	private static final int MAX_SONGS = 500;
+	public static final Duration DEFAULT_SESSION_TIMEOUT = Duration.ofHours(4);
+
+	private final JukeboxState state;
+	private final SongCatalog catalog;
+	private final VenueQueue venue;
+	private final Executor modelThread;
+	// the songs of the catalog in JSON, by id
+	private final String[] songJson;
+	// the session of every token that is logged in
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+	private final long sessionTimeoutNanos;
+	// the accounts whose saved songs were added to the venue queue, only used
+	// on the model thread
+	private final Set<JukeboxAccount> queuedAccounts = new HashSet<>();
+	// the number of tokens of every account that is logged in, only used on
+	// the model thread
+	private final Map<Account, Integer> tokenCounts = new HashMap<>();
+	private final SecureRandom random = new SecureRandom();
+	private final Metrics metrics = Metrics.shared();
+	private HttpServer server;
+	private ExecutorService handlers;
+	private ScheduledExecutorService sweeper;
+
+	/**
+	 * Makes a server that is not started yet.
+	 *
+	 * @param state       the accounts
+	 * @param catalog     the songs that can be queued
+	 * @param venue       the queue the songs are added to
+	 * @param modelThread runs a task on the thread that changes the model
+	 */
+	public JukeboxServer(JukeboxState state, SongCatalog catalog, VenueQueue venue, Executor modelThread) {
+		this(state, catalog, venue, modelThread, DEFAULT_SESSION_TIMEOUT);
+	}
+
+	/**
+	 * Makes a server that is not started yet.
+	 *
+	 * @param state          the accounts
+	 * @param catalog        the songs that can be queued
+	 * @param venue          the queue the songs are added to
+	 * @param modelThread    runs a task on the thread that changes the model
+	 * @param sessionTimeout how long a token lasts without being used
+	 */
+	public JukeboxServer(JukeboxState state, SongCatalog catalog, VenueQueue venue, Executor modelThread,
+			Duration sessionTimeout) {
+		this.sessionTimeoutNanos = sessionTimeout.toNanos();
+		this.state = state;
+		this.catalog = catalog;
+		this.venue = venue;
+		this.modelThread = modelThread;
+		songJson = new String[catalog.size()];
+		for (int id = 0; id < songJson.length; id++) {
+			Song song = catalog.getSong(id);
+			songJson[id] = "{\"id\":" + id + ",\"title\":" + Json.quote(song.getTitle()) + ",\"artist\":"
+					+ Json.quote(song.getArtist()) + ",\"time\":" + Json.quote(song.getPlaytime()) + "}";
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		SongCatalog.publish(SongCatalog.loadFromDirectory(SongCatalog.SONG_DIRECTORY,
+				new CatalogIndex(Paths.get("catalog.idx"))));
+		SongCatalog catalog = SongCatalog.shared();
+		ExecutorService modelThread = Executors
+				.newSingleThreadExecutor(runnable -> new Thread(runnable, "jukebox-model"));
+		JukeboxStore store = new JukeboxStore(Paths.get("."), modelThread);
+		JukeboxState state = CompletableFuture.supplyAsync(() -> {
+			try {
+				return store.load();
+			} catch (IOException | ClassNotFoundException e) {
+				throw new CompletionException(e);
+			}
+		}, modelThread).join();
+		// the accounts and their songs played today, shared with the kiosks
+		String sharedFile = System.getProperty("jukebox.shared.accounts");
+		SharedAccountStore sharedAccounts = sharedFile == null ? null
+				: new SharedAccountStore(Paths.get(sharedFile), SharedAccountStore.DEFAULT_SLOTS);
+		// nothing uses the accounts before the server starts, so they are added
+		// here rather than holding up the model thread
+		if (sharedAccounts != null) {
+			List<String> notShared = state.getAccountCollection().setDirectory(sharedAccounts);
+			if (!notShared.isEmpty())
+				System.out.println("These accounts are not shared with the other jukeboxes: "
+						+ String.join(", ", notShared));
+		}
+
+		VenueQueue venue = "fair".equals(System.getProperty("jukebox.queue")) ? VenueQueue.fair() : new VenueQueue();
+		PlaybackEngine<SilentOutput.Player> engine = new PlaybackEngine<>(new SilentOutput(catalog), venue,
+				modelThread);
+		PlayHistoryLog history = new PlayHistoryLog(Paths.get("history"), ZoneId.systemDefault(), 1000);
+		engine.setPlayHistory(history);
+		engine.getMetrics().registerWith(Metrics.shared());
+		Metrics.shared().gauge("queue.depth", venue::size);
+		Metrics.shared().gauge("sessions.active", state::getSessionCount);
+		try {
+			Metrics.shared().registerMBeans(ManagementFactory.getPlatformMBeanServer());
+		} catch (JMException e) {
+			System.out.println("The metrics can't be published over JMX");
+		}
+
+		JukeboxServer server = new JukeboxServer(state, catalog, venue, modelThread);
+		server.start(new InetSocketAddress(port));
+		System.out.println("The jukebox is serving " + catalog.size() + " songs on port " + server.getPort());
+
+		// every change is in the journal already, closing writes a last snapshot
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop();
+			engine.shutdown();
+			try {
+				history.close();
+				if (sharedAccounts != null)
+					sharedAccounts.close();
+				// nobody waits on the hook, so it can wait for the last snapshot
+				CompletableFuture.supplyAsync(() -> {
+					try {
+						return store.close();
+					} catch (IOException e) {
+						throw new CompletionException(e);
+					}
+				}, modelThread).thenCompose(written -> written).get(30, TimeUnit.SECONDS);
+			} catch (IOException | ExecutionException | TimeoutException e) {
+				System.out.println("Writing objects failed");
+				e.printStackTrace();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+	}
+
+	/**
+	 * Starts answering requests.
+	 *
+	 * @param address the address to listen on, port 0 picks a free port
+	 * @throws IOException if the address can't be used
+	 */
+	public void start(InetSocketAddress address) throws IOException {
+		server = HttpServer.create(address, BACKLOG);
+		handlers = Executors.newVirtualThreadPerTaskExecutor();
+		server.setExecutor(handlers);
+		server.createContext("/api/accounts", exchange -> handle(exchange, "accounts", this::accounts));
+		server.createContext("/api/sessions", exchange -> handle(exchange, "sessions", this::sessions));
+		server.createContext("/api/songs", exchange -> handle(exchange, "songs", this::songs));
+		server.createContext("/api/queue", exchange -> handle(exchange, "queue", this::queue));
+		server.start();
+		// looks for expired tokens as often as a quarter of the timeout, at
+		// most once a minute
+		long sweepNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10),
+				Math.min(TimeUnit.MINUTES.toNanos(1), sessionTimeoutNanos / 4));
+		sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "session-sweeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		sweeper.scheduleWithFixedDelay(this::endExpiredSessions, sweepNanos, sweepNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stops answering requests, waiting up to a second for the ones being
+	 * answered.
+	 */
+	public void stop() {
+		sweeper.shutdown();
+		server.stop(1);
+		handlers.close();
+	}
+
+	/*
+	 * Gets the port the server listens on.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private Response accounts(HttpExchange exchange) throws Exception {
+		if (!exchange.getRequestMethod().equals("POST"))
+			return Response.methodNotAllowed();
+		Map<String, String> body = body(exchange);
+		String user = body.get("user");
+		String password = body.get("password");
+		if (user == null || user.isBlank() || password == null || password.isEmpty())
+			return Response.error(400, "user and password are needed");
+		try {
+			Account account = await(LoginService.createAccount(state.getAccountCollection(), user, password));
+			return new Response(201, "{\"user\":" + Json.quote(account.getID()) + "}");
+		} catch (IllegalArgumentException e) {
+			return Response.error(409, "the user name is taken");
+		}
+	}
+
+	private Response sessions(HttpExchange exchange) throws Exception {
+		switch (exchange.getRequestMethod()) {
+		case "POST": {
+			Map<String, String> body = body(exchange);
+			String user = body.get("user");
+			String password = body.get("password");
+			if (user == null || password == null)
+				return Response.error(400, "user and password are needed");
+			Account account = await(LoginService.authorize(state.getAccountCollection(), user, password));
+			if (account == null)
+				return Response.error(401, "wrong user name or password");
+			int remaining = onModelThread(() -> {
+				JukeboxAccount jukeboxAccount = state.logIn(account);
+				// the songs the account picked before the jukebox was closed
+				// join the venue queue when it first logs in
+				if (queuedAccounts.add(jukeboxAccount)) {
+					for (Song song : jukeboxAccount.getSelectedSongs())
+						venue.offer(jukeboxAccount, song);
+				}
+				tokenCounts.merge(account, 1, Integer::sum);
+				return jukeboxAccount.songsLeftToQueue();
+			});
+			String token = newToken();
+			sessions.put(token, new Session(account, System.nanoTime()));
+			return new Response(200, "{\"token\":" + Json.quote(token) + ",\"user\":" + Json.quote(account.getID())
+					+ ",\"remaining\":" + remaining + "}");
+		}
+		case "DELETE": {
+			String token = token(exchange);
+			Session session = token == null ? null : sessions.remove(token);
+			if (session == null)
+				return Response.error(401, "not logged in");
+			onModelThread(() -> {
+				tokenGone(session.account);
+				return null;
+			});
+			return new Response(204, null);
+		}
+		default:
+			return Response.methodNotAllowed();
+		}
+	}
+
+	private Response songs(HttpExchange exchange) {
+		if (!exchange.getRequestMethod().equals("GET"))
+			return Response.methodNotAllowed();
+		int offset, limit;
+		try {
+			Map<String, String> query = query(exchange.getRequestURI());
+			offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+			limit = Integer.parseInt(query.getOrDefault("limit", "50"));
+		} catch (NumberFormatException e) {
+			return Response.error(400, "offset and limit are numbers");
+		}
+		if (offset < 0 || limit < 0 || limit > MAX_SONGS)
+			return Response.error(400, "limit is 0 to " + MAX_SONGS);
+		StringJoiner songs = new StringJoiner(",", "[", "]");
+		for (int id = offset; id < Math.min(songJson.length, offset + limit); id++)
+			songs.add(songJson[id]);
+		return new Response(200, "{\"total\":" + songJson.length + ",\"songs\":" + songs + "}");
+	}
+
+	private Response queue(HttpExchange exchange) throws Exception {
+		Account account = account(exchange);
+		if (account == null)
+			return Response.error(401, "not logged in");
+		switch (exchange.getRequestMethod()) {
+		case "GET":
+			return onModelThread(() -> {
+				JukeboxAccount jukeboxAccount = state.getJukeboxAccount(account);
+				return new Response(200, mine(jukeboxAccount));
+			});
+		case "POST": {
+			Song song;
+			try {
+				int id = Integer.parseInt(body(exchange).getOrDefault("song", "-1"));
+				song = id >= 0 && id < catalog.size() ? catalog.getSong(id) : null;
+			} catch (NumberFormatException e) {
+				return Response.error(400, "song is the id of a song");
+			}
+			if (song == null)
+				return Response.error(404, "no such song");
+			return onModelThread(() -> {
+				JukeboxAccount jukeboxAccount = state.getJukeboxAccount(account);
+				if (!jukeboxAccount.canQueueSong())
+					return Response.error(429, "no more songs today");
+				jukeboxAccount.queueSong(song);
+				// the engine starts the song if nothing is playing
+				venue.offer(jukeboxAccount, song);
+				return new Response(201, mine(jukeboxAccount));
+			});
+		}
+		default:
+			return Response.methodNotAllowed();
+		}
+	}
+
+	/*
+	 * The account of the request's token, or null if the token isn't logged in
+	 * or has expired. Using a token keeps it from expiring.
+	 */
+	private Account account(HttpExchange exchange) {
+		String token = token(exchange);
+		Session session = token == null ? null : sessions.get(token);
+		if (session == null)
+			return null;
+		long now = System.nanoTime();
+		if (now - session.lastUsed > sessionTimeoutNanos) {
+			endSession(token, session);
+			return null;
+		}
+		session.lastUsed = now;
+		return session.account;
+	}
+
+	/*
+	 * Ends every session whose token wasn't used for the timeout.
+	 */
+	private void endExpiredSessions() {
+		long now = System.nanoTime();
+		for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+			if (now - entry.getValue().lastUsed > sessionTimeoutNanos)
+				endSession(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void endSession(String token, Session session) {
+		// only the thread that removes it logs the account out
+		if (sessions.remove(token, session))
+			modelThread.execute(() -> tokenGone(session.account));
+	}
+
+	/*
+	 * Counts a token of the account as gone, and logs the account out once it
+	 * has none left. Call it on the model thread.
+	 */
+	private void tokenGone(Account account) {
+		if (tokenCounts.computeIfPresent(account, (key, count) -> count == 1 ? null : count - 1) == null)
+			state.logOut(account);
+	}
+
+	/*
+	 * The songs of the account and the songs in the queue, in JSON. Call it on
+	 * the model thread.
+	 */
+	private String mine(JukeboxAccount jukeboxAccount) {
+		StringJoiner songs = new StringJoiner(",", "[", "]");
+		List<Song> selected = jukeboxAccount.getSelectedSongs();
+		for (Song song : selected) {
+			int id = catalog.idOf(catalog.intern(song));
+			songs.add(id >= 0 ? songJson[id] : "{\"title\":" + Json.quote(song.getTitle()) + "}");
+		}
+		return "{\"songs\":" + songs + ",\"remaining\":" + jukeboxAccount.songsLeftToQueue() + ",\"queued\":" + venue.size()
+				+ "}";
+	}
+
+	/*
+	 * Answers a request and records how long it took. Every answer is JSON.
+	 */
+	private void handle(HttpExchange exchange, String name, Handler handler) throws IOException {
+		long start = System.nanoTime();
+		Response response;
+		try {
+			response = handler.handle(exchange);
+		} catch (IllegalArgumentException e) {
+			response = Response.error(400, "bad request: " + e.getMessage());
+		} catch (RejectedExecutionException e) {
+			response = Response.error(503, "too busy, try again");
+		} catch (Exception e) {
+			e.printStackTrace();
+			response = Response.error(500, "server error");
+		}
+		try (exchange) {
+			if (response.body == null) {
+				exchange.sendResponseHeaders(response.status, -1);
+			} else {
+				byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+				exchange.sendResponseHeaders(response.status, bytes.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(bytes);
+				}
+			}
+		} finally {
+			metrics.histogram("http." + name).recordSince(start);
+			if (response.status >= 500)
+				metrics.counter("http.errors").increment();
+		}
+	}
+
+	/*
+	 * Runs the task on the model thread and waits for its result. Waiting
+	 * blocks only the virtual thread of the request.
+	 */
+	private <T> T onModelThread(Supplier<T> task) throws Exception {
+		return await(CompletableFuture.supplyAsync(task, modelThread));
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	private static Map<String, String> body(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] bytes = in.readNBytes(MAX_BODY + 1);
+			if (bytes.length > MAX_BODY)
+				throw new IllegalArgumentException("the body is too long");
+			return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+		}
+	}
+
+	private static Map<String, String> query(URI uri) {
+		Map<String, String> values = new HashMap<>();
+		String query = uri.getQuery();
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				int equals = pair.indexOf('=');
+				if (equals > 0)
+					values.put(pair.substring(0, equals), pair.substring(equals + 1));
+			}
+		}
+		return values;
+	}
+
+	/*
+	 * The token of an "Authorization: Bearer token" header, or null.
+	 */
+	private static String token(HttpExchange exchange) {
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null || !authorization.startsWith("Bearer "))
+			return null;
+		return authorization.substring("Bearer ".length()).trim();
+	}
+
+	private String newToken() {
+		byte[] bytes = new byte[18];
+		random.nextBytes(bytes);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	private interface Handler {
+		Response handle(HttpExchange exchange) throws Exception;
+	}
+
+	/*
+	 * The account a token logged in, and when the token was last used.
+	 */
+	private static final class Session {
+		final Account account;
+		volatile long lastUsed;
+
+		Session(Account account, long lastUsed) {
+			this.account = account;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	/*
+	 * A status and a JSON body, or no body.
+	 */
+	private static final class Response {
+		final int status;
+		final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		static Response error(int status, String message) {
+			return new Response(status, "{\"error\":" + Json.quote(message) + "}");
+		}
+
+		static Response methodNotAllowed() {
+			return error(405, "method not allowed");
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import model.PlaybackEngine;
+import model.Song;
+import model.SongCatalog;
+
+/**
+ * The SilentOutput class lets the PlaybackEngine play the venue queue without
+ * a sound card or JavaFX. Each song is ready at once and ends after its play
+ * time, so the queue moves on and the songs count as played as they would in
+ * the GUI. A song whose play time can't be read ends right away.
+ *
+ * @author Yen Lai
+ */
+public class SilentOutput implements PlaybackEngine.Output<SilentOutput.Player> {
+	private final SongCatalog catalog;
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "silent-output");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param catalog the songs, to look up their play times
+	 */
+	public SilentOutput(SongCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	@Override
+	public Player prepare(String path, Runnable onReady, Runnable onEnd, Runnable onError) {
+		String fileName = path.substring(path.lastIndexOf('/') + 1);
+		Song song = catalog.findSong(fileName);
+		Player player = new Player(song == null ? 0 : Math.max(0, song.getDurationMillis()), onEnd);
+		onReady.run();
+		return player;
+	}
+
+	@Override
+	public void play(Player player) {
+		player.end = timer.schedule(player.onEnd, player.millis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop(Player player) {
+		dispose(player);
+	}
+
+	@Override
+	public void dispose(Player player) {
+		ScheduledFuture<?> end = player.end;
+		if (end != null)
+			end.cancel(false);
+	}
+
+	/**
+	 * A song that is playing silently.
+	 */
+	public static final class Player {
+		final long millis;
+		final Runnable onEnd;
+		volatile ScheduledFuture<?> end;
+
+		Player(long millis, Runnable onEnd) {
+			this.millis = millis;
+			this.onEnd = onEnd;
+		}
+	}
+
+}
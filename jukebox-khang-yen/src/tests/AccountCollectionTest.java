@@ -0,0 +1,137 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.AccountCollection;
+import model.PasswordHash;
+
+/**
+ * This unit test checks that accounts can be created, looked up and authorized
+ * by user name, that a user name can only be taken once even when many users
+ * sign up at the same time, and that passwords are stored as salted hashes.
+ * 
+ * @author Khang Tran
+ */
+class AccountCollectionTest {
+	@BeforeAll
+	public static void cheapHashing() {
+		// a low cost keeps thousands of sign ups fast
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testCreateAndAuthorize() {
+		AccountCollection collection = new AccountCollection();
+		Account acc = collection.createAccount("khang", "a");
+		// the account can be found by its user name
+		assertSame(acc, collection.getAccount("khang"));
+		// the right password logs in, a wrong password or user name does not
+		assertSame(acc, collection.authorize("khang", "a"));
+		assertNull(collection.authorize("khang", "b"));
+		assertNull(collection.authorize("nobody", "a"));
+		// the hard coded accounts are still there
+		assertEquals(5, collection.size());
+		assertEquals("Chris", collection.authorize("Chris", "1").getID());
+	}
+
+	@Test
+	void testPasswordIsHashed() {
+		AccountCollection collection = new AccountCollection();
+		Account acc = collection.createAccount("khang", "secret");
+		PasswordHash hash = acc.getPassWordHash();
+		assertEquals(1000, hash.getIterations());
+		// the same password gets a different salt every time
+		Account other = collection.createAccount("yen", "secret");
+		assertFalse(Arrays.equals(hash.getSalt(), other.getPassWordHash().getSalt()));
+		assertFalse(Arrays.equals(hash.getHash(), other.getPassWordHash().getHash()));
+	}
+
+	@Test
+	void testRehashWhenCostChanges() {
+		AccountCollection collection = new AccountCollection();
+		Account acc = collection.createAccount("khang", "a");
+		PasswordHash.setDefaultIterations(2000);
+		try {
+			assertTrue(acc.needsRehash());
+			// a wrong password leaves the hash alone
+			assertNull(collection.authorize("khang", "b"));
+			assertEquals(1000, acc.getPassWordHash().getIterations());
+			// logging in hashes the password again with the new cost
+			assertSame(acc, collection.authorize("khang", "a"));
+			assertEquals(2000, acc.getPassWordHash().getIterations());
+			assertSame(acc, collection.authorize("khang", "a"));
+		} finally {
+			PasswordHash.setDefaultIterations(1000);
+		}
+	}
+
+	@Test
+	void testDuplicateUserName() {
+		AccountCollection collection = new AccountCollection();
+		Account acc = collection.createAccount("yen", "a");
+		assertThrows(IllegalArgumentException.class, () -> collection.createAccount("yen", "b"));
+		// the first account keeps its password
+		assertSame(acc, collection.authorize("yen", "a"));
+	}
+
+	@Test
+	void testRemoveAccount() {
+		AccountCollection collection = new AccountCollection();
+		Account acc = collection.createAccount("Casey", "1111");
+		collection.removeAccount(acc);
+		assertNull(collection.getAccount("Casey"));
+		// the user name can be used again once the account is removed
+		collection.createAccount("Casey", "2222");
+		assertEquals("Casey", collection.authorize("Casey", "2222").getID());
+	}
+
+	@Test
+	void testConcurrentSignUp() throws InterruptedException {
+		AccountCollection collection = new AccountCollection();
+		AtomicInteger created = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		// 8 users try to take the same 1000 user names at once
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 1000; i++) {
+					try {
+						collection.createAccount("student" + i, "pw");
+						created.incrementAndGet();
+					} catch (IllegalArgumentException e) {
+						// somebody else got this user name first
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		// every user name was given out exactly once
+		assertEquals(1000, created.get());
+		assertEquals(1004, collection.size());
+	}
+
+}
@@ -0,0 +1,134 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+
+import controller_view.AudioCacheServer;
+import model.AudioCache;
+
+/**
+ * This unit test plays files from an AudioCache and checks its hits, the bytes
+ * it holds and which files it drops when it is full. The last test asks an
+ * AudioCacheServer for parts of files.
+ *
+ * @author Yen Lai
+ */
+class AudioCacheTest {
+
+	@Test
+	void testHitsAndEviction() throws IOException {
+		Path dir = Files.createTempDirectory("audio");
+		Path a = write(dir, "a.mp3", 400);
+		Path b = write(dir, "b.mp3", 400);
+		Path c = write(dir, "c.mp3", 400);
+		AudioCache cache = new AudioCache(1000, 500);
+
+		assertEquals(400, cache.get(a).remaining());
+		cache.get(b);
+		cache.get(a);
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(800, cache.getBytesResident());
+
+		// c doesn't fit, so b, used least recently, is dropped
+		cache.get(c);
+		assertEquals(800, cache.getBytesResident());
+		assertEquals(2, cache.size());
+		cache.get(a);
+		assertEquals(2, cache.getHits());
+		cache.get(b);
+		assertEquals(4, cache.getMisses());
+		assertEquals(2.0 / 6, cache.getHitRatio(), 1e-9);
+	}
+
+	@Test
+	void testLargeFilesAreMapped() throws IOException {
+		Path dir = Files.createTempDirectory("audio");
+		Path small = write(dir, "small.mp3", 100);
+		Path large = write(dir, "large.mp3", 5000);
+		AudioCache cache = new AudioCache(10_000, 1000);
+
+		ByteBuffer smallBytes = cache.get(small);
+		ByteBuffer largeBytes = cache.get(large);
+		assertFalse(smallBytes.isDirect());
+		assertTrue(largeBytes.isDirect());
+		assertTrue(largeBytes.isReadOnly());
+		assertEquals(5000, largeBytes.remaining());
+		assertEquals((byte) 4999, largeBytes.get(4999));
+		assertEquals(5100, cache.getBytesResident());
+
+		// a file larger than the budget is read but not kept
+		Path huge = write(dir, "huge.mp3", 20_000);
+		assertEquals(20_000, cache.get(huge).remaining());
+		assertEquals(5100, cache.getBytesResident());
+	}
+
+	@Test
+	void testChangedFileIsReadAgain() throws IOException {
+		Path dir = Files.createTempDirectory("audio");
+		Path a = write(dir, "a.mp3", 100);
+		AudioCache cache = new AudioCache(1000);
+		cache.get(a);
+
+		Files.write(a, new byte[50]);
+		Files.setLastModifiedTime(a, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+		assertEquals(50, cache.get(a).remaining());
+		assertEquals(0, cache.getHits());
+		assertEquals(50, cache.getBytesResident());
+	}
+
+	@Test
+	void testServerAnswersRanges() throws Exception {
+		Path dir = Files.createTempDirectory("audio");
+		write(dir, "a.mp3", 100);
+		write(dir, "empty.mp3", 0);
+		AudioCacheServer server = new AudioCacheServer(new AudioCache(1000), dir);
+		try {
+			HttpClient client = HttpClient.newHttpClient();
+			String a = server.uriOf(dir.resolve("a.mp3").toString());
+			HttpResponse<byte[]> last = client.send(HttpRequest.newBuilder(URI.create(a)).header("Range", "bytes=-10")
+					.build(), HttpResponse.BodyHandlers.ofByteArray());
+			assertEquals(206, last.statusCode());
+			assertEquals(10, last.body().length);
+			assertEquals((byte) 90, last.body()[0]);
+			// no numbers, or numbers too large for any file
+			for (String range : new String[] { "bytes=-", "bytes=99999999999-", "bytes=0-99999999999" }) {
+				HttpResponse<byte[]> response = client.send(
+						HttpRequest.newBuilder(URI.create(a)).header("Range", range).build(),
+						HttpResponse.BodyHandlers.ofByteArray());
+				assertEquals(416, response.statusCode());
+			}
+
+			// an empty file is sent with a length of 0, not chunked
+			HttpResponse<byte[]> empty = client.send(
+					HttpRequest.newBuilder(URI.create(server.uriOf(dir.resolve("empty.mp3").toString()))).build(),
+					HttpResponse.BodyHandlers.ofByteArray());
+			assertEquals(200, empty.statusCode());
+			assertEquals(0, empty.body().length);
+			assertFalse(empty.headers().firstValue("Transfer-Encoding").isPresent());
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static Path write(Path dir, String name, int size) throws IOException {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++)
+			bytes[i] = (byte) i;
+		return Files.write(dir.resolve(name), bytes);
+	}
+
+}
@@ -0,0 +1,68 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import model.Song;
+import model.SongCatalog;
+import persistence.CatalogIndex;
+
+/**
+ * This unit test loads a directory of songs with a CatalogIndex and checks
+ * that only new or changed files have their tags read again.
+ *
+ * @author Yen Lai
+ */
+class CatalogIndexTest {
+
+	@Test
+	void testOnlyChangedFilesAreRead() throws IOException {
+		Path dir = Files.createTempDirectory("songs");
+		Path swing = Files.copy(Paths.get("songfiles", "SwingCheese.mp3"), dir.resolve("a.mp3"));
+		Files.copy(Paths.get("songfiles", "LopingSting.mp3"), dir.resolve("b.mp3"));
+		Path indexFile = dir.resolve("catalog.idx");
+
+		CatalogIndex index = new CatalogIndex(indexFile);
+		SongCatalog cold = SongCatalog.loadFromDirectory(dir.toString(), index);
+		assertEquals(2, index.getParsedFiles());
+		assertEquals(2, cold.size());
+
+		// a new CatalogIndex, like the next start of the jukebox
+		index = new CatalogIndex(indexFile);
+		SongCatalog warm = SongCatalog.loadFromDirectory(dir.toString(), index);
+		assertEquals(0, index.getParsedFiles());
+		Song song = warm.findSong("a.mp3");
+		assertEquals("Swing Cheese 15", song.getTitle());
+		assertEquals("FreePlay Music", song.getArtist());
+		assertEquals("Promos Vol 1", song.getAlbum());
+
+		// a file that changed and a new file are read, the other one isn't
+		Files.write(swing, new byte[0]);
+		Files.copy(Paths.get("songfiles", "Capture.mp3"), dir.resolve("c.mp3"));
+		SongCatalog changed = SongCatalog.loadFromDirectory(dir.toString(), index);
+		assertEquals(2, index.getParsedFiles());
+		assertEquals("a.mp3", changed.findSong("a.mp3").getTitle());
+		assertEquals("Game Freak", changed.findSong("c.mp3").getArtist());
+		assertEquals("Kevin MacLeod", changed.findSong("b.mp3").getArtist());
+	}
+
+	@Test
+	void testBrokenIndexIsIgnored() throws IOException {
+		Path dir = Files.createTempDirectory("songs");
+		Files.copy(Paths.get("songfiles", "LopingSting.mp3"), dir.resolve("b.mp3"));
+		Path indexFile = Files.write(dir.resolve("catalog.idx"), new byte[] { 'J', 'B', 'X', 'C', 99 });
+
+		CatalogIndex index = new CatalogIndex(indexFile);
+		List<Song> songs = SongCatalog.loadFromDirectory(dir.toString(), index).getSongs();
+		assertEquals(1, index.getParsedFiles());
+		assertEquals("Loping Sting", songs.get(0).getTitle());
+	}
+
+}
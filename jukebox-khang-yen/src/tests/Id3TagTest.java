@@ -0,0 +1,156 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import model.CatalogIngester;
+import model.Song;
+
+/**
+ * This unit test reads the ID3 tags of the song files and of made up files
+ * with each version of the tag, and with a damaged tag.
+ *
+ * @author Yen Lai
+ */
+class Id3TagTest {
+	@Test
+	void testSongFiles() {
+		List<Song> songs = CatalogIngester.ingest(List.of(Paths.get("songfiles", "SwingCheese.mp3"),
+				Paths.get("songfiles", "LopingSting.mp3")));
+		assertEquals("Swing Cheese 15", songs.get(0).getTitle());
+		assertEquals("FreePlay Music", songs.get(0).getArtist());
+		assertEquals("Promos Vol 1", songs.get(0).getAlbum());
+		assertEquals("Kevin MacLeod", songs.get(1).getArtist());
+	}
+
+	@Test
+	void testVersions() throws IOException {
+		Path dir = Files.createTempDirectory("tags");
+		// a v2.3 tag with a picture before the text, and a length
+		ByteArrayOutputStream v3 = new ByteArrayOutputStream();
+		v3.writeBytes(frame3("APIC", new byte[5000]));
+		v3.writeBytes(frame3("TIT2", text(3, "Título")));
+		v3.writeBytes(frame3("TPE1", text(1, "Artist")));
+		v3.writeBytes(frame3("TLEN", text(0, "125000")));
+		Path three = write(dir, "three.mp3", tag(3, v3.toByteArray(), 100), new byte[0]);
+
+		// a v2.2 tag without an album, which comes from the v1 tag
+		ByteArrayOutputStream v2 = new ByteArrayOutputStream();
+		v2.writeBytes(frame2("TT2", text(0, "Old")));
+		v2.writeBytes(frame2("TP1", text(0, "Older")));
+		Path two = write(dir, "two.mp3", tag(2, v2.toByteArray(), 0), v1("Ignored", "Ignored", "From v1"));
+
+		// a v2.4 tag, whose sizes are syncsafe
+		byte[] long4 = text(3, "x".repeat(200));
+		ByteArrayOutputStream v4 = new ByteArrayOutputStream();
+		v4.writeBytes(header("TALB", syncsafe(long4.length)));
+		v4.writeBytes(long4);
+		Path four = write(dir, "four.mp3", tag(4, v4.toByteArray(), 10), new byte[0]);
+
+		Path none = write(dir, "none.mp3", new byte[0], new byte[300]);
+
+		// an unsynchronised v2.3 tag whose extended header says it is 2 GiB
+		ByteArrayOutputStream damaged = new ByteArrayOutputStream();
+		damaged.writeBytes(new byte[] { 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF });
+		damaged.writeBytes(frame3("TIT2", text(0, "Lost")));
+		byte[] damagedTag = tag(3, damaged.toByteArray(), 0);
+		damagedTag[5] = (byte) 0xC0;
+		Path bad = write(dir, "bad.mp3", damagedTag, new byte[0]);
+
+		List<Song> songs = CatalogIngester.ingest(List.of(three, two, four, none, bad));
+		assertEquals("Título", songs.get(0).getTitle());
+		assertEquals("Artist", songs.get(0).getArtist());
+		assertEquals("2:05", songs.get(0).getPlaytime());
+		assertEquals("Old", songs.get(1).getTitle());
+		assertEquals("Older", songs.get(1).getArtist());
+		assertEquals("From v1", songs.get(1).getAlbum());
+		assertEquals("x".repeat(200), songs.get(2).getAlbum());
+		assertEquals("four.mp3", songs.get(2).getTitle());
+		assertEquals("none.mp3", songs.get(3).getTitle());
+		assertEquals("Unknown Artist", songs.get(3).getArtist());
+		assertEquals("Unknown Duration", songs.get(3).getPlaytime());
+		assertNull(songs.get(3).getAlbum());
+		assertEquals("bad.mp3", songs.get(4).getTitle());
+		assertEquals("Unknown Artist", songs.get(4).getArtist());
+	}
+
+	private static Path write(Path dir, String name, byte[] tag, byte[] tail) throws IOException {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(tag);
+		file.writeBytes(new byte[1000]); // the audio
+		file.writeBytes(tail);
+		return Files.write(dir.resolve(name), file.toByteArray());
+	}
+
+	private static byte[] tag(int version, byte[] frames, int padding) {
+		ByteArrayOutputStream tag = new ByteArrayOutputStream();
+		tag.writeBytes(new byte[] { 'I', 'D', '3', (byte) version, 0, 0 });
+		tag.writeBytes(syncsafe(frames.length + padding));
+		tag.writeBytes(frames);
+		tag.writeBytes(new byte[padding]);
+		return tag.toByteArray();
+	}
+
+	private static byte[] frame3(String id, byte[] body) {
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		int size = body.length;
+		frame.writeBytes(header(id, new byte[] { (byte) (size >>> 24), (byte) (size >>> 16), (byte) (size >>> 8),
+				(byte) size }));
+		frame.writeBytes(body);
+		return frame.toByteArray();
+	}
+
+	private static byte[] frame2(String id, byte[] body) {
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		int size = body.length;
+		frame.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		frame.writeBytes(new byte[] { (byte) (size >>> 16), (byte) (size >>> 8), (byte) size });
+		frame.writeBytes(body);
+		return frame.toByteArray();
+	}
+
+	private static byte[] header(String id, byte[] size) {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		header.writeBytes(id.getBytes(StandardCharsets.ISO_8859_1));
+		header.writeBytes(size);
+		header.writeBytes(new byte[2]); // flags
+		return header.toByteArray();
+	}
+
+	private static byte[] text(int encoding, String text) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write(encoding);
+		body.writeBytes(text.getBytes(encoding == 0 ? StandardCharsets.ISO_8859_1
+				: encoding == 1 ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8));
+		body.write(0);
+		return body.toByteArray();
+	}
+
+	private static byte[] v1(String title, String artist, String album) {
+		byte[] v1 = new byte[128];
+		v1[0] = 'T';
+		v1[1] = 'A';
+		v1[2] = 'G';
+		byte[][] fields = { title.getBytes(StandardCharsets.ISO_8859_1), artist.getBytes(StandardCharsets.ISO_8859_1),
+				album.getBytes(StandardCharsets.ISO_8859_1) };
+		for (int i = 0; i < fields.length; i++)
+			System.arraycopy(fields[i], 0, v1, 3 + 30 * i, fields[i].length);
+		return v1;
+	}
+
+	private static byte[] syncsafe(int size) {
+		return new byte[] { (byte) (size >>> 21 & 0x7F), (byte) (size >>> 14 & 0x7F), (byte) (size >>> 7 & 0x7F),
+				(byte) (size & 0x7F) };
+	}
+
+}
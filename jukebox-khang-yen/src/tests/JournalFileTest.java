@@ -0,0 +1,171 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.PasswordHash;
+import persistence.JournalFile;
+
+/**
+ * This unit test writes changes to a journal and reads them back, including
+ * after the journal was rotated, after the last record was only half
+ * written, after the length of a record was damaged and after writing to a
+ * segment that ended in a half written record.
+ * 
+ * @author Khang Tran
+ */
+class JournalFileTest {
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testReplayInOrder() throws IOException {
+		Path dir = Files.createTempDirectory("journal");
+		Account acc = new Account("khang", "a");
+		JournalFile journal = new JournalFile(dir, 1, 100, 1000, () -> {
+		});
+		journal.accountCreated(acc);
+		journal.songEnqueued(acc, "Capture.mp3");
+		journal.songPlayed(acc, LocalDate.of(2023, 10, 26));
+		journal.dailyReset(acc, LocalDate.of(2023, 10, 26));
+		journal.close();
+
+		List<String> read = new ArrayList<>();
+		long last = JournalFile.replay(dir, 0, (type, in) -> read.add(type + ":" + in.readUTF()));
+		assertEquals(4, last);
+		assertEquals(List.of("1:khang", "3:khang", "4:khang", "5:khang"), read);
+
+		// records that are already in a snapshot are skipped, and the payload
+		// ends where the record's does
+		read.clear();
+		JournalFile.replay(dir, 2, (type, in) -> {
+			read.add(type + ":" + in.readUTF() + ":" + LocalDate.ofEpochDay(in.readLong()));
+			assertEquals(0, in.available());
+		});
+		assertEquals(List.of("4:khang:2023-10-26", "5:khang:2023-10-26"), read);
+	}
+
+	@Test
+	void testRotateAndDelete() throws IOException {
+		Path dir = Files.createTempDirectory("journal");
+		Account acc = new Account("yen", "a");
+		JournalFile journal = new JournalFile(dir, 1, 100, 1000, () -> {
+		});
+		journal.songEnqueued(acc, "Capture.mp3");
+		journal.songEnqueued(acc, "SwingCheese.mp3");
+		assertEquals(2, journal.rotate());
+		journal.songPlayed(acc, LocalDate.of(2023, 10, 26));
+		journal.flush();
+
+		// the old segment can go once a snapshot covers it
+		journal.deleteSegmentsUpTo(2);
+		journal.close();
+		List<Byte> types = new ArrayList<>();
+		assertEquals(3, JournalFile.replay(dir, 2, (type, in) -> types.add(type)));
+		assertEquals(1, types.size());
+	}
+
+	@Test
+	void testTornRecordIsIgnored() throws IOException {
+		Path dir = Files.createTempDirectory("journal");
+		Account acc = new Account("Casey", "1111");
+		JournalFile journal = new JournalFile(dir, 1, 100, 1000, () -> {
+		});
+		journal.songEnqueued(acc, "Capture.mp3");
+		journal.songEnqueued(acc, "LopingSting.mp3");
+		journal.close();
+
+		// pretend the process died in the middle of writing the second record
+		Path segment = dir.resolve("journal.1");
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+		List<String> read = new ArrayList<>();
+		long last = JournalFile.replay(dir, 0, (type, in) -> {
+			in.readUTF();
+			read.add(in.readUTF());
+		});
+		assertEquals(1, last);
+		assertEquals(List.of("Capture.mp3"), read);
+	}
+
+	@Test
+	void testWritesAfterTornRecordAreRead() throws IOException {
+		Path dir = Files.createTempDirectory("journal");
+		Account acc = new Account("Casey", "1111");
+		JournalFile journal = new JournalFile(dir, 1, 100, 1000, () -> {
+		});
+		journal.songEnqueued(acc, "Capture.mp3");
+		journal.songEnqueued(acc, "LopingSting.mp3");
+		journal.rotate();
+		journal.songEnqueued(acc, "SwingCheese.mp3");
+		journal.close();
+
+		// the process died in the middle of the first record of journal.3
+		Path segment = dir.resolve("journal.3");
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+		long last = JournalFile.replay(dir, 0, (type, in) -> {
+		});
+		assertEquals(2, last);
+		assertEquals(0, Files.size(segment));
+
+		// the next start writes to the same segment
+		journal = new JournalFile(dir, last + 1, 100, 1000, () -> {
+		});
+		journal.songEnqueued(acc, "Tumbao.mp3");
+		journal.songEnqueued(acc, "DanseMacabreViolinHook.mp3");
+		journal.songEnqueued(acc, "Capture.mp3");
+		journal.close();
+		List<String> read = new ArrayList<>();
+		assertEquals(5, JournalFile.replay(dir, 0, (type, in) -> {
+			in.readUTF();
+			read.add(in.readUTF());
+		}));
+		assertEquals(List.of("Capture.mp3", "LopingSting.mp3", "Tumbao.mp3", "DanseMacabreViolinHook.mp3",
+				"Capture.mp3"), read);
+	}
+
+	@Test
+	void testDamagedLengthIsIgnored() throws IOException {
+		Path dir = Files.createTempDirectory("journal");
+		Account acc = new Account("Casey", "1111");
+		JournalFile journal = new JournalFile(dir, 1, 100, 1000, () -> {
+		});
+		journal.songEnqueued(acc, "Capture.mp3");
+		journal.songEnqueued(acc, "LopingSting.mp3");
+		journal.close();
+
+		// the length of the second record reads as almost 2 GiB
+		Path segment = dir.resolve("journal.1");
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+			channel.read(length, 0);
+			channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 0x7FFF_FFF0), Integer.BYTES + length.getInt(0));
+		}
+		List<String> read = new ArrayList<>();
+		long last = JournalFile.replay(dir, 0, (type, in) -> {
+			in.readUTF();
+			read.add(in.readUTF());
+		});
+		assertEquals(1, last);
+		assertEquals(List.of("Capture.mp3"), read);
+	}
+
+}
@@ -4,10 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
-import javafx.embed.swing.JFXPanel;
 import model.Account;
 import model.JukeboxAccount;
 
@@ -18,11 +16,6 @@ import model.JukeboxAccount;
  * @author Khang Tran
  */
 class JukeboxAccountTest {
-	 @BeforeAll
-	    public static void setupJavaFX() {
-			final JFXPanel fxPanel = new JFXPanel();
-	    }
-
 	@Test
 	void testGetters() {
 		//create an account and give access to the jukebox account
@@ -33,7 +26,8 @@ class JukeboxAccountTest {
 		//user name should be khang
 		assertEquals("khang", acc.getID());
 		//password should be a
-		assertEquals("a", acc.getPassWord());
+		assertTrue(acc.checkPassWord("a"));
+		assertFalse(acc.checkPassWord("b"));
 		//it's true that it can play a song
 		assertTrue(aJBA.canPlaySong());
 	}
@@ -0,0 +1,177 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.JukeboxState;
+import model.PasswordHash;
+import model.Song;
+import model.SongCatalog;
+import model.VenueQueue;
+import server.JukeboxServer;
+
+/**
+ * This unit test starts a JukeboxServer on the loopback address and uses its
+ * JSON API the way a phone would: it creates an account, logs in, browses the
+ * songs, queues songs up to the daily limit and logs out. The last test lets
+ * a token expire.
+ *
+ * @author Khang Tran
+ */
+class JukeboxServerTest {
+	private static final SongCatalog CATALOG = new SongCatalog(List.of(
+			new Song("Capture", "Pikasong", "0:05", "Capture.mp3"),
+			new Song("Swing Cheese 15", "Artist", "0:15", "SwingCheese.mp3"),
+			new Song("Determined \"Tumbao\"", "FreePlay Music", "0:20", "DeterminedTumbao.mp3")));
+
+	private final HttpClient client = HttpClient.newHttpClient();
+	private URI base;
+
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testQueueSongsOverHttp() throws Exception {
+		ExecutorService modelThread = Executors.newSingleThreadExecutor();
+		VenueQueue venue = new VenueQueue();
+		JukeboxServer server = start(new JukeboxState(), venue, modelThread);
+		try {
+			assertEquals(201, send("POST", "/api/accounts", null, "{\"user\": \"phone\", \"password\": \"pw\"}")
+					.statusCode());
+			assertEquals(409, send("POST", "/api/accounts", null, "{\"user\": \"phone\", \"password\": \"x\"}")
+					.statusCode());
+			assertEquals(401, send("POST", "/api/sessions", null, "{\"user\": \"phone\", \"password\": \"x\"}")
+					.statusCode());
+
+			HttpResponse<String> login = send("POST", "/api/sessions", null,
+					"{\"user\": \"phone\", \"password\": \"pw\"}");
+			assertEquals(200, login.statusCode());
+			assertTrue(login.body().contains("\"remaining\":3"));
+			String token = field(login.body(), "token");
+
+			HttpResponse<String> songs = send("GET", "/api/songs?offset=1&limit=5", null, null);
+			assertEquals(200, songs.statusCode());
+			assertEquals("application/json; charset=utf-8", songs.headers().firstValue("Content-Type").get());
+			assertEquals("{\"total\":3,\"songs\":[{\"id\":1,\"title\":\"Swing Cheese 15\",\"artist\":\"Artist\","
+					+ "\"time\":\"0:15\"},{\"id\":2,\"title\":\"Determined \\\"Tumbao\\\"\","
+					+ "\"artist\":\"FreePlay Music\",\"time\":\"0:20\"}]}", songs.body());
+
+			for (int song = 0; song < 3; song++)
+				assertEquals(201, send("POST", "/api/queue", token, "{\"song\": " + song + "}").statusCode());
+			HttpResponse<String> refused = send("POST", "/api/queue", token, "{\"song\": 0}");
+			assertEquals(429, refused.statusCode());
+			assertEquals("{\"error\":\"no more songs today\"}", refused.body());
+			assertEquals(3, venue.size());
+
+			HttpResponse<String> queue = send("GET", "/api/queue", token, null);
+			assertEquals(200, queue.statusCode());
+			assertTrue(queue.body().startsWith("{\"songs\":[{\"id\":0,"));
+			assertTrue(queue.body().endsWith("\"remaining\":0,\"queued\":3}"));
+
+			assertEquals(204, send("DELETE", "/api/sessions", token, null).statusCode());
+			assertEquals(401, send("GET", "/api/queue", token, null).statusCode());
+		} finally {
+			server.stop();
+			modelThread.shutdown();
+		}
+	}
+
+	@Test
+	void testBadRequests() throws Exception {
+		ExecutorService modelThread = Executors.newSingleThreadExecutor();
+		JukeboxServer server = start(new JukeboxState(), new VenueQueue(), modelThread);
+		try {
+			assertEquals(400, send("POST", "/api/sessions", null, "{\"user\": [1]}").statusCode());
+			assertEquals(400, send("POST", "/api/sessions", null, "not json").statusCode());
+			assertEquals(400, send("POST", "/api/accounts", null, "{\"user\": \"x\"}").statusCode());
+			assertEquals(400, send("GET", "/api/songs?limit=many", null, null).statusCode());
+			assertEquals(405, send("PUT", "/api/songs", null, "{}").statusCode());
+			assertEquals(401, send("POST", "/api/queue", "made-up", "{\"song\": 0}").statusCode());
+
+			send("POST", "/api/accounts", null, "{\"user\": \"kiosk\", \"password\": \"pw\"}");
+			String token = field(send("POST", "/api/sessions", null, "{\"user\": \"kiosk\", \"password\": \"pw\"}")
+					.body(), "token");
+			assertEquals(404, send("POST", "/api/queue", token, "{\"song\": 99}").statusCode());
+			assertEquals(400, send("POST", "/api/queue", token, "{\"song\": \"Capture\"}").statusCode());
+		} finally {
+			server.stop();
+			modelThread.shutdown();
+		}
+	}
+
+	@Test
+	void testTokensExpire() throws Exception {
+		ExecutorService modelThread = Executors.newSingleThreadExecutor();
+		JukeboxState state = new JukeboxState();
+		JukeboxServer server = start(state, new VenueQueue(), modelThread, Duration.ofMillis(300));
+		try {
+			send("POST", "/api/accounts", null, "{\"user\": \"phone\", \"password\": \"pw\"}");
+			String first = field(send("POST", "/api/sessions", null, "{\"user\": \"phone\", \"password\": \"pw\"}")
+					.body(), "token");
+			String second = field(send("POST", "/api/sessions", null, "{\"user\": \"phone\", \"password\": \"pw\"}")
+					.body(), "token");
+
+			// the account stays logged in with its other token
+			assertEquals(204, send("DELETE", "/api/sessions", first, null).statusCode());
+			assertEquals(1, state.getSessionCount());
+			assertEquals(200, send("GET", "/api/queue", second, null).statusCode());
+
+			// a token that isn't used expires, and the account is logged out
+			for (int i = 0; i < 200 && state.getSessionCount() > 0; i++)
+				Thread.sleep(10);
+			assertEquals(0, state.getSessionCount());
+			assertEquals(401, send("GET", "/api/queue", second, null).statusCode());
+		} finally {
+			server.stop();
+			modelThread.shutdown();
+		}
+	}
+
+	private JukeboxServer start(JukeboxState state, VenueQueue venue, ExecutorService modelThread)
+			throws IOException {
+		return start(state, venue, modelThread, JukeboxServer.DEFAULT_SESSION_TIMEOUT);
+	}
+
+	private JukeboxServer start(JukeboxState state, VenueQueue venue, ExecutorService modelThread,
+			Duration sessionTimeout) throws IOException {
+		JukeboxServer server = new JukeboxServer(state, CATALOG, venue, modelThread, sessionTimeout);
+		server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		base = URI.create("http://127.0.0.1:" + server.getPort());
+		return server;
+	}
+
+	private HttpResponse<String> send(String method, String path, String token, String body)
+			throws IOException, InterruptedException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(path)).method(method,
+				body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+		if (token != null)
+			request.header("Authorization", "Bearer " + token);
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static String field(String json, String name) {
+		Matcher matcher = Pattern.compile("\"" + name + "\":\"([^\"]*)\"").matcher(json);
+		assertTrue(matcher.find());
+		return matcher.group(1);
+	}
+
+}
@@ -0,0 +1,153 @@
+package tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.JukeboxState;
+import model.PasswordHash;
+import model.SongCatalog;
+import persistence.JournalFile;
+import persistence.JukeboxStore;
+
+/**
+ * This unit test saves the jukebox with a JukeboxStore and loads it back: a
+ * snapshot written in the background when the store closes, one written every
+ * few milliseconds while the jukebox runs, a damaged snapshot, which is
+ * passed over for the one before it and the journal, a journal with a song
+ * that left the catalog, and starting fresh, which keeps the old snapshot.
+ *
+ * @author Khang Tran
+ */
+class JukeboxStoreTest {
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testCloseWritesSnapshotInBackground() throws Exception {
+		Path dir = Files.createTempDirectory("store");
+		JukeboxStore store = new JukeboxStore(dir, Runnable::run);
+		JukeboxState state = store.startFresh();
+		state.getAccountCollection().createAccount("khang", "a");
+		store.close().join();
+
+		// the snapshot ends with its checksum and the footer "JBXC"
+		byte[] bytes = Files.readAllBytes(dir.resolve("objects.ser"));
+		assertEquals("JBXC", new String(bytes, bytes.length - 4, 4, "US-ASCII"));
+		assertTrue(Files.notExists(dir.resolve("objects.ser.tmp")));
+
+		JukeboxStore again = new JukeboxStore(dir, Runnable::run);
+		assertNotNull(again.load().getAccountCollection().authorize("khang", "a"));
+		// nothing changed, so there is no snapshot to write
+		again.close().join();
+	}
+
+	@Test
+	void testCheckpointWhileRunning() throws Exception {
+		Path dir = Files.createTempDirectory("store");
+		JukeboxStore store = new JukeboxStore(dir, Runnable::run, Duration.ofMillis(20));
+		JukeboxState state = store.load();
+		assertTrue(Files.notExists(dir.resolve("objects.ser")));
+		state.getAccountCollection().createAccount("yen", "b");
+		for (int i = 0; i < 250 && Files.notExists(dir.resolve("objects.ser")); i++)
+			Thread.sleep(20);
+		assertTrue(Files.exists(dir.resolve("objects.ser")));
+		store.close().join();
+
+		JukeboxStore again = new JukeboxStore(dir, Runnable::run);
+		assertNotNull(again.load().getAccountCollection().getAccount("yen"));
+		again.close().join();
+	}
+
+	@Test
+	void testDamagedSnapshotFallsBack() throws Exception {
+		Path dir = Files.createTempDirectory("store");
+		JukeboxStore store = new JukeboxStore(dir, Runnable::run);
+		JukeboxState state = store.startFresh();
+		state.getAccountCollection().createAccount("first", "1");
+		store.compact();
+		state.getAccountCollection().createAccount("second", "2");
+		store.compact();
+		state.getAccountCollection().createAccount("third", "3");
+		store.close().join();
+		assertTrue(Files.exists(dir.resolve("objects.ser.prev")));
+
+		// flip a byte in the middle of the newest snapshot
+		try (FileChannel channel = FileChannel.open(dir.resolve("objects.ser"), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			long middle = channel.size() / 2;
+			ByteBuffer b = ByteBuffer.allocate(1);
+			channel.read(b, middle);
+			b.put(0, (byte) ~b.get(0)).rewind();
+			channel.write(b, middle);
+		}
+
+		// the snapshot before it and the journal after that still hold everything
+		JukeboxStore again = new JukeboxStore(dir, Runnable::run);
+		JukeboxState loaded = again.load();
+		assertNotNull(loaded.getAccountCollection().authorize("first", "1"));
+		assertNotNull(loaded.getAccountCollection().authorize("second", "2"));
+		assertNotNull(loaded.getAccountCollection().authorize("third", "3"));
+		assertTrue(Files.exists(dir.resolve("objects.ser.damaged")));
+		again.close().join();
+	}
+
+	@Test
+	void testJournalKeepsSongsThatLeftTheCatalog() throws Exception {
+		Path dir = Files.createTempDirectory("store");
+		JournalFile journal = new JournalFile(dir, 1, 100, 1000, () -> {
+		});
+		Account chris = new Account("Chris", "1");
+		journal.songEnqueued(chris, "NotInTheCatalog.mp3");
+		journal.songEnqueued(chris, "Capture.mp3");
+		journal.songPlayed(chris, LocalDate.now());
+		journal.close();
+
+		// the song that played is the one that left the catalog
+		JukeboxStore store = new JukeboxStore(dir, Runnable::run);
+		JukeboxState state = store.load();
+		JukeboxAccount jukeboxAccount = state.getJukeboxAccount(state.getAccountCollection().getAccount("Chris"));
+		assertEquals(List.of(SongCatalog.shared().findSong("Capture.mp3")),
+				List.copyOf(jukeboxAccount.getSelectedSongs()));
+		store.close().join();
+	}
+
+	@Test
+	void testStartFreshKeepsOldSnapshot() throws Exception {
+		Path dir = Files.createTempDirectory("store");
+		JukeboxStore store = new JukeboxStore(dir, Runnable::run);
+		store.startFresh().getAccountCollection().createAccount("khang", "a");
+		store.close().join();
+		byte[] old = Files.readAllBytes(dir.resolve("objects.ser"));
+
+		// the old snapshot is kept until a later one replaces it
+		JukeboxStore fresh = new JukeboxStore(dir, Runnable::run);
+		assertNull(fresh.startFresh().getAccountCollection().getAccount("khang"));
+		assertArrayEquals(old, Files.readAllBytes(dir.resolve("objects.ser.prev")));
+		fresh.close().join();
+
+		JukeboxStore again = new JukeboxStore(dir, Runnable::run);
+		assertNull(again.load().getAccountCollection().getAccount("khang"));
+		again.close().join();
+	}
+
+}
@@ -0,0 +1,48 @@
+package tests;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A clock for the unit tests that only moves when the test moves it. It is in
+ * UTC; a clock made by withZone() tells the same time in another zone, and
+ * moves with this one.
+ *
+ * @author Khang Tran
+ */
+class ManualClock extends Clock {
+	private final AtomicReference<Instant> now;
+	private final ZoneId zone;
+
+	ManualClock(Instant now) {
+		this(new AtomicReference<>(now), ZoneOffset.UTC);
+	}
+
+	private ManualClock(AtomicReference<Instant> now, ZoneId zone) {
+		this.now = now;
+		this.zone = zone;
+	}
+
+	void advance(Duration duration) {
+		now.updateAndGet(instant -> instant.plus(duration));
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return zone;
+	}
+
+	@Override
+	public ManualClock withZone(ZoneId zone) {
+		return new ManualClock(now, zone);
+	}
+
+	@Override
+	public Instant instant() {
+		return now.get();
+	}
+}
@@ -0,0 +1,93 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.junit.jupiter.api.Test;
+
+import model.Metrics;
+
+/**
+ * This unit test records counts and times in a Metrics registry, checks the
+ * percentiles of its histograms and reads the metrics back as JMX MBeans.
+ *
+ * @author Khang Tran
+ */
+class MetricsTest {
+
+	@Test
+	void testHistogramPercentiles() {
+		Metrics.Histogram histogram = new Metrics.Histogram();
+		assertEquals(0, histogram.percentile(99));
+		// 1 to 1000 microseconds
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500_500.0, histogram.getMean(), 0.001);
+		assertEquals(1_000_000, histogram.getMax());
+		// within a sixteenth of the true value, and never above the max
+		assertNear(500_000, histogram.percentile(50));
+		assertNear(990_000, histogram.percentile(99));
+		assertEquals(1_000_000, histogram.percentile(100));
+		assertNear(1000, histogram.percentile(0));
+	}
+
+	@Test
+	void testCountersAndGauges() {
+		Metrics metrics = new Metrics();
+		metrics.counter("login.failures").increment();
+		metrics.counter("login.failures").add(2);
+		AtomicInteger depth = new AtomicInteger(7);
+		metrics.gauge("queue.depth", depth::get);
+		metrics.histogram("login.latency").record(2_000_000);
+
+		assertEquals(3L, metrics.getValues().get("login.failures"));
+		assertEquals(7.0, metrics.getValues().get("queue.depth"));
+		depth.set(9);
+		assertEquals(9.0, metrics.getValues().get("queue.depth"));
+		assertEquals(2.0, (double) metrics.getValues().get("login.latencyP99Millis"), 0.13);
+		assertEquals(1L, metrics.getValues().get("login.latencyCount"));
+		try {
+			metrics.histogram("login.failures");
+			assertTrue(false);
+		} catch (IllegalArgumentException e) {
+			// a counter can't be read as a histogram
+		}
+	}
+
+	@Test
+	void testReadOverJmx() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		Metrics metrics = new Metrics();
+		metrics.counter("login.failures").increment();
+		metrics.registerMBeans(server);
+		ObjectName login = new ObjectName("jukebox:type=login");
+		assertEquals(1L, server.getAttribute(login, "failures"));
+
+		// a metric added later shows up, and so does its group
+		metrics.histogram("login.latency").record(3_000_000);
+		metrics.gauge("queue.depth", () -> 4);
+		assertEquals(3.0, (double) server.getAttribute(login, "latencyMaxMillis"), 0.001);
+		assertEquals(4.0, server.getAttribute(new ObjectName("jukebox:type=queue"), "depth"));
+		assertEquals(6, server.getMBeanInfo(login).getAttributes().length);
+		// there are no operations
+		assertThrows(ReflectionException.class, () -> server.invoke(login, "reset", null, null));
+
+		metrics.unregisterMBeans();
+		assertFalse(server.isRegistered(login));
+	}
+
+	private static void assertNear(long expected, long actual) {
+		assertTrue(actual + " is not near " + expected, Math.abs(actual - expected) <= expected / 16);
+	}
+
+}
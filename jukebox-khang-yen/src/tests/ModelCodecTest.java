@@ -0,0 +1,127 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.JukeboxState;
+import model.PasswordHash;
+import model.SongCatalog;
+import persistence.BinaryReader;
+import persistence.BinaryWriter;
+import persistence.ModelCodec;
+import persistence.Snapshot;
+import persistence.StringTable;
+
+/**
+ * This unit test saves a jukebox with ModelCodec and reads it back, and checks
+ * the varints, strings and dates it is built from.
+ * 
+ * @author Khang Tran
+ */
+class ModelCodecTest {
+	@BeforeAll
+	public static void setupCost() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		JukeboxState state = new JukeboxState();
+		Account acc = state.getAccountCollection().createAccount("khang", "a");
+		JukeboxAccount jukeboxAccount = state.logIn(acc);
+		jukeboxAccount.playASong();
+		SongCatalog catalog = SongCatalog.shared();
+		jukeboxAccount.queueSong(catalog.findSong("Capture.mp3"));
+		jukeboxAccount.queueSong(catalog.findSong("SwingCheese.mp3"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ModelCodec.write(bytes, state, 42);
+		Snapshot snapshot = ModelCodec.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+		assertEquals(42, snapshot.getLastSeq());
+		JukeboxState read = snapshot.getState();
+		Account readAcc = read.getAccountCollection().getAccount("khang");
+		// the password hash and the song count come back
+		assertTrue(readAcc.checkPassWord("a"));
+		assertEquals(1, readAcc.getSongPlayed());
+		assertTrue(read.getAccountCollection().getAccount("Chris").checkPassWord("1"));
+		assertSame(readAcc, read.getLastLoggedInAccount());
+
+		// the JukeboxAccount is only built when it is asked for
+		assertTrue(read.getAccountMap().isEmpty());
+		JukeboxAccount readJukebox = read.getJukeboxAccount(readAcc);
+		assertEquals(LocalDate.now(), readJukebox.getLastPlayDate());
+		assertEquals(List.of(catalog.findSong("Capture.mp3"), catalog.findSong("SwingCheese.mp3")),
+				List.copyOf(readJukebox.getPlayList().getSongs()));
+		assertEquals("Swing Cheese 15", readJukebox.getSelectedSongs().get(1).getTitle());
+		// the songs read back are the catalog's, not copies
+		assertSame(catalog.findSong("Capture.mp3"), readJukebox.getSelectedSongs().get(0));
+
+		// writing it again, and again, copies the accounts that were never built
+		Account yen = read.getAccountCollection().createAccount("yen", "b");
+		read.getJukeboxAccount(yen).queueSong(catalog.findSong("LopingSting.mp3"));
+		bytes.reset();
+		ModelCodec.write(bytes, read, 43);
+		JukeboxState again = ModelCodec.read(new ByteArrayInputStream(bytes.toByteArray())).getState();
+		bytes.reset();
+		ModelCodec.write(bytes, again, 44);
+		again = ModelCodec.read(new ByteArrayInputStream(bytes.toByteArray())).getState();
+		assertEquals(2, again.getJukeboxAccount(again.getAccountCollection().getAccount("khang")).getPlayList()
+				.size());
+		assertEquals("LopingSting.mp3", again.getJukeboxAccount(again.getAccountCollection()
+				.getAccount("yen")).getPlayList().startNextSong().getFileName());
+	}
+
+	@Test
+	void testPrimitives() throws IOException {
+		StringTable strings = new StringTable();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryWriter writer = new BinaryWriter(bytes, strings);
+		writer.writeVarInt(5);
+		writer.writeVarLong(Long.MAX_VALUE);
+		writer.writeSignedVarLong(-3);
+		writer.writeString("songfiles/Capture.mp3");
+		writer.writeString(null);
+		writer.writeString("songfiles/Capture.mp3");
+		writer.writeDate(LocalDate.of(1969, 12, 31));
+		writer.writeDate(null);
+		writer.writeUtf("khang");
+		writer.flush();
+		// strings are only indexes into the table, and the same string is only
+		// in the table once
+		assertEquals(1 + 9 + 1 + 1 + 1 + 1 + 1 + 1 + 6, bytes.size());
+		assertEquals(1, strings.size());
+
+		BinaryReader reader = new BinaryReader(new ByteArrayInputStream(bytes.toByteArray()), strings);
+		assertEquals(5, reader.readVarInt());
+		assertEquals(Long.MAX_VALUE, reader.readVarLong());
+		assertEquals(-3, reader.readSignedVarLong());
+		assertEquals("songfiles/Capture.mp3", reader.readString());
+		assertNull(reader.readString());
+		assertEquals("songfiles/Capture.mp3", reader.readString());
+		assertEquals(LocalDate.of(1969, 12, 31), reader.readDate());
+		assertNull(reader.readDate());
+		assertEquals("khang", reader.readUtf());
+	}
+
+	@Test
+	void testRejectsOtherFiles() {
+		byte[] notASnapshot = { (byte) 0xAC, (byte) 0xED, 0, 5 };
+		assertThrows(IOException.class, () -> ModelCodec.read(new ByteArrayInputStream(notASnapshot)));
+	}
+
+}
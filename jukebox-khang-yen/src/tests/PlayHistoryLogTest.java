@@ -0,0 +1,143 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.PasswordHash;
+import model.PlayHistory.Outcome;
+import model.Song;
+import persistence.PlayHistoryLog;
+
+/**
+ * This unit test records songs in a PlayHistoryLog over several days and two
+ * months, checks the counts it keeps, and opens it again, also after the last
+ * record was only half written.
+ *
+ * @author Khang Tran
+ */
+class PlayHistoryLogTest {
+	private static final ZoneId UTC = ZoneOffset.UTC;
+	private static final Song CAPTURE = new Song("Capture", "Pikasong", "0:05", "Capture.mp3");
+	private static final Song SWING = new Song("Swing Cheese 15", "Artist", "0:15", "SwingCheese.mp3");
+	private static final Song TUMBAO = new Song("Determined Tumbao", "FreePlay Music", "0:20",
+			"DeterminedTumbao.mp3");
+
+	private final Account khang = new Account("khang", "a");
+	private final Account yen = new Account("yen", "a");
+
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testCountsAsSongsFinish() throws IOException {
+		Path dir = Files.createTempDirectory("history");
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, UTC, 60_000)) {
+			record(history);
+			check(history);
+			assertEquals(0, history.getFailures(LocalDate.of(2024, 1, 30)));
+		}
+	}
+
+	@Test
+	void testReopens() throws IOException {
+		Path dir = Files.createTempDirectory("history");
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, UTC, 60_000)) {
+			record(history);
+		}
+		// one file a month, 24 bytes a record
+		assertEquals(5 * PlayHistoryLog.RECORD_BYTES, Files.size(dir.resolve("plays.2024-01")));
+		assertEquals(2 * PlayHistoryLog.RECORD_BYTES, Files.size(dir.resolve("plays.2024-02")));
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, UTC, 60_000)) {
+			check(history);
+			history.songFinished(millis(2024, 2, 2, 9), yen, CAPTURE, Outcome.PLAYED);
+		}
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, UTC, 60_000)) {
+			assertEquals(8, history.size());
+			assertEquals(4, history.getSongPlays("Capture.mp3"));
+		}
+	}
+
+	@Test
+	void testHalfWrittenRecordIsCutOff() throws IOException {
+		Path dir = Files.createTempDirectory("history");
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, UTC, 60_000)) {
+			record(history);
+		}
+		// the process died while writing a record and a name
+		Path february = dir.resolve("plays.2024-02");
+		try (FileChannel channel = FileChannel.open(february, StandardOpenOption.WRITE)) {
+			channel.truncate(2 * PlayHistoryLog.RECORD_BYTES - 5);
+		}
+		Files.write(dir.resolve("names"), new byte[] { 1, 0, 9, 'C' }, StandardOpenOption.APPEND);
+
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, UTC, 60_000)) {
+			assertEquals(6, history.size());
+			assertEquals(PlayHistoryLog.RECORD_BYTES, Files.size(february));
+			// new records go after the good ones
+			history.songFinished(millis(2024, 2, 3, 9), khang, SWING, Outcome.PLAYED);
+		}
+		try (PlayHistoryLog history = new PlayHistoryLog(dir, UTC, 60_000)) {
+			assertEquals(7, history.size());
+			// the record cut off was the first SwingCheese.mp3
+			assertEquals(1, history.getSongPlays("SwingCheese.mp3"));
+			assertEquals(List.of("khang=1", "yen=1"),
+					history.topAccounts(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29), 5).stream()
+							.map(Object::toString).toList());
+		}
+	}
+
+	/*
+	 * Seven songs over three days in January and two in February, one of which
+	 * couldn't be played.
+	 */
+	private void record(PlayHistoryLog history) {
+		history.songFinished(millis(2024, 1, 29, 10), khang, CAPTURE, Outcome.PLAYED);
+		history.songFinished(millis(2024, 1, 29, 11), yen, CAPTURE, Outcome.PLAYED);
+		history.songFinished(millis(2024, 1, 30, 10), yen, TUMBAO, Outcome.PLAYED);
+		history.songFinished(millis(2024, 1, 31, 23), khang, TUMBAO, Outcome.FAILED);
+		history.songFinished(millis(2024, 1, 31, 23), yen, TUMBAO, Outcome.PLAYED);
+		history.songFinished(millis(2024, 2, 1, 8), yen, CAPTURE, Outcome.PLAYED);
+		history.songFinished(millis(2024, 2, 1, 9), khang, SWING, Outcome.PLAYED);
+	}
+
+	private static void check(PlayHistoryLog history) {
+		assertEquals(7, history.size());
+		assertEquals(2, history.getPlays(LocalDate.of(2024, 1, 29)));
+		assertEquals(1, history.getFailures(LocalDate.of(2024, 1, 31)));
+		assertEquals(3, history.getSongPlays("Capture.mp3"));
+		assertEquals(2, history.getSongPlays("DeterminedTumbao.mp3"));
+		assertEquals(4, history.getAccountPlays("yen"));
+		assertEquals(0, history.getAccountPlays("nobody"));
+
+		// the week of Monday the 29th; the failed song isn't counted
+		LocalDate monday = LocalDate.of(2024, 1, 29);
+		assertEquals(List.of("Capture.mp3=3", "DeterminedTumbao.mp3=2", "SwingCheese.mp3=1"),
+				history.topSongs(monday, monday.plusDays(6), 5).stream().map(Object::toString).toList());
+		assertEquals(List.of("Capture.mp3=3"),
+				history.topSongs(monday, monday.plusDays(6), 1).stream().map(Object::toString).toList());
+		assertEquals(List.of("DeterminedTumbao.mp3=2"), history
+				.topSongs(monday.plusDays(1), monday.plusDays(2), 5).stream().map(Object::toString).toList());
+		assertEquals(List.of("yen=4", "khang=2"),
+				history.topAccounts(monday, monday.plusDays(6), 5).stream().map(Object::toString).toList());
+	}
+
+	private static long millis(int year, int month, int day, int hour) {
+		return LocalDate.of(year, month, day).atTime(hour, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+
+}
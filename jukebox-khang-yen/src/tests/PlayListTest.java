@@ -0,0 +1,139 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import model.PlayList;
+import model.Song;
+import model.SongCatalog;
+
+/**
+ * This unit test queues, removes and moves songs in a PlayList and checks it
+ * against an ArrayList doing the same, so the ring wraps around and the
+ * removed slots are dropped in every way they can be.
+ *
+ * @author Yen Lai
+ */
+class PlayListTest {
+	private static final SongCatalog catalog = catalog(50);
+
+	@Test
+	void testQueue() {
+		PlayList playList = new PlayList(catalog);
+		assertTrue(playList.isEmpty());
+		assertNull(playList.startNextSong());
+		assertNull(playList.playNextSong());
+
+		playList.queueUpNextSong(catalog.getSong(1));
+		playList.queueUpNextSong(catalog.getSong(2));
+		playList.queueFirst(catalog.getSong(0));
+		assertEquals(3, playList.size());
+		assertSame(catalog.getSong(0), playList.startNextSong());
+		assertEquals(List.of(catalog.getSong(0), catalog.getSong(1), catalog.getSong(2)), playList.getSongs());
+
+		// a song that isn't in the catalog can be queued too
+		Song other = new Song("Other", "Artist", "1:00", "other.mp3");
+		playList.queueUpNextSong(other);
+		playList.playNext(3);
+		assertSame(other, playList.playNextSong());
+		assertSame(catalog.getSong(0), playList.playNextSong());
+		assertSame(catalog.getSong(2), playList.removeLastSong());
+		assertSame(catalog.getSong(1), playList.playNextSong());
+		assertTrue(playList.isEmpty());
+	}
+
+	@Test
+	void testRemoveAndMove() {
+		PlayList playList = new PlayList(catalog);
+		for (int i = 0; i < 10; i++)
+			playList.queueUpNextSong(catalog.getSong(i));
+		assertSame(catalog.getSong(4), playList.removeSong(4));
+		assertSame(catalog.getSong(6), playList.removeSong(5));
+		assertEquals(8, playList.size());
+		assertSame(catalog.getSong(7), playList.getSong(5));
+
+		// 8 moves to the front, then 0 moves to just before 9
+		playList.playNext(6);
+		playList.moveSong(1, 6);
+		assertEquals(List.of(8, 1, 2, 3, 5, 7, 0, 9), ids(playList));
+		playList.moveSong(6, 2);
+		assertEquals(List.of(8, 1, 0, 2, 3, 5, 7, 9), ids(playList));
+	}
+
+	@Test
+	void testAgainstArrayList() {
+		Random random = new Random(7);
+		PlayList playList = new PlayList(catalog);
+		List<Song> expected = new ArrayList<>();
+		for (int step = 0; step < 200_000; step++) {
+			Song song = catalog.getSong(random.nextInt(catalog.size()));
+			int size = expected.size();
+			switch (random.nextInt(size < 20 ? 3 : 8)) {
+			case 0:
+			case 1:
+				playList.queueUpNextSong(song);
+				expected.add(song);
+				break;
+			case 2:
+				playList.queueFirst(song);
+				expected.add(0, song);
+				break;
+			case 3:
+				assertSame(expected.remove(0), playList.playNextSong());
+				break;
+			case 4:
+				assertSame(expected.remove(size - 1), playList.removeLastSong());
+				break;
+			case 5: {
+				int index = random.nextInt(size);
+				assertSame(expected.remove(index), playList.removeSong(index));
+				break;
+			}
+			case 6: {
+				int index = random.nextInt(size);
+				playList.playNext(index);
+				expected.add(0, expected.remove(index));
+				break;
+			}
+			default: {
+				int from = random.nextInt(size);
+				int to = random.nextInt(size);
+				playList.moveSong(from, to);
+				expected.add(to, expected.remove(from));
+				break;
+			}
+			}
+			assertEquals(expected.size(), playList.size());
+			if (step % 97 == 0)
+				assertEquals(expected, playList.getSongs());
+			if (!expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				assertSame(expected.get(index), playList.getSong(index));
+			}
+		}
+		assertEquals(expected, new ArrayList<>(playList.getSongs()));
+	}
+
+	private static List<Integer> ids(PlayList playList) {
+		List<Integer> ids = new ArrayList<>();
+		for (Song song : playList.getSongs())
+			ids.add(catalog.idOf(song));
+		return ids;
+	}
+
+	private static SongCatalog catalog(int size) {
+		List<Song> songs = new ArrayList<>();
+		for (int i = 0; i < size; i++)
+			songs.add(new Song("Song " + i, "Artist", "0:01", "song" + i + ".mp3"));
+		return new SongCatalog(songs);
+	}
+
+}
@@ -0,0 +1,234 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.PasswordHash;
+import model.PlaybackEngine;
+import model.PlayHistory.Outcome;
+import model.PlaybackEngine.State;
+import model.SongCatalog;
+import model.VenueQueue;
+
+/**
+ * This unit test plays the songs of a VenueQueue with a PlaybackEngine whose
+ * output only records what it is asked to do, so the test decides when a song
+ * is ready and when it ends, and which songs can't be played.
+ *
+ * @author Yen Lai
+ */
+class PlaybackEngineTest {
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testPlaysQueueWithGap() throws InterruptedException {
+		FakeOutput output = new FakeOutput();
+		VenueQueue venue = new VenueQueue();
+		// the model thread is the playback thread in this test
+		PlaybackEngine<String> engine = new PlaybackEngine<>(output, venue, Runnable::run);
+		engine.setGapMillis(50);
+		List<JukeboxAccount> finished = new CopyOnWriteArrayList<>();
+		engine.setSongFinishedListener(finished::add);
+
+		// adding the songs starts the engine
+		JukeboxAccount account = queue(venue, "capture", "Capture.mp3", "SwingCheese.mp3");
+		// the first song loads, and the second is prepared while it plays
+		await(() -> output.prepared.size() == 2);
+		assertEquals(State.PREPARING, engine.getState());
+		output.fire("songfiles/SwingCheese.mp3", "ready");
+		output.fire("songfiles/Capture.mp3", "ready");
+		await(() -> engine.getState() == State.PLAYING);
+		assertEquals(List.of("songfiles/Capture.mp3"), output.played);
+
+		output.fire("songfiles/Capture.mp3", "end");
+		await(() -> engine.getState() == State.GAP);
+		// the second song was prepared already, so it starts after the gap
+		await(() -> output.played.size() == 2);
+		assertEquals(State.PLAYING, engine.getState());
+		assertEquals(List.of("songfiles/Capture.mp3", "songfiles/SwingCheese.mp3"), output.played);
+		assertEquals(List.of("songfiles/Capture.mp3"), output.disposed);
+		assertEquals(1, account.getAccount().getSongPlayed());
+		assertEquals(List.of(account), finished);
+		assertEquals(1, engine.getMetrics().getGapCount());
+		assertTrue(engine.getMetrics().getLastGapMillis() >= 50);
+		// each song started once, and the second one waited through the gap
+		assertEquals(2, engine.getMetrics().getStarts().getCount());
+		assertEquals(2, engine.getMetrics().getWaits().getCount());
+		assertTrue(engine.getMetrics().getWaits().getMax() >= 50_000_000);
+
+		output.fire("songfiles/SwingCheese.mp3", "end");
+		await(() -> engine.getState() == State.IDLE);
+		assertEquals(2, account.getAccount().getSongPlayed());
+		assertTrue(account.getPlayList().isEmpty());
+		engine.shutdown();
+	}
+
+	@Test
+	void testStopReleasesPlayers() throws InterruptedException {
+		FakeOutput output = new FakeOutput();
+		VenueQueue venue = new VenueQueue();
+		PlaybackEngine<String> engine = new PlaybackEngine<>(output, venue, Runnable::run);
+		JukeboxAccount account = queue(venue, "river", "LopingSting.mp3", "Capture.mp3");
+
+		await(() -> output.prepared.size() == 2);
+		output.fire("songfiles/LopingSting.mp3", "ready");
+		await(() -> engine.getState() == State.PLAYING);
+
+		engine.stop();
+		await(() -> engine.getState() == State.STOPPED);
+		assertEquals(List.of("songfiles/LopingSting.mp3"), output.stopped);
+		assertEquals(2, output.disposed.size());
+		// the song was stopped, not played to its end
+		assertEquals(0, account.getAccount().getSongPlayed());
+
+		// an end that comes after stop() is ignored, and a song added while
+		// stopped doesn't start the engine
+		output.fire("songfiles/LopingSting.mp3", "end");
+		queue(venue, "devon", "SwingCheese.mp3");
+		Thread.sleep(20);
+		assertEquals(State.STOPPED, engine.getState());
+		assertEquals(2, output.prepared.size());
+
+		// the stopped song plays again from its start
+		engine.play();
+		await(() -> output.prepared.size() == 4);
+		assertEquals(List.of("songfiles/LopingSting.mp3", "songfiles/Capture.mp3"), output.prepared.subList(2, 4));
+		assertEquals(State.PREPARING, engine.getState());
+		assertEquals(0, account.getAccount().getSongPlayed());
+		engine.shutdown();
+	}
+
+	@Test
+	void testSongQueuedWhileIdle() throws InterruptedException {
+		FakeOutput output = new FakeOutput();
+		VenueQueue venue = new VenueQueue();
+		PlaybackEngine<String> engine = new PlaybackEngine<>(output, venue, Runnable::run);
+		engine.setGapMillis(0);
+		JukeboxAccount account = queue(venue, "devon", "Capture.mp3");
+
+		await(() -> output.prepared.size() == 1);
+		output.fire("songfiles/Capture.mp3", "ready");
+		output.fire("songfiles/Capture.mp3", "end");
+		await(() -> engine.getState() == State.IDLE);
+
+		account.queueSong(SongCatalog.shared().findSong("SwingCheese.mp3"));
+		venue.offer(account, SongCatalog.shared().findSong("SwingCheese.mp3"));
+		await(() -> output.prepared.size() == 2);
+		output.fire("songfiles/SwingCheese.mp3", "ready");
+		await(() -> engine.getState() == State.PLAYING);
+		// the time spent idle is not a gap between songs
+		assertEquals(0, engine.getMetrics().getGapCount());
+		engine.shutdown();
+	}
+
+	@Test
+	void testFailedSongsAreSkipped() throws InterruptedException {
+		FakeOutput output = new FakeOutput();
+		output.failing.add("songfiles/Capture.mp3");
+		VenueQueue venue = new VenueQueue();
+		PlaybackEngine<String> engine = new PlaybackEngine<>(output, venue, Runnable::run);
+		engine.setGapMillis(0);
+		List<Outcome> outcomes = new CopyOnWriteArrayList<>();
+		engine.setPlayHistory((millis, account, song, outcome) -> outcomes.add(outcome));
+		engine.stop();
+
+		// enough songs that can't be played to overflow the stack if each one
+		// started the next from inside the last
+		String[] fileNames = new String[20_001];
+		Arrays.fill(fileNames, "Capture.mp3");
+		fileNames[20_000] = "SwingCheese.mp3";
+		JukeboxAccount account = queue(venue, "ryan", fileNames);
+		engine.play();
+
+		await(() -> output.prepared.size() == 1);
+		output.fire("songfiles/SwingCheese.mp3", "ready");
+		await(() -> engine.getState() == State.PLAYING);
+		assertEquals(List.of("songfiles/SwingCheese.mp3"), output.played);
+		// they were never heard, so they don't count against the account
+		assertEquals(0, account.getAccount().getSongPlayed());
+		assertEquals(1, account.getPlayList().size());
+		assertEquals(20_000, outcomes.size());
+		assertTrue(outcomes.stream().allMatch(outcome -> outcome == Outcome.FAILED));
+		engine.shutdown();
+	}
+
+	private static JukeboxAccount queue(VenueQueue venue, String userName, String... fileNames) {
+		JukeboxAccount account = new JukeboxAccount(new Account(userName, "pw"));
+		for (String fileName : fileNames) {
+			account.queueSong(SongCatalog.shared().findSong(fileName));
+			venue.offer(account, SongCatalog.shared().findSong(fileName));
+		}
+		return account;
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline)
+				throw new AssertionError("Timed out");
+			Thread.sleep(1);
+		}
+	}
+
+	/*
+	 * Records what the engine asks for, and keeps the callbacks of the latest
+	 * player of each song so the test can call them.
+	 */
+	private static class FakeOutput implements PlaybackEngine.Output<String> {
+		final List<String> prepared = new CopyOnWriteArrayList<>();
+		final List<String> played = new CopyOnWriteArrayList<>();
+		final List<String> stopped = new CopyOnWriteArrayList<>();
+		final List<String> disposed = new CopyOnWriteArrayList<>();
+		final Map<String, Runnable> callbacks = new ConcurrentHashMap<>();
+		// the songs whose players can't be made
+		final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public String prepare(String path, Runnable onReady, Runnable onEnd, Runnable onError) {
+			if (failing.contains(path))
+				throw new IllegalArgumentException("Can't play " + path);
+			callbacks.put(path + " ready", onReady);
+			callbacks.put(path + " end", onEnd);
+			callbacks.put(path + " error", onError);
+			// added last, the test waits for it before it calls the callbacks
+			prepared.add(path);
+			return path;
+		}
+
+		void fire(String path, String event) {
+			callbacks.get(path + " " + event).run();
+		}
+
+		@Override
+		public void play(String player) {
+			played.add(player);
+		}
+
+		@Override
+		public void stop(String player) {
+			stopped.add(player);
+		}
+
+		@Override
+		public void dispose(String player) {
+			disposed.add(player);
+		}
+	}
+
+}
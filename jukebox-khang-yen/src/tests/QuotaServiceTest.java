@@ -0,0 +1,183 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.PasswordHash;
+import model.QuotaService;
+
+/**
+ * This unit test counts songs with a QuotaService on a clock the test moves,
+ * so a new day or hour starts when the test says. The last tests count songs
+ * from many threads at once and check that none is lost or counted twice.
+ *
+ * @author Khang Tran
+ */
+class QuotaServiceTest {
+	private static final Instant MORNING = Instant.parse("2024-03-04T09:00:00Z");
+
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testDailyLimitStartsOverAtMidnight() {
+		ManualClock clock = new ManualClock(MORNING);
+		QuotaService quotas = new QuotaService(clock, QuotaService.perDay(3));
+		Account acc = new Account("khang", "a");
+
+		assertTrue(quotas.tryRecordPlay(acc));
+		assertTrue(quotas.tryRecordPlay(acc));
+		assertTrue(quotas.tryRecordPlay(acc));
+		assertFalse(quotas.tryRecordPlay(acc));
+		assertEquals(0, quotas.remaining(acc));
+		assertEquals(3, acc.getSongPlayed());
+		assertEquals(LocalDate.of(2024, 3, 4), acc.getPlayDay());
+
+		// nothing is reset, the count of yesterday just doesn't count today
+		clock.advance(Duration.ofHours(15));
+		assertEquals(3, quotas.remaining(acc));
+		assertEquals(0, quotas.playedToday(acc));
+		assertTrue(quotas.tryRecordPlay(acc));
+		assertEquals(1, acc.getSongPlayed());
+
+		// a song from before the last day played doesn't count
+		quotas.recordPlay(acc, LocalDate.of(2024, 3, 4));
+		assertEquals(1, quotas.playedToday(acc));
+		// a song that was queued in time counts even over the limit
+		quotas.recordPlay(acc);
+		quotas.recordPlay(acc);
+		quotas.recordPlay(acc);
+		assertEquals(4, quotas.playedToday(acc));
+		assertEquals(0, quotas.remaining(acc));
+	}
+
+	@Test
+	void testSlidingHour() {
+		ManualClock clock = new ManualClock(MORNING);
+		QuotaService quotas = new QuotaService(clock, QuotaService.perDay(3),
+				QuotaService.sliding(2, Duration.ofHours(1)));
+		Account acc = new Account("yen", "a");
+
+		assertTrue(quotas.tryRecordPlay(acc));
+		clock.advance(Duration.ofMinutes(20));
+		assertTrue(quotas.tryRecordPlay(acc));
+		// the hour is full, and the refused song isn't counted by the day
+		assertFalse(quotas.tryRecordPlay(acc));
+		assertEquals(2, quotas.playedToday(acc));
+
+		clock.advance(Duration.ofMinutes(41));
+		assertEquals(1, quotas.remaining(acc));
+		assertTrue(quotas.tryRecordPlay(acc));
+		// now the day is full
+		clock.advance(Duration.ofHours(2));
+		assertFalse(quotas.tryRecordPlay(acc));
+		assertEquals(3, quotas.playedToday(acc));
+
+		quotas.reset(acc);
+		assertEquals(2, quotas.remaining(acc));
+	}
+
+	@Test
+	void testJukeboxAccountQueuesOnlyWhatItMayPlay() {
+		ManualClock clock = new ManualClock(MORNING);
+		QuotaService quotas = new QuotaService(clock, QuotaService.perDay(3));
+		JukeboxAccount jukeboxAccount = new JukeboxAccount(new Account("casey", "a"), quotas);
+		jukeboxAccount.playASong();
+		assertTrue(jukeboxAccount.canPlaySong());
+		assertEquals(1, jukeboxAccount.songsSelectedToday());
+		assertTrue(jukeboxAccount.canQueueSong());
+		jukeboxAccount.playASong();
+		jukeboxAccount.playASong();
+		assertFalse(jukeboxAccount.canQueueSong());
+		assertFalse(jukeboxAccount.canPlaySong());
+
+		clock.advance(Duration.ofDays(1));
+		assertTrue(jukeboxAccount.canQueueSong());
+		assertEquals(0, jukeboxAccount.songsSelectedToday());
+		assertEquals(LocalDate.of(2024, 3, 4), jukeboxAccount.getLastPlayDate());
+	}
+
+	@Test
+	void testNoPlayLostUnderContention() throws InterruptedException {
+		int threads = 8;
+		int playsEach = 2_000;
+		ManualClock clock = new ManualClock(MORNING);
+		QuotaService quotas = new QuotaService(clock, QuotaService.perDay(Integer.MAX_VALUE),
+				QuotaService.sliding(Integer.MAX_VALUE, Duration.ofHours(1)));
+		Account acc = new Account("khang", "a");
+		AtomicInteger counted = new AtomicInteger();
+		run(threads, () -> {
+			for (int i = 0; i < playsEach; i++) {
+				if (quotas.tryRecordPlay(acc))
+					counted.incrementAndGet();
+			}
+		});
+		assertEquals(threads * playsEach, counted.get());
+		assertEquals(threads * playsEach, quotas.playedToday(acc));
+	}
+
+	@Test
+	void testLimitHeldUnderContention() throws InterruptedException {
+		int threads = 8;
+		int limit = 1000;
+		ManualClock clock = new ManualClock(MORNING);
+		QuotaService quotas = new QuotaService(clock, QuotaService.perDay(limit),
+				QuotaService.sliding(limit + 500, Duration.ofHours(1)));
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			accounts.add(new Account("user" + i, "a"));
+		AtomicInteger counted = new AtomicInteger();
+		// every thread tries far more songs than the limit allows, on every
+		// account
+		run(threads, () -> {
+			for (int i = 0; i < limit; i++) {
+				for (Account acc : accounts) {
+					if (quotas.tryRecordPlay(acc))
+						counted.incrementAndGet();
+				}
+			}
+		});
+		assertEquals(accounts.size() * limit, counted.get());
+		for (Account acc : accounts) {
+			assertEquals(limit, quotas.playedToday(acc));
+			assertEquals(0, quotas.remaining(acc));
+		}
+	}
+
+	private static void run(int threads, Runnable work) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				work.run();
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+	}
+
+}
@@ -0,0 +1,166 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.AccountCollection;
+import model.PasswordHash;
+import model.QuotaService;
+import persistence.SharedAccountStore;
+
+/**
+ * This unit test opens one shared account file twice, as two kiosks would,
+ * and checks that an account made by one can log in on the other and that
+ * they count the same songs. An account with another password on each kiosk
+ * is not shared. The last test counts songs from another Java process at the
+ * same time as this one.
+ *
+ * @author Khang Tran
+ */
+class SharedAccountStoreTest {
+	private static final int PLAYS = 20_000;
+
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testAccountsAreShared() throws IOException {
+		Path file = Files.createTempDirectory("shared").resolve("accounts.shm");
+		try (SharedAccountStore first = new SharedAccountStore(file, 64);
+				SharedAccountStore second = new SharedAccountStore(file, 64)) {
+			AccountCollection kiosk = new AccountCollection();
+			kiosk.setDirectory(first);
+			AccountCollection other = new AccountCollection();
+			other.setDirectory(second);
+			// the hard coded accounts are added once
+			assertEquals(4, first.size());
+
+			kiosk.createAccount("khang", "a");
+			Account found = other.authorize("khang", "a");
+			assertNotNull(found);
+			assertNull(other.authorize("khang", "b"));
+			// the name is taken on every kiosk
+			assertThrows(IllegalArgumentException.class, () -> other.createAccount("khang", "b"));
+			assertNull(other.getAccount("nobody"));
+			assertEquals(5, second.size());
+		}
+	}
+
+	@Test
+	void testSongsPlayedTodayAreShared() throws IOException {
+		Path file = Files.createTempDirectory("shared").resolve("accounts.shm");
+		QuotaService quotas = new QuotaService(Clock.systemUTC(), QuotaService.perDay(3));
+		try (SharedAccountStore first = new SharedAccountStore(file, 64);
+				SharedAccountStore second = new SharedAccountStore(file, 64)) {
+			AccountCollection kiosk = new AccountCollection();
+			kiosk.setDirectory(first);
+			AccountCollection other = new AccountCollection();
+			other.setDirectory(second);
+			Account here = kiosk.getAccount("Chris");
+			Account there = other.getAccount("Chris");
+
+			assertTrue(quotas.tryRecordPlay(here));
+			assertTrue(quotas.tryRecordPlay(there));
+			assertTrue(quotas.tryRecordPlay(here));
+			// the fourth song is one too many, wherever it is played
+			assertEquals(false, quotas.tryRecordPlay(there));
+			assertEquals(3, quotas.playedToday(there));
+		}
+		// the accounts and their songs are still there when the file is opened again
+		try (SharedAccountStore again = new SharedAccountStore(file, 64)) {
+			Account chris = again.find("Chris");
+			assertEquals(3, quotas.playedToday(chris));
+			assertEquals(4, again.size());
+		}
+	}
+
+	@Test
+	void testPasswordChangeIsShared() throws IOException {
+		Path file = Files.createTempDirectory("shared").resolve("accounts.shm");
+		try (SharedAccountStore first = new SharedAccountStore(file, 64);
+				SharedAccountStore second = new SharedAccountStore(file, 64)) {
+			AccountCollection kiosk = new AccountCollection();
+			kiosk.setDirectory(first);
+			// a stronger hash is written back when the account logs in
+			PasswordHash.setDefaultIterations(2000);
+			try {
+				assertNotNull(kiosk.authorize("Ryan", "4444"));
+			} finally {
+				PasswordHash.setDefaultIterations(1000);
+			}
+			assertEquals(2000, second.find("Ryan").getPassWordHash().getIterations());
+		}
+	}
+
+	@Test
+	void testDifferentPasswordIsNotShared() throws IOException {
+		Path file = Files.createTempDirectory("shared").resolve("accounts.shm");
+		try (SharedAccountStore first = new SharedAccountStore(file, 64);
+				SharedAccountStore second = new SharedAccountStore(file, 64)) {
+			AccountCollection kiosk = new AccountCollection();
+			kiosk.setDirectory(first);
+			kiosk.createAccount("khang", "a");
+			// made before this kiosk shared its accounts
+			AccountCollection other = new AccountCollection();
+			other.createAccount("khang", "b");
+			assertEquals(List.of("khang"), other.setDirectory(second));
+
+			// each kiosk keeps its own password
+			assertNotNull(kiosk.authorize("khang", "a"));
+			assertNotNull(other.authorize("khang", "b"));
+			assertNull(other.authorize("khang", "a"));
+			assertTrue(first.find("khang").checkPassWord("a"));
+		}
+	}
+
+	@Test
+	void testSongsCountedByAnotherProcess() throws Exception {
+		Path file = Files.createTempDirectory("shared").resolve("accounts.shm");
+		QuotaService quotas = new QuotaService(Clock.system(ZoneOffset.UTC), QuotaService.perDay(Integer.MAX_VALUE));
+		try (SharedAccountStore store = new SharedAccountStore(file, 64)) {
+			AccountCollection kiosk = new AccountCollection();
+			kiosk.setDirectory(store);
+			Account chris = kiosk.getAccount("Chris");
+
+			String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+			Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					SharedAccountStoreTest.class.getName(), file.toString()).redirectErrorStream(true)
+					.redirectOutput(new File(file + ".log")).start();
+			for (int i = 0; i < PLAYS; i++)
+				quotas.recordPlay(chris);
+			assertEquals(0, child.waitFor());
+			assertEquals(2 * PLAYS, quotas.playedToday(chris));
+		}
+	}
+
+	/*
+	 * The other process of testSongsCountedByAnotherProcess().
+	 */
+	public static void main(String[] args) throws IOException {
+		QuotaService quotas = new QuotaService(Clock.system(ZoneOffset.UTC), QuotaService.perDay(Integer.MAX_VALUE));
+		try (SharedAccountStore store = new SharedAccountStore(Paths.get(args[0]), 64)) {
+			Account chris = store.find("Chris");
+			for (int i = 0; i < PLAYS; i++)
+				quotas.recordPlay(chris);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import model.Song;
+import model.SongCatalog;
+import model.SongTable;
+
+/**
+ * This unit test checks that the whole jukebox shares one catalog, that a new
+ * catalog can be published in its place, and that copies of a song are
+ * swapped for the catalog's own Song. The last tests read songs back from the
+ * columns they are kept in, and save one with Java serialization.
+ * 
+ * @author Yen Lai
+ */
+class SongCatalogTest {
+
+	@Test
+	void testSharedCatalog() {
+		SongCatalog catalog = SongCatalog.shared();
+		assertSame(catalog, SongCatalog.shared());
+		Song capture = catalog.findSong("Capture.mp3");
+		assertEquals("Caught a Pokemon!", capture.getTitle());
+		assertNull(catalog.findSong("NotASong.mp3"));
+
+		SongCatalog other = new SongCatalog(List.of(new Song("Capture", "Someone", "0:05", "Capture.mp3")));
+		SongCatalog.publish(other);
+		try {
+			assertSame(other, SongCatalog.shared());
+			assertEquals("Capture", SongCatalog.shared().findSong("Capture.mp3").getTitle());
+		} finally {
+			SongCatalog.publish(catalog);
+		}
+	}
+
+	@Test
+	void testIntern() {
+		SongCatalog catalog = SongCatalog.shared();
+		Song copy = new Song("Loping Sting", "Kevin MacLeod", "0:05", "LopingSting.mp3");
+		assertSame(catalog.findSong("LopingSting.mp3"), catalog.intern(copy));
+		Song unknown = new Song("Gone", "Nobody", "0:01", "Gone.mp3");
+		assertSame(unknown, catalog.intern(unknown));
+	}
+
+	@Test
+	void testColumns() {
+		SongTable.Builder builder = new SongTable.Builder();
+		builder.add("Danse Macabre", "Kevin MacLeod", "0:34", "DanseMacabreViolinHook.mp3", null);
+		builder.add("Loping Sting", "Kevin MacLeod", "0:05", "LopingSting.mp3", "Sting");
+		builder.add("Café", "Ünknown", "Unknown Duration", "Café.mp3", null);
+		builder.add("Long", null, "12:00", "Long.mp3", null);
+		SongCatalog catalog = new SongCatalog(builder.build());
+
+		assertEquals(4, catalog.size());
+		// the artist is kept once
+		assertEquals(2, catalog.getTable().artistCount());
+		Song sting = catalog.findSong("LopingSting.mp3");
+		assertEquals("Kevin MacLeod", sting.getArtist());
+		assertEquals("Sting", sting.getAlbum());
+		assertEquals(5000, sting.getDurationMillis());
+		Song cafe = catalog.findSong("Café.mp3");
+		assertEquals("Café", cafe.getTitle());
+		assertEquals("Ünknown", cafe.getArtist());
+		assertEquals("Unknown Duration", cafe.getPlaytime());
+		assertEquals(-1, cafe.getDurationMillis());
+		assertNull(catalog.getSong(3).getArtist());
+		assertEquals("12:00", catalog.getSong(3).getPlaytime());
+
+		// one Song for each id, and it knows its id
+		assertSame(sting, catalog.getSong(1));
+		assertSame(sting, catalog.getSongs().get(1));
+		assertEquals(1, catalog.idOf(sting));
+		assertEquals(-1, catalog.idOf(new Song("Loping Sting", "Kevin MacLeod", "0:05", "LopingSting.mp3")));
+
+		// the time sorts by length, not by text
+		List<Song> byTime = new ArrayList<>(catalog.getSongs());
+		byTime.sort((a, b) -> Integer.compare(a.getDurationMillis(), b.getDurationMillis()));
+		assertEquals(List.of("Café", "Loping Sting", "Danse Macabre", "Long"),
+				byTime.stream().map(Song::getTitle).toList());
+	}
+
+	@Test
+	void testSerializedForm() throws IOException, ClassNotFoundException {
+		// the form of the first Song, which snapshots saved with Java
+		// serialization hold
+		ObjectStreamClass form = ObjectStreamClass.lookup(Song.class);
+		assertEquals(5261491565460427894L, form.getSerialVersionUID());
+		assertEquals(5, form.getFields().length);
+		assertEquals(String.class, form.getField("title").getType());
+
+		Song song = SongCatalog.shared().findSong("Capture.mp3");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(song);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			Song read = (Song) in.readObject();
+			assertEquals(song.getTitle(), read.getTitle());
+			assertEquals(song.getPlaytime(), read.getPlaytime());
+			assertSame(song, SongCatalog.shared().intern(read));
+		}
+	}
+
+}
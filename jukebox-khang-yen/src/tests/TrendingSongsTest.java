@@ -0,0 +1,186 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.CountMinSketch;
+import model.PasswordHash;
+import model.PlayHistory.Outcome;
+import model.Song;
+import model.TrendingSongs;
+
+/**
+ * This unit test counts plays in TrendingSongs on a clock the test moves, so
+ * the window slides when the test says, and checks that a few songs played
+ * often are found among many songs played once. The last test reads the top
+ * songs while another thread counts.
+ *
+ * @author Yen Lai
+ */
+class TrendingSongsTest {
+	private static final Instant MORNING = Instant.parse("2024-03-04T09:00:00Z");
+	private static final Song CAPTURE = new Song("Capture", "Pikasong", "0:05", "Capture.mp3");
+	private static final Song SWING = new Song("Swing Cheese 15", "Artist", "0:15", "SwingCheese.mp3");
+	private static final Song TUMBAO = new Song("Determined Tumbao", "FreePlay Music", "0:20",
+			"DeterminedTumbao.mp3");
+
+	private final Account yen = new Account("yen", "a");
+
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testSketchIsNeverTooLow() {
+		CountMinSketch sketch = new CountMinSketch(4, 256);
+		Random random = new Random(42);
+		int[] counts = new int[5000];
+		for (int i = 0; i < 50_000; i++) {
+			int key = random.nextInt(counts.length);
+			sketch.add(key, 1);
+			counts[key]++;
+		}
+		int tooHigh = 0;
+		for (int key = 0; key < counts.length; key++) {
+			assertTrue(sketch.estimate(key) >= counts[key]);
+			if (sketch.estimate(key) > counts[key] + 50_000 * Math.E / 256)
+				tooHigh++;
+		}
+		// too high by more than e / width of the total for about e^-4 of the keys
+		assertTrue(tooHigh < counts.length / 20);
+		assertEquals(4 * 256 * 4, sketch.getBytes());
+		sketch.clear();
+		assertEquals(0, sketch.estimate(7));
+	}
+
+	@Test
+	void testMostPlayedFirst() {
+		ManualClock clock = new ManualClock(MORNING);
+		TrendingSongs trending = TrendingSongs.lastHour(clock);
+		assertEquals(List.of(), trending.getTop());
+
+		play(trending, clock, TUMBAO);
+		play(trending, clock, CAPTURE);
+		play(trending, clock, SWING);
+		play(trending, clock, CAPTURE);
+		play(trending, clock, TUMBAO);
+		play(trending, clock, CAPTURE);
+		// a song that couldn't be played isn't trending
+		trending.songFinished(clock.millis(), yen, SWING, Outcome.FAILED);
+
+		assertEquals("[Capture (3), Determined Tumbao (2), Swing Cheese 15 (1)]", trending.getTop().toString());
+		TrendingSongs first = new TrendingSongs(clock, Duration.ofHours(1), 12, 1);
+		play(first, clock, SWING);
+		play(first, clock, CAPTURE);
+		assertEquals("[Capture (1)]", first.getTop().toString());
+	}
+
+	@Test
+	void testWindowSlides() {
+		ManualClock clock = new ManualClock(MORNING);
+		TrendingSongs trending = TrendingSongs.lastHour(clock);
+		play(trending, clock, CAPTURE);
+		play(trending, clock, CAPTURE);
+		play(trending, clock, CAPTURE);
+		clock.advance(Duration.ofMinutes(40));
+		play(trending, clock, SWING);
+		play(trending, clock, SWING);
+		assertEquals("[Capture (3), Swing Cheese 15 (2)]", trending.getTop().toString());
+
+		// the plays of 9:00 left the window at 10:05, without another play
+		clock.advance(Duration.ofMinutes(25));
+		assertEquals("[Swing Cheese 15 (2)]", trending.getTop().toString());
+		play(trending, clock, TUMBAO);
+		assertEquals("[Swing Cheese 15 (2), Determined Tumbao (1)]", trending.getTop().toString());
+
+		// a song that finished before the window isn't counted
+		trending.songFinished(MORNING.toEpochMilli(), yen, TUMBAO, Outcome.PLAYED);
+		assertEquals("[Swing Cheese 15 (2), Determined Tumbao (1)]", trending.getTop().toString());
+
+		clock.advance(Duration.ofHours(3));
+		assertEquals(List.of(), trending.getTop());
+		play(trending, clock, CAPTURE);
+		assertEquals("[Capture (1)]", trending.getTop().toString());
+	}
+
+	@Test
+	void testFindsPopularSongsAmongMany() {
+		ManualClock clock = new ManualClock(MORNING);
+		TrendingSongs trending = TrendingSongs.lastDay(clock);
+		long bytes = trending.getBytes();
+		Random random = new Random(42);
+		Set<String> popular = new HashSet<>();
+		for (int i = 0; i < 20_000; i++) {
+			clock.advance(Duration.ofSeconds(3));
+			Song song;
+			if (random.nextInt(10) == 0) {
+				song = new Song("Popular " + i % 5, "Artist", "3:00", "popular" + i % 5 + ".mp3");
+				popular.add(song.getTitle());
+			} else {
+				song = new Song("Song " + i, "Artist", "3:00", "song" + i + ".mp3");
+			}
+			play(trending, clock, song);
+		}
+
+		List<TrendingSongs.Trend> top = trending.getTop();
+		assertEquals(10, top.size());
+		Set<String> found = new HashSet<>();
+		for (TrendingSongs.Trend trend : top.subList(0, 5)) {
+			found.add(trend.getSong().getTitle());
+			assertTrue(trend.getPlays() > 300);
+		}
+		assertEquals(popular, found);
+		// the rest were played about once each
+		assertTrue(top.get(5).getPlays() < 20);
+		assertEquals(bytes, trending.getBytes());
+	}
+
+	@Test
+	void testReadWhileCounting() throws InterruptedException {
+		ManualClock clock = new ManualClock(MORNING);
+		TrendingSongs trending = TrendingSongs.lastHour(clock);
+		Song[] songs = { CAPTURE, SWING, TUMBAO };
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread counter = new Thread(() -> {
+			try {
+				for (int i = 0; i < 30_000; i++)
+					trending.songFinished(clock.millis(), yen, songs[i % 3], Outcome.PLAYED);
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		counter.start();
+		int last = 0;
+		while (counter.isAlive()) {
+			int total = 0;
+			for (TrendingSongs.Trend trend : trending.getTop())
+				total += trend.getPlays();
+			// what is read never goes back
+			assertTrue(total >= last);
+			last = total;
+		}
+		counter.join();
+		assertEquals(null, failure.get());
+		assertEquals("[Capture (10000), Determined Tumbao (10000), Swing Cheese 15 (10000)]",
+				trending.getTop().toString());
+	}
+
+	private void play(TrendingSongs trending, Clock clock, Song song) {
+		trending.songFinished(clock.millis(), yen, song, Outcome.PLAYED);
+	}
+
+}
@@ -0,0 +1,177 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import model.Account;
+import model.JukeboxAccount;
+import model.PasswordHash;
+import model.Song;
+import model.SongCatalog;
+import model.VenueQueue;
+
+/**
+ * This unit test adds songs to a VenueQueue from one thread and from many
+ * threads at once, and checks that the consumer takes every song once, in
+ * the order each account added them. A fair queue plays the songs of the
+ * accounts round-robin.
+ *
+ * @author Yen Lai
+ */
+class VenueQueueTest {
+	@BeforeAll
+	public static void cheapHashing() {
+		PasswordHash.setDefaultIterations(1000);
+	}
+
+	@Test
+	void testFirstInFirstOut() {
+		VenueQueue venue = new VenueQueue();
+		AtomicInteger told = new AtomicInteger();
+		venue.setConsumer(told::incrementAndGet);
+		JukeboxAccount khang = new JukeboxAccount(new Account("khang", "a"));
+		JukeboxAccount yen = new JukeboxAccount(new Account("yen", "a"));
+		Song capture = SongCatalog.shared().findSong("Capture.mp3");
+		Song cheese = SongCatalog.shared().findSong("SwingCheese.mp3");
+
+		assertNull(venue.poll());
+		venue.offer(khang, capture);
+		venue.offer(yen, cheese);
+		assertEquals(2, told.get());
+		assertEquals(2, venue.size());
+		assertSame(capture, venue.peek().getSong());
+		assertEquals("songfiles/Capture.mp3", venue.peek().getPath());
+		assertEquals(2, venue.snapshot().size());
+
+		VenueQueue.Entry first = venue.poll();
+		assertSame(khang, first.getAccount());
+		assertSame(yen, venue.poll().getAccount());
+		assertNull(venue.poll());
+		assertTrue(venue.isEmpty());
+		assertEquals(0, venue.size());
+	}
+
+	@Test
+	void testManyThreadsAdding() throws InterruptedException {
+		int threads = 16;
+		int songsEach = 5000;
+		VenueQueue venue = new VenueQueue();
+		// each song is numbered, so the order can be checked
+		Song[] songs = numbered(songsEach);
+		List<JukeboxAccount> accounts = new ArrayList<>();
+		for (int i = 0; i < threads; i++)
+			accounts.add(new JukeboxAccount(new Account("user" + i, "a")));
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> producers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			JukeboxAccount account = accounts.get(i);
+			Thread producer = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int n = 0; n < songsEach; n++)
+					venue.offer(account, songs[n]);
+			});
+			producer.start();
+			producers.add(producer);
+		}
+
+		// the consumer takes songs while they are being added
+		int[] taken = new int[threads];
+		int total = 0;
+		start.countDown();
+		while (total < threads * songsEach) {
+			VenueQueue.Entry entry = venue.poll();
+			if (entry == null) {
+				Thread.yield();
+				continue;
+			}
+			int producer = accounts.indexOf(entry.getAccount());
+			assertSame(songs[taken[producer]], entry.getSong());
+			taken[producer]++;
+			total++;
+		}
+		for (Thread producer : producers)
+			producer.join();
+		assertNull(venue.poll());
+		for (int count : taken)
+			assertEquals(songsEach, count);
+		assertEquals(0, venue.size());
+	}
+
+	@Test
+	void testFairQueueTakesTurns() {
+		VenueQueue venue = VenueQueue.fair();
+		JukeboxAccount khang = new JukeboxAccount(new Account("khang", "a"));
+		JukeboxAccount yen = new JukeboxAccount(new Account("yen", "a"));
+		JukeboxAccount casey = new JukeboxAccount(new Account("casey", "a"));
+		Song[] songs = numbered(6);
+
+		// khang adds three songs before yen adds any
+		venue.offer(khang, songs[0]);
+		venue.offer(khang, songs[1]);
+		venue.offer(khang, songs[2]);
+		venue.offer(yen, songs[3]);
+		venue.offer(yen, songs[4]);
+		assertEquals(List.of("khang", "yen", "khang", "yen", "khang"), users(venue.snapshot()));
+
+		assertSame(songs[0], venue.poll().getSong());
+		assertSame(songs[3], venue.peek().getSong());
+		assertSame(songs[3], venue.poll().getSong());
+		// casey joins at the end of the round
+		venue.offer(casey, songs[5]);
+		assertEquals(List.of("khang", "yen", "casey", "khang"), users(venue.snapshot()));
+		List<String> played = new ArrayList<>();
+		for (VenueQueue.Entry entry = venue.poll(); entry != null; entry = venue.poll())
+			played.add(entry.getAccount().getAccount().getID());
+		assertEquals(List.of("khang", "yen", "casey", "khang"), played);
+		assertTrue(venue.isEmpty());
+		assertEquals(0, venue.size());
+	}
+
+	@Test
+	void testWeightedFairQueue() {
+		JukeboxAccount staff = new JukeboxAccount(new Account("staff", "a"));
+		JukeboxAccount yen = new JukeboxAccount(new Account("yen", "a"));
+		VenueQueue venue = VenueQueue.fair(account -> account == staff ? 2 : 1);
+		Song[] songs = numbered(8);
+		for (int i = 0; i < 4; i++) {
+			venue.offer(staff, songs[i]);
+			venue.offer(yen, songs[4 + i]);
+		}
+		List<String> expected = List.of("staff", "staff", "yen", "staff", "staff", "yen", "yen", "yen");
+		assertEquals(expected, users(venue.snapshot()));
+		List<String> played = new ArrayList<>();
+		for (VenueQueue.Entry entry = venue.poll(); entry != null; entry = venue.poll())
+			played.add(entry.getAccount().getAccount().getID());
+		assertEquals(expected, played);
+	}
+
+	private static Song[] numbered(int count) {
+		Song[] songs = new Song[count];
+		for (int n = 0; n < count; n++)
+			songs[n] = new Song("Song " + n, "Artist", "0:01", "song" + n + ".mp3");
+		return songs;
+	}
+
+	private static List<String> users(List<VenueQueue.Entry> entries) {
+		List<String> users = new ArrayList<>();
+		for (VenueQueue.Entry entry : entries)
+			users.add(entry.getAccount().getAccount().getID());
+		return users;
+	}
+
+}